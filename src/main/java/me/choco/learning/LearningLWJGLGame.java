@@ -2,12 +2,18 @@ package me.choco.learning;
 
 import static org.lwjgl.glfw.GLFW.*;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.joml.Vector2f;
+import org.joml.Vector3f;
 
 import me.choco.learning.engine.GameBase;
 import me.choco.learning.engine.GameConfig;
+import me.choco.learning.engine.model.ImportOptions;
 import me.choco.learning.engine.model.ModelLoader;
 import me.choco.learning.engine.model.ObjectModel;
+import me.choco.learning.engine.model.VertexFormat;
+import me.choco.learning.engine.model.VertexModel;
 import me.choco.learning.engine.texture.Material;
 import me.choco.learning.engine.texture.Texture;
 
@@ -20,6 +26,7 @@ public class LearningLWJGLGame extends GameBase {
 	private static final float MOUSE_SENSITIVITY = 0.35f;
 	
 	private ObjectModel model;
+	private VertexModel placeholder;
 	
 	public LearningLWJGLGame() {
 		super(GameConfig.newConfig()
@@ -33,10 +40,26 @@ public class LearningLWJGLGame extends GameBase {
 	
 	@Override
 	public void init() {
-		this.initRenderer(new LearningRenderer(window, camera));
+		this.initRenderer(new LearningRenderer(window, camera, streamingBuffer));
         
 		// Initialize the object model... temp
-	    this.model = new ObjectModel(ModelLoader.loadOBJModel("/models/bunny.obj", new Material(new Texture("/textures/cube_texture.png"))));
+	    // A cube is displayed while the full model loads in the background
+	    ImportOptions importOptions = ImportOptions.newOptions().setOptimize(true).setVertexFormat(VertexFormat.COMPACT).setLODLevels(4).setBuildMeshlets(true).setInterleaved(true);
+	    this.placeholder = ModelLoader.loadOBJModel("/models/cube.obj", new Material(), importOptions);
+	    this.model = new ObjectModel(placeholder);
+	    
+	    CompletableFuture<Texture> texture = assetRegistry.acquireTexture("/textures/cube_texture.png");
+	    this.assetRegistry.acquireLODChain("/models/bunny.obj", importOptions).thenAcceptBoth(texture, (lodChain, bunnyTexture) -> {
+	    	Material material = new Material(bunnyTexture);
+	    	for (int i = 0; i < lodChain.getLevelCount(); i++) {
+	    		lodChain.getLevel(i).setMaterial(material);
+	    	}
+	    	
+	    	this.model.setLODChain(lodChain);
+	    }).exceptionally(e -> {
+	    	e.printStackTrace();
+	    	return null;
+	    });
 	    this.model.setPosition(0, 0, -2);
 	    this.addToRenderQueue(model);
 	}
@@ -84,17 +107,18 @@ public class LearningLWJGLGame extends GameBase {
 			this.cameraDelta.y = 1;
 		}
 		
+		Vector3f rotation = model.getRotation();
 		if (window.isKeyPressed(GLFW_KEY_RIGHT)) {
-			this.model.getRotation().y -= 5;
+			this.model.setRotation(rotation.x, rotation.y - 5, rotation.z);
 		} else if (window.isKeyPressed(GLFW_KEY_LEFT)) {
-			this.model.getRotation().y += 5;
+			this.model.setRotation(rotation.x, rotation.y + 5, rotation.z);
 		}
 	}
 	
 	@Override
 	public void cleanup() {
-		super.cleanup();
-		this.model.cleanup();
+		super.cleanup(); // Assets acquired from the registry are deleted here
+		this.placeholder.cleanup();
 		this.window.destroy();
 	}
 	
@@ -3,6 +3,7 @@ package me.choco.learning;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL13.*;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.List;
 
@@ -10,14 +11,26 @@ import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 import me.choco.learning.engine.Window;
+import me.choco.learning.engine.buffer.StreamingBuffer;
+import me.choco.learning.engine.buffer.VAO;
 import me.choco.learning.engine.camera.Camera;
 import me.choco.learning.engine.light.PointLight;
-import me.choco.learning.engine.model.ObjectModel;
 import me.choco.learning.engine.model.VertexModel;
+import me.choco.learning.engine.rendering.DrawList;
+import me.choco.learning.engine.rendering.DrawListBuilder;
+import me.choco.learning.engine.rendering.FrustumCuller;
+import me.choco.learning.engine.rendering.GLStateCache;
+import me.choco.learning.engine.rendering.InstanceBatch;
+import me.choco.learning.engine.rendering.InstanceBatcher;
+import me.choco.learning.engine.rendering.OcclusionCuller;
+import me.choco.learning.engine.rendering.RenderQueue;
 import me.choco.learning.engine.rendering.Renderer;
 import me.choco.learning.engine.rendering.TransformationMatrices;
 import me.choco.learning.engine.shading.ShaderProgram;
 import me.choco.learning.engine.shading.ShaderType;
+import me.choco.learning.engine.shading.UniformBlock;
+import me.choco.learning.engine.shading.UniformBuffer;
+import me.choco.learning.engine.texture.Material;
 
 /**
  * Handles the rendering processes of the LWJGL program
@@ -29,66 +42,287 @@ public class LearningRenderer implements Renderer {
 	private static final float FOV = (float) Math.toRadians(60);
 	private static final float Z_NEAR = 0.01f, Z_FAR = 1000.0f;
 	
+	private static final float MAX_LOD_PIXEL_ERROR = 1.0f, LOD_HYSTERESIS = 0.25f;
+	private static final int OCCLUSION_BUFFER_WIDTH = 256, OCCLUSION_BUFFER_HEIGHT = 128;
+	
+	// Streamed 2D vertices: position (2), colour (4) and texture coordinates (2)
+	private static final int STREAM_VERTEX_FLOATS = 8, STREAM_VERTEX_SIZE = STREAM_VERTEX_FLOATS * Float.BYTES;
+	
 	private Window window;
 	private Camera camera;
 	private ShaderProgram shaderProgram;
+	private UniformBuffer frameData;
+	private StreamingBuffer streamingBuffer;
+	private VAO streamVAO;
 	
 	private final PointLight light = new PointLight(new Vector3f(0, -2, -3), new Vector3f(1, 1, 1));
+	private final Matrix4f transformationMatrix = new Matrix4f();
+	private final FrustumCuller frustumCuller = new FrustumCuller();
+	private final OcclusionCuller occlusionCuller = new OcclusionCuller(OCCLUSION_BUFFER_WIDTH, OCCLUSION_BUFFER_HEIGHT);
+	private final DrawListBuilder drawListBuilder = new DrawListBuilder(MAX_LOD_PIXEL_ERROR, LOD_HYSTERESIS, Z_NEAR);
+	private final InstanceBatcher instanceBatcher = new InstanceBatcher();
 	
-	public LearningRenderer(Window window, Camera camera) {
+	public LearningRenderer(Window window, Camera camera, StreamingBuffer streamingBuffer) {
 		this.window = window;
 		this.camera = camera;
+		this.streamingBuffer = streamingBuffer;
 		this.shaderProgram = new ShaderProgram();
 	}
 	
 	@Override
 	public void init() {
-        glEnable(GL_BLEND);
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+        GLStateCache.get().setBlend(true);
+        GLStateCache.get().blendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
         
 		this.shaderProgram.loadShader(ShaderType.FRAGMENT, "/shaders/fragment.fs");
 		this.shaderProgram.loadShader(ShaderType.VERTEX, "/shaders/vertex.vs");
 		this.shaderProgram.link();
 		
+		// Camera and lighting data is uploaded once per frame to a buffer shared by every program
+		this.frameData = new UniformBuffer(UniformBlock.FRAME_DATA);
+		this.shaderProgram.bindUniformBlock(UniformBlock.FRAME_DATA);
+		
 		// Vertex shader uniforms
-		this.shaderProgram.createUniformVariable("projectionMatrix");
-		this.shaderProgram.createUniformVariable("transformationMatrix");
-		this.shaderProgram.createUniformVariable("viewMatrix");
-		this.shaderProgram.createUniformVariable("lightPosition");
+		this.shaderProgram.createUniformVariable("positionScale");
+		this.shaderProgram.createUniformVariable("positionOffset");
 		
 		// Fragment shader uniforms
 		this.shaderProgram.createUniformVariable("textureSampler");
-		this.shaderProgram.createUniformVariable("lightColour");
+		this.shaderProgram.createUniformVariable("diffuseColour");
+		this.shaderProgram.createUniformVariable("textured");
+		
+		// Sampler units are program state and never change
+		this.shaderProgram.bind();
+		this.shaderProgram.setUniformValue("textureSampler", 0);
+		this.shaderProgram.unbind();
+		
+		// Streamed vertices are interleaved in the streaming buffer
+		this.streamVAO = new VAO();
+		this.streamVAO.bind();
+		this.streamingBuffer.bind();
+		this.streamVAO.createAttribPointer(0, 2, GL_FLOAT, false, STREAM_VERTEX_SIZE, 0);
+		this.streamVAO.createAttribPointer(1, 4, GL_FLOAT, false, STREAM_VERTEX_SIZE, 2 * Float.BYTES);
+		this.streamVAO.createAttribPointer(2, 2, GL_FLOAT, false, STREAM_VERTEX_SIZE, 6 * Float.BYTES);
+		this.streamingBuffer.unbind();
+		this.streamVAO.unbind();
 	}
 	
 	@Override
-	public void render(List<ObjectModel> models) {
+	public void render(RenderQueue queue) {
 		this.shaderProgram.bind();
 		
-		this.shaderProgram.setUniformValue("projectionMatrix", TransformationMatrices.getProjectionMatrix(FOV, window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR));
-		this.shaderProgram.setUniformValue("lightPosition", light.getPosition());
-		this.shaderProgram.setUniformValue("textureSampler", 0);
-		this.shaderProgram.setUniformValue("lightColour", light.getColour());
-		
+		Matrix4f projectionMatrix = TransformationMatrices.getProjectionMatrix(FOV, window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR);
 		Matrix4f viewMatrix = TransformationMatrices.getViewMatrix(camera);
+		float pixelsPerUnitAtUnitDistance = window.getHeight() / (2.0f * (float) Math.tan(FOV / 2));
+		
+		this.frameData.write()
+			.putMat4(projectionMatrix)
+			.putMat4(viewMatrix)
+			.putVec3(light.getPosition())
+			.putVec3(light.getColour());
+		this.frameData.upload();
+		
+		boolean[] visibility = frustumCuller.cull(queue, projectionMatrix, viewMatrix);
+		this.occlusionCuller.cull(queue, visibility, projectionMatrix, viewMatrix);
+		
+		// Levels of detail, transformation matrices and meshlet visibility are computed on worker threads
+		DrawList drawList = drawListBuilder.build(queue, visibility, projectionMatrix, viewMatrix, camera.getPosition(), pixelsPerUnitAtUnitDistance);
 		
-		// Render models
-		for (ObjectModel model : models) {
-			VertexModel vertexModel = model.getVertexModel();
-			Matrix4f transformationMatrix = TransformationMatrices.getTransformationMatrix(model);
+		// The sort key depends on the displayed mesh, so models are sorted once levels of detail are selected
+		queue.sort(camera.getPosition(), Z_FAR, visibility);
+		
+		/*
+		 * Consecutive objects sharing a vertex model are batched and drawn with one instanced
+		 * draw call per material. Meshlets are culled per object, so models with meshlets are
+		 * drawn one object at a time once the batches before them are drawn, keeping the
+		 * sorted order (and therefore the depth order of transparent objects) intact
+		 */
+		this.instanceBatcher.clear();
+		for (int i = 0; i < queue.getSortedSize(); i++) {
+			int command = drawListBuilder.getCommand(queue.getSortedIndex(i));
+			VertexModel vertexModel = queue.getSortedModel(i).getVertexModel();
+			drawList.getTransform(command, transformationMatrix);
+			
+			int meshletOffset = drawList.getMeshletOffset(command);
+			if (meshletOffset < 0) {
+				this.instanceBatcher.add(vertexModel, transformationMatrix);
+				continue;
+			}
+			
+			this.drawBatches();
+			this.reserveTransforms(1);
+			
+			int offset = streamingBuffer.allocate(VertexModel.INSTANCE_TRANSFORM_SIZE, VertexModel.INSTANCE_TRANSFORM_SIZE);
+			transformationMatrix.get(streamingBuffer.getData());
+			this.streamingBuffer.flush();
 			
-			this.shaderProgram.setUniformValue("transformationMatrix", transformationMatrix);
-			this.shaderProgram.setUniformValue("viewMatrix", viewMatrix);
-			vertexModel.render();
+			GLStateCache.get().setDepthMask(!vertexModel.isTransparent());
+			this.bindModel(vertexModel, offset);
+			for (int j = 0; j < vertexModel.getSubMeshCount(); j++) {
+				this.setMaterial(vertexModel.getMaterial(j));
+				vertexModel.renderMeshlets(j, drawList.getMeshletVisibility(), meshletOffset);
+			}
 		}
 		
+		this.drawBatches();
+		
+		GLStateCache.get().setDepthMask(true);
+		GLStateCache.get().bindVertexArray(0);
 		this.shaderProgram.unbind();
 	}
 	
+	/**
+	 * Draw and clear the batches collected by the instance batcher. The transforms
+	 * of as many instances as fit in the streaming buffer's current region are
+	 * streamed before any is drawn so that the buffer is flushed once per region.
+	 * Batches which do not fit are split across regions
+	 */
+	private void drawBatches() {
+		List<InstanceBatch> batches = instanceBatcher.getBatches();
+		int remaining = instanceBatcher.getInstanceCount();
+		int batchIndex = 0, batchStart = 0;
+		
+		while (remaining > 0) {
+			int count = this.reserveTransforms(remaining);
+			int offset = streamingBuffer.allocate(count * VertexModel.INSTANCE_TRANSFORM_SIZE, VertexModel.INSTANCE_TRANSFORM_SIZE);
+			
+			// Stream the transforms of the next instances, continuing from where the last region stopped
+			ByteBuffer data = streamingBuffer.getData();
+			for (int i = batchIndex, start = batchStart, left = count; left > 0; i++, start = 0) {
+				InstanceBatch batch = batches.get(i);
+				int written = Math.min(batch.getInstanceCount() - start, left);
+				batch.write(data, start, written);
+				left -= written;
+			}
+			
+			this.streamingBuffer.flush();
+			
+			// Draw the same instances
+			for (int left = count; left > 0;) {
+				InstanceBatch batch = batches.get(batchIndex);
+				VertexModel vertexModel = batch.getVertexModel();
+				int drawn = Math.min(batch.getInstanceCount() - batchStart, left);
+				
+				// Transparent objects are blended over each other and must not occlude those behind them
+				GLStateCache.get().setDepthMask(!vertexModel.isTransparent());
+				this.bindModel(vertexModel, offset);
+				for (int i = 0; i < vertexModel.getSubMeshCount(); i++) {
+					this.setMaterial(vertexModel.getMaterial(i));
+					vertexModel.renderSubMeshInstanced(i, drawn);
+				}
+				
+				offset += drawn * VertexModel.INSTANCE_TRANSFORM_SIZE;
+				left -= drawn;
+				batchStart += drawn;
+				if (batchStart == batch.getInstanceCount()) {
+					batchIndex++;
+					batchStart = 0;
+				}
+			}
+			
+			remaining -= count;
+		}
+		
+		this.instanceBatcher.clear();
+	}
+	
+	/**
+	 * Ensure that at least one instance transform may be allocated from the
+	 * streaming buffer. If the region of this frame is exhausted, streaming
+	 * continues in the next region of the ring, which only waits if the GPU is
+	 * still reading from it
+	 * 
+	 * @param count the amount of transforms wanted
+	 * @return the amount of transforms which may be allocated, at most count
+	 */
+	private int reserveTransforms(int count) {
+		int capacity = streamingBuffer.getRemainingSize(VertexModel.INSTANCE_TRANSFORM_SIZE) / VertexModel.INSTANCE_TRANSFORM_SIZE;
+		if (capacity == 0) {
+			this.streamingBuffer.endFrame();
+			this.streamingBuffer.beginFrame();
+			capacity = streamingBuffer.getRemainingSize(VertexModel.INSTANCE_TRANSFORM_SIZE) / VertexModel.INSTANCE_TRANSFORM_SIZE;
+			
+			if (capacity == 0) {
+				throw new IllegalStateException("Streaming buffer regions of " + streamingBuffer.getRegionSize() + " bytes cannot hold an instance transform");
+			}
+		}
+		
+		return Math.min(count, capacity);
+	}
+	
+	/**
+	 * Bind a model's VAO, sourcing its instance transforms from the streaming
+	 * buffer at the given offset. Rebinding the VAO shared by models of the same
+	 * mesh arena is skipped by the state cache
+	 */
+	private void bindModel(VertexModel vertexModel, int transformOffset) {
+		this.shaderProgram.setUniformValue("positionScale", vertexModel.getPositionScale());
+		this.shaderProgram.setUniformValue("positionOffset", vertexModel.getPositionOffset());
+		
+		vertexModel.bind();
+		this.streamingBuffer.bind();
+		vertexModel.setInstanceTransforms(transformOffset);
+	}
+	
+	private void setMaterial(Material material) {
+		this.shaderProgram.setUniformValue("diffuseColour", material.getDiffuseColour());
+		this.shaderProgram.setUniformValue("textured", material.isTextured());
+	}
+	
+	/**
+	 * Get the batcher which groups the models drawn each frame into instanced
+	 * draw calls
+	 * 
+	 * @return the instance batcher
+	 */
+	public InstanceBatcher getInstanceBatcher() {
+		return instanceBatcher;
+	}
+	
+	/**
+	 * Get the culler which determines the models inside of the view frustum
+	 * 
+	 * @return the frustum culler
+	 */
+	public FrustumCuller getFrustumCuller() {
+		return frustumCuller;
+	}
+	
+	/**
+	 * Get the culler which determines the models hidden behind occluders
+	 * 
+	 * @return the occlusion culler
+	 */
+	public OcclusionCuller getOcclusionCuller() {
+		return occlusionCuller;
+	}
+	
+	/**
+	 * Get the builder which computes the draw list of each frame on worker threads,
+	 * including the visible meshlets of each model
+	 * 
+	 * @return the draw list builder
+	 */
+	public DrawListBuilder getDrawListBuilder() {
+		return drawListBuilder;
+	}
+	
 	@Override
 	public void render(FloatBuffer buffer, int bufferSize) {
-		glActiveTexture(GL_TEXTURE0);
-		glDrawElements(GL_TRIANGLES, bufferSize, GL_UNSIGNED_INT, 0);
+		int offset = streamingBuffer.allocate(bufferSize * Float.BYTES, STREAM_VERTEX_SIZE);
+		ByteBuffer data = streamingBuffer.getData();
+		for (int i = 0; i < bufferSize; i++) {
+			data.putFloat(buffer.get(i));
+		}
+		
+		this.streamingBuffer.flush();
+		
+		GLStateCache.get().activeTexture(GL_TEXTURE0);
+		this.streamVAO.bind();
+		this.streamVAO.enableAllAttribArrays();
+		glDrawArrays(GL_TRIANGLES, offset / STREAM_VERTEX_SIZE, bufferSize / STREAM_VERTEX_FLOATS);
+		this.streamVAO.disableAllAttribArrays();
+		this.streamVAO.unbind();
 	}
 	
 	@Override
@@ -96,6 +330,14 @@ public class LearningRenderer implements Renderer {
 		if (shaderProgram != null) {
 			this.shaderProgram.cleanup();
 		}
+		
+		if (frameData != null) {
+			this.frameData.delete();
+		}
+		
+		if (streamVAO != null) {
+			this.streamVAO.delete();
+		}
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,112 @@
+package me.choco.learning;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Paths;
+
+import me.choco.learning.engine.buffer.VertexLayout;
+import me.choco.learning.engine.model.ImportOptions;
+import me.choco.learning.engine.model.MeshData;
+import me.choco.learning.engine.model.MeshOptimizer;
+import me.choco.learning.engine.model.ModelLoader;
+import me.choco.learning.engine.model.PackedMesh;
+import me.choco.learning.engine.model.VertexFormat;
+import me.choco.learning.engine.model.VertexPacker;
+
+/**
+ * Compares the vertex fetch cost of split and interleaved vertex layouts for a
+ * full pass reading every attribute and a depth-only pass reading positions.
+ * Runs without a GPU: the GPU cost is estimated with the simulated overfetch of
+ * {@link MeshOptimizer#calculateOverfetch(int[], int, VertexLayout, int)}, and
+ * the CPU cost is measured by gathering the attributes in index order.
+ * <p>
+ * Usage: VertexLayoutBenchmark [path to OBJ file]. The bundled cube is used if
+ * no path is given
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class VertexLayoutBenchmark {
+	
+	private static final int WARMUP_ITERATIONS = 20, ITERATIONS = 50;
+	
+	public static void main(String[] args) {
+		ImportOptions options = ImportOptions.newOptions().setOptimize(true);
+		MeshData data = (args.length > 0) ? ModelLoader.loadOBJMeshData(Paths.get(args[0]), options) : ModelLoader.loadOBJMeshData("/models/cube.obj", options);
+		
+		int[] indices = new int[data.getIndexCount()];
+		IntBuffer indexBuffer = data.getIndices().duplicate();
+		indexBuffer.position(0);
+		indexBuffer.get(indices);
+		
+		System.out.printf("%d vertices, %d triangles%n", data.getVertexCount(), indices.length / 3);
+		benchmark("FLOAT", VertexPacker.pack(data, VertexFormat.FLOAT), indices);
+		benchmark("COMPACT", VertexPacker.pack(data, VertexFormat.COMPACT), indices);
+		data.free();
+	}
+	
+	private static void benchmark(String formatName, PackedMesh mesh, int[] indices) {
+		VertexLayout[] layouts = { VertexLayout.split(mesh.getAttributes()), VertexLayout.interleaved(mesh.getAttributes()) };
+		
+		for (VertexLayout layout : layouts) {
+			ByteBuffer[] buffers = layout.pack(mesh.getStreams(), mesh.getVertexCount());
+			String layoutName = layout.isInterleaved() ? "interleaved" : "split";
+			
+			for (int attributeCount : new int[] { layout.getAttributeCount(), 1 }) {
+				float overfetch = MeshOptimizer.calculateOverfetch(indices, mesh.getVertexCount(), layout, attributeCount);
+				GatherResult result = measureGather(indices, layout, buffers, attributeCount);
+				
+				// The checksum is printed so that the gather is not eliminated
+				System.out.printf("%-8s %-12s %-6s overfetch %.3f, CPU gather %.2f ns per index (checksum %x)%n", formatName, layoutName,
+					(attributeCount == 1) ? "depth" : "full", overfetch, result.nanos / indices.length, result.checksum);
+			}
+		}
+	}
+	
+	private static GatherResult measureGather(int[] indices, VertexLayout layout, ByteBuffer[] buffers, int attributeCount) {
+		long best = Long.MAX_VALUE, checksum = 0;
+		
+		for (int iteration = 0; iteration < WARMUP_ITERATIONS + ITERATIONS; iteration++) {
+			long start = System.nanoTime();
+			checksum += gather(indices, layout, buffers, attributeCount);
+			long elapsed = System.nanoTime() - start;
+			
+			if (iteration >= WARMUP_ITERATIONS) {
+				best = Math.min(best, elapsed);
+			}
+		}
+		
+		return new GatherResult(best, checksum);
+	}
+	
+	private static long gather(int[] indices, VertexLayout layout, ByteBuffer[] buffers, int attributeCount) {
+		long sum = 0;
+		
+		for (int index : indices) {
+			for (int attribute = 0; attribute < attributeCount; attribute++) {
+				int buffer = layout.getBuffer(attribute);
+				int position = index * layout.getStride(buffer) + layout.getOffset(attribute);
+				int size = layout.getAttribute(attribute).getStride();
+				
+				ByteBuffer contents = buffers[buffer];
+				for (int i = 0; i < size; i += Integer.BYTES) {
+					sum += contents.getInt(position + i);
+				}
+			}
+		}
+		
+		return sum;
+	}
+	
+	private static final class GatherResult {
+		
+		private final double nanos;
+		private final long checksum;
+		
+		private GatherResult(double nanos, long checksum) {
+			this.nanos = nanos;
+			this.checksum = checksum;
+		}
+		
+	}
+	
+}
\ No newline at end of file
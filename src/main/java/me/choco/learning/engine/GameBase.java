@@ -5,16 +5,19 @@ import static org.lwjgl.glfw.GLFW.glfwSwapBuffers;
 import static org.lwjgl.glfw.GLFW.glfwTerminate;
 import static org.lwjgl.glfw.GLFW.glfwWindowShouldClose;
 import static org.lwjgl.opengl.GL11.*;
-
-import java.util.ArrayList;
-import java.util.List;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
 
 import org.joml.Vector3f;
 import org.lwjgl.opengl.GL;
 
+import me.choco.learning.engine.asset.AssetLoader;
+import me.choco.learning.engine.asset.AssetRegistry;
+import me.choco.learning.engine.buffer.StreamingBuffer;
 import me.choco.learning.engine.camera.Camera;
 import me.choco.learning.engine.camera.CameraMouseInput;
 import me.choco.learning.engine.model.ObjectModel;
+import me.choco.learning.engine.rendering.GLStateCache;
+import me.choco.learning.engine.rendering.RenderQueue;
 import me.choco.learning.engine.rendering.Renderer;
 
 /**
@@ -25,12 +28,18 @@ import me.choco.learning.engine.rendering.Renderer;
  */
 public abstract class GameBase {
 	
+	private static final int ASSET_GRACE_CAPACITY = 32;
+	private static final int STREAMING_REGION_SIZE = 1 << 22, STREAMING_FRAMES = 3;
+	
 	protected int currentFPS, currentUPS;
 	private boolean running = true;
 	
 	protected Window window;
+	protected AssetLoader assetLoader;
+	protected AssetRegistry assetRegistry;
+	protected StreamingBuffer streamingBuffer;
 	private Renderer renderer;
-	private final List<ObjectModel> renderQueue = new ArrayList<>();
+	private final RenderQueue renderQueue = new RenderQueue();
 	
 	protected Camera camera = new Camera();
 	protected final Vector3f cameraDelta = new Vector3f();
@@ -53,8 +62,11 @@ public abstract class GameBase {
 		// Initialize OpenGL contexts
 		GL.createCapabilities();
 		glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
-		glEnable(GL_DEPTH_TEST);
+		GLStateCache.get().setDepthTest(true);
 		glPolygonMode(GL_FRONT_AND_BACK, GL_TRIANGLES);
+		this.assetLoader = new AssetLoader(window);
+		this.assetRegistry = new AssetRegistry(assetLoader, ASSET_GRACE_CAPACITY);
+		this.streamingBuffer = new StreamingBuffer(GL_ARRAY_BUFFER, STREAMING_REGION_SIZE, STREAMING_FRAMES);
 		
 		// Initialize game-specific features
 		this.mouseInput.init(window);
@@ -116,9 +128,12 @@ public abstract class GameBase {
 	 * Render the game to the screen. Called according to {@link #getMaxFPS()}
 	 */
 	public void render() {
+		this.assetLoader.processCompletedUploads();
 		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 		
+		this.streamingBuffer.beginFrame();
 		this.renderer.render(renderQueue);
+		this.streamingBuffer.endFrame();
 		
 		glfwSwapBuffers(window.getId());
 	}
@@ -128,25 +143,29 @@ public abstract class GameBase {
 	 * Called once at the end of the game loop
 	 */
 	public void cleanup() {
+		this.assetLoader.shutdown();
+		this.assetRegistry.clear();
 		this.renderer.cleanup();
+		this.streamingBuffer.delete();
 	}
 	
 	/**
 	 * Add the specified model to the render queue to be rendered
 	 * 
 	 * @param model the model to render
+	 * @return the handle through which the model may be removed
 	 */
-	public void addToRenderQueue(ObjectModel model) {
-		this.renderQueue.add(model);
+	public int addToRenderQueue(ObjectModel model) {
+		return renderQueue.add(model);
 	}
 	
 	/**
-	 * Remove the specified model from the render queue
+	 * Remove the model with the specified handle from the render queue
 	 * 
-	 * @param model the model to remove
+	 * @param handle the handle returned when the model was added
 	 */
-	public void removeFromRenderQueue(ObjectModel model) {
-		this.renderQueue.remove(model);
+	public void removeFromRenderQueue(int handle) {
+		this.renderQueue.remove(handle);
 	}
 	
 	/**
@@ -156,6 +175,15 @@ public abstract class GameBase {
 		this.renderQueue.clear();
 	}
 	
+	/**
+	 * Get the queue of models rendered each frame
+	 * 
+	 * @return the render queue
+	 */
+	public RenderQueue getRenderQueue() {
+		return renderQueue;
+	}
+	
 	/**
 	 * Get this game's configuration
 	 * 
@@ -196,6 +224,35 @@ public abstract class GameBase {
 		this.window.show();
 	}
 	
+	/**
+	 * Get the loader used to load assets in the background. Futures returned
+	 * by the loader are completed on the render thread
+	 * 
+	 * @return the asset loader
+	 */
+	public AssetLoader getAssetLoader() {
+		return assetLoader;
+	}
+	
+	/**
+	 * Get the registry through which shared assets should be acquired and released
+	 * 
+	 * @return the asset registry
+	 */
+	public AssetRegistry getAssetRegistry() {
+		return assetRegistry;
+	}
+	
+	/**
+	 * Get the ring buffer through which per-frame geometry is streamed. Each call
+	 * to {@link #render()} is one frame of the ring
+	 * 
+	 * @return the streaming buffer
+	 */
+	public StreamingBuffer getStreamingBuffer() {
+		return streamingBuffer;
+	}
+	
 	/**
 	 * Get the active window draw context
 	 * 
@@ -0,0 +1,392 @@
+package me.choco.learning.engine.asset;
+
+import static org.lwjgl.glfw.GLFW.GLFW_FALSE;
+import static org.lwjgl.glfw.GLFW.GLFW_VISIBLE;
+import static org.lwjgl.glfw.GLFW.glfwCreateWindow;
+import static org.lwjgl.glfw.GLFW.glfwDefaultWindowHints;
+import static org.lwjgl.glfw.GLFW.glfwDestroyWindow;
+import static org.lwjgl.glfw.GLFW.glfwMakeContextCurrent;
+import static org.lwjgl.glfw.GLFW.glfwWindowHint;
+import static org.lwjgl.opengl.GL11.glFlush;
+import static org.lwjgl.opengl.GL32.GL_ALREADY_SIGNALED;
+import static org.lwjgl.opengl.GL32.GL_CONDITION_SATISFIED;
+import static org.lwjgl.opengl.GL32.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32.GL_WAIT_FAILED;
+import static org.lwjgl.opengl.GL32.glClientWaitSync;
+import static org.lwjgl.opengl.GL32.glDeleteSync;
+import static org.lwjgl.opengl.GL32.glFenceSync;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.lwjgl.opengl.GL;
+
+import me.choco.learning.engine.Window;
+import me.choco.learning.engine.buffer.VBO;
+import me.choco.learning.engine.buffer.VertexLayout;
+import me.choco.learning.engine.model.ImportOptions;
+import me.choco.learning.engine.model.LODChain;
+import me.choco.learning.engine.model.ModelLoader;
+import me.choco.learning.engine.model.PackedMesh;
+import me.choco.learning.engine.model.VertexModel;
+import me.choco.learning.engine.model.VertexPacker;
+import me.choco.learning.engine.rendering.GLStateCache;
+import me.choco.learning.engine.texture.Material;
+import me.choco.learning.engine.texture.MaterialLibrary;
+import me.choco.learning.engine.texture.Texture;
+import me.choco.learning.engine.texture.TextureData;
+import me.choco.learning.engine.util.FloatList;
+
+/**
+ * Loads models and textures without blocking the render thread. Loading is
+ * split into three stages:
+ * <ol>
+ *   <li>files are parsed, processed and decoded on a pool of worker threads</li>
+ *   <li>the results are uploaded to the GPU on a dedicated thread which owns a
+ *   hidden context sharing objects with the main {@link Window}. A fence is
+ *   inserted after each upload</li>
+ *   <li>the render thread polls the fences once per frame in
+ *   {@link #processCompletedUploads()} without waiting. Once an upload's fence
+ *   has been signalled, any per-context objects (i.e. VAOs) are created and the
+ *   asset's future is completed</li>
+ * </ol>
+ * Futures are always completed on the render thread, so dependent actions which
+ * touch OpenGL state (i.e. {@link me.choco.learning.engine.model.ObjectModel#setVertexModel(VertexModel)}
+ * to replace a placeholder) may be attached directly to them
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class AssetLoader {
+	
+	private final long uploadContext;
+	private final Thread uploadThread;
+	private final BlockingQueue<Runnable> uploads = new LinkedBlockingQueue<>();
+	private final ExecutorService workers;
+	
+	private final Queue<PendingUpload<?>> signalQueue = new ConcurrentLinkedQueue<>();
+	private final List<PendingUpload<?>> pendingUploads = new ArrayList<>();
+	
+	private volatile boolean running = true;
+	
+	/**
+	 * Construct a new asset loader which uploads to a context shared with the
+	 * given window. This must be called from the main thread, as required by
+	 * GLFW for window creation
+	 * 
+	 * @param window the window whose context should receive the assets
+	 * @param workerThreads the amount of threads with which to parse and decode assets
+	 */
+	public AssetLoader(Window window, int workerThreads) {
+		glfwDefaultWindowHints();
+		glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+		this.uploadContext = glfwCreateWindow(1, 1, "Asset Upload Context", NULL, window.getId());
+		glfwDefaultWindowHints();
+		
+		if (uploadContext == NULL) {
+			throw new IllegalStateException("Could not create a shared context for asset uploads");
+		}
+		
+		this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+			Thread thread = new Thread(runnable, "Asset Worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		this.uploadThread = new Thread(this::runUploads, "Asset Upload");
+		this.uploadThread.setDaemon(true);
+		this.uploadThread.start();
+	}
+	
+	/**
+	 * Construct a new asset loader which uploads to a context shared with the
+	 * given window, and parses assets on all but one of the available processors
+	 * 
+	 * @param window the window whose context should receive the assets
+	 */
+	public AssetLoader(Window window) {
+		this(window, Math.max(Runtime.getRuntime().availableProcessors() - 1, 1));
+	}
+	
+	/**
+	 * Asynchronously load a model from an OBJ file with the given name. Materials
+	 * referenced by the file are loaded along with it
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @param material the material to set for the model, or null if none
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return a future completed on the render thread once the model is resident
+	 */
+	public CompletableFuture<VertexModel> loadOBJModel(String fileName, Material material, ImportOptions options) {
+		return this.loadModel(() -> VertexPacker.pack(ModelLoader.loadOBJMeshData(fileName, options), options.getVertexFormat()),
+				mesh -> ModelLoader.decodeMaterialLibraries(fileName, mesh.getMaterialLibraries()), material, options);
+	}
+	
+	/**
+	 * Asynchronously load a model from an OBJ file on the filesystem. Materials
+	 * referenced by the file are loaded along with it
+	 * 
+	 * @param path the path to the OBJ file
+	 * @param material the material to set for the model, or null if none
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return a future completed on the render thread once the model is resident
+	 */
+	public CompletableFuture<VertexModel> loadOBJModel(Path path, Material material, ImportOptions options) {
+		return this.loadModel(() -> VertexPacker.pack(ModelLoader.loadOBJMeshData(path, options), options.getVertexFormat()),
+				mesh -> ModelLoader.decodeMaterialLibraries(path, mesh.getMaterialLibraries()), material, options);
+	}
+	
+	/**
+	 * Asynchronously load a chain of levels of detail from an OBJ file with the
+	 * given name. Simplification runs on a worker thread
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @param material the material to set for each level, or null if none
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return a future completed on the render thread once every level is resident
+	 */
+	public CompletableFuture<LODChain> loadOBJLODChain(String fileName, Material material, ImportOptions options) {
+		CompletableFuture<LODChain> future = new CompletableFuture<>();
+		FloatList errors = new FloatList(options.getLODLevels());
+		
+		CompletableFuture<List<PackedMesh>> lodMeshes = CompletableFuture.supplyAsync(
+				() -> ModelLoader.generateLODMeshes(ModelLoader.loadOBJMeshData(fileName, options), options, errors), workers);
+		CompletableFuture<MaterialLibrary> materialLibrary = lodMeshes.thenApplyAsync(
+				meshes -> ModelLoader.decodeMaterialLibraries(fileName, meshes.get(0).getMaterialLibraries()), workers);
+		
+		lodMeshes.thenAcceptBothAsync(materialLibrary, (meshes, library) -> {
+			List<VertexLayout> layouts = new ArrayList<>(meshes.size());
+			List<VBO[]> buffers = new ArrayList<>(meshes.size());
+			for (PackedMesh mesh : meshes) {
+				VertexLayout layout = VertexLayout.of(mesh.getAttributes(), options.isInterleaved());
+				layouts.add(layout);
+				buffers.add(VertexModel.createBuffers(mesh, layout));
+				mesh.free();
+			}
+			
+			Map<String, Material> materials = library.upload();
+			this.signalWhenUploaded(future, () -> {
+				VertexModel[] levels = new VertexModel[meshes.size()];
+				for (int i = 0; i < levels.length; i++) {
+					levels[i] = new VertexModel(meshes.get(i), layouts.get(i), buffers.get(i));
+				}
+				
+				LODChain lodChain = new LODChain(levels, errors.toArray());
+				ModelLoader.applyMaterials(lodChain, materials, material);
+				return lodChain;
+			});
+		}, uploads::add).exceptionally(e -> this.fail(future, e));
+		
+		return future;
+	}
+	
+	/**
+	 * Asynchronously load a PNG texture with the given name
+	 * 
+	 * @param fileName the name of the texture file (including its path)
+	 * @return a future completed on the render thread once the texture is resident
+	 */
+	public CompletableFuture<Texture> loadTexture(String fileName) {
+		return this.loadTexture(() -> Texture.class.getResourceAsStream(fileName));
+	}
+	
+	/**
+	 * Asynchronously load a PNG texture from the filesystem
+	 * 
+	 * @param path the path to the texture file
+	 * @return a future completed on the render thread once the texture is resident
+	 */
+	public CompletableFuture<Texture> loadTexture(Path path) {
+		return this.loadTexture(() -> {
+			try {
+				return Files.newInputStream(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+	
+	/**
+	 * Poll the fences of all finished uploads without blocking, and complete the
+	 * futures of those the GPU has finished processing. This must be called once
+	 * per frame from the render thread
+	 */
+	public void processCompletedUploads() {
+		PendingUpload<?> upload;
+		while ((upload = signalQueue.poll()) != null) {
+			this.pendingUploads.add(upload);
+		}
+		
+		Iterator<PendingUpload<?>> iterator = pendingUploads.iterator();
+		while (iterator.hasNext()) {
+			PendingUpload<?> pending = iterator.next();
+			
+			int status = glClientWaitSync(pending.fence, 0, 0);
+			if (status != GL_ALREADY_SIGNALED && status != GL_CONDITION_SATISFIED && status != GL_WAIT_FAILED) continue;
+			
+			glDeleteSync(pending.fence);
+			iterator.remove();
+			pending.complete();
+		}
+	}
+	
+	/**
+	 * Get the amount of assets that have been uploaded but are not yet resident
+	 * 
+	 * @return the amount of pending uploads
+	 */
+	public int getPendingUploadCount() {
+		return pendingUploads.size() + signalQueue.size();
+	}
+	
+	/**
+	 * Stop all loading threads and destroy the upload context. Assets which have
+	 * not yet been handed to the render thread are discarded. This must be called
+	 * from the main thread
+	 */
+	public void shutdown() {
+		this.running = false;
+		this.workers.shutdownNow();
+		this.uploads.add(() -> {});
+		
+		try {
+			this.uploadThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		for (PendingUpload<?> pending : pendingUploads) {
+			glDeleteSync(pending.fence);
+		}
+		
+		this.pendingUploads.clear();
+		glfwDestroyWindow(uploadContext);
+	}
+	
+	private CompletableFuture<VertexModel> loadModel(Supplier<PackedMesh> loader, Function<PackedMesh, MaterialLibrary> materialLoader, Material material,
+			ImportOptions options) {
+		CompletableFuture<VertexModel> future = new CompletableFuture<>();
+		
+		// Material libraries are parsed and their textures decoded on a worker, leaving only the uploads to the upload thread
+		CompletableFuture<PackedMesh> mesh = CompletableFuture.supplyAsync(loader, workers);
+		CompletableFuture<MaterialLibrary> materialLibrary = mesh.thenApplyAsync(materialLoader, workers);
+		
+		mesh.thenAcceptBothAsync(materialLibrary, (packed, library) -> {
+			VertexLayout layout = VertexLayout.of(packed.getAttributes(), options.isInterleaved());
+			VBO[] buffers = VertexModel.createBuffers(packed, layout);
+			packed.free();
+			
+			Map<String, Material> materials = library.upload();
+			
+			this.signalWhenUploaded(future, () -> {
+				VertexModel model = new VertexModel(packed, layout, buffers);
+				ModelLoader.applyMaterials(model, materials, material);
+				return model;
+			});
+		}, uploads::add).exceptionally(e -> this.fail(future, e));
+		
+		return future;
+	}
+	
+	private CompletableFuture<Texture> loadTexture(Supplier<InputStream> source) {
+		CompletableFuture<Texture> future = new CompletableFuture<>();
+		
+		CompletableFuture.supplyAsync(() -> decodePNG(source), workers)
+			.thenAcceptAsync(image -> {
+				Texture texture = image.upload();
+				this.signalWhenUploaded(future, () -> texture);
+			}, uploads::add)
+			.exceptionally(e -> this.fail(future, e));
+		
+		return future;
+	}
+	
+	/**
+	 * Insert a fence after the commands issued so far on the upload context and
+	 * queue the future to be completed with the given result once it is signalled
+	 */
+	private <T> void signalWhenUploaded(CompletableFuture<T> future, Supplier<T> result) {
+		long fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		glFlush(); // Ensure the fence reaches the GPU so the render thread can observe it
+		this.signalQueue.add(new PendingUpload<>(fence, future, result));
+	}
+	
+	private <T> Void fail(CompletableFuture<T> future, Throwable cause) {
+		future.completeExceptionally(cause);
+		return null;
+	}
+	
+	private void runUploads() {
+		glfwMakeContextCurrent(uploadContext);
+		GL.createCapabilities();
+		
+		// Element buffers are bound to the current vertex array, so one must be bound when uploading
+		GLStateCache state = GLStateCache.get();
+		state.bindVertexArray(state.genVertexArray());
+		
+		while (running) {
+			try {
+				this.uploads.take().run();
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		
+		glfwMakeContextCurrent(NULL);
+		GL.setCapabilities(null);
+	}
+	
+	private static TextureData decodePNG(Supplier<InputStream> source) {
+		try (InputStream stream = source.get()) {
+			if (stream == null) {
+				throw new IOException("Could not find texture");
+			}
+			
+			return TextureData.decodePNG(stream);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	private static final class PendingUpload<T> {
+		
+		private final long fence;
+		private final CompletableFuture<T> future;
+		private final Supplier<T> result;
+		
+		private PendingUpload(long fence, CompletableFuture<T> future, Supplier<T> result) {
+			this.fence = fence;
+			this.future = future;
+			this.result = result;
+		}
+		
+		private void complete() {
+			try {
+				this.future.complete(result.get());
+			} catch (RuntimeException e) {
+				this.future.completeExceptionally(e);
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,289 @@
+package me.choco.learning.engine.asset;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import me.choco.learning.engine.model.ImportOptions;
+import me.choco.learning.engine.model.LODChain;
+import me.choco.learning.engine.model.VertexModel;
+import me.choco.learning.engine.texture.Texture;
+
+/**
+ * A reference counted cache of assets loaded through an {@link AssetLoader}.
+ * Assets are keyed by their resource path and the options they were imported
+ * with, so requesting the same asset several times shares a single set of GPU
+ * objects:
+ * <ul>
+ *   <li>requests for an asset which is still loading share the pending load</li>
+ *   <li>every successful acquisition must be paired with a call to
+ *   {@link #release(Object)}. GPU objects are only deleted once the last
+ *   reference has been released</li>
+ *   <li>unreferenced assets are kept in a grace list of limited capacity from
+ *   which they may be revived without reloading. The least recently released
+ *   asset is deleted when the list overflows</li>
+ * </ul>
+ * Models are shared between every holder, so changes to their materials are
+ * visible to all of them. The registry is not thread safe and must only be used
+ * from the render thread
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class AssetRegistry {
+	
+	private final AssetLoader loader;
+	private final int graceCapacity;
+	
+	private final Map<AssetKey, Entry<?>> entries = new HashMap<>();
+	private final Map<Object, Entry<?>> entriesByAsset = new IdentityHashMap<>();
+	private final LinkedHashMap<AssetKey, Entry<?>> unreferenced = new LinkedHashMap<>(16, 0.75f, true);
+	
+	private int loadCount, hitCount;
+	
+	/**
+	 * Construct a new registry loading assets with the given loader
+	 * 
+	 * @param loader the loader with which to load assets
+	 * @param graceCapacity the maximum amount of unreferenced assets kept resident.
+	 * 0 to delete assets as soon as they are released
+	 */
+	public AssetRegistry(AssetLoader loader, int graceCapacity) {
+		if (graceCapacity < 0) {
+			throw new IllegalArgumentException("Grace capacity must not be negative (given: " + graceCapacity + ")");
+		}
+		
+		this.loader = loader;
+		this.graceCapacity = graceCapacity;
+	}
+	
+	/**
+	 * Acquire a reference to the model in the OBJ file with the given name
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return a future completed on the render thread once the model is resident
+	 */
+	public CompletableFuture<VertexModel> acquireModel(String fileName, ImportOptions options) {
+		ImportOptions snapshot = options.copy();
+		return this.acquire(new AssetKey(VertexModel.class, fileName, snapshot),
+				() -> loader.loadOBJModel(fileName, null, snapshot), VertexModel::cleanup);
+	}
+	
+	/**
+	 * Acquire a reference to the chain of levels of detail generated from the OBJ
+	 * file with the given name
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return a future completed on the render thread once every level is resident
+	 */
+	public CompletableFuture<LODChain> acquireLODChain(String fileName, ImportOptions options) {
+		ImportOptions snapshot = options.copy();
+		return this.acquire(new AssetKey(LODChain.class, fileName, snapshot),
+				() -> loader.loadOBJLODChain(fileName, null, snapshot), LODChain::cleanup);
+	}
+	
+	/**
+	 * Acquire a reference to the PNG texture with the given name
+	 * 
+	 * @param fileName the name of the texture file (including its path)
+	 * @return a future completed on the render thread once the texture is resident
+	 */
+	public CompletableFuture<Texture> acquireTexture(String fileName) {
+		return this.acquire(new AssetKey(Texture.class, fileName, null),
+				() -> loader.loadTexture(fileName), Texture::delete);
+	}
+	
+	/**
+	 * Release a reference to an asset previously acquired from this registry
+	 * 
+	 * @param asset the asset to release
+	 */
+	public void release(Object asset) {
+		Entry<?> entry = entriesByAsset.get(asset);
+		if (entry == null) {
+			throw new IllegalArgumentException("Asset was not acquired from this registry");
+		}
+		
+		if (entry.references <= 0) {
+			throw new IllegalStateException("Asset has already been released by all holders");
+		}
+		
+		if (--entry.references > 0) return;
+		
+		if (graceCapacity == 0) {
+			this.dispose(entry);
+			return;
+		}
+		
+		this.unreferenced.put(entry.key, entry);
+		if (unreferenced.size() > graceCapacity) {
+			Iterator<Entry<?>> eldest = unreferenced.values().iterator();
+			Entry<?> evicted = eldest.next();
+			eldest.remove();
+			this.dispose(evicted);
+		}
+	}
+	
+	/**
+	 * Get the amount of references held to the given asset
+	 * 
+	 * @param asset the asset
+	 * @return the amount of references, or 0 if the asset is not resident
+	 */
+	public int getReferenceCount(Object asset) {
+		Entry<?> entry = entriesByAsset.get(asset);
+		return (entry != null) ? entry.references : 0;
+	}
+	
+	/**
+	 * Get the amount of assets which are loading or resident, including those
+	 * in the grace list
+	 * 
+	 * @return the amount of assets
+	 */
+	public int getAssetCount() {
+		return entries.size();
+	}
+	
+	/**
+	 * Get the amount of acquisitions which started a new load
+	 * 
+	 * @return the amount of loads
+	 */
+	public int getLoadCount() {
+		return loadCount;
+	}
+	
+	/**
+	 * Get the amount of acquisitions which were served by an asset that was
+	 * already loading or resident
+	 * 
+	 * @return the amount of cache hits
+	 */
+	public int getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Delete every resident asset regardless of its references. Assets which are
+	 * still loading are discarded once they complete
+	 */
+	public void clear() {
+		for (Entry<?> entry : entries.values()) {
+			entry.discarded = true;
+			if (entry.asset != null) {
+				entry.dispose();
+			}
+		}
+		
+		this.entries.clear();
+		this.entriesByAsset.clear();
+		this.unreferenced.clear();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> acquire(AssetKey key, Supplier<CompletableFuture<T>> loader, Consumer<T> disposer) {
+		Entry<T> entry = (Entry<T>) entries.get(key);
+		if (entry != null) {
+			this.hitCount++;
+			if (entry.references++ == 0) {
+				this.unreferenced.remove(key);
+			}
+			
+			return entry.future;
+		}
+		
+		this.loadCount++;
+		Entry<T> newEntry = new Entry<>(key, disposer);
+		this.entries.put(key, newEntry);
+		
+		newEntry.future = loader.get().whenComplete((asset, e) -> {
+			if (newEntry.discarded) {
+				if (asset != null) disposer.accept(asset);
+				return;
+			}
+			
+			if (e != null) {
+				// Failed loads are forgotten so that they may be retried
+				this.entries.remove(key, newEntry);
+				return;
+			}
+			
+			newEntry.asset = asset;
+			this.entriesByAsset.put(asset, newEntry);
+		});
+		
+		return newEntry.future;
+	}
+	
+	private void dispose(Entry<?> entry) {
+		this.entries.remove(entry.key);
+		this.entriesByAsset.remove(entry.asset);
+		entry.dispose();
+	}
+	
+	private static final class Entry<T> {
+		
+		private final AssetKey key;
+		private final Consumer<T> disposer;
+		
+		private CompletableFuture<T> future;
+		private T asset;
+		private int references = 1;
+		private boolean discarded;
+		
+		private Entry(AssetKey key, Consumer<T> disposer) {
+			this.key = key;
+			this.disposer = disposer;
+		}
+		
+		private void dispose() {
+			this.disposer.accept(asset);
+			this.asset = null;
+		}
+		
+	}
+	
+	/**
+	 * Options are copied before a key is constructed so that the key's hash may
+	 * not change while it is held in a map
+	 */
+	private static final class AssetKey {
+		
+		private final Class<?> type;
+		private final String path;
+		private final ImportOptions options;
+		
+		private AssetKey(Class<?> type, String path, ImportOptions options) {
+			this.type = type;
+			this.path = path;
+			this.options = options;
+		}
+		
+		@Override
+		public int hashCode() {
+			int hash = 31 * type.hashCode() + path.hashCode();
+			return 31 * hash + Objects.hashCode(options);
+		}
+		
+		@Override
+		public boolean equals(Object object) {
+			if (object == this) return true;
+			if (!(object instanceof AssetKey)) return false;
+			
+			AssetKey other = (AssetKey) object;
+			return type == other.type && path.equals(other.path) && Objects.equals(options, other.options);
+		}
+		
+	}
+	
+}
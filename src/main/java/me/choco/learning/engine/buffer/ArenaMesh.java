@@ -0,0 +1,91 @@
+package me.choco.learning.engine.buffer;
+
+/**
+ * Represents the vertices and indices of a single mesh sub-allocated from a
+ * {@link MeshArena}. Indices are relative to the mesh's first vertex and must
+ * be drawn with {@link #getBaseVertex()} (i.e. glDrawElementsBaseVertex). The
+ * base vertex and first index change when the arena is defragmented or grown,
+ * so they should be queried at draw time
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class ArenaMesh {
+	
+	private final MeshArena arena;
+	private final int vertexCount, indexCount;
+	
+	private int baseVertex, firstIndex;
+	private boolean freed = false;
+	
+	ArenaMesh(MeshArena arena, int baseVertex, int vertexCount, int firstIndex, int indexCount) {
+		this.arena = arena;
+		this.baseVertex = baseVertex;
+		this.vertexCount = vertexCount;
+		this.firstIndex = firstIndex;
+		this.indexCount = indexCount;
+	}
+	
+	/**
+	 * Get the arena from which this mesh is allocated
+	 * 
+	 * @return the arena
+	 */
+	public MeshArena getArena() {
+		return arena;
+	}
+	
+	/**
+	 * Get the index of this mesh's first vertex in the arena's vertex buffers
+	 * 
+	 * @return the base vertex
+	 */
+	public int getBaseVertex() {
+		return baseVertex;
+	}
+	
+	/**
+	 * Get the amount of vertices in this mesh
+	 * 
+	 * @return the vertex count
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	/**
+	 * Get the position of this mesh's first index in the arena's index buffer
+	 * 
+	 * @return the first index
+	 */
+	public int getFirstIndex() {
+		return firstIndex;
+	}
+	
+	/**
+	 * Get the amount of indices in this mesh
+	 * 
+	 * @return the index count
+	 */
+	public int getIndexCount() {
+		return indexCount;
+	}
+	
+	/**
+	 * Check whether this mesh has been freed from its arena
+	 * 
+	 * @return true if freed, false otherwise
+	 */
+	public boolean isFreed() {
+		return freed;
+	}
+	
+	void relocate(int baseVertex, int firstIndex) {
+		this.baseVertex = baseVertex;
+		this.firstIndex = firstIndex;
+	}
+	
+	void markFreed() {
+		this.freed = true;
+	}
+	
+}
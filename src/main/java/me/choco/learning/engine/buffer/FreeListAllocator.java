@@ -0,0 +1,154 @@
+package me.choco.learning.engine.buffer;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sub-allocates ranges of a fixed capacity. Free ranges are kept sorted by
+ * offset so that freed ranges are coalesced with their neighbours, and
+ * allocations are placed in the smallest free range that fits (best fit).
+ * Offsets and sizes are in arbitrary units, such as vertices or indices
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+final class FreeListAllocator {
+	
+	private final TreeMap<Integer, Integer> freeRanges = new TreeMap<>(); // Offset -> size
+	private int capacity, freeSize;
+	
+	/**
+	 * Construct a new allocator with the given capacity, all of which is free
+	 * 
+	 * @param capacity the capacity
+	 */
+	FreeListAllocator(int capacity) {
+		this.reset(capacity, 0);
+	}
+	
+	/**
+	 * Allocate a range of the given size
+	 * 
+	 * @param size the size of the range
+	 * @return the offset of the range, or -1 if no free range is large enough
+	 */
+	int allocate(int size) {
+		if (size == 0) return 0;
+		
+		Map.Entry<Integer, Integer> best = null;
+		for (Map.Entry<Integer, Integer> range : freeRanges.entrySet()) {
+			int rangeSize = range.getValue();
+			if (rangeSize < size || (best != null && rangeSize >= best.getValue())) continue;
+			
+			best = range;
+			if (rangeSize == size) break;
+		}
+		
+		if (best == null) return -1;
+		
+		int offset = best.getKey(), remaining = best.getValue() - size;
+		this.freeRanges.remove(offset);
+		if (remaining > 0) {
+			this.freeRanges.put(offset + size, remaining);
+		}
+		
+		this.freeSize -= size;
+		return offset;
+	}
+	
+	/**
+	 * Free a range previously returned by {@link #allocate(int)}
+	 * 
+	 * @param offset the offset of the range
+	 * @param size the size of the range
+	 */
+	void free(int offset, int size) {
+		if (size == 0) return;
+		
+		this.freeSize += size;
+		
+		// Merge with the free range directly after
+		Integer nextSize = freeRanges.remove(offset + size);
+		if (nextSize != null) {
+			size += nextSize;
+		}
+		
+		// Merge with the free range directly before
+		Map.Entry<Integer, Integer> previous = freeRanges.lowerEntry(offset);
+		if (previous != null && previous.getKey() + previous.getValue() == offset) {
+			offset = previous.getKey();
+			size += previous.getValue();
+		}
+		
+		this.freeRanges.put(offset, size);
+	}
+	
+	/**
+	 * Discard all ranges and mark everything after the given used size as free.
+	 * Used once all allocations have been compacted to the start
+	 * 
+	 * @param capacity the new capacity
+	 * @param usedSize the size of the compacted allocations
+	 */
+	void reset(int capacity, int usedSize) {
+		this.capacity = capacity;
+		this.freeSize = capacity - usedSize;
+		this.freeRanges.clear();
+		
+		if (freeSize > 0) {
+			this.freeRanges.put(usedSize, freeSize);
+		}
+	}
+	
+	/**
+	 * Get the total capacity
+	 * 
+	 * @return the capacity
+	 */
+	int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Get the total size of all free ranges
+	 * 
+	 * @return the free size
+	 */
+	int getFreeSize() {
+		return freeSize;
+	}
+	
+	/**
+	 * Get the size of the largest free range, the largest allocation which may
+	 * currently succeed
+	 * 
+	 * @return the largest free range size
+	 */
+	int getLargestFreeRange() {
+		int largest = 0;
+		for (int size : freeRanges.values()) {
+			largest = Math.max(largest, size);
+		}
+		
+		return largest;
+	}
+	
+	/**
+	 * Get the amount of disjoint free ranges
+	 * 
+	 * @return the free range count
+	 */
+	int getFreeRangeCount() {
+		return freeRanges.size();
+	}
+	
+	/**
+	 * Get the fraction of free space which is not part of the largest free range.
+	 * 0 if all free space is contiguous, approaching 1 as it is scattered
+	 * 
+	 * @return the fragmentation
+	 */
+	float getFragmentation() {
+		return (freeSize == 0) ? 0 : 1.0f - getLargestFreeRange() / (float) freeSize;
+	}
+	
+}
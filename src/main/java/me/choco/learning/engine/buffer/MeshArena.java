@@ -0,0 +1,402 @@
+package me.choco.learning.engine.buffer;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL31.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31.glCopyBufferSubData;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.lwjgl.system.MemoryUtil;
+
+import me.choco.learning.engine.rendering.GLStateCache;
+
+/**
+ * Represents a few large vertex and index buffers shared by many meshes of the
+ * same {@link VertexLayout}. Each mesh is sub-allocated from the buffers by a
+ * free-list allocator and drawn with its base vertex, so every mesh in the arena
+ * is drawn from a single VAO without rebinding or re-enabling attributes.
+ * <p>
+ * When an allocation does not fit in any free range, the arena is compacted
+ * (see {@link #defragment()}) and, if the free space still does not suffice,
+ * its buffers are grown to twice their size. Both copy the live meshes on the
+ * GPU with glCopyBufferSubData and replace the arena's VAO
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class MeshArena {
+	
+	private final VertexLayout layout;
+	private final int indexType, indexSize;
+	
+	private final FreeListAllocator vertexAllocator, indexAllocator;
+	private final Set<ArenaMesh> meshes = new LinkedHashSet<>();
+	
+	private VAO vao;
+	private VBO[] vertexBuffers;
+	private VBO indexBuffer;
+	private int relocationCount;
+	
+	/**
+	 * Construct a new mesh arena and allocate its buffers
+	 * 
+	 * @param layout the layout of every mesh's vertices
+	 * @param indexType the OpenGL type of the indices (GL_UNSIGNED_SHORT or GL_UNSIGNED_INT).
+	 * Indices of other types are converted when allocating
+	 * @param vertexCapacity the initial amount of vertices the arena can hold
+	 * @param indexCapacity the initial amount of indices the arena can hold
+	 */
+	public MeshArena(VertexLayout layout, int indexType, int vertexCapacity, int indexCapacity) {
+		if (indexType != GL_UNSIGNED_SHORT && indexType != GL_UNSIGNED_INT) {
+			throw new IllegalArgumentException("Index type must be GL_UNSIGNED_SHORT or GL_UNSIGNED_INT (given: " + indexType + ")");
+		}
+		if (vertexCapacity <= 0 || indexCapacity <= 0) {
+			throw new IllegalArgumentException("Capacities must be positive (vertices: " + vertexCapacity + ", indices: " + indexCapacity + ")");
+		}
+		
+		this.layout = layout;
+		this.indexType = indexType;
+		this.indexSize = (indexType == GL_UNSIGNED_SHORT) ? Short.BYTES : Integer.BYTES;
+		this.vertexAllocator = new FreeListAllocator(vertexCapacity);
+		this.indexAllocator = new FreeListAllocator(indexCapacity);
+		this.createStorage(vertexCapacity, indexCapacity);
+	}
+	
+	/**
+	 * Allocate and upload a mesh to this arena. Indices are relative to the mesh's
+	 * own vertices
+	 * 
+	 * @param streams the attribute streams of the mesh, one per layout attribute
+	 * @param vertexCount the amount of vertices in the mesh
+	 * @param indices the indices of the mesh
+	 * @param indexType the OpenGL type of the given indices
+	 * @param indexCount the amount of indices in the mesh
+	 * 
+	 * @return the allocated mesh
+	 */
+	public ArenaMesh allocate(ByteBuffer[] streams, int vertexCount, ByteBuffer indices, int indexType, int indexCount) {
+		if (this.indexType == GL_UNSIGNED_SHORT && vertexCount > (1 << 16)) {
+			throw new IllegalArgumentException("Mesh of " + vertexCount + " vertices cannot be addressed with GL_UNSIGNED_SHORT indices");
+		}
+		
+		int baseVertex = vertexAllocator.allocate(vertexCount), firstIndex = indexAllocator.allocate(indexCount);
+		if (baseVertex < 0 || firstIndex < 0) {
+			if (baseVertex >= 0) this.vertexAllocator.free(baseVertex, vertexCount);
+			if (firstIndex >= 0) this.indexAllocator.free(firstIndex, indexCount);
+			
+			// Compact the arena, growing it only if the free space would still not suffice
+			this.relocate(requiredCapacity(vertexAllocator, vertexCount), requiredCapacity(indexAllocator, indexCount));
+			baseVertex = vertexAllocator.allocate(vertexCount);
+			firstIndex = indexAllocator.allocate(indexCount);
+		}
+		
+		ByteBuffer[] contents = layout.pack(streams, vertexCount);
+		for (int i = 0; i < contents.length; i++) {
+			upload(vertexBuffers[i], (long) baseVertex * layout.getStride(i), contents[i]);
+		}
+		
+		if (indexType == this.indexType) {
+			upload(indexBuffer, (long) firstIndex * indexSize, indices);
+		}
+		else {
+			ByteBuffer converted = MemoryUtil.memAlloc(indexCount * indexSize).order(ByteOrder.nativeOrder());
+			for (int i = 0; i < indexCount; i++) {
+				int index = (indexType == GL_UNSIGNED_SHORT) ? indices.getShort(i * Short.BYTES) & 0xFFFF : indices.getInt(i * Integer.BYTES);
+				if (this.indexType == GL_UNSIGNED_SHORT) {
+					converted.putShort((short) index);
+				}
+				else {
+					converted.putInt(index);
+				}
+			}
+			
+			converted.flip();
+			upload(indexBuffer, (long) firstIndex * indexSize, converted);
+			MemoryUtil.memFree(converted);
+		}
+		
+		ArenaMesh mesh = new ArenaMesh(this, baseVertex, vertexCount, firstIndex, indexCount);
+		this.meshes.add(mesh);
+		return mesh;
+	}
+	
+	/**
+	 * Free a mesh from this arena. Its space may be reused by later allocations
+	 * 
+	 * @param mesh the mesh to free
+	 */
+	public void free(ArenaMesh mesh) {
+		if (mesh.getArena() != this) {
+			throw new IllegalArgumentException("Mesh was not allocated from this arena");
+		}
+		if (mesh.isFreed()) {
+			throw new IllegalStateException("Mesh has already been freed");
+		}
+		
+		this.vertexAllocator.free(mesh.getBaseVertex(), mesh.getVertexCount());
+		this.indexAllocator.free(mesh.getFirstIndex(), mesh.getIndexCount());
+		this.meshes.remove(mesh);
+		mesh.markFreed();
+	}
+	
+	/**
+	 * Compact all meshes to the start of the arena's buffers so that all free
+	 * space is contiguous. The base vertex and first index of every mesh are
+	 * updated, and the arena's VAO is replaced
+	 */
+	public void defragment() {
+		this.relocate(vertexAllocator.getCapacity(), indexAllocator.getCapacity());
+	}
+	
+	/**
+	 * Bind this arena's VAO in preparation for drawing any of its meshes
+	 */
+	public void bind() {
+		this.vao.bind();
+		this.vao.enableAllAttribArrays();
+	}
+	
+	/**
+	 * Unbind this arena's VAO
+	 */
+	public void unbind() {
+		this.vao.unbind();
+	}
+	
+	/**
+	 * Get the VAO from which every mesh in this arena is drawn. The VAO is
+	 * replaced whenever the arena is defragmented or grown
+	 * 
+	 * @return the arena's VAO
+	 */
+	public VAO getVAO() {
+		return vao;
+	}
+	
+	/**
+	 * Get the layout of every mesh's vertices
+	 * 
+	 * @return the vertex layout
+	 */
+	public VertexLayout getLayout() {
+		return layout;
+	}
+	
+	/**
+	 * Get the OpenGL type of the indices in this arena
+	 * 
+	 * @return the index type
+	 */
+	public int getIndexType() {
+		return indexType;
+	}
+	
+	/**
+	 * Get the amount of meshes allocated from this arena
+	 * 
+	 * @return the mesh count
+	 */
+	public int getMeshCount() {
+		return meshes.size();
+	}
+	
+	/**
+	 * Get the amount of vertices this arena can hold without growing
+	 * 
+	 * @return the vertex capacity
+	 */
+	public int getVertexCapacity() {
+		return vertexAllocator.getCapacity();
+	}
+	
+	/**
+	 * Get the amount of indices this arena can hold without growing
+	 * 
+	 * @return the index capacity
+	 */
+	public int getIndexCapacity() {
+		return indexAllocator.getCapacity();
+	}
+	
+	/**
+	 * Get the fraction of the vertex capacity in use
+	 * 
+	 * @return the vertex occupancy between 0 and 1
+	 */
+	public float getVertexOccupancy() {
+		return 1.0f - vertexAllocator.getFreeSize() / (float) vertexAllocator.getCapacity();
+	}
+	
+	/**
+	 * Get the fraction of the index capacity in use
+	 * 
+	 * @return the index occupancy between 0 and 1
+	 */
+	public float getIndexOccupancy() {
+		return 1.0f - indexAllocator.getFreeSize() / (float) indexAllocator.getCapacity();
+	}
+	
+	/**
+	 * Get the fraction of free vertex space outside of the largest free range. 0
+	 * if all free space is contiguous, approaching 1 as it is scattered
+	 * 
+	 * @return the vertex fragmentation between 0 and 1
+	 */
+	public float getVertexFragmentation() {
+		return vertexAllocator.getFragmentation();
+	}
+	
+	/**
+	 * Get the fraction of free index space outside of the largest free range. 0
+	 * if all free space is contiguous, approaching 1 as it is scattered
+	 * 
+	 * @return the index fragmentation between 0 and 1
+	 */
+	public float getIndexFragmentation() {
+		return indexAllocator.getFragmentation();
+	}
+	
+	/**
+	 * Get the amount of disjoint free ranges in the vertex and index buffers
+	 * 
+	 * @return the free range count
+	 */
+	public int getFreeRangeCount() {
+		return vertexAllocator.getFreeRangeCount() + indexAllocator.getFreeRangeCount();
+	}
+	
+	/**
+	 * Get the amount of times this arena has been defragmented or grown
+	 * 
+	 * @return the relocation count
+	 */
+	public int getRelocationCount() {
+		return relocationCount;
+	}
+	
+	/**
+	 * Get the total size in bytes of this arena's buffers
+	 * 
+	 * @return the size in bytes
+	 */
+	public long getSizeInBytes() {
+		long size = (long) indexAllocator.getCapacity() * indexSize;
+		for (int i = 0; i < layout.getBufferCount(); i++) {
+			size += (long) vertexAllocator.getCapacity() * layout.getStride(i);
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Delete this arena's buffers and VAO. All meshes allocated from the arena
+	 * are freed. Upon calling this method, this object is no longer usable
+	 */
+	public void delete() {
+		this.meshes.forEach(ArenaMesh::markFreed);
+		this.meshes.clear();
+		this.deleteStorage();
+	}
+	
+	private void relocate(int vertexCapacity, int indexCapacity) {
+		VBO[] oldVertexBuffers = vertexBuffers;
+		VBO oldIndexBuffer = indexBuffer;
+		VAO oldVAO = vao;
+		this.createStorage(vertexCapacity, indexCapacity);
+		
+		int vertexHead = 0, indexHead = 0;
+		for (ArenaMesh mesh : meshes) {
+			for (int i = 0; i < vertexBuffers.length; i++) {
+				int stride = layout.getStride(i);
+				copy(oldVertexBuffers[i], vertexBuffers[i], (long) mesh.getBaseVertex() * stride, (long) vertexHead * stride, (long) mesh.getVertexCount() * stride);
+			}
+			
+			copy(oldIndexBuffer, indexBuffer, (long) mesh.getFirstIndex() * indexSize, (long) indexHead * indexSize, (long) mesh.getIndexCount() * indexSize);
+			mesh.relocate(vertexHead, indexHead);
+			
+			vertexHead += mesh.getVertexCount();
+			indexHead += mesh.getIndexCount();
+		}
+		
+		GLStateCache.get().bindBuffer(GL_COPY_READ_BUFFER, 0);
+		GLStateCache.get().bindBuffer(GL_COPY_WRITE_BUFFER, 0);
+		
+		for (VBO buffer : oldVertexBuffers) {
+			buffer.delete();
+		}
+		
+		oldIndexBuffer.delete();
+		oldVAO.delete();
+		
+		this.vertexAllocator.reset(vertexCapacity, vertexHead);
+		this.indexAllocator.reset(indexCapacity, indexHead);
+		this.relocationCount++;
+	}
+	
+	private void createStorage(int vertexCapacity, int indexCapacity) {
+		// The index buffer is bound while the VAO is bound so that the VAO records it
+		this.vao = new VAO();
+		this.vao.bind();
+		
+		this.vertexBuffers = new VBO[layout.getBufferCount()];
+		for (int i = 0; i < vertexBuffers.length; i++) {
+			this.vertexBuffers[i] = new VBO(GL_ARRAY_BUFFER, (long) vertexCapacity * layout.getStride(i));
+		}
+		
+		this.indexBuffer = new VBO(GL_ELEMENT_ARRAY_BUFFER, (long) indexCapacity * indexSize);
+		this.vao.createAttribPointers(layout, vertexBuffers);
+		this.vao.unbind();
+	}
+	
+	private void deleteStorage() {
+		for (VBO buffer : vertexBuffers) {
+			buffer.delete();
+		}
+		
+		this.indexBuffer.delete();
+		this.vao.delete();
+	}
+	
+	private static int requiredCapacity(FreeListAllocator allocator, int size) {
+		int capacity = allocator.getCapacity(), required = capacity - allocator.getFreeSize() + size;
+		while (capacity < required) {
+			capacity = Math.multiplyExact(capacity, 2);
+		}
+		
+		return capacity;
+	}
+	
+	private static void copy(VBO source, VBO destination, long sourceOffset, long destinationOffset, long size) {
+		if (size == 0) return;
+		
+		GLStateCache state = GLStateCache.get();
+		state.bindBuffer(GL_COPY_READ_BUFFER, source.getId());
+		state.bindBuffer(GL_COPY_WRITE_BUFFER, destination.getId());
+		glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, sourceOffset, destinationOffset, size);
+	}
+	
+	private static void upload(VBO buffer, long offset, ByteBuffer data) {
+		if (!data.hasRemaining()) return;
+		
+		// Uploaded through the copy target so that no VAO's element buffer binding is changed
+		GLStateCache.get().bindBuffer(GL_COPY_WRITE_BUFFER, buffer.getId());
+		if (data.isDirect()) {
+			glBufferSubData(GL_COPY_WRITE_BUFFER, offset, data);
+		}
+		else {
+			ByteBuffer copy = MemoryUtil.memAlloc(data.remaining());
+			copy.put(data.duplicate()).flip();
+			glBufferSubData(GL_COPY_WRITE_BUFFER, offset, copy);
+			MemoryUtil.memFree(copy);
+		}
+		GLStateCache.get().bindBuffer(GL_COPY_WRITE_BUFFER, 0);
+	}
+	
+}
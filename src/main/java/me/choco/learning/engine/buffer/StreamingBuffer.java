@@ -0,0 +1,306 @@
+package me.choco.learning.engine.buffer;
+
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL15.nglBufferSubData;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.GL_SYNC_FLUSH_COMMANDS_BIT;
+import static org.lwjgl.opengl.GL32.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32.GL_TIMEOUT_EXPIRED;
+import static org.lwjgl.opengl.GL32.glClientWaitSync;
+import static org.lwjgl.opengl.GL32.glDeleteSync;
+import static org.lwjgl.opengl.GL32.glFenceSync;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44.glBufferStorage;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import me.choco.learning.engine.rendering.GLStateCache;
+
+/**
+ * Represents a buffer for geometry which changes every frame, such as text, HUD
+ * quads or debug lines. The buffer is allocated once and split into a ring of
+ * regions, one per frame in flight. Each frame bump-allocates from its own
+ * region, and a fence is placed once the frame is submitted so that a region is
+ * never written while the GPU may still be reading it.
+ * <p>
+ * When buffer storage is available (OpenGL 4.4 or ARB_buffer_storage) the
+ * buffer is persistently mapped and written to directly. Otherwise writes go to
+ * a native staging copy which is uploaded with glBufferSubData on
+ * {@link #flush()}. Neither path reallocates the buffer
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class StreamingBuffer {
+	
+	private static final long WAIT_TIMEOUT = 1_000_000; // 1ms
+	
+	private final int id, target;
+	private final int regionSize, regionCount;
+	private final boolean persistent;
+	
+	private final ByteBuffer data;
+	private final long dataAddress;
+	private final long[] fences;
+	
+	private int region, head, flushed;
+	private boolean inFrame = false;
+	private long stallCount;
+	
+	/**
+	 * Construct a new streaming buffer and allocate its storage
+	 * 
+	 * @param target the buffer type to create (i.e. GL_ARRAY_BUFFER)
+	 * @param regionSize the amount of bytes which may be allocated per frame
+	 * @param regionCount the amount of frames which may be in flight. Must be at least 2
+	 */
+	public StreamingBuffer(int target, int regionSize, int regionCount) {
+		if (regionSize <= 0) {
+			throw new IllegalArgumentException("Region size must be positive (given: " + regionSize + ")");
+		}
+		if (regionCount < 2) {
+			throw new IllegalArgumentException("At least two regions are required (given: " + regionCount + ")");
+		}
+		
+		this.id = GLStateCache.get().genBuffer();
+		this.target = target;
+		this.regionSize = regionSize;
+		this.regionCount = regionCount;
+		this.fences = new long[regionCount];
+		
+		GLCapabilities capabilities = GL.getCapabilities();
+		this.persistent = capabilities.OpenGL44 || capabilities.GL_ARB_buffer_storage;
+		
+		int size = Math.multiplyExact(regionSize, regionCount);
+		this.bind();
+		if (persistent) {
+			int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+			glBufferStorage(target, size, flags);
+			this.data = glMapBufferRange(target, 0, size, flags).order(ByteOrder.nativeOrder());
+		}
+		else {
+			glBufferData(target, size, GL_STREAM_DRAW);
+			this.data = MemoryUtil.memAlloc(size).order(ByteOrder.nativeOrder());
+		}
+		this.unbind();
+		
+		this.dataAddress = MemoryUtil.memAddress(data);
+	}
+	
+	/**
+	 * Begin a new frame in the next region of the ring. If the GPU is still
+	 * reading the region from the last time it was used, this blocks until it
+	 * is done. See {@link #getStallCount()}
+	 */
+	public void beginFrame() {
+		if (inFrame) {
+			throw new IllegalStateException("endFrame() must be called before beginning a new frame");
+		}
+		
+		long fence = fences[region];
+		if (fence != NULL) {
+			if (glClientWaitSync(fence, 0, 0) == GL_TIMEOUT_EXPIRED) {
+				this.stallCount++;
+				while (glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_TIMEOUT) == GL_TIMEOUT_EXPIRED);
+			}
+			
+			glDeleteSync(fence);
+			this.fences[region] = NULL;
+		}
+		
+		this.head = region * regionSize;
+		this.flushed = head;
+		this.inFrame = true;
+	}
+	
+	/**
+	 * Allocate space in the current frame's region. The data buffer, as returned
+	 * by {@link #getData()}, is positioned at the allocation and limited to its
+	 * size so that it may be written to with relative puts
+	 * 
+	 * @param size the amount of bytes to allocate
+	 * @param alignment the alignment of the allocation in bytes. When drawing
+	 * vertices from the allocation, this should be the vertex size so that the
+	 * offset is a whole amount of vertices
+	 * 
+	 * @return the byte offset of the allocation in the buffer
+	 */
+	public int allocate(int size, int alignment) {
+		if (!inFrame) {
+			throw new IllegalStateException("beginFrame() must be called before allocating");
+		}
+		if (size < 0 || alignment <= 0) {
+			throw new IllegalArgumentException("Invalid allocation (size: " + size + ", alignment: " + alignment + ")");
+		}
+		
+		int offset = ((head + alignment - 1) / alignment) * alignment;
+		if ((long) offset + size > (long) (region + 1) * regionSize) {
+			throw new IllegalStateException("Streaming buffer region of " + regionSize + " bytes exhausted (requested: " + size + " bytes)");
+		}
+		
+		this.head = offset + size;
+		this.data.limit(head).position(offset);
+		return offset;
+	}
+	
+	/**
+	 * Get the amount of bytes which may still be allocated in the current frame's
+	 * region with the given alignment
+	 * 
+	 * @param alignment the alignment of the allocation in bytes
+	 * 
+	 * @return the remaining bytes
+	 */
+	public int getRemainingSize(int alignment) {
+		if (!inFrame) {
+			throw new IllegalStateException("beginFrame() must be called before allocating");
+		}
+		if (alignment <= 0) {
+			throw new IllegalArgumentException("Alignment must be positive (given: " + alignment + ")");
+		}
+		
+		int offset = ((head + alignment - 1) / alignment) * alignment;
+		return Math.max((region + 1) * regionSize - offset, 0);
+	}
+	
+	/**
+	 * Make all data allocated so far visible to the GPU. This must be called
+	 * before drawing from an allocation. Persistently mapped buffers are
+	 * coherent and need no flush
+	 */
+	public void flush() {
+		if (persistent || head == flushed) return;
+		
+		this.bind();
+		nglBufferSubData(target, flushed, head - flushed, dataAddress + flushed);
+		this.unbind();
+		this.flushed = head;
+	}
+	
+	/**
+	 * End the current frame. All allocated data is flushed and a fence is placed
+	 * after the frame's commands so that the region may safely be reused once
+	 * the ring wraps around
+	 */
+	public void endFrame() {
+		if (!inFrame) {
+			throw new IllegalStateException("beginFrame() must be called before ending a frame");
+		}
+		
+		this.flush();
+		this.fences[region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		this.region = (region + 1) % regionCount;
+		this.inFrame = false;
+		this.data.clear();
+	}
+	
+	/**
+	 * Get the buffer into which allocations are written. Its position and limit
+	 * are set by {@link #allocate(int, int)}
+	 * 
+	 * @return the data buffer
+	 */
+	public ByteBuffer getData() {
+		return data;
+	}
+	
+	/**
+	 * Get this buffer's unique id
+	 * 
+	 * @return the buffer id
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Get the amount of bytes which may be allocated per frame
+	 * 
+	 * @return the region size
+	 */
+	public int getRegionSize() {
+		return regionSize;
+	}
+	
+	/**
+	 * Get the amount of frames which may be in flight
+	 * 
+	 * @return the region count
+	 */
+	public int getRegionCount() {
+		return regionCount;
+	}
+	
+	/**
+	 * Get the amount of bytes allocated in the current frame
+	 * 
+	 * @return the allocated bytes
+	 */
+	public int getAllocatedSize() {
+		return inFrame ? head - region * regionSize : 0;
+	}
+	
+	/**
+	 * Check whether this buffer is persistently mapped
+	 * 
+	 * @return true if persistently mapped, false if uploaded from a staging copy
+	 */
+	public boolean isPersistent() {
+		return persistent;
+	}
+	
+	/**
+	 * Get the amount of times {@link #beginFrame()} had to wait for the GPU. A
+	 * growing count means more regions are required
+	 * 
+	 * @return the stall count
+	 */
+	public long getStallCount() {
+		return stallCount;
+	}
+	
+	/**
+	 * Bind this buffer as the active buffer
+	 */
+	public void bind() {
+		GLStateCache.get().bindBuffer(target, id);
+	}
+	
+	/**
+	 * Unbind this buffer
+	 */
+	public void unbind() {
+		GLStateCache.get().bindBuffer(target, 0);
+	}
+	
+	/**
+	 * Delete this buffer. Upon calling this method, this object is no longer usable
+	 */
+	public void delete() {
+		for (long fence : fences) {
+			if (fence != NULL) {
+				glDeleteSync(fence);
+			}
+		}
+		
+		if (persistent) {
+			this.bind();
+			glUnmapBuffer(target);
+		}
+		else {
+			MemoryUtil.memFree(data);
+		}
+		
+		GLStateCache.get().deleteBuffer(id);
+	}
+	
+}
@@ -2,9 +2,9 @@ package me.choco.learning.engine.buffer;
 
 import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
-import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
-import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+import me.choco.learning.engine.rendering.GLStateCache;
 
 /**
  * Represents a vertex array object that holds data to be stored on the GPU
@@ -14,15 +14,16 @@ import static org.lwjgl.opengl.GL30.*;
 public class VAO {
 	
 	private int attributePointers;
+	private long enabledAttributes, instancedAttributes;
 	private final int id;
 	
 	/**
 	 * Construct and generate a new VAO
 	 */
 	public VAO() {
-		this.id = glGenVertexArrays();
+		this.id = GLStateCache.get().genVertexArray();
 	}
-
+	
 	/**
 	 * Create a new attribute pointer on the vertex array of type float
 	 * 
@@ -30,17 +31,101 @@ public class VAO {
 	 * @param size the size of the data (i.e. 3 for 3D vectors)
 	 */
 	public void createAttribPointer(int index, int size) {
-		glVertexAttribPointer(index, size, GL_FLOAT, false, 0, 0);
+		this.createAttribPointer(index, size, GL_FLOAT, false, 0, 0);
+	}
+	
+	/**
+	 * Create a new attribute pointer on the vertex array sourcing the currently
+	 * bound array buffer
+	 * 
+	 * @param index the index to create the attribute pointer
+	 * @param size the size of the data (i.e. 3 for 3D vectors)
+	 * @param type the component type of the data (i.e. GL_FLOAT)
+	 * @param normalized whether integer data should be normalized
+	 * @param stride the amount of bytes between consecutive vertices, or 0 if tightly packed
+	 * @param offset the byte offset of the first component in the buffer
+	 */
+	public void createAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset) {
+		glVertexAttribPointer(index, size, type, normalized, stride, offset);
 		this.attributePointers++;
 	}
 	
 	/**
-	 * Enable an attribute array at the given index
+	 * Create a new attribute pointer on the vertex array as described by the
+	 * given attribute, sourcing the currently bound array buffer
+	 * 
+	 * @param attribute the attribute description
+	 * @param offset the byte offset of the first component in the buffer
+	 */
+	public void createAttribPointer(VertexAttribute attribute, long offset) {
+		this.createAttribPointer(attribute.getIndex(), attribute.getSize(), attribute.getType(), attribute.isNormalized(), attribute.getStride(), offset);
+	}
+	
+	/**
+	 * Create a new attribute pointer on the vertex array as described by the
+	 * given attribute with an explicit stride, sourcing the currently bound array
+	 * buffer. Used when the attribute is interleaved with others
+	 * 
+	 * @param attribute the attribute description
+	 * @param stride the amount of bytes between consecutive vertices
+	 * @param offset the byte offset of the first component in the buffer
+	 */
+	public void createAttribPointer(VertexAttribute attribute, int stride, long offset) {
+		this.createAttribPointer(attribute.getIndex(), attribute.getSize(), attribute.getType(), attribute.isNormalized(), stride, offset);
+	}
+	
+	/**
+	 * Create an attribute pointer for every attribute of the given layout, each
+	 * sourcing its buffer with the layout's stride and offset. The array buffers
+	 * are left unbound
+	 * 
+	 * @param layout the vertex layout
+	 * @param buffers the array buffers of the layout, one per layout buffer
+	 */
+	public void createAttribPointers(VertexLayout layout, VBO[] buffers) {
+		for (int i = 0; i < layout.getAttributeCount(); i++) {
+			int buffer = layout.getBuffer(i);
+			buffers[buffer].bind();
+			this.createAttribPointer(layout.getAttribute(i), layout.getStride(buffer), layout.getOffset(i));
+		}
+		
+		buffers[0].unbind();
+	}
+	
+	/**
+	 * Point the attribute at the given index to per-instance data in the currently
+	 * bound array buffer and enable it. The attribute advances once per instance
+	 * rather than once per vertex. Unlike {@link #createAttribPointer(int, int)},
+	 * the pointer may be respecified every frame, i.e. to follow data streamed to
+	 * a new offset, and is not affected by {@link #enableAllAttribArrays()}. This
+	 * VAO must be bound
+	 * 
+	 * @param index the index of the attribute
+	 * @param size the size of the data (i.e. 4 for 4D vectors)
+	 * @param type the component type of the data (i.e. GL_FLOAT)
+	 * @param stride the amount of bytes between consecutive instances
+	 * @param offset the byte offset of the first component in the buffer
+	 */
+	public void setInstanceAttribPointer(int index, int size, int type, int stride, long offset) {
+		glVertexAttribPointer(index, size, type, false, stride, offset);
+		
+		long bit = 1L << index;
+		if ((instancedAttributes & bit) == 0) {
+			glVertexAttribDivisor(index, 1);
+			this.instancedAttributes |= bit;
+		}
+		
+		this.setAttribArray(index, true);
+	}
+	
+	/**
+	 * Enable an attribute array at the given index. This VAO must be bound. The
+	 * call is skipped if the array is already enabled
 	 * 
 	 * @param index the index of the attribute to enable
 	 */
 	public void enableAttribArray(int index) {
-		glEnableVertexAttribArray(index);
+		this.setAttribArray(index, true);
 	}
 	
 	/**
@@ -48,17 +133,18 @@ public class VAO {
 	 */
 	public void enableAllAttribArrays() {
 		for (int i = 0; i < attributePointers; i++) {
-			glEnableVertexAttribArray(i);
+			this.setAttribArray(i, true);
 		}
 	}
 	
 	/**
-	 * Disable an attribute array at the given index
+	 * Disable an attribute array at the given index. This VAO must be bound. The
+	 * call is skipped if the array is already disabled
 	 * 
 	 * @param index the index of the attribute to disable
 	 */
 	public void disableAttribArray(int index) {
-		glDisableVertexAttribArray(index);
+		this.setAttribArray(index, false);
 	}
 	
 	/**
@@ -66,7 +152,7 @@ public class VAO {
 	 */
 	public void disableAllAttribArrays() {
 		for (int i = 0; i < attributePointers; i++) {
-			glDisableVertexAttribArray(i);
+			this.setAttribArray(i, false);
 		}
 	}
 	
@@ -74,14 +160,14 @@ public class VAO {
 	 * Bind this VAO as the active vertex array
 	 */
 	public void bind() {
-		glBindVertexArray(id);
+		GLStateCache.get().bindVertexArray(id);
 	}
 	
 	/**
 	 * Unbind this VAO
 	 */
 	public void unbind() {
-		glBindVertexArray(0);
+		GLStateCache.get().bindVertexArray(0);
 	}
 	
 	/**
@@ -89,8 +175,13 @@ public class VAO {
 	 * longer usable
 	 */
 	public void delete() {
-		this.disableAllAttribArrays();
-		glDeleteVertexArrays(id);
+		GLStateCache.get().deleteVertexArray(id);
+	}
+	
+	private void setAttribArray(int index, boolean enabled) {
+		long bit = 1L << index;
+		GLStateCache.get().setVertexAttribArray(index, enabled, (enabledAttributes & bit) != 0);
+		this.enabledAttributes = enabled ? (enabledAttributes | bit) : (enabledAttributes & ~bit);
 	}
 	
 }
\ No newline at end of file
@@ -2,9 +2,12 @@ package me.choco.learning.engine.buffer;
 
 import static org.lwjgl.opengl.GL15.*;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 
+import me.choco.learning.engine.rendering.GLStateCache;
+
 /**
  * Represents a vertex buffer object which holds data in form of float buffers
  * 
@@ -21,7 +24,7 @@ public class VBO {
 	 * @param buffer the data to buffer into the VBO
 	 */
 	public VBO(int target, FloatBuffer buffer) {
-		this.id = glGenBuffers();
+		this.id = GLStateCache.get().genBuffer();
 		this.target = target;
 		
 		this.bind();
@@ -35,13 +38,42 @@ public class VBO {
 	 * @param buffer the data to buffer into the VBO
 	 */
 	public VBO(int target, IntBuffer buffer) {
-		this.id = glGenBuffers();
+		this.id = GLStateCache.get().genBuffer();
 		this.target = target;
 		
 		this.bind();
 		glBufferData(target, buffer, GL_STATIC_DRAW);
 	}
 	
+	/**
+	 * Construct a new byte buffer VBO and generate its unique id
+	 * 
+	 * @param target the buffer type to create
+	 * @param buffer the data to buffer into the VBO
+	 */
+	public VBO(int target, ByteBuffer buffer) {
+		this.id = GLStateCache.get().genBuffer();
+		this.target = target;
+		
+		this.bind();
+		glBufferData(target, buffer, GL_STATIC_DRAW);
+	}
+	
+	/**
+	 * Construct a new VBO with uninitialized storage of the given size and
+	 * generate its unique id. The storage may be filled with glBufferSubData
+	 * 
+	 * @param target the buffer type to create
+	 * @param size the size of the storage in bytes
+	 */
+	public VBO(int target, long size) {
+		this.id = GLStateCache.get().genBuffer();
+		this.target = target;
+		
+		this.bind();
+		glBufferData(target, size, GL_STATIC_DRAW);
+	}
+	
 	/**
 	 * Get this VBO's unique id
 	 * 
@@ -55,22 +87,21 @@ public class VBO {
 	 * Bind this VBO as the active buffer
 	 */
 	public void bind() {
-		glBindBuffer(target, id);
+		GLStateCache.get().bindBuffer(target, id);
 	}
 	
 	/**
 	 * Unbind this VBO
 	 */
 	public void unbind() {
-		glBindBuffer(target, 0);
+		GLStateCache.get().bindBuffer(target, 0);
 	}
 	
 	/**
 	 * Delete this buffer. Upon calling this method, this object is no longer usable
 	 */
 	public void delete() {
-		this.unbind();
-		glDeleteBuffers(id);
+		GLStateCache.get().deleteBuffer(id);
 	}
 	
 }
\ No newline at end of file
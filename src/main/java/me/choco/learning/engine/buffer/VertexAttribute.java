@@ -0,0 +1,107 @@
+package me.choco.learning.engine.buffer;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+
+/**
+ * Describes how a single vertex attribute is laid out in a buffer, as required
+ * by {@link VAO#createAttribPointer(int, int, int, boolean, int, long)}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class VertexAttribute {
+	
+	private final int index, size, type;
+	private final boolean normalized;
+	private final int stride;
+	
+	/**
+	 * Construct a new vertex attribute description
+	 * 
+	 * @param index the shader attribute index
+	 * @param size the amount of components (i.e. 3 for 3D vectors, or 4 for packed types)
+	 * @param type the OpenGL component type (i.e. GL_FLOAT)
+	 * @param normalized whether integer types are normalized to [0, 1] or [-1, 1]
+	 * @param stride the amount of bytes between consecutive vertices
+	 */
+	public VertexAttribute(int index, int size, int type, boolean normalized, int stride) {
+		this.index = index;
+		this.size = size;
+		this.type = type;
+		this.normalized = normalized;
+		this.stride = stride;
+	}
+	
+	/**
+	 * Construct a new tightly packed float vertex attribute description
+	 * 
+	 * @param index the shader attribute index
+	 * @param size the amount of components
+	 */
+	public VertexAttribute(int index, int size) {
+		this(index, size, GL_FLOAT, false, size * Float.BYTES);
+	}
+	
+	/**
+	 * Get the shader attribute index
+	 * 
+	 * @return the attribute index
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Get the amount of components in this attribute
+	 * 
+	 * @return the component count
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Get the OpenGL component type of this attribute
+	 * 
+	 * @return the component type
+	 */
+	public int getType() {
+		return type;
+	}
+	
+	/**
+	 * Check whether integer components are normalized when read by a shader
+	 * 
+	 * @return true if normalized, false otherwise
+	 */
+	public boolean isNormalized() {
+		return normalized;
+	}
+	
+	/**
+	 * Get the amount of bytes between consecutive vertices
+	 * 
+	 * @return the stride
+	 */
+	public int getStride() {
+		return stride;
+	}
+	
+	@Override
+	public int hashCode() {
+		int hash = 31 * index + size;
+		hash = 31 * hash + type;
+		hash = 31 * hash + (normalized ? 1 : 0);
+		return 31 * hash + stride;
+	}
+	
+	@Override
+	public boolean equals(Object object) {
+		if (object == this) return true;
+		if (!(object instanceof VertexAttribute)) return false;
+		
+		VertexAttribute other = (VertexAttribute) object;
+		return index == other.index && size == other.size && type == other.type
+				&& normalized == other.normalized && stride == other.stride;
+	}
+	
+}
@@ -0,0 +1,191 @@
+package me.choco.learning.engine.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Describes how a set of {@link VertexAttribute}s is distributed across one or
+ * more vertex buffers. A split layout stores each attribute in its own buffer,
+ * while an interleaved layout stores all attributes of a vertex next to each
+ * other in a single buffer so that one vertex fetch touches one stream.
+ * <p>
+ * The stride of each attribute as given by {@link VertexAttribute#getStride()}
+ * is treated as the size of a single element. Interleaved attributes are placed
+ * one after the other in attribute order
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class VertexLayout {
+	
+	private final VertexAttribute[] attributes;
+	private final int[] buffers, offsets, strides;
+	private final boolean interleaved;
+	
+	private VertexLayout(VertexAttribute[] attributes, int[] buffers, int[] offsets, int[] strides, boolean interleaved) {
+		this.attributes = attributes;
+		this.buffers = buffers;
+		this.offsets = offsets;
+		this.strides = strides;
+		this.interleaved = interleaved;
+	}
+	
+	/**
+	 * Create a layout storing each attribute in its own buffer
+	 * 
+	 * @param attributes the attributes, one per buffer
+	 * @return the split layout
+	 */
+	public static VertexLayout split(VertexAttribute... attributes) {
+		int[] buffers = new int[attributes.length], strides = new int[attributes.length];
+		for (int i = 0; i < attributes.length; i++) {
+			buffers[i] = i;
+			strides[i] = attributes[i].getStride();
+		}
+		
+		return new VertexLayout(attributes, buffers, new int[attributes.length], strides, false);
+	}
+	
+	/**
+	 * Create a layout storing all attributes interleaved in a single buffer
+	 * 
+	 * @param attributes the attributes, in the order in which they are interleaved
+	 * @return the interleaved layout
+	 */
+	public static VertexLayout interleaved(VertexAttribute... attributes) {
+		int[] offsets = new int[attributes.length];
+		int stride = 0;
+		for (int i = 0; i < attributes.length; i++) {
+			offsets[i] = stride;
+			stride += attributes[i].getStride();
+		}
+		
+		return new VertexLayout(attributes, new int[attributes.length], offsets, new int[] { stride }, true);
+	}
+	
+	/**
+	 * Create either a split or interleaved layout of the given attributes
+	 * 
+	 * @param attributes the attributes
+	 * @param interleaved true to interleave the attributes, false to split them
+	 * 
+	 * @return the layout
+	 */
+	public static VertexLayout of(VertexAttribute[] attributes, boolean interleaved) {
+		return interleaved ? interleaved(attributes) : split(attributes);
+	}
+	
+	/**
+	 * Check whether this layout describes exactly the given attributes, in order
+	 * 
+	 * @param attributes the attributes to compare
+	 * @return true if the attributes match, false otherwise
+	 */
+	public boolean matches(VertexAttribute... attributes) {
+		return Arrays.equals(this.attributes, attributes);
+	}
+	
+	/**
+	 * Get the amount of attributes in this layout
+	 * 
+	 * @return the attribute count
+	 */
+	public int getAttributeCount() {
+		return attributes.length;
+	}
+	
+	/**
+	 * Get the attribute at the given index
+	 * 
+	 * @param attribute the index of the attribute
+	 * @return the attribute
+	 */
+	public VertexAttribute getAttribute(int attribute) {
+		return attributes[attribute];
+	}
+	
+	/**
+	 * Get the index of the buffer from which the given attribute is sourced
+	 * 
+	 * @param attribute the index of the attribute
+	 * @return the buffer index
+	 */
+	public int getBuffer(int attribute) {
+		return buffers[attribute];
+	}
+	
+	/**
+	 * Get the byte offset of the given attribute within each vertex of its buffer
+	 * 
+	 * @param attribute the index of the attribute
+	 * @return the attribute offset
+	 */
+	public int getOffset(int attribute) {
+		return offsets[attribute];
+	}
+	
+	/**
+	 * Get the amount of buffers described by this layout
+	 * 
+	 * @return the buffer count
+	 */
+	public int getBufferCount() {
+		return strides.length;
+	}
+	
+	/**
+	 * Get the amount of bytes between consecutive vertices in the given buffer
+	 * 
+	 * @param buffer the index of the buffer
+	 * @return the stride
+	 */
+	public int getStride(int buffer) {
+		return strides[buffer];
+	}
+	
+	/**
+	 * Check whether the attributes of this layout are interleaved in one buffer
+	 * 
+	 * @return true if interleaved, false if split
+	 */
+	public boolean isInterleaved() {
+		return interleaved;
+	}
+	
+	/**
+	 * Arrange separate attribute streams into the buffers of this layout. Split
+	 * layouts use the streams as they are, interleaved layouts copy them into a
+	 * single new direct buffer
+	 * 
+	 * @param streams the attribute streams, one per attribute
+	 * @param vertexCount the amount of vertices in each stream
+	 * 
+	 * @return the buffer contents, one per buffer
+	 */
+	public ByteBuffer[] pack(ByteBuffer[] streams, int vertexCount) {
+		if (streams.length != attributes.length) {
+			throw new IllegalArgumentException("Expected one stream per attribute (" + attributes.length + " attributes, " + streams.length + " streams)");
+		}
+		
+		if (!interleaved) {
+			return streams;
+		}
+		
+		int stride = strides[0];
+		ByteBuffer buffer = ByteBuffer.allocateDirect(vertexCount * stride).order(ByteOrder.nativeOrder());
+		for (int i = 0; i < attributes.length; i++) {
+			ByteBuffer stream = streams[i].duplicate();
+			int size = attributes[i].getStride(), position = stream.position();
+			
+			for (int vertex = 0; vertex < vertexCount; vertex++) {
+				stream.limit(position + (vertex + 1) * size).position(position + vertex * size);
+				buffer.position(vertex * stride + offsets[i]);
+				buffer.put(stream);
+			}
+		}
+		
+		buffer.clear();
+		return new ByteBuffer[] { buffer };
+	}
+	
+}
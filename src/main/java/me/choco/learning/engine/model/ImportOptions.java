@@ -0,0 +1,230 @@
+package me.choco.learning.engine.model;
+
+/**
+ * Represents the processing applied to a mesh between parsing and uploading it
+ * as a {@link VertexModel}. Options are compared by value so that they may be
+ * used as part of a cache key
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class ImportOptions {
+	
+	private boolean optimize = false;
+	private boolean generateTangents = false;
+	private boolean buildMeshlets = false;
+	private boolean interleaved = false;
+	private VertexFormat vertexFormat = VertexFormat.FLOAT;
+	private int lodLevels = 1;
+	private float lodReduction = 0.5f;
+	
+	private ImportOptions() {}
+	
+	/**
+	 * Create a new set of import options with every processing stage disabled
+	 * 
+	 * @return the new options
+	 */
+	public static ImportOptions newOptions() {
+		return new ImportOptions();
+	}
+	
+	/**
+	 * Create a copy of these options. Changes made to either set of options
+	 * afterwards do not affect the other
+	 * 
+	 * @return the copied options
+	 */
+	public ImportOptions copy() {
+		ImportOptions copy = new ImportOptions();
+		copy.optimize = optimize;
+		copy.generateTangents = generateTangents;
+		copy.buildMeshlets = buildMeshlets;
+		copy.interleaved = interleaved;
+		copy.vertexFormat = vertexFormat;
+		copy.lodLevels = lodLevels;
+		copy.lodReduction = lodReduction;
+		return copy;
+	}
+	
+	/**
+	 * Set whether the mesh should be reordered for the post-transform vertex
+	 * cache, overdraw and vertex fetch locality. See {@link MeshOptimizer}
+	 * 
+	 * @param optimize true to optimize the mesh
+	 * @return this instance. Allows for chained method calls
+	 */
+	public ImportOptions setOptimize(boolean optimize) {
+		this.optimize = optimize;
+		return this;
+	}
+	
+	/**
+	 * Check whether the mesh should be optimized
+	 * 
+	 * @return true if optimized, false otherwise
+	 */
+	public boolean isOptimize() {
+		return optimize;
+	}
+	
+	/**
+	 * Set whether tangents should be generated from the mesh's texture coordinates
+	 * for use in normal mapping. See {@link TangentSpaceGenerator}
+	 * 
+	 * @param generateTangents true to generate tangents
+	 * @return this instance. Allows for chained method calls
+	 */
+	public ImportOptions setGenerateTangents(boolean generateTangents) {
+		this.generateTangents = generateTangents;
+		return this;
+	}
+	
+	/**
+	 * Check whether tangents should be generated
+	 * 
+	 * @return true if generated, false otherwise
+	 */
+	public boolean isGenerateTangents() {
+		return generateTangents;
+	}
+	
+	/**
+	 * Set whether the mesh should be split into meshlets which may be culled
+	 * individually when rendering. See {@link MeshletBuilder}
+	 * 
+	 * @param buildMeshlets true to build meshlets
+	 * @return this instance. Allows for chained method calls
+	 */
+	public ImportOptions setBuildMeshlets(boolean buildMeshlets) {
+		this.buildMeshlets = buildMeshlets;
+		return this;
+	}
+	
+	/**
+	 * Check whether the mesh should be split into meshlets
+	 * 
+	 * @return true if built, false otherwise
+	 */
+	public boolean isBuildMeshlets() {
+		return buildMeshlets;
+	}
+	
+	/**
+	 * Set the format in which the mesh's vertex attributes are encoded when
+	 * uploaded to the GPU. See {@link VertexPacker}
+	 * 
+	 * @param vertexFormat the vertex format
+	 * @return this instance. Allows for chained method calls
+	 */
+	public ImportOptions setVertexFormat(VertexFormat vertexFormat) {
+		if (vertexFormat == null) {
+			throw new IllegalArgumentException("Vertex format must not be null");
+		}
+		
+		this.vertexFormat = vertexFormat;
+		return this;
+	}
+	
+	/**
+	 * Get the format in which the mesh's vertex attributes are encoded
+	 * 
+	 * @return the vertex format
+	 */
+	public VertexFormat getVertexFormat() {
+		return vertexFormat;
+	}
+	
+	/**
+	 * Set whether the mesh's vertex attributes should be interleaved in a single
+	 * buffer when uploaded rather than split into one buffer per attribute. See
+	 * {@link me.choco.learning.engine.buffer.VertexLayout}
+	 * 
+	 * @param interleaved true to interleave attributes
+	 * @return this instance. Allows for chained method calls
+	 */
+	public ImportOptions setInterleaved(boolean interleaved) {
+		this.interleaved = interleaved;
+		return this;
+	}
+	
+	/**
+	 * Check whether the mesh's vertex attributes should be interleaved
+	 * 
+	 * @return true if interleaved, false if split
+	 */
+	public boolean isInterleaved() {
+		return interleaved;
+	}
+	
+	/**
+	 * Set the amount of levels of detail generated when loading an LOD chain,
+	 * including the full detail level. See {@link MeshSimplifier}
+	 * 
+	 * @param lodLevels the amount of levels. Must be at least 1
+	 * @return this instance. Allows for chained method calls
+	 */
+	public ImportOptions setLODLevels(int lodLevels) {
+		if (lodLevels < 1) {
+			throw new IllegalArgumentException("At least one level of detail is required (given: " + lodLevels + ")");
+		}
+		
+		this.lodLevels = lodLevels;
+		return this;
+	}
+	
+	/**
+	 * Get the amount of levels of detail generated when loading an LOD chain
+	 * 
+	 * @return the amount of levels
+	 */
+	public int getLODLevels() {
+		return lodLevels;
+	}
+	
+	/**
+	 * Set the fraction of triangles kept by each level of detail relative to
+	 * the previous level
+	 * 
+	 * @param lodReduction the fraction of triangles to keep, exclusively between 0 and 1
+	 * @return this instance. Allows for chained method calls
+	 */
+	public ImportOptions setLODReduction(float lodReduction) {
+		if (lodReduction <= 0 || lodReduction >= 1) {
+			throw new IllegalArgumentException("LOD reduction must be between 0 and 1 (given: " + lodReduction + ")");
+		}
+		
+		this.lodReduction = lodReduction;
+		return this;
+	}
+	
+	/**
+	 * Get the fraction of triangles kept by each level of detail
+	 * 
+	 * @return the fraction of triangles to keep
+	 */
+	public float getLODReduction() {
+		return lodReduction;
+	}
+	
+	@Override
+	public int hashCode() {
+		int hash = 31 * (optimize ? 1 : 0) + (generateTangents ? 1 : 0);
+		hash = 31 * hash + (buildMeshlets ? 1 : 0);
+		hash = 31 * hash + (interleaved ? 1 : 0);
+		hash = 31 * hash + vertexFormat.hashCode();
+		hash = 31 * hash + lodLevels;
+		return 31 * hash + Float.floatToIntBits(lodReduction);
+	}
+	
+	@Override
+	public boolean equals(Object object) {
+		if (object == this) return true;
+		if (!(object instanceof ImportOptions)) return false;
+		
+		ImportOptions other = (ImportOptions) object;
+		return optimize == other.optimize && generateTangents == other.generateTangents
+				&& buildMeshlets == other.buildMeshlets && interleaved == other.interleaved && vertexFormat.equals(other.vertexFormat)
+				&& lodLevels == other.lodLevels && lodReduction == other.lodReduction;
+	}
+	
+}
@@ -0,0 +1,112 @@
+package me.choco.learning.engine.model;
+
+/**
+ * Represents a chain of progressively simplified {@link VertexModel}s of the
+ * same mesh. Level 0 is the full detail model. Each level records the geometric
+ * error (in model space) introduced by its simplification, from which a level
+ * can be selected based on how large the model appears on screen
+ * 
+ * @author Parker Hawke - 2008Choco
+ * @see MeshSimplifier
+ */
+public class LODChain {
+	
+	private final VertexModel[] levels;
+	private final float[] errors;
+	
+	/**
+	 * Construct a new chain consisting of a single level
+	 * 
+	 * @param model the full detail model
+	 */
+	public LODChain(VertexModel model) {
+		this(new VertexModel[] { model }, new float[] { 0 });
+	}
+	
+	/**
+	 * Construct a new chain from the given levels, ordered from most to least
+	 * detailed
+	 * 
+	 * @param levels the models of each level
+	 * @param errors the model space error of each level
+	 */
+	public LODChain(VertexModel[] levels, float[] errors) {
+		if (levels.length == 0) {
+			throw new IllegalArgumentException("An LOD chain requires at least one level");
+		}
+		
+		if (levels.length != errors.length) {
+			throw new IllegalArgumentException("Expected one error per level (" + levels.length + " levels, " + errors.length + " errors)");
+		}
+		
+		this.levels = levels;
+		this.errors = errors;
+	}
+	
+	/**
+	 * Get the model at the given level
+	 * 
+	 * @param level the level, where 0 is the most detailed
+	 * @return the model
+	 */
+	public VertexModel getLevel(int level) {
+		return levels[level];
+	}
+	
+	/**
+	 * Get the model space error introduced at the given level
+	 * 
+	 * @param level the level, where 0 is the most detailed
+	 * @return the error
+	 */
+	public float getError(int level) {
+		return errors[level];
+	}
+	
+	/**
+	 * Get the amount of levels in this chain
+	 * 
+	 * @return the level count
+	 */
+	public int getLevelCount() {
+		return levels.length;
+	}
+	
+	/**
+	 * Select the least detailed level whose error projects to no more than the
+	 * given amount of pixels. To prevent popping when the projected size hovers
+	 * around a threshold, a less detailed level is only adopted once its error
+	 * falls below the threshold by the given hysteresis fraction, whereas a more
+	 * detailed level is adopted as soon as the current one exceeds it
+	 * 
+	 * @param pixelsPerUnit the amount of screen pixels covered by one model space unit
+	 * @param maxPixelError the maximum tolerated error in pixels
+	 * @param hysteresis the fraction (0 - 1) by which the error must fall below the
+	 * threshold before switching to a less detailed level
+	 * @param currentLevel the level currently in use
+	 * 
+	 * @return the level to use
+	 */
+	public int selectLevel(float pixelsPerUnit, float maxPixelError, float hysteresis, int currentLevel) {
+		int level = 0;
+		while (level + 1 < levels.length && errors[level + 1] * pixelsPerUnit <= maxPixelError) {
+			level++;
+		}
+		
+		while (level > currentLevel && errors[level] * pixelsPerUnit > maxPixelError * (1 - hysteresis)) {
+			level--;
+		}
+		
+		return level;
+	}
+	
+	/**
+	 * Cleanup the models of every level
+	 */
+	public void cleanup() {
+		for (VertexModel level : levels) {
+			level.cleanup();
+		}
+	}
+	
+}
@@ -0,0 +1,428 @@
+package me.choco.learning.engine.model;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.joml.Vector3f;
+import org.lwjgl.util.xxhash.XXHash;
+
+import me.choco.learning.engine.buffer.VertexAttribute;
+import me.choco.learning.engine.buffer.VertexLayout;
+import me.choco.learning.engine.texture.Material;
+
+/**
+ * A cache of precompiled binary meshes. The first time an OBJ file is loaded
+ * through this cache, its parsed mesh is packed and written to the cache
+ * directory in a GPU-ready binary layout. Subsequent loads memory map the cached
+ * file and hand slices of the mapping straight to the {@link VertexModel} upload
+ * without any parsing or conversion. A cached mesh is rebuilt whenever the XXH64
+ * hash of its source file changes. Every set of {@link ImportOptions} used to
+ * process and pack the mesh is cached in a separate file, named after both the
+ * source path and the options, and the options are folded into the source hash
+ * as well
+ * <p>
+ * The binary format (in native byte order) consists of:
+ * <ul>
+ *   <li>a header: magic, version, byte order, attribute count, source hash, vertex and index counts</li>
+ *   <li>a vertex layout descriptor: one entry per attribute stream (index, size, type, normalization, stride, offset, length)</li>
+ *   <li>the mesh bounds, position scale and position offset</li>
+ *   <li>the index stream descriptor: type, offset, length</li>
+ *   <li>the material table descriptor: offset, length</li>
+ *   <li>vertex and index data, each section aligned to 16 bytes</li>
+ *   <li>the material table: referenced material libraries, then each sub-mesh's
+ *   index range and material name, then each meshlet's index range and bounds</li>
+ * </ul>
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class MeshCache {
+	
+	private static final int MAGIC = 0x48534D4C; // "LMSH"
+	private static final int VERSION = 5;
+	private static final int BYTE_ORDER_MARK = 0x01020304;
+	
+	private static final int MAX_ATTRIBUTES = 16;
+	private static final int HEADER_SIZE = 32, ATTRIBUTE_SIZE = 40, BOUNDS_SIZE = 48, INDEX_DESCRIPTOR_SIZE = 24, MATERIAL_DESCRIPTOR_SIZE = 16;
+	private static final int MESHLET_SIZE = 44; // Index range (3 ints), bounding sphere (4 floats) and cone (4 floats)
+	
+	private static final String FILE_EXTENSION = ".mesh";
+	
+	private final Path directory;
+	
+	/**
+	 * Construct a new mesh cache which stores its files in the given directory.
+	 * The directory is created when the first file is written to it
+	 * 
+	 * @param directory the cache directory
+	 */
+	public MeshCache(Path directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Load a model from an OBJ file on the filesystem through this cache and
+	 * provide it with a texture
+	 * 
+	 * @param source the path to the OBJ file
+	 * @param material the material to set for the model, or null if none
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return the loaded model
+	 */
+	public VertexModel loadOBJModel(Path source, Material material, ImportOptions options) {
+		PackedMesh mesh = loadOBJPackedMesh(source, options);
+		VertexModel model = new VertexModel(mesh, VertexLayout.of(mesh.getAttributes(), options.isInterleaved()));
+		mesh.free();
+		ModelLoader.applyMaterials(model, ModelLoader.loadMaterialLibraries(source, mesh.getMaterialLibraries()), material);
+		return model;
+	}
+	
+	/**
+	 * Load a model from an OBJ file on the filesystem through this cache with
+	 * no texture
+	 * 
+	 * @param source the path to the OBJ file
+	 * @return the loaded model
+	 */
+	public VertexModel loadOBJModel(Path source) {
+		return loadOBJModel(source, null, ImportOptions.newOptions());
+	}
+	
+	/**
+	 * Load the packed mesh of an OBJ file on the filesystem through this cache.
+	 * If a cached mesh exists for the current contents of the source file, its
+	 * buffers are direct slices of the memory mapped cache file. Otherwise the
+	 * source is parsed, packed with {@link ImportOptions#getVertexFormat()} and
+	 * the result is written to the cache. The mesh should be freed with
+	 * {@link PackedMesh#free()} once uploaded
+	 * 
+	 * @param source the path to the OBJ file
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return the loaded packed mesh
+	 */
+	public PackedMesh loadOBJPackedMesh(Path source, ImportOptions options) {
+		Path cacheFile = getCacheFile(source, options);
+		PackedMesh mesh;
+		long hash;
+		
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			MappedByteBuffer contents = ModelLoader.map(channel);
+			hash = XXHash.XXH64(contents, options.hashCode());
+			
+			// A cache which cannot be read is rebuilt from the source
+			try {
+				PackedMesh cached = read(cacheFile, hash);
+				if (cached != null) {
+					return cached;
+				}
+			} catch (IOException e) {
+				System.err.println("Could not read mesh cache file " + cacheFile + ". Rebuilding from source: " + e);
+			}
+			
+			mesh = VertexPacker.pack(ModelLoader.parseOBJ(contents, options), options.getVertexFormat());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read OBJ file " + source, e);
+		}
+		
+		// The mesh is still usable if it cannot be cached
+		try {
+			this.write(cacheFile, hash, mesh);
+		} catch (IOException e) {
+			System.err.println("Could not write mesh cache file " + cacheFile + ": " + e);
+		}
+		
+		return mesh;
+	}
+	
+	/**
+	 * Get the file in which the cached mesh for the given source processed with
+	 * the given options is stored
+	 * 
+	 * @param source the source OBJ file
+	 * @param options the processing applied to the mesh
+	 * 
+	 * @return the cache file
+	 */
+	public Path getCacheFile(Path source, ImportOptions options) {
+		Path absolute = source.toAbsolutePath().normalize();
+		String name = absolute.getFileName() + "-" + Integer.toHexString(absolute.toString().hashCode())
+				+ "-" + Integer.toHexString(options.hashCode()) + FILE_EXTENSION;
+		return directory.resolve(name);
+	}
+	
+	private static PackedMesh read(Path file, long sourceHash) throws IOException {
+		if (!Files.isRegularFile(file)) return null;
+		
+		MappedByteBuffer mapping;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			mapping = ModelLoader.map(channel);
+		}
+		
+		mapping.order(ByteOrder.nativeOrder());
+		if (mapping.limit() < HEADER_SIZE || mapping.getInt(0) != MAGIC || mapping.getInt(4) != VERSION
+				|| mapping.getInt(8) != BYTE_ORDER_MARK || mapping.getLong(16) != sourceHash) {
+			return null;
+		}
+		
+		int attributeCount = mapping.getInt(12);
+		if (attributeCount <= 0 || attributeCount > MAX_ATTRIBUTES || mapping.limit() < getDataOffset(attributeCount)) {
+			return null;
+		}
+		
+		int vertexCount = mapping.getInt(24), indexCount = mapping.getInt(28);
+		VertexAttribute[] attributes = new VertexAttribute[attributeCount];
+		ByteBuffer[] streams = new ByteBuffer[attributeCount];
+		
+		for (int i = 0; i < attributeCount; i++) {
+			int descriptor = HEADER_SIZE + i * ATTRIBUTE_SIZE;
+			int index = mapping.getInt(descriptor), size = mapping.getInt(descriptor + 4), type = mapping.getInt(descriptor + 8);
+			boolean normalized = mapping.getInt(descriptor + 12) != 0;
+			int stride = mapping.getInt(descriptor + 16);
+			long offset = mapping.getLong(descriptor + 24), length = mapping.getLong(descriptor + 32);
+			
+			if (length != (long) vertexCount * stride || !isInBounds(mapping, offset, length)) {
+				return null;
+			}
+			
+			attributes[i] = new VertexAttribute(index, size, type, normalized, stride);
+			streams[i] = slice(mapping, offset, length);
+		}
+		
+		int bounds = HEADER_SIZE + attributeCount * ATTRIBUTE_SIZE;
+		Vector3f minBounds = readVector(mapping, bounds), maxBounds = readVector(mapping, bounds + 12);
+		Vector3f positionScale = readVector(mapping, bounds + 24), positionOffset = readVector(mapping, bounds + 36);
+		
+		int indexDescriptor = bounds + BOUNDS_SIZE;
+		int indexType = mapping.getInt(indexDescriptor);
+		long indexOffset = mapping.getLong(indexDescriptor + 8), indexLength = mapping.getLong(indexDescriptor + 16);
+		if ((indexType != GL_UNSIGNED_SHORT && indexType != GL_UNSIGNED_INT) || indexLength != (long) indexCount * VertexPacker.getIndexSize(indexType)
+				|| !isInBounds(mapping, indexOffset, indexLength)) {
+			return null;
+		}
+		
+		int materialDescriptor = indexDescriptor + INDEX_DESCRIPTOR_SIZE;
+		long materialOffset = mapping.getLong(materialDescriptor), materialLength = mapping.getLong(materialDescriptor + 8);
+		if (!isInBounds(mapping, materialOffset, materialLength)) {
+			return null;
+		}
+		
+		// A truncated or corrupt material table is an invalid cache like any other
+		ByteBuffer materialTable = slice(mapping, materialOffset, materialLength);
+		String[] materialLibraries;
+		SubMesh[] subMeshes;
+		Meshlet[] meshlets;
+		
+		try {
+			materialLibraries = new String[readCount(materialTable, Integer.BYTES)];
+			for (int i = 0; i < materialLibraries.length; i++) {
+				materialLibraries[i] = readString(materialTable);
+			}
+			
+			subMeshes = new SubMesh[readCount(materialTable, Integer.BYTES * 3)];
+			for (int i = 0; i < subMeshes.length; i++) {
+				int offset = materialTable.getInt(), count = materialTable.getInt();
+				if (!isIndexRange(offset, count, indexCount)) return null;
+				
+				subMeshes[i] = new SubMesh(readString(materialTable), offset, count);
+			}
+			
+			meshlets = new Meshlet[readCount(materialTable, MESHLET_SIZE)];
+			for (int i = 0; i < meshlets.length; i++) {
+				int subMesh = materialTable.getInt(), offset = materialTable.getInt(), count = materialTable.getInt();
+				if (subMesh < 0 || subMesh >= subMeshes.length || !isIndexRange(offset, count, indexCount)) return null;
+				
+				Vector3f center = readVector(materialTable);
+				float radius = materialTable.getFloat();
+				Vector3f coneAxis = readVector(materialTable);
+				meshlets[i] = new Meshlet(subMesh, offset, count, center, radius, coneAxis, materialTable.getFloat());
+			}
+		} catch (BufferUnderflowException e) {
+			return null;
+		}
+		
+		ByteBuffer indices = slice(mapping, indexOffset, indexLength);
+		return new PackedMesh(attributes, streams, indices, indexType, indexCount, vertexCount, minBounds, maxBounds, positionScale, positionOffset,
+				subMeshes, materialLibraries, meshlets);
+	}
+	
+	private void write(Path file, long sourceHash, PackedMesh mesh) throws IOException {
+		Files.createDirectories(directory);
+		
+		VertexAttribute[] attributes = mesh.getAttributes();
+		ByteBuffer[] streams = mesh.getStreams();
+		int dataOffset = getDataOffset(attributes.length);
+		
+		// Header and descriptors
+		ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC).putInt(VERSION).putInt(BYTE_ORDER_MARK).putInt(attributes.length);
+		header.putLong(sourceHash).putInt(mesh.getVertexCount()).putInt(mesh.getIndexCount());
+		
+		long offset = dataOffset;
+		for (int i = 0; i < attributes.length; i++) {
+			VertexAttribute attribute = attributes[i];
+			long length = streams[i].remaining();
+			
+			header.putInt(attribute.getIndex()).putInt(attribute.getSize()).putInt(attribute.getType()).putInt(attribute.isNormalized() ? 1 : 0);
+			header.putInt(attribute.getStride()).putInt(0).putLong(offset).putLong(length);
+			offset = align(offset + length);
+		}
+		
+		writeVector(header, mesh.getMinBounds());
+		writeVector(header, mesh.getMaxBounds());
+		writeVector(header, mesh.getPositionScale());
+		writeVector(header, mesh.getPositionOffset());
+		
+		long indexOffset = offset, materialOffset = align(indexOffset + mesh.getIndices().remaining());
+		ByteBuffer materialTable = writeMaterialTable(mesh);
+		header.putInt(mesh.getIndexType()).putInt(0).putLong(indexOffset).putLong(mesh.getIndices().remaining());
+		header.putLong(materialOffset).putLong(materialTable.remaining());
+		header.rewind();
+		
+		// Write to a temporary file first so a partially written cache is never read
+		Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header, 0);
+			
+			offset = dataOffset;
+			for (ByteBuffer stream : streams) {
+				writeFully(channel, stream.duplicate(), offset);
+				offset = align(offset + stream.remaining());
+			}
+			
+			writeFully(channel, mesh.getIndices().duplicate(), indexOffset);
+			writeFully(channel, materialTable, materialOffset);
+		}
+		
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+	
+	private static ByteBuffer writeMaterialTable(PackedMesh mesh) {
+		String[] materialLibraries = mesh.getMaterialLibraries();
+		SubMesh[] subMeshes = mesh.getSubMeshes();
+		
+		Meshlet[] meshlets = mesh.getMeshlets();
+		int size = Integer.BYTES * 3 + meshlets.length * MESHLET_SIZE;
+		for (String library : materialLibraries) {
+			size += Integer.BYTES + library.getBytes(StandardCharsets.UTF_8).length;
+		}
+		
+		for (SubMesh subMesh : subMeshes) {
+			String name = subMesh.getMaterialName();
+			size += Integer.BYTES * 3 + ((name != null) ? name.getBytes(StandardCharsets.UTF_8).length : 0);
+		}
+		
+		ByteBuffer table = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+		table.putInt(materialLibraries.length);
+		for (String library : materialLibraries) {
+			writeString(table, library);
+		}
+		
+		table.putInt(subMeshes.length);
+		for (SubMesh subMesh : subMeshes) {
+			table.putInt(subMesh.getIndexOffset()).putInt(subMesh.getIndexCount());
+			writeString(table, subMesh.getMaterialName());
+		}
+		
+		table.putInt(meshlets.length);
+		for (Meshlet meshlet : meshlets) {
+			table.putInt(meshlet.getSubMesh()).putInt(meshlet.getIndexOffset()).putInt(meshlet.getIndexCount());
+			writeVector(table, meshlet.getCenter());
+			table.putFloat(meshlet.getRadius());
+			writeVector(table, meshlet.getConeAxis());
+			table.putFloat(meshlet.getConeCutoff());
+		}
+		
+		table.flip();
+		return table;
+	}
+	
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length == -1) return null;
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static void writeString(ByteBuffer buffer, String string) {
+		if (string == null) {
+			buffer.putInt(-1);
+			return;
+		}
+		
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		buffer.putInt(bytes.length).put(bytes);
+	}
+	
+	private static Vector3f readVector(ByteBuffer buffer, int offset) {
+		return new Vector3f(buffer.getFloat(offset), buffer.getFloat(offset + 4), buffer.getFloat(offset + 8));
+	}
+	
+	private static Vector3f readVector(ByteBuffer buffer) {
+		return new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+	}
+	
+	private static void writeVector(ByteBuffer buffer, Vector3f vector) {
+		buffer.putFloat(vector.x).putFloat(vector.y).putFloat(vector.z);
+	}
+	
+	/*
+	 * Read the amount of entries in a table, each of which occupies at least the given
+	 * amount of bytes, so that a corrupt count fails before allocating for it
+	 */
+	private static int readCount(ByteBuffer buffer, int minimumEntrySize) {
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining() / minimumEntrySize) {
+			throw new BufferUnderflowException();
+		}
+		
+		return count;
+	}
+	
+	private static boolean isInBounds(ByteBuffer buffer, long offset, long length) {
+		return offset >= 0 && length >= 0 && offset + length <= buffer.limit();
+	}
+	
+	private static boolean isIndexRange(int offset, int count, int indexCount) {
+		return offset >= 0 && count >= 0 && (long) offset + count <= indexCount;
+	}
+	
+	private static ByteBuffer slice(ByteBuffer buffer, long offset, long length) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position((int) offset).limit((int) (offset + length));
+		return duplicate.slice().order(ByteOrder.nativeOrder());
+	}
+	
+	private static int getDataOffset(int attributeCount) {
+		return (int) align(HEADER_SIZE + attributeCount * ATTRIBUTE_SIZE + BOUNDS_SIZE + INDEX_DESCRIPTOR_SIZE + MATERIAL_DESCRIPTOR_SIZE);
+	}
+	
+	private static long align(long offset) {
+		return (offset + 15) & ~15L;
+	}
+	
+}
@@ -0,0 +1,414 @@
+package me.choco.learning.engine.model;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Represents the raw, CPU-side geometry of a model before it is uploaded to the
+ * GPU as a {@link VertexModel}. Each buffer is read from position 0 to its limit
+ * <p>
+ * A mesh created with {@link #ofNativeMemory(FloatBuffer, FloatBuffer, FloatBuffer, IntBuffer, Vector3f, Vector3f, SubMesh[], String[])}
+ * owns its direct buffers, which were allocated with {@link MemoryUtil} and are
+ * released by {@link #free()} rather than by the garbage collector. Such a mesh
+ * may be packed and uploaded without its attributes ever being copied to the
+ * Java heap. See {@link VertexPacker}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class MeshData {
+	
+	private final FloatBuffer positions, textureCoords, normals, tangents;
+	private final IntBuffer indices;
+	private final Vector3f minBounds, maxBounds;
+	private final SubMesh[] subMeshes;
+	private final String[] materialLibraries;
+	private final Meshlet[] meshlets;
+	
+	private WeldStatistics weldStatistics;
+	private OptimizationStatistics optimizationStatistics;
+	private boolean ownsMemory = false;
+	
+	/**
+	 * Construct a new mesh from the given attribute buffers, precomputed
+	 * axis-aligned bounds, sub-meshes and meshlets
+	 * 
+	 * @param positions the vertex positions (3 components per vertex)
+	 * @param textureCoords the texture coordinates (2 components per vertex)
+	 * @param normals the vertex normals (3 components per vertex)
+	 * @param tangents the vertex tangents and their handedness (4 components per vertex), or null if none
+	 * @param indices the triangle indices
+	 * @param minBounds the minimum corner of the mesh bounds
+	 * @param maxBounds the maximum corner of the mesh bounds
+	 * @param subMeshes the per-material index ranges, covering all indices
+	 * @param materialLibraries the names of the material libraries referenced by the mesh
+	 * @param meshlets the clusters into which the indices are split, or an empty array if none
+	 */
+	public MeshData(FloatBuffer positions, FloatBuffer textureCoords, FloatBuffer normals, FloatBuffer tangents, IntBuffer indices, Vector3f minBounds,
+			Vector3f maxBounds, SubMesh[] subMeshes, String[] materialLibraries, Meshlet[] meshlets) {
+		this.positions = positions;
+		this.textureCoords = textureCoords;
+		this.normals = normals;
+		this.tangents = tangents;
+		this.indices = indices;
+		this.minBounds = minBounds;
+		this.maxBounds = maxBounds;
+		this.subMeshes = subMeshes;
+		this.materialLibraries = materialLibraries;
+		this.meshlets = meshlets;
+	}
+	
+	/**
+	 * Construct a new mesh without meshlets from the given attribute buffers,
+	 * precomputed axis-aligned bounds and sub-meshes
+	 * 
+	 * @param positions the vertex positions (3 components per vertex)
+	 * @param textureCoords the texture coordinates (2 components per vertex)
+	 * @param normals the vertex normals (3 components per vertex)
+	 * @param tangents the vertex tangents and their handedness (4 components per vertex), or null if none
+	 * @param indices the triangle indices
+	 * @param minBounds the minimum corner of the mesh bounds
+	 * @param maxBounds the maximum corner of the mesh bounds
+	 * @param subMeshes the per-material index ranges, covering all indices
+	 * @param materialLibraries the names of the material libraries referenced by the mesh
+	 */
+	public MeshData(FloatBuffer positions, FloatBuffer textureCoords, FloatBuffer normals, FloatBuffer tangents, IntBuffer indices, Vector3f minBounds,
+			Vector3f maxBounds, SubMesh[] subMeshes, String[] materialLibraries) {
+		this(positions, textureCoords, normals, tangents, indices, minBounds, maxBounds, subMeshes, materialLibraries, new Meshlet[0]);
+	}
+	
+	/**
+	 * Construct a new mesh without tangents from the given attribute buffers,
+	 * precomputed axis-aligned bounds and sub-meshes
+	 * 
+	 * @param positions the vertex positions (3 components per vertex)
+	 * @param textureCoords the texture coordinates (2 components per vertex)
+	 * @param normals the vertex normals (3 components per vertex)
+	 * @param indices the triangle indices
+	 * @param minBounds the minimum corner of the mesh bounds
+	 * @param maxBounds the maximum corner of the mesh bounds
+	 * @param subMeshes the per-material index ranges, covering all indices
+	 * @param materialLibraries the names of the material libraries referenced by the mesh
+	 */
+	public MeshData(FloatBuffer positions, FloatBuffer textureCoords, FloatBuffer normals, IntBuffer indices, Vector3f minBounds, Vector3f maxBounds,
+			SubMesh[] subMeshes, String[] materialLibraries) {
+		this(positions, textureCoords, normals, null, indices, minBounds, maxBounds, subMeshes, materialLibraries);
+	}
+	
+	/**
+	 * Construct a new mesh from the given attribute buffers and precomputed
+	 * axis-aligned bounds. All indices belong to a single sub-mesh
+	 * 
+	 * @param positions the vertex positions (3 components per vertex)
+	 * @param textureCoords the texture coordinates (2 components per vertex)
+	 * @param normals the vertex normals (3 components per vertex)
+	 * @param indices the triangle indices
+	 * @param minBounds the minimum corner of the mesh bounds
+	 * @param maxBounds the maximum corner of the mesh bounds
+	 */
+	public MeshData(FloatBuffer positions, FloatBuffer textureCoords, FloatBuffer normals, IntBuffer indices, Vector3f minBounds, Vector3f maxBounds) {
+		this(positions, textureCoords, normals, indices, minBounds, maxBounds, new SubMesh[] { new SubMesh(null, 0, indices.limit()) }, new String[0]);
+	}
+	
+	/**
+	 * Construct a new mesh from the given attribute buffers and sub-meshes. The
+	 * bounds of the mesh are calculated from its positions
+	 * 
+	 * @param positions the vertex positions (3 components per vertex)
+	 * @param textureCoords the texture coordinates (2 components per vertex)
+	 * @param normals the vertex normals (3 components per vertex)
+	 * @param indices the triangle indices
+	 * @param subMeshes the per-material index ranges, covering all indices
+	 * @param materialLibraries the names of the material libraries referenced by the mesh
+	 */
+	public MeshData(FloatBuffer positions, FloatBuffer textureCoords, FloatBuffer normals, IntBuffer indices, SubMesh[] subMeshes, String[] materialLibraries) {
+		this(positions, textureCoords, normals, indices, new Vector3f(), new Vector3f(), subMeshes, materialLibraries);
+		
+		int length = positions.limit();
+		if (length == 0) return;
+		
+		this.minBounds.set(Float.POSITIVE_INFINITY);
+		this.maxBounds.set(Float.NEGATIVE_INFINITY);
+		for (int i = 0; i < length; i += 3) {
+			float x = positions.get(i), y = positions.get(i + 1), z = positions.get(i + 2);
+			this.minBounds.set(Math.min(minBounds.x, x), Math.min(minBounds.y, y), Math.min(minBounds.z, z));
+			this.maxBounds.set(Math.max(maxBounds.x, x), Math.max(maxBounds.y, y), Math.max(maxBounds.z, z));
+		}
+	}
+	
+	/**
+	 * Construct a new mesh from the given attribute buffers. The bounds of the
+	 * mesh are calculated from its positions and all indices belong to a single
+	 * sub-mesh
+	 * 
+	 * @param positions the vertex positions (3 components per vertex)
+	 * @param textureCoords the texture coordinates (2 components per vertex)
+	 * @param normals the vertex normals (3 components per vertex)
+	 * @param indices the triangle indices
+	 */
+	public MeshData(FloatBuffer positions, FloatBuffer textureCoords, FloatBuffer normals, IntBuffer indices) {
+		this(positions, textureCoords, normals, indices, new SubMesh[] { new SubMesh(null, 0, indices.limit()) }, new String[0]);
+	}
+	
+	/**
+	 * Create a new mesh which takes ownership of the given buffers. Every buffer
+	 * must have been allocated with {@link MemoryUtil} (i.e. memAllocFloat), and
+	 * is freed along with the mesh by {@link #free()}
+	 * 
+	 * @param positions the vertex positions (3 components per vertex)
+	 * @param textureCoords the texture coordinates (2 components per vertex)
+	 * @param normals the vertex normals (3 components per vertex)
+	 * @param indices the triangle indices
+	 * @param minBounds the minimum corner of the mesh bounds
+	 * @param maxBounds the maximum corner of the mesh bounds
+	 * @param subMeshes the per-material index ranges, covering all indices
+	 * @param materialLibraries the names of the material libraries referenced by the mesh
+	 * 
+	 * @return the new mesh
+	 */
+	public static MeshData ofNativeMemory(FloatBuffer positions, FloatBuffer textureCoords, FloatBuffer normals, IntBuffer indices, Vector3f minBounds,
+			Vector3f maxBounds, SubMesh[] subMeshes, String[] materialLibraries) {
+		MeshData data = new MeshData(positions, textureCoords, normals, indices, minBounds, maxBounds, subMeshes, materialLibraries);
+		data.ownsMemory = true;
+		return data;
+	}
+	
+	/**
+	 * Get the vertex positions of this mesh
+	 * 
+	 * @return the positions
+	 */
+	public FloatBuffer getPositions() {
+		return positions;
+	}
+	
+	/**
+	 * Get the texture coordinates of this mesh
+	 * 
+	 * @return the texture coordinates
+	 */
+	public FloatBuffer getTextureCoords() {
+		return textureCoords;
+	}
+	
+	/**
+	 * Get the vertex normals of this mesh
+	 * 
+	 * @return the normals
+	 */
+	public FloatBuffer getNormals() {
+		return normals;
+	}
+	
+	/**
+	 * Get the vertex tangents of this mesh. The w component of each tangent holds
+	 * the handedness of its tangent frame. See {@link TangentSpaceGenerator}
+	 * 
+	 * @return the tangents, or null if the mesh has none
+	 */
+	public FloatBuffer getTangents() {
+		return tangents;
+	}
+	
+	/**
+	 * Check whether this mesh has vertex tangents
+	 * 
+	 * @return true if tangents are present, false otherwise
+	 */
+	public boolean hasTangents() {
+		return tangents != null;
+	}
+	
+	/**
+	 * Create a copy of this mesh with the given tangents. The copy shares all other
+	 * buffers with this mesh. If this mesh owns native memory, ownership is passed
+	 * to the copy and this mesh must no longer be used
+	 * 
+	 * @param tangents the vertex tangents (4 components per vertex)
+	 * @return the new mesh
+	 */
+	public MeshData withTangents(FloatBuffer tangents) {
+		if (ownsMemory && this.tangents != null && this.tangents != tangents) {
+			free(this.tangents);
+		}
+		
+		return this.transferTo(new MeshData(positions, textureCoords, normals, tangents, indices, minBounds, maxBounds, subMeshes, materialLibraries, meshlets));
+	}
+	
+	/**
+	 * Create a copy of this mesh with reordered indices and the meshlets into
+	 * which they are split. The indices must keep every sub-mesh's range intact.
+	 * The copy shares all other buffers with this mesh. If this mesh owns native
+	 * memory, its replaced indices are freed, ownership of the remaining buffers
+	 * is passed to the copy and this mesh must no longer be used
+	 * 
+	 * @param indices the reordered triangle indices
+	 * @param meshlets the meshlets
+	 * 
+	 * @return the new mesh
+	 */
+	public MeshData withIndices(IntBuffer indices, Meshlet[] meshlets) {
+		if (ownsMemory && this.indices != indices) {
+			free(this.indices);
+		}
+		
+		return this.transferTo(new MeshData(positions, textureCoords, normals, tangents, indices, minBounds, maxBounds, subMeshes, materialLibraries, meshlets));
+	}
+	
+	/**
+	 * Get the triangle indices of this mesh
+	 * 
+	 * @return the indices
+	 */
+	public IntBuffer getIndices() {
+		return indices;
+	}
+	
+	/**
+	 * Get the minimum corner of this mesh's axis-aligned bounding box
+	 * 
+	 * @return the minimum bounds
+	 */
+	public Vector3f getMinBounds() {
+		return minBounds;
+	}
+	
+	/**
+	 * Get the maximum corner of this mesh's axis-aligned bounding box
+	 * 
+	 * @return the maximum bounds
+	 */
+	public Vector3f getMaxBounds() {
+		return maxBounds;
+	}
+	
+	/**
+	 * Get the per-material index ranges of this mesh
+	 * 
+	 * @return the sub-meshes
+	 */
+	public SubMesh[] getSubMeshes() {
+		return subMeshes;
+	}
+	
+	/**
+	 * Get the names of the material libraries referenced by this mesh, relative
+	 * to the mesh file
+	 * 
+	 * @return the material library names
+	 */
+	public String[] getMaterialLibraries() {
+		return materialLibraries;
+	}
+	
+	/**
+	 * Get the clusters into which this mesh's indices are split. See {@link MeshletBuilder}
+	 * 
+	 * @return the meshlets, or an empty array if none
+	 */
+	public Meshlet[] getMeshlets() {
+		return meshlets;
+	}
+	
+	/**
+	 * Check whether this mesh is split into meshlets
+	 * 
+	 * @return true if meshlets are present, false otherwise
+	 */
+	public boolean hasMeshlets() {
+		return meshlets.length > 0;
+	}
+	
+	/**
+	 * Get the amount of vertices in this mesh
+	 * 
+	 * @return the vertex count
+	 */
+	public int getVertexCount() {
+		return positions.limit() / 3;
+	}
+	
+	/**
+	 * Get the amount of indices in this mesh
+	 * 
+	 * @return the index count
+	 */
+	public int getIndexCount() {
+		return indices.limit();
+	}
+	
+	/**
+	 * Get the statistics of the welding of this mesh's face corners into unique
+	 * vertices. Only present on meshes imported from a file, and kept by the
+	 * processing stages which preserve the mesh's vertices
+	 * 
+	 * @return the weld statistics, or null if the mesh was not welded on import
+	 */
+	public WeldStatistics getWeldStatistics() {
+		return weldStatistics;
+	}
+	
+	void setWeldStatistics(WeldStatistics weldStatistics) {
+		this.weldStatistics = weldStatistics;
+	}
+	
+	/**
+	 * Get the vertex cache efficiency of this mesh before and after it was
+	 * reordered by the {@link MeshOptimizer}. Kept by the processing stages which
+	 * follow the optimizer
+	 * 
+	 * @return the optimization statistics, or null if the mesh was not optimized
+	 */
+	public OptimizationStatistics getOptimizationStatistics() {
+		return optimizationStatistics;
+	}
+	
+	void setOptimizationStatistics(OptimizationStatistics optimizationStatistics) {
+		this.optimizationStatistics = optimizationStatistics;
+	}
+	
+	/**
+	 * Check whether this mesh owns native memory which must be released with
+	 * {@link #free()}
+	 * 
+	 * @return true if native memory is owned, false otherwise
+	 */
+	public boolean ownsMemory() {
+		return ownsMemory;
+	}
+	
+	/**
+	 * Free the native memory owned by this mesh. Upon calling this method, the
+	 * buffers of this mesh, and of any packed mesh viewing them, are no longer
+	 * usable. Has no effect if this mesh owns no native memory
+	 */
+	public void free() {
+		if (!ownsMemory) return;
+		
+		free(positions);
+		free(textureCoords);
+		free(normals);
+		free(tangents);
+		free(indices);
+		this.ownsMemory = false;
+	}
+	
+	private MeshData transferTo(MeshData copy) {
+		copy.ownsMemory = ownsMemory;
+		copy.weldStatistics = weldStatistics;
+		copy.optimizationStatistics = optimizationStatistics;
+		this.ownsMemory = false;
+		return copy;
+	}
+	
+	// Buffers added by processing stages may live on the heap, and are left to the garbage collector
+	private static void free(Buffer buffer) {
+		if (buffer != null && buffer.isDirect()) {
+			MemoryUtil.memFree(buffer);
+		}
+	}
+	
+}
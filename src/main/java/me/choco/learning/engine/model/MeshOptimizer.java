@@ -0,0 +1,474 @@
+package me.choco.learning.engine.model;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.lwjgl.system.MemoryUtil;
+
+import me.choco.learning.engine.buffer.VertexLayout;
+
+/**
+ * A post-import optimization stage which reorders a mesh for the GPU. Three
+ * passes are applied in order:
+ * <ol>
+ *   <li>Triangles are reordered to maximize post-transform vertex cache hits
+ *   using Tom Forsyth's linear-speed vertex cache optimization</li>
+ *   <li>Runs of triangles which already start with a cold cache are sorted so
+ *   that outward facing clusters are drawn first, reducing overdraw without
+ *   affecting cache efficiency (as in Sander et al., "Tipsify")</li>
+ *   <li>Vertices are remapped into the order in which they are first referenced
+ *   to improve vertex fetch locality. Unreferenced vertices are dropped</li>
+ * </ol>
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class MeshOptimizer {
+	
+	/** The size of the FIFO cache simulated when reporting ACMR and ATVR */
+	public static final int ANALYSIS_CACHE_SIZE = 16;
+	
+	/** The size in bytes of a cache line when analyzing vertex fetch */
+	public static final int FETCH_CACHE_LINE_SIZE = 64;
+	
+	/** The amount of cache lines in the FIFO cache simulated when analyzing vertex fetch */
+	public static final int FETCH_CACHE_LINES = 128;
+	
+	private static final int CACHE_SIZE = 32;
+	private static final int MAX_VALENCE = 64;
+	
+	private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+	private static final float[] VALENCE_SCORES = new float[MAX_VALENCE + 1];
+	
+	static {
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			// The last triangle's vertices are scored equally so that strips aren't preferred
+			CACHE_SCORES[i] = (i < 3) ? 0.75f : (float) Math.pow(1.0 - (i - 3) / (double) (CACHE_SIZE - 3), 1.5);
+		}
+		
+		for (int i = 1; i <= MAX_VALENCE; i++) {
+			VALENCE_SCORES[i] = 2.0f * (float) Math.pow(i, -0.5);
+		}
+	}
+	
+	private MeshOptimizer() {}
+	
+	/**
+	 * Optimize the given mesh. The ACMR and ATVR of the mesh before and after
+	 * optimizing are available from {@link MeshData#getOptimizationStatistics()}
+	 * on the optimized mesh. If the given mesh owns native memory, so does the
+	 * optimized mesh. The given mesh is left untouched and must still be freed
+	 * 
+	 * @param data the mesh to optimize
+	 * @return the optimized mesh
+	 */
+	public static MeshData optimize(MeshData data) {
+		int vertexCount = data.getVertexCount();
+		int[] indices = new int[data.getIndexCount()];
+		data.getIndices().duplicate().get(indices);
+		
+		float[] positions = new float[vertexCount * 3];
+		data.getPositions().duplicate().get(positions);
+		
+		float acmrBefore = calculateACMR(indices, vertexCount), atvrBefore = calculateATVR(indices, vertexCount);
+		
+		// Triangles are only reordered within their sub-mesh so that material ranges are preserved
+		for (SubMesh subMesh : data.getSubMeshes()) {
+			int[] range = Arrays.copyOfRange(indices, subMesh.getIndexOffset(), subMesh.getIndexOffset() + subMesh.getIndexCount());
+			range = optimizeVertexCache(range, vertexCount);
+			range = optimizeOverdraw(range, positions);
+			System.arraycopy(range, 0, indices, subMesh.getIndexOffset(), range.length);
+		}
+		
+		int[] remap = new int[vertexCount];
+		int uniqueVertices = optimizeVertexFetch(indices, remap);
+		float acmrAfter = calculateACMR(indices, uniqueVertices), atvrAfter = calculateATVR(indices, uniqueVertices);
+		
+		boolean nativeMemory = data.ownsMemory();
+		FloatBuffer positionsOut = remapAttribute(data.getPositions(), 3, remap, uniqueVertices, nativeMemory);
+		FloatBuffer textureCoordsOut = remapAttribute(data.getTextureCoords(), 2, remap, uniqueVertices, nativeMemory);
+		FloatBuffer normalsOut = remapAttribute(data.getNormals(), 3, remap, uniqueVertices, nativeMemory);
+		FloatBuffer tangentsOut = data.hasTangents() ? remapAttribute(data.getTangents(), 4, remap, uniqueVertices, nativeMemory) : null;
+		
+		MeshData optimized;
+		if (!nativeMemory) {
+			optimized = new MeshData(positionsOut, textureCoordsOut, normalsOut, tangentsOut, IntBuffer.wrap(indices), data.getMinBounds(), data.getMaxBounds(),
+				data.getSubMeshes(), data.getMaterialLibraries());
+		}
+		else {
+			IntBuffer indicesOut = MemoryUtil.memAllocInt(Math.max(indices.length, 1));
+			indicesOut.put(indices).flip();
+			
+			optimized = MeshData.ofNativeMemory(positionsOut, textureCoordsOut, normalsOut, indicesOut, data.getMinBounds(), data.getMaxBounds(),
+				data.getSubMeshes(), data.getMaterialLibraries());
+			if (tangentsOut != null) {
+				optimized = optimized.withTangents(tangentsOut);
+			}
+		}
+		
+		optimized.setWeldStatistics(data.getWeldStatistics());
+		optimized.setOptimizationStatistics(new OptimizationStatistics(acmrBefore, acmrAfter, atvrBefore, atvrAfter));
+		return optimized;
+	}
+	
+	/**
+	 * Calculate the average cache miss ratio (misses per triangle) of the given
+	 * indices with a FIFO cache of {@link #ANALYSIS_CACHE_SIZE} entries. 0.5 is
+	 * the best possible value on a regular grid, 3.0 is the worst
+	 * 
+	 * @param indices the triangle indices
+	 * @param vertexCount the amount of vertices referenced by the indices
+	 * 
+	 * @return the ACMR
+	 */
+	public static float calculateACMR(int[] indices, int vertexCount) {
+		return (indices.length == 0) ? 0 : countCacheMisses(indices, vertexCount) / (indices.length / 3.0f);
+	}
+	
+	/**
+	 * Calculate the average transform to vertex ratio (misses per vertex) of the
+	 * given indices with a FIFO cache of {@link #ANALYSIS_CACHE_SIZE} entries. 1.0
+	 * is the best possible value, where each vertex is transformed exactly once
+	 * 
+	 * @param indices the triangle indices
+	 * @param vertexCount the amount of vertices referenced by the indices
+	 * 
+	 * @return the ATVR
+	 */
+	public static float calculateATVR(int[] indices, int vertexCount) {
+		return (vertexCount == 0) ? 0 : countCacheMisses(indices, vertexCount) / (float) vertexCount;
+	}
+	
+	/**
+	 * Calculate the vertex fetch overfetch of the given indices when reading the
+	 * leading attributes of the given layout. Vertices which miss a FIFO cache of
+	 * {@link #ANALYSIS_CACHE_SIZE} entries are fetched through a FIFO cache of
+	 * {@link #FETCH_CACHE_LINES} lines of {@link #FETCH_CACHE_LINE_SIZE} bytes.
+	 * The result is the amount of bytes read from memory divided by the size of
+	 * the attributes read. 1.0 is the best possible value, where every byte is
+	 * read exactly once
+	 * 
+	 * @param indices the triangle indices
+	 * @param vertexCount the amount of vertices referenced by the indices
+	 * @param layout the layout of the vertex buffers
+	 * @param attributeCount the amount of leading attributes read (i.e. 1 for a
+	 * depth-only pass reading positions)
+	 * 
+	 * @return the overfetch
+	 */
+	public static float calculateOverfetch(int[] indices, int vertexCount, VertexLayout layout, int attributeCount) {
+		if (vertexCount == 0 || attributeCount == 0) return 0;
+		
+		// Buffers are placed one after the other, each starting on a new cache line
+		long[] bufferStarts = new long[layout.getBufferCount()];
+		long totalLines = 0;
+		for (int buffer = 0; buffer < bufferStarts.length; buffer++) {
+			bufferStarts[buffer] = totalLines * FETCH_CACHE_LINE_SIZE;
+			totalLines += ((long) vertexCount * layout.getStride(buffer) + FETCH_CACHE_LINE_SIZE - 1) / FETCH_CACHE_LINE_SIZE;
+		}
+		
+		int vertexSize = 0;
+		for (int attribute = 0; attribute < attributeCount; attribute++) {
+			vertexSize += layout.getAttribute(attribute).getStride();
+		}
+		
+		int[] vertexTimestamps = new int[vertexCount], lineTimestamps = new int[(int) totalLines];
+		int vertexTime = ANALYSIS_CACHE_SIZE + 1, lineTime = FETCH_CACHE_LINES + 1;
+		long fetchedLines = 0;
+		
+		for (int index : indices) {
+			if (vertexTime - vertexTimestamps[index] <= ANALYSIS_CACHE_SIZE) continue;
+			vertexTimestamps[index] = vertexTime++;
+			
+			for (int attribute = 0; attribute < attributeCount; attribute++) {
+				int buffer = layout.getBuffer(attribute);
+				long start = bufferStarts[buffer] + (long) index * layout.getStride(buffer) + layout.getOffset(attribute);
+				long end = start + layout.getAttribute(attribute).getStride() - 1;
+				
+				for (long line = start / FETCH_CACHE_LINE_SIZE; line <= end / FETCH_CACHE_LINE_SIZE; line++) {
+					if (lineTime - lineTimestamps[(int) line] <= FETCH_CACHE_LINES) continue;
+					
+					lineTimestamps[(int) line] = lineTime++;
+					fetchedLines++;
+				}
+			}
+		}
+		
+		return (fetchedLines * FETCH_CACHE_LINE_SIZE) / (float) ((long) vertexCount * vertexSize);
+	}
+	
+	private static int countCacheMisses(int[] indices, int vertexCount) {
+		int[] timestamps = new int[vertexCount];
+		int time = ANALYSIS_CACHE_SIZE + 1, misses = 0;
+		
+		for (int index : indices) {
+			// A vertex is cached if it was inserted within the last CACHE_SIZE insertions
+			if (time - timestamps[index] > ANALYSIS_CACHE_SIZE) {
+				timestamps[index] = time++;
+				misses++;
+			}
+		}
+		
+		return misses;
+	}
+	
+	static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+		int triangleCount = indices.length / 3;
+		if (triangleCount == 0) return indices;
+		
+		// Build the vertex -> triangle adjacency
+		int[] offsets = new int[vertexCount + 1];
+		for (int index : indices) {
+			offsets[index + 1]++;
+		}
+		for (int i = 0; i < vertexCount; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		
+		int[] remaining = new int[vertexCount];
+		int[] adjacency = new int[indices.length];
+		for (int i = 0; i < indices.length; i++) {
+			int vertex = indices[i];
+			adjacency[offsets[vertex] + remaining[vertex]++] = i / 3;
+		}
+		
+		int[] cachePositions = new int[vertexCount];
+		float[] vertexScores = new float[vertexCount];
+		Arrays.fill(cachePositions, -1);
+		for (int i = 0; i < vertexCount; i++) {
+			vertexScores[i] = vertexScore(-1, remaining[i]);
+		}
+		
+		float[] triangleScores = new float[triangleCount];
+		boolean[] emitted = new boolean[triangleCount];
+		int best = 0;
+		for (int i = 0; i < triangleCount; i++) {
+			triangleScores[i] = vertexScores[indices[i * 3]] + vertexScores[indices[i * 3 + 1]] + vertexScores[indices[i * 3 + 2]];
+			if (triangleScores[i] > triangleScores[best]) {
+				best = i;
+			}
+		}
+		
+		int[] cache = new int[CACHE_SIZE + 3], newCache = new int[CACHE_SIZE + 3];
+		int cacheSize = 0, scanCursor = 0;
+		int[] result = new int[indices.length];
+		
+		for (int output = 0; output < triangleCount; output++) {
+			// No candidate in the cache. Fall back to the next triangle in input order
+			if (best < 0) {
+				while (emitted[scanCursor]) scanCursor++;
+				best = scanCursor;
+			}
+			
+			int a = indices[best * 3], b = indices[best * 3 + 1], c = indices[best * 3 + 2];
+			result[output * 3] = a;
+			result[output * 3 + 1] = b;
+			result[output * 3 + 2] = c;
+			emitted[best] = true;
+			
+			removeAdjacency(a, best, offsets, adjacency, remaining);
+			removeAdjacency(b, best, offsets, adjacency, remaining);
+			removeAdjacency(c, best, offsets, adjacency, remaining);
+			
+			// Push the triangle's vertices to the front of the LRU cache
+			int newCacheSize = 0;
+			newCache[newCacheSize++] = a;
+			newCache[newCacheSize++] = b;
+			newCache[newCacheSize++] = c;
+			for (int i = 0; i < cacheSize; i++) {
+				int vertex = cache[i];
+				if (vertex != a && vertex != b && vertex != c) {
+					newCache[newCacheSize++] = vertex;
+				}
+			}
+			
+			int[] swap = cache;
+			cache = newCache;
+			newCache = swap;
+			
+			// Update the scores of all touched vertices, including those just evicted
+			for (int i = 0; i < newCacheSize; i++) {
+				int vertex = cache[i];
+				cachePositions[vertex] = (i < CACHE_SIZE) ? i : -1;
+				vertexScores[vertex] = vertexScore(cachePositions[vertex], remaining[vertex]);
+			}
+			
+			// Rescore the pending triangles of cached vertices and pick the best candidate
+			best = -1;
+			float bestScore = 0;
+			for (int i = 0; i < newCacheSize; i++) {
+				int vertex = cache[i];
+				for (int j = offsets[vertex], end = offsets[vertex] + remaining[vertex]; j < end; j++) {
+					int triangle = adjacency[j];
+					float score = vertexScores[indices[triangle * 3]] + vertexScores[indices[triangle * 3 + 1]] + vertexScores[indices[triangle * 3 + 2]];
+					triangleScores[triangle] = score;
+					
+					if (score > bestScore) {
+						bestScore = score;
+						best = triangle;
+					}
+				}
+			}
+			
+			cacheSize = Math.min(newCacheSize, CACHE_SIZE);
+		}
+		
+		return result;
+	}
+	
+	static int[] optimizeOverdraw(int[] indices, float[] positions) {
+		int triangleCount = indices.length / 3;
+		if (triangleCount == 0) return indices;
+		
+		// Split the triangles into clusters at points where the cache is cold anyway
+		int[] clusterStarts = new int[triangleCount + 1];
+		int clusterCount = 0;
+		
+		int[] timestamps = new int[positions.length / 3];
+		int time = ANALYSIS_CACHE_SIZE + 1;
+		for (int triangle = 0; triangle < triangleCount; triangle++) {
+			int misses = 0;
+			for (int corner = 0; corner < 3; corner++) {
+				int index = indices[triangle * 3 + corner];
+				if (time - timestamps[index] > ANALYSIS_CACHE_SIZE) {
+					timestamps[index] = time++;
+					misses++;
+				}
+			}
+			
+			if (triangle == 0 || misses == 3) {
+				clusterStarts[clusterCount++] = triangle;
+			}
+		}
+		clusterStarts[clusterCount] = triangleCount;
+		
+		// Area weighted centroid and normal of every cluster and of the whole mesh
+		float[] clusterData = new float[clusterCount * 6];
+		double meshX = 0, meshY = 0, meshZ = 0, meshArea = 0;
+		
+		for (int cluster = 0; cluster < clusterCount; cluster++) {
+			double centroidX = 0, centroidY = 0, centroidZ = 0, area = 0;
+			double normalX = 0, normalY = 0, normalZ = 0;
+			
+			for (int triangle = clusterStarts[cluster]; triangle < clusterStarts[cluster + 1]; triangle++) {
+				int a = indices[triangle * 3] * 3, b = indices[triangle * 3 + 1] * 3, c = indices[triangle * 3 + 2] * 3;
+				float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+				float e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+				
+				double nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+				double triangleArea = Math.sqrt(nx * nx + ny * ny + nz * nz) * 0.5;
+				
+				centroidX += (positions[a] + positions[b] + positions[c]) / 3.0 * triangleArea;
+				centroidY += (positions[a + 1] + positions[b + 1] + positions[c + 1]) / 3.0 * triangleArea;
+				centroidZ += (positions[a + 2] + positions[b + 2] + positions[c + 2]) / 3.0 * triangleArea;
+				normalX += nx;
+				normalY += ny;
+				normalZ += nz;
+				area += triangleArea;
+			}
+			
+			meshX += centroidX;
+			meshY += centroidY;
+			meshZ += centroidZ;
+			meshArea += area;
+			
+			double inverseArea = (area > 0) ? 1.0 / area : 0;
+			double normalLength = Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+			double inverseNormal = (normalLength > 0) ? 1.0 / normalLength : 0;
+			
+			int offset = cluster * 6;
+			clusterData[offset] = (float) (centroidX * inverseArea);
+			clusterData[offset + 1] = (float) (centroidY * inverseArea);
+			clusterData[offset + 2] = (float) (centroidZ * inverseArea);
+			clusterData[offset + 3] = (float) (normalX * inverseNormal);
+			clusterData[offset + 4] = (float) (normalY * inverseNormal);
+			clusterData[offset + 5] = (float) (normalZ * inverseNormal);
+		}
+		
+		if (meshArea > 0) {
+			meshX /= meshArea;
+			meshY /= meshArea;
+			meshZ /= meshArea;
+		}
+		
+		// Clusters facing away from the mesh centre are most likely to occlude the rest
+		long[] sortKeys = new long[clusterCount];
+		for (int cluster = 0; cluster < clusterCount; cluster++) {
+			int offset = cluster * 6;
+			float dot = (float) ((clusterData[offset] - meshX) * clusterData[offset + 3]
+					+ (clusterData[offset + 1] - meshY) * clusterData[offset + 4]
+					+ (clusterData[offset + 2] - meshZ) * clusterData[offset + 5]);
+			
+			// Sort descending by dot product, stable by cluster index
+			sortKeys[cluster] = ((long) (~sortableBits(dot) ^ 0x80000000) << 32) | cluster;
+		}
+		Arrays.sort(sortKeys);
+		
+		int[] result = new int[indices.length];
+		int output = 0;
+		for (long key : sortKeys) {
+			int cluster = (int) key;
+			int start = clusterStarts[cluster] * 3, length = (clusterStarts[cluster + 1] - clusterStarts[cluster]) * 3;
+			System.arraycopy(indices, start, result, output, length);
+			output += length;
+		}
+		
+		return result;
+	}
+	
+	static int optimizeVertexFetch(int[] indices, int[] remap) {
+		Arrays.fill(remap, -1);
+		
+		int next = 0;
+		for (int i = 0; i < indices.length; i++) {
+			int vertex = indices[i];
+			if (remap[vertex] < 0) {
+				remap[vertex] = next++;
+			}
+			
+			indices[i] = remap[vertex];
+		}
+		
+		return next;
+	}
+	
+	private static FloatBuffer remapAttribute(FloatBuffer source, int size, int[] remap, int vertexCount, boolean nativeMemory) {
+		FloatBuffer result = nativeMemory ? MemoryUtil.memAllocFloat(Math.max(vertexCount * size, 1)) : FloatBuffer.allocate(vertexCount * size);
+		for (int vertex = 0; vertex < remap.length; vertex++) {
+			int target = remap[vertex];
+			if (target < 0) continue;
+			
+			for (int component = 0; component < size; component++) {
+				result.put(target * size + component, source.get(vertex * size + component));
+			}
+		}
+		
+		result.limit(vertexCount * size);
+		return result;
+	}
+	
+	private static void removeAdjacency(int vertex, int triangle, int[] offsets, int[] adjacency, int[] remaining) {
+		int start = offsets[vertex], end = start + remaining[vertex];
+		for (int i = start; i < end; i++) {
+			if (adjacency[i] == triangle) {
+				adjacency[i] = adjacency[end - 1];
+				remaining[vertex]--;
+				return;
+			}
+		}
+	}
+	
+	private static float vertexScore(int cachePosition, int remaining) {
+		if (remaining == 0) return -1;
+		
+		float score = (cachePosition >= 0) ? CACHE_SCORES[cachePosition] : 0;
+		return score + VALENCE_SCORES[Math.min(remaining, MAX_VALENCE)];
+	}
+	
+	private static int sortableBits(float value) {
+		// Map float ordering onto unsigned int ordering
+		int bits = Float.floatToIntBits(value);
+		return bits ^ ((bits >> 31) | 0x80000000);
+	}
+	
+}
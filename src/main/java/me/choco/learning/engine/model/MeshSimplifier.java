@@ -0,0 +1,430 @@
+package me.choco.learning.engine.model;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import me.choco.learning.engine.util.FloatList;
+import me.choco.learning.engine.util.IntList;
+import me.choco.learning.engine.util.TripleIndexMap;
+
+/**
+ * Reduces the triangle count of a mesh using quadric error metrics (Garland and
+ * Heckbert, "Surface Simplification Using Quadric Error Metrics"). Edges are
+ * collapsed onto one of their existing endpoints so that no new vertices or
+ * attributes have to be interpolated. Collapses are applied in passes, cheapest
+ * first, and a pass never collapses two edges in the same neighbourhood so that
+ * triangle flips can be rejected reliably.
+ * <p>
+ * Vertices are classified by position before simplifying:
+ * <ul>
+ *   <li>vertices on an open border are locked so the silhouette of open meshes
+ *   does not erode</li>
+ *   <li>vertices split by a texture or normal seam may only collapse onto other
+ *   seam vertices, each of their attribute wedges mapping to the nearest wedge
+ *   of the target</li>
+ *   <li>all other vertices may collapse onto any neighbour</li>
+ * </ul>
+ * A simplifier may be reused to generate several levels of detail from the same
+ * source mesh
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class MeshSimplifier {
+	
+	private static final byte KIND_MANIFOLD = 0, KIND_SEAM = 1, KIND_LOCKED = 2;
+	
+	/** The minimum cosine between a triangle's normal before and after a collapse */
+	private static final float MIN_NORMAL_SIMILARITY = 0.25f;
+	
+	private static final int QUADRIC_SIZE = 11;
+	
+	private final float[] positions, textureCoords, normals;
+	private final int[] sourceIndices, sourceTriangleSubMeshes;
+	private final int vertexCount;
+	private final SubMesh[] subMeshes;
+	private final String[] materialLibraries;
+	
+	private final int[] positionRemap, wedges;
+	private final byte[] kinds;
+	private final double[] quadrics;
+	
+	private float error;
+	
+	/**
+	 * Construct a new simplifier for the given source mesh. Vertices are welded
+	 * by position and their error quadrics are calculated immediately
+	 * 
+	 * @param data the mesh to simplify
+	 */
+	public MeshSimplifier(MeshData data) {
+		this.vertexCount = data.getVertexCount();
+		this.positions = toArray(data.getPositions(), vertexCount * 3);
+		this.textureCoords = toArray(data.getTextureCoords(), vertexCount * 2);
+		this.normals = toArray(data.getNormals(), vertexCount * 3);
+		
+		this.sourceIndices = new int[data.getIndexCount()];
+		IntBuffer indices = data.getIndices().duplicate();
+		indices.position(0);
+		indices.get(sourceIndices);
+		
+		this.subMeshes = data.getSubMeshes();
+		this.materialLibraries = data.getMaterialLibraries();
+		this.sourceTriangleSubMeshes = new int[sourceIndices.length / 3];
+		for (int i = 0; i < subMeshes.length; i++) {
+			int firstTriangle = subMeshes[i].getIndexOffset() / 3;
+			Arrays.fill(sourceTriangleSubMeshes, firstTriangle, firstTriangle + subMeshes[i].getIndexCount() / 3, i);
+		}
+		
+		// Weld vertices sharing a position into circular lists of wedges
+		this.positionRemap = new int[vertexCount];
+		this.wedges = new int[vertexCount];
+		TripleIndexMap positionIndices = new TripleIndexMap(vertexCount);
+		
+		for (int i = 0; i < vertexCount; i++) {
+			int x = Float.floatToIntBits(positions[i * 3] + 0.0f), y = Float.floatToIntBits(positions[i * 3 + 1] + 0.0f), z = Float.floatToIntBits(positions[i * 3 + 2] + 0.0f);
+			int existing = positionIndices.putIfAbsent(x, y, z, i);
+			
+			if (existing < 0) {
+				this.positionRemap[i] = i;
+				this.wedges[i] = i;
+			}
+			else {
+				this.positionRemap[i] = existing;
+				this.wedges[i] = wedges[existing];
+				this.wedges[existing] = i;
+			}
+		}
+		
+		this.kinds = classifyVertices();
+		this.quadrics = calculateQuadrics();
+	}
+	
+	/**
+	 * Simplify the source mesh until it has at most the given amount of indices,
+	 * or until no further edge may be collapsed
+	 * 
+	 * @param targetIndexCount the desired amount of indices
+	 * @return the simplified mesh
+	 */
+	public MeshData simplify(int targetIndexCount) {
+		int[] indices = sourceIndices.clone(), triangleSubMeshes = sourceTriangleSubMeshes.clone();
+		int indexCount = indices.length;
+		double[] quadrics = this.quadrics.clone();
+		
+		int[] collapseRemap = new int[vertexCount];
+		boolean[] touched = new boolean[vertexCount];
+		int[] adjacencyOffsets = new int[vertexCount + 1], adjacency = new int[indexCount];
+		double maxCost = 0;
+		
+		while (indexCount > targetIndexCount) {
+			// Gather the unique edges between distinct positions and the cost of their cheapest valid collapse
+			TripleIndexMap edges = new TripleIndexMap(indexCount);
+			IntList collapseFrom = new IntList(indexCount / 2), collapseTo = new IntList(indexCount / 2);
+			FloatList collapseCosts = new FloatList(indexCount / 2);
+			
+			for (int i = 0; i < indexCount; i++) {
+				int a = positionRemap[indices[i]], b = positionRemap[indices[(i % 3 == 2) ? i - 2 : i + 1]];
+				if (a == b || edges.putIfAbsent(Math.min(a, b), Math.max(a, b), 0, 0) >= 0) continue;
+				
+				double costAB = canCollapse(a, b) ? evaluate(quadrics, a, b) : Double.POSITIVE_INFINITY;
+				double costBA = canCollapse(b, a) ? evaluate(quadrics, b, a) : Double.POSITIVE_INFINITY;
+				if (costAB == Double.POSITIVE_INFINITY && costBA == Double.POSITIVE_INFINITY) continue;
+				
+				collapseFrom.add(costAB <= costBA ? a : b);
+				collapseTo.add(costAB <= costBA ? b : a);
+				collapseCosts.add((float) Math.max(Math.min(costAB, costBA), 0));
+			}
+			
+			int candidateCount = collapseCosts.size();
+			if (candidateCount == 0) break;
+			
+			// Costs are non-negative, so their bits sort in the same order as their values
+			long[] order = new long[candidateCount];
+			for (int i = 0; i < candidateCount; i++) {
+				order[i] = ((long) Float.floatToIntBits(collapseCosts.get(i)) << 32) | i;
+			}
+			
+			Arrays.sort(order);
+			this.buildAdjacency(indices, indexCount, adjacencyOffsets, adjacency);
+			
+			for (int i = 0; i < vertexCount; i++) {
+				collapseRemap[i] = i;
+			}
+			
+			Arrays.fill(touched, false);
+			
+			// An interior collapse removes two triangles
+			int removableTriangles = (indexCount - targetIndexCount) / 3, collapses = 0;
+			for (int i = 0; i < candidateCount && collapses * 2 < removableTriangles; i++) {
+				int candidate = (int) order[i];
+				int from = collapseFrom.get(candidate), to = collapseTo.get(candidate);
+				if (touched[from] || touched[to] || flipsTriangles(indices, adjacencyOffsets, adjacency, from, to)) continue;
+				
+				// Map every attribute wedge of the collapsed position onto the closest wedge of the target
+				int wedge = from;
+				do {
+					collapseRemap[wedge] = closestWedge(wedge, to);
+					wedge = wedges[wedge];
+				} while (wedge != from);
+				
+				for (int j = 0; j < QUADRIC_SIZE; j++) {
+					quadrics[to * QUADRIC_SIZE + j] += quadrics[from * QUADRIC_SIZE + j];
+				}
+				
+				// Lock the neighbourhood so that later collapses in this pass see unchanged geometry
+				for (int j = adjacencyOffsets[from]; j < adjacencyOffsets[from + 1]; j++) {
+					int triangle = adjacency[j] * 3;
+					touched[positionRemap[indices[triangle]]] = true;
+					touched[positionRemap[indices[triangle + 1]]] = true;
+					touched[positionRemap[indices[triangle + 2]]] = true;
+				}
+				
+				maxCost = Math.max(maxCost, collapseCosts.get(candidate));
+				collapses++;
+			}
+			
+			if (collapses == 0) break;
+			
+			// Apply the collapses and drop triangles which have become degenerate
+			int written = 0;
+			for (int i = 0; i < indexCount; i += 3) {
+				int a = collapseRemap[indices[i]], b = collapseRemap[indices[i + 1]], c = collapseRemap[indices[i + 2]];
+				int positionA = positionRemap[a], positionB = positionRemap[b], positionC = positionRemap[c];
+				if (positionA == positionB || positionB == positionC || positionC == positionA) continue;
+				
+				triangleSubMeshes[written / 3] = triangleSubMeshes[i / 3];
+				indices[written++] = a;
+				indices[written++] = b;
+				indices[written++] = c;
+			}
+			
+			indexCount = written;
+		}
+		
+		this.error = (float) Math.sqrt(maxCost);
+		return compact(indices, indexCount, triangleSubMeshes);
+	}
+	
+	/**
+	 * Get the geometric error introduced by the last call to {@link #simplify(int)},
+	 * expressed as an approximate distance in model space
+	 * 
+	 * @return the simplification error
+	 */
+	public float getError() {
+		return error;
+	}
+	
+	private byte[] classifyVertices() {
+		byte[] kinds = new byte[vertexCount];
+		TripleIndexMap edges = new TripleIndexMap(sourceIndices.length);
+		
+		for (int i = 0; i < sourceIndices.length; i++) {
+			int a = positionRemap[sourceIndices[i]], b = positionRemap[sourceIndices[(i % 3 == 2) ? i - 2 : i + 1]];
+			edges.putIfAbsent(a, b, 0, 0);
+		}
+		
+		// An edge without a matching opposite half-edge lies on an open border
+		for (int i = 0; i < sourceIndices.length; i++) {
+			int a = positionRemap[sourceIndices[i]], b = positionRemap[sourceIndices[(i % 3 == 2) ? i - 2 : i + 1]];
+			if (edges.get(b, a, 0) < 0) {
+				kinds[a] = KIND_LOCKED;
+				kinds[b] = KIND_LOCKED;
+			}
+		}
+		
+		for (int i = 0; i < vertexCount; i++) {
+			if (positionRemap[i] == i && kinds[i] != KIND_LOCKED && wedges[i] != i) {
+				kinds[i] = KIND_SEAM;
+			}
+		}
+		
+		return kinds;
+	}
+	
+	private double[] calculateQuadrics() {
+		double[] quadrics = new double[vertexCount * QUADRIC_SIZE];
+		
+		for (int i = 0; i < sourceIndices.length; i += 3) {
+			int a = positionRemap[sourceIndices[i]], b = positionRemap[sourceIndices[i + 1]], c = positionRemap[sourceIndices[i + 2]];
+			
+			double abX = positions[b * 3] - positions[a * 3], abY = positions[b * 3 + 1] - positions[a * 3 + 1], abZ = positions[b * 3 + 2] - positions[a * 3 + 2];
+			double acX = positions[c * 3] - positions[a * 3], acY = positions[c * 3 + 1] - positions[a * 3 + 1], acZ = positions[c * 3 + 2] - positions[a * 3 + 2];
+			double nX = abY * acZ - abZ * acY, nY = abZ * acX - abX * acZ, nZ = abX * acY - abY * acX;
+			
+			double length = Math.sqrt(nX * nX + nY * nY + nZ * nZ);
+			if (length == 0) continue;
+			
+			nX /= length;
+			nY /= length;
+			nZ /= length;
+			double d = -(nX * positions[a * 3] + nY * positions[a * 3 + 1] + nZ * positions[a * 3 + 2]);
+			double area = length * 0.5;
+			
+			// Each plane is weighted by the area of its triangle
+			double[] plane = { nX * nX, nX * nY, nX * nZ, nX * d, nY * nY, nY * nZ, nY * d, nZ * nZ, nZ * d, d * d, 1 };
+			for (int vertex : new int[] { a, b, c }) {
+				for (int j = 0; j < QUADRIC_SIZE; j++) {
+					quadrics[vertex * QUADRIC_SIZE + j] += plane[j] * area;
+				}
+			}
+		}
+		
+		return quadrics;
+	}
+	
+	private boolean canCollapse(int from, int to) {
+		switch (kinds[from]) {
+		case KIND_MANIFOLD: return true;
+		case KIND_SEAM: return kinds[to] == KIND_SEAM;
+		default: return false;
+		}
+	}
+	
+	/**
+	 * Evaluate the combined quadric of two positions at the position of the
+	 * target, normalized by their combined area
+	 */
+	private double evaluate(double[] quadrics, int from, int to) {
+		int q1 = from * QUADRIC_SIZE, q2 = to * QUADRIC_SIZE;
+		double x = positions[to * 3], y = positions[to * 3 + 1], z = positions[to * 3 + 2];
+		double[] q = quadrics;
+		
+		double error = (q[q1] + q[q2]) * x * x + 2 * (q[q1 + 1] + q[q2 + 1]) * x * y + 2 * (q[q1 + 2] + q[q2 + 2]) * x * z + 2 * (q[q1 + 3] + q[q2 + 3]) * x
+				+ (q[q1 + 4] + q[q2 + 4]) * y * y + 2 * (q[q1 + 5] + q[q2 + 5]) * y * z + 2 * (q[q1 + 6] + q[q2 + 6]) * y
+				+ (q[q1 + 7] + q[q2 + 7]) * z * z + 2 * (q[q1 + 8] + q[q2 + 8]) * z
+				+ (q[q1 + 9] + q[q2 + 9]);
+		double weight = q[q1 + 10] + q[q2 + 10];
+		
+		return (weight > 0) ? error / weight : error;
+	}
+	
+	private boolean flipsTriangles(int[] indices, int[] adjacencyOffsets, int[] adjacency, int from, int to) {
+		for (int i = adjacencyOffsets[from]; i < adjacencyOffsets[from + 1]; i++) {
+			int triangle = adjacency[i] * 3;
+			int a = positionRemap[indices[triangle]], b = positionRemap[indices[triangle + 1]], c = positionRemap[indices[triangle + 2]];
+			
+			// Triangles containing the edge itself are removed by the collapse
+			if (a == to || b == to || c == to) continue;
+			
+			float[] before = normal(a, b, c, -1, -1);
+			float[] after = normal(a, b, c, from, to);
+			
+			float dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+			float lengths = (float) Math.sqrt((before[0] * before[0] + before[1] * before[1] + before[2] * before[2])
+					* (after[0] * after[0] + after[1] * after[1] + after[2] * after[2]));
+			if (dot <= MIN_NORMAL_SIMILARITY * lengths) return true;
+		}
+		
+		return false;
+	}
+	
+	private float[] normal(int a, int b, int c, int replaced, int replacement) {
+		if (a == replaced) a = replacement;
+		if (b == replaced) b = replacement;
+		if (c == replaced) c = replacement;
+		
+		float abX = positions[b * 3] - positions[a * 3], abY = positions[b * 3 + 1] - positions[a * 3 + 1], abZ = positions[b * 3 + 2] - positions[a * 3 + 2];
+		float acX = positions[c * 3] - positions[a * 3], acY = positions[c * 3 + 1] - positions[a * 3 + 1], acZ = positions[c * 3 + 2] - positions[a * 3 + 2];
+		return new float[] { abY * acZ - abZ * acY, abZ * acX - abX * acZ, abX * acY - abY * acX };
+	}
+	
+	private int closestWedge(int vertex, int target) {
+		int closest = target;
+		float closestDistance = Float.POSITIVE_INFINITY;
+		
+		int wedge = target;
+		do {
+			float distance = 0;
+			for (int i = 0; i < 2; i++) {
+				float delta = textureCoords[vertex * 2 + i] - textureCoords[wedge * 2 + i];
+				distance += delta * delta;
+			}
+			
+			for (int i = 0; i < 3; i++) {
+				float delta = normals[vertex * 3 + i] - normals[wedge * 3 + i];
+				distance += delta * delta;
+			}
+			
+			if (distance < closestDistance) {
+				closest = wedge;
+				closestDistance = distance;
+			}
+			
+			wedge = wedges[wedge];
+		} while (wedge != target);
+		
+		return closest;
+	}
+	
+	private void buildAdjacency(int[] indices, int indexCount, int[] offsets, int[] adjacency) {
+		Arrays.fill(offsets, 0);
+		for (int i = 0; i < indexCount; i++) {
+			offsets[positionRemap[indices[i]] + 1]++;
+		}
+		
+		for (int i = 0; i < vertexCount; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		
+		int[] cursors = Arrays.copyOf(offsets, vertexCount);
+		for (int i = 0; i < indexCount; i++) {
+			adjacency[cursors[positionRemap[indices[i]]]++] = i / 3;
+		}
+	}
+	
+	private MeshData compact(int[] indices, int indexCount, int[] triangleSubMeshes) {
+		// Keep the surviving vertices in their source order to preserve fetch locality
+		int[] vertexRemap = new int[vertexCount];
+		Arrays.fill(vertexRemap, -1);
+		for (int i = 0; i < indexCount; i++) {
+			vertexRemap[indices[i]] = 0;
+		}
+		
+		int newVertexCount = 0;
+		for (int i = 0; i < vertexCount; i++) {
+			if (vertexRemap[i] >= 0) {
+				vertexRemap[i] = newVertexCount++;
+			}
+		}
+		
+		float[] newPositions = new float[newVertexCount * 3], newTextureCoords = new float[newVertexCount * 2], newNormals = new float[newVertexCount * 3];
+		for (int i = 0; i < vertexCount; i++) {
+			int target = vertexRemap[i];
+			if (target < 0) continue;
+			
+			System.arraycopy(positions, i * 3, newPositions, target * 3, 3);
+			System.arraycopy(textureCoords, i * 2, newTextureCoords, target * 2, 2);
+			System.arraycopy(normals, i * 3, newNormals, target * 3, 3);
+		}
+		
+		int[] newIndices = new int[indexCount];
+		for (int i = 0; i < indexCount; i++) {
+			newIndices[i] = vertexRemap[indices[i]];
+		}
+		
+		// Triangles never move between sub-meshes, so each sub-mesh remains contiguous
+		int[] subMeshIndexCounts = new int[subMeshes.length];
+		for (int i = 0; i < indexCount / 3; i++) {
+			subMeshIndexCounts[triangleSubMeshes[i]] += 3;
+		}
+		
+		SubMesh[] newSubMeshes = new SubMesh[subMeshes.length];
+		for (int i = 0, offset = 0; i < subMeshes.length; offset += subMeshIndexCounts[i++]) {
+			newSubMeshes[i] = new SubMesh(subMeshes[i].getMaterialName(), offset, subMeshIndexCounts[i]);
+		}
+		
+		return new MeshData(FloatBuffer.wrap(newPositions), FloatBuffer.wrap(newTextureCoords), FloatBuffer.wrap(newNormals), IntBuffer.wrap(newIndices),
+				newSubMeshes, materialLibraries);
+	}
+	
+	private static float[] toArray(FloatBuffer buffer, int length) {
+		float[] array = new float[length];
+		FloatBuffer values = buffer.duplicate();
+		values.position(0);
+		values.get(array);
+		return array;
+	}
+	
+}
@@ -0,0 +1,123 @@
+package me.choco.learning.engine.model;
+
+import org.joml.Vector3f;
+
+/**
+ * Represents a small cluster of a mesh's triangles which occupies a contiguous
+ * range of its indices within a single {@link SubMesh}. Each meshlet records a
+ * bounding sphere against which it may be frustum culled, and a cone bounding
+ * the normals of its triangles with which it may be culled when every triangle
+ * faces away from the camera. All bounds are in model space
+ * 
+ * @author Parker Hawke - 2008Choco
+ * @see MeshletBuilder
+ */
+public class Meshlet {
+	
+	private final int subMesh, indexOffset, indexCount;
+	private final Vector3f center, coneAxis;
+	private final float radius, coneCutoff;
+	
+	/**
+	 * Construct a new meshlet
+	 * 
+	 * @param subMesh the index of the sub-mesh containing this meshlet
+	 * @param indexOffset the index of the first index in this meshlet
+	 * @param indexCount the amount of indices in this meshlet
+	 * @param center the center of the bounding sphere
+	 * @param radius the radius of the bounding sphere
+	 * @param coneAxis the normalized axis of the normal cone
+	 * @param coneCutoff the sine of the normal cone's half-angle, or 1 if the
+	 * meshlet can not be cone culled
+	 */
+	public Meshlet(int subMesh, int indexOffset, int indexCount, Vector3f center, float radius, Vector3f coneAxis, float coneCutoff) {
+		this.subMesh = subMesh;
+		this.indexOffset = indexOffset;
+		this.indexCount = indexCount;
+		this.center = center;
+		this.radius = radius;
+		this.coneAxis = coneAxis;
+		this.coneCutoff = coneCutoff;
+	}
+	
+	/**
+	 * Get the index of the sub-mesh containing this meshlet
+	 * 
+	 * @return the sub-mesh index
+	 */
+	public int getSubMesh() {
+		return subMesh;
+	}
+	
+	/**
+	 * Get the index of the first index in this meshlet
+	 * 
+	 * @return the index offset
+	 */
+	public int getIndexOffset() {
+		return indexOffset;
+	}
+	
+	/**
+	 * Get the amount of indices in this meshlet
+	 * 
+	 * @return the index count
+	 */
+	public int getIndexCount() {
+		return indexCount;
+	}
+	
+	/**
+	 * Get the center of this meshlet's bounding sphere
+	 * 
+	 * @return the center
+	 */
+	public Vector3f getCenter() {
+		return center;
+	}
+	
+	/**
+	 * Get the radius of this meshlet's bounding sphere
+	 * 
+	 * @return the radius
+	 */
+	public float getRadius() {
+		return radius;
+	}
+	
+	/**
+	 * Get the axis of this meshlet's normal cone
+	 * 
+	 * @return the cone axis
+	 */
+	public Vector3f getConeAxis() {
+		return coneAxis;
+	}
+	
+	/**
+	 * Get the cutoff of this meshlet's normal cone
+	 * 
+	 * @return the cone cutoff
+	 */
+	public float getConeCutoff() {
+		return coneCutoff;
+	}
+	
+	/**
+	 * Check whether every triangle of this meshlet faces away from the given
+	 * viewpoint. The test is conservative, and may report a meshlet as facing the
+	 * viewpoint although all of its triangles face away
+	 * 
+	 * @param x the x coordinate of the viewpoint in model space
+	 * @param y the y coordinate of the viewpoint in model space
+	 * @param z the z coordinate of the viewpoint in model space
+	 * 
+	 * @return true if backfacing, false otherwise
+	 */
+	public boolean isBackfacing(float x, float y, float z) {
+		float dx = center.x - x, dy = center.y - y, dz = center.z - z;
+		float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		return dx * coneAxis.x + dy * coneAxis.y + dz * coneAxis.z >= coneCutoff * distance + radius;
+	}
+	
+}
@@ -0,0 +1,259 @@
+package me.choco.learning.engine.model;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joml.Vector3f;
+
+import me.choco.learning.engine.util.IntList;
+
+/**
+ * A utility class to split a mesh into {@link Meshlet}s of at most
+ * {@link #MAX_VERTICES} vertices and {@link #MAX_TRIANGLES} triangles. Each
+ * meshlet is grown greedily from a seed triangle by repeatedly adding the
+ * adjacent triangle which introduces the fewest new vertices. Triangles which
+ * are the last to reference one of their vertices are taken first so that few
+ * small fragments are left behind, and ties favour triangles close to the
+ * meshlet whose normal agrees with it so that its normal cone stays narrow.
+ * Triangles are reordered so that every meshlet
+ * occupies a contiguous index range within its sub-mesh. Vertices are not
+ * reordered
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class MeshletBuilder {
+	
+	/** The maximum amount of unique vertices referenced by a meshlet */
+	public static final int MAX_VERTICES = 64;
+	
+	/** The maximum amount of triangles in a meshlet */
+	public static final int MAX_TRIANGLES = 124;
+	
+	private MeshletBuilder() {}
+	
+	/**
+	 * Split the given mesh into meshlets
+	 * 
+	 * @param data the mesh to split
+	 * @return a copy of the mesh with reordered triangles and its meshlets
+	 */
+	public static MeshData build(MeshData data) {
+		int vertexCount = data.getVertexCount();
+		float[] positions = new float[vertexCount * 3];
+		FloatBuffer positionBuffer = data.getPositions().duplicate();
+		positionBuffer.position(0);
+		positionBuffer.get(positions);
+		
+		int[] indices = new int[data.getIndexCount()];
+		IntBuffer indexBuffer = data.getIndices().duplicate();
+		indexBuffer.position(0);
+		indexBuffer.get(indices);
+		
+		int triangleCount = indices.length / 3;
+		float[] faceNormals = new float[triangleCount * 3];
+		for (int triangle = 0; triangle < triangleCount; triangle++) {
+			int a = indices[triangle * 3] * 3, b = indices[triangle * 3 + 1] * 3, c = indices[triangle * 3 + 2] * 3;
+			float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+			float e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+			float x = e1y * e2z - e1z * e2y, y = e1z * e2x - e1x * e2z, z = e1x * e2y - e1y * e2x;
+			float length = (float) Math.sqrt(x * x + y * y + z * z);
+			if (length == 0) continue;
+			
+			faceNormals[triangle * 3] = x / length;
+			faceNormals[triangle * 3 + 1] = y / length;
+			faceNormals[triangle * 3 + 2] = z / length;
+		}
+		
+		int[][] adjacency = TangentSpaceGenerator.buildAdjacency(indices, vertexCount);
+		int[] offsets = adjacency[0], adjacentTriangles = adjacency[1];
+		
+		boolean[] emitted = new boolean[triangleCount];
+		int[] liveTriangles = new int[vertexCount]; // The amount of unemitted triangles using each vertex
+		for (int vertex = 0; vertex < vertexCount; vertex++) {
+			liveTriangles[vertex] = offsets[vertex + 1] - offsets[vertex];
+		}
+
+		int[] vertexMeshlet = new int[vertexCount];
+		Arrays.fill(vertexMeshlet, -1);
+		
+		int[] newIndices = new int[indices.length];
+		int cursor = 0;
+		
+		List<Meshlet> meshlets = new ArrayList<>(triangleCount / MAX_TRIANGLES + 1);
+		IntList candidates = new IntList(256), meshletVertices = new IntList(MAX_VERTICES), meshletTriangles = new IntList(MAX_TRIANGLES);
+		SubMesh[] subMeshes = data.getSubMeshes();
+		
+		for (int subMesh = 0; subMesh < subMeshes.length; subMesh++) {
+			int first = subMeshes[subMesh].getIndexOffset() / 3, last = first + subMeshes[subMesh].getIndexCount() / 3;
+			int scan = first;
+			candidates.clear();
+			
+			while (true) {
+				// Seed from the previous meshlet's border, starting with the triangle most enclosed by emitted
+				// triangles, so that no isolated fragments are left behind
+				int seed = -1, seedLiveness = Integer.MAX_VALUE;
+				for (int i = 0; i < candidates.size(); i++) {
+					int candidate = candidates.get(i);
+					if (emitted[candidate]) continue;
+					
+					int liveness = liveTriangles[indices[candidate * 3]] + liveTriangles[indices[candidate * 3 + 1]] + liveTriangles[indices[candidate * 3 + 2]];
+					if (liveness < seedLiveness) {
+						seed = candidate;
+						seedLiveness = liveness;
+					}
+				}
+				
+				if (seed < 0) {
+					while (scan < last && emitted[scan]) scan++;
+					if (scan >= last) break;
+					seed = scan;
+				}
+				
+				int meshletId = meshlets.size(), meshletStart = cursor;
+				float normalX = 0, normalY = 0, normalZ = 0, centroidX = 0, centroidY = 0, centroidZ = 0;
+				candidates.clear();
+				meshletVertices.clear();
+				meshletTriangles.clear();
+				
+				int triangle = seed;
+				while (triangle >= 0) {
+					// Add the triangle and queue the unvisited triangles around its new vertices
+					emitted[triangle] = true;
+					meshletTriangles.add(triangle);
+					normalX += faceNormals[triangle * 3];
+					normalY += faceNormals[triangle * 3 + 1];
+					normalZ += faceNormals[triangle * 3 + 2];
+					centroidX += centroid(positions, indices, triangle, 0);
+					centroidY += centroid(positions, indices, triangle, 1);
+					centroidZ += centroid(positions, indices, triangle, 2);
+					
+					for (int corner = triangle * 3; corner < triangle * 3 + 3; corner++) {
+						int vertex = indices[corner];
+						newIndices[cursor++] = vertex;
+						liveTriangles[vertex]--;
+						if (vertexMeshlet[vertex] == meshletId) continue;
+						
+						vertexMeshlet[vertex] = meshletId;
+						meshletVertices.add(vertex);
+						for (int i = offsets[vertex]; i < offsets[vertex + 1]; i++) {
+							int adjacent = adjacentTriangles[i];
+							if (!emitted[adjacent] && adjacent >= first && adjacent < last) {
+								candidates.add(adjacent);
+							}
+						}
+					}
+					
+					if (meshletTriangles.size() == MAX_TRIANGLES) break;
+					
+					// Pick the candidate introducing the fewest vertices. Ties are broken in favour of compact
+					// meshlets, penalizing candidates whose normal diverges from the meshlet's average normal
+					triangle = -1;
+					int bestPriority = Integer.MAX_VALUE, remaining = 0;
+					float bestScore = Float.POSITIVE_INFINITY;
+					
+					float triangles = meshletTriangles.size();
+					float centerX = centroidX / triangles, centerY = centroidY / triangles, centerZ = centroidZ / triangles;
+					float normalLength = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+					
+					for (int i = 0; i < candidates.size(); i++) {
+						int candidate = candidates.get(i);
+						if (emitted[candidate]) continue;
+						
+						candidates.set(remaining++, candidate);
+						int newVertices = 0;
+						for (int corner = candidate * 3; corner < candidate * 3 + 3; corner++) {
+							if (vertexMeshlet[indices[corner]] != meshletId) newVertices++;
+						}
+						
+						if (meshletVertices.size() + newVertices > MAX_VERTICES) continue;
+						
+						// Triangles which are the last to use one of their vertices are taken first, as that vertex would
+						// otherwise have to be duplicated into another meshlet
+						int priority = newVertices;
+						for (int corner = candidate * 3; corner < candidate * 3 + 3; corner++) {
+							if (liveTriangles[indices[corner]] == 1) priority = 0;
+						}
+						
+						if (priority > bestPriority) continue;
+						
+						float dx = centroid(positions, indices, candidate, 0) - centerX;
+						float dy = centroid(positions, indices, candidate, 1) - centerY;
+						float dz = centroid(positions, indices, candidate, 2) - centerZ;
+						float agreement = (normalLength > 0) ? (faceNormals[candidate * 3] * normalX + faceNormals[candidate * 3 + 1] * normalY
+								+ faceNormals[candidate * 3 + 2] * normalZ) / normalLength : 1;
+						float score = (dx * dx + dy * dy + dz * dz) * (2 - agreement);
+						
+						if (priority < bestPriority || score < bestScore) {
+							triangle = candidate;
+							bestPriority = priority;
+							bestScore = score;
+						}
+					}
+					
+					candidates.truncate(remaining);
+				}
+				
+				meshlets.add(createMeshlet(subMesh, meshletStart, cursor - meshletStart, positions, faceNormals, meshletVertices, meshletTriangles,
+						normalX, normalY, normalZ));
+			}
+		}
+		
+		return data.withIndices(IntBuffer.wrap(newIndices), meshlets.toArray(new Meshlet[meshlets.size()]));
+	}
+	
+	private static float centroid(float[] positions, int[] indices, int triangle, int axis) {
+		return (positions[indices[triangle * 3] * 3 + axis] + positions[indices[triangle * 3 + 1] * 3 + axis] + positions[indices[triangle * 3 + 2] * 3 + axis]) / 3;
+	}
+	
+	private static Meshlet createMeshlet(int subMesh, int indexOffset, int indexCount, float[] positions, float[] faceNormals, IntList vertices, IntList triangles,
+			float normalX, float normalY, float normalZ) {
+		// Ritter's bounding sphere. Start from the two vertices furthest apart along an axis
+		int[] vertexArray = vertices.array();
+		int vertexCount = vertices.size();
+		
+		int minX = vertexArray[0], maxX = vertexArray[0];
+		for (int i = 1; i < vertexCount; i++) {
+			int vertex = vertexArray[i];
+			if (positions[vertex * 3] < positions[minX * 3]) minX = vertex;
+			if (positions[vertex * 3] > positions[maxX * 3]) maxX = vertex;
+		}
+		
+		Vector3f center = new Vector3f(positions[minX * 3], positions[minX * 3 + 1], positions[minX * 3 + 2]);
+		center.add(positions[maxX * 3], positions[maxX * 3 + 1], positions[maxX * 3 + 2]).mul(0.5f);
+		float radius = center.distance(positions[maxX * 3], positions[maxX * 3 + 1], positions[maxX * 3 + 2]);
+		
+		for (int i = 0; i < vertexCount; i++) {
+			int vertex = vertexArray[i] * 3;
+			float distance = center.distance(positions[vertex], positions[vertex + 1], positions[vertex + 2]);
+			if (distance <= radius) continue;
+			
+			// Grow the sphere just enough to enclose the outlying vertex
+			float newRadius = (radius + distance) * 0.5f, shift = (newRadius - radius) / distance;
+			center.add((positions[vertex] - center.x) * shift, (positions[vertex + 1] - center.y) * shift, (positions[vertex + 2] - center.z) * shift);
+			radius = newRadius;
+		}
+		
+		// Normal cone. The cutoff is the sine of the angle between the axis and the widest normal
+		Vector3f coneAxis = new Vector3f(normalX, normalY, normalZ);
+		float coneCutoff = 1;
+		
+		if (coneAxis.lengthSquared() > 0) {
+			coneAxis.normalize();
+			float minDot = 1;
+			for (int i = 0; i < triangles.size(); i++) {
+				int triangle = triangles.get(i);
+				minDot = Math.min(minDot, faceNormals[triangle * 3] * coneAxis.x + faceNormals[triangle * 3 + 1] * coneAxis.y + faceNormals[triangle * 3 + 2] * coneAxis.z);
+			}
+			
+			if (minDot > 0) {
+				coneCutoff = (float) Math.sqrt(1 - minDot * minDot);
+			}
+		}
+		
+		return new Meshlet(subMesh, indexOffset, indexCount, center, radius, coneAxis, coneCutoff);
+	}
+	
+}
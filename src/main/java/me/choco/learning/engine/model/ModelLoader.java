@@ -1,15 +1,31 @@
 package me.choco.learning.engine.model;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
-import org.joml.Vector2f;
 import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
 
+import me.choco.learning.engine.buffer.VertexLayout;
 import me.choco.learning.engine.texture.Material;
+import me.choco.learning.engine.texture.MaterialLibrary;
+import me.choco.learning.engine.texture.MaterialLoader;
+import me.choco.learning.engine.util.FloatList;
+import me.choco.learning.engine.util.TripleIndexMap;
 
 /**
  * A utility class to load models from an OBJ file
@@ -18,6 +34,25 @@ import me.choco.learning.engine.texture.Material;
  */
 public class ModelLoader {
 	
+	/**
+	 * Load a model from an OBJ file with the given name and provide it with
+	 * a texture
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @param material the material to set for the model, or null if none
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return the loaded model
+	 */
+	public static VertexModel loadOBJModel(String fileName, Material material, ImportOptions options) {
+		MeshData data = loadOBJMeshData(fileName, options);
+		PackedMesh mesh = VertexPacker.pack(data, options.getVertexFormat());
+		VertexModel model = new VertexModel(mesh, VertexLayout.of(mesh.getAttributes(), options.isInterleaved()));
+		mesh.free();
+		applyMaterials(model, loadMaterialLibraries(fileName, data.getMaterialLibraries()), material);
+		return model;
+	}
+	
 	/**
 	 * Load a model from an OBJ file with the given name and provide it with
 	 * a texture
@@ -28,97 +63,551 @@ public class ModelLoader {
 	 * @return the loaded model
 	 */
 	public static VertexModel loadOBJModel(String fileName, Material material) {
-		List<Vector3f> vertices = new ArrayList<>();
-		List<Vector2f> textureCoords = new ArrayList<>();
-		List<Vector3f> normals = new ArrayList<>();
-		List<Integer> indices = new ArrayList<>();
-		
-		float[] verticesArray = null, textureCoordsArray = null, normalsArray = null;
-		int[] indicesArray = null;
-		
-		try (BufferedReader reader = new BufferedReader(new InputStreamReader(ModelLoader.class.getResourceAsStream(fileName)))) {
-			String line;
-			while((line = reader.readLine()) != null){
-				String[] currentLine = line.split("\\s+");
-				
-				switch (currentLine[0]) {
-				case "v":
-					Vector3f vertex = new Vector3f(Float.parseFloat(currentLine[1]), Float.parseFloat(currentLine[2]), Float.parseFloat(currentLine[3]));
-					vertices.add(vertex);
-					break;
-				case "vt":
-					Vector2f textureCoord = new Vector2f(Float.parseFloat(currentLine[1]), Float.parseFloat(currentLine[2]));
-					textureCoords.add(textureCoord);
-					break;
-				case "vn":
-					Vector3f normal = new Vector3f(Float.parseFloat(currentLine[1]), Float.parseFloat(currentLine[2]), Float.parseFloat(currentLine[3]));
-					normals.add(normal);
-					break;
-				case "f":
-					if (textureCoordsArray == null) textureCoordsArray = new float[vertices.size() * 2];
-					if (normalsArray == null) normalsArray = new float[vertices.size() * 3];
-					
-					String[] vertex1 = currentLine[1].split("/");
-					String[] vertex2 = currentLine[2].split("/");
-					String[] vertex3 = currentLine[3].split("/");
-					
-					processVertex(vertex1, indices, textureCoords, normals, textureCoordsArray, normalsArray);
-					processVertex(vertex2, indices, textureCoords, normals, textureCoordsArray, normalsArray);
-					processVertex(vertex3, indices, textureCoords, normals, textureCoordsArray, normalsArray);
-					break;
-				default: break;
-				}
+		return loadOBJModel(fileName, material, ImportOptions.newOptions());
+	}
+	
+	/**
+	 * Load a model from an OBJ file with the given name with no texture
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @return the loaded model
+	 */
+	public static VertexModel loadOBJModel(String fileName) {
+		return loadOBJModel(fileName, null);
+	}
+	
+	/**
+	 * Parse the mesh data from an OBJ file with the given name without uploading
+	 * it to the GPU. The file is tokenized directly from its bytes, and the
+	 * ratio of unique vertices to face corners is available from {@link MeshData#getWeldStatistics()}
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return the parsed mesh data. Its native memory must be released with {@link MeshData#free()}
+	 */
+	public static MeshData loadOBJMeshData(String fileName, ImportOptions options) {
+		ByteBuffer contents = ByteBuffer.wrap(new byte[0]);
+		try (InputStream stream = ModelLoader.class.getResourceAsStream(fileName)) {
+			contents = readFully(stream);
+		} catch (IOException e) { e.printStackTrace(); }
+		
+		return parseOBJ(contents, options);
+	}
+	
+	/**
+	 * Parse the mesh data from an OBJ file with the given name without uploading
+	 * it to the GPU. The file is tokenized directly from its bytes
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @return the parsed mesh data. Its native memory must be released with {@link MeshData#free()}
+	 */
+	public static MeshData loadOBJMeshData(String fileName) {
+		return loadOBJMeshData(fileName, ImportOptions.newOptions());
+	}
+	
+	/**
+	 * Load a model from an OBJ file on the filesystem and provide it with a texture
+	 * 
+	 * @param path the path to the OBJ file
+	 * @param material the material to set for the model, or null if none
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return the loaded model
+	 */
+	public static VertexModel loadOBJModel(Path path, Material material, ImportOptions options) {
+		MeshData data = loadOBJMeshData(path, options);
+		PackedMesh mesh = VertexPacker.pack(data, options.getVertexFormat());
+		VertexModel model = new VertexModel(mesh, VertexLayout.of(mesh.getAttributes(), options.isInterleaved()));
+		mesh.free();
+		applyMaterials(model, loadMaterialLibraries(path, data.getMaterialLibraries()), material);
+		return model;
+	}
+	
+	/**
+	 * Load a model from an OBJ file on the filesystem and provide it with a texture
+	 * 
+	 * @param path the path to the OBJ file
+	 * @param material the material to set for the model, or null if none
+	 * 
+	 * @return the loaded model
+	 */
+	public static VertexModel loadOBJModel(Path path, Material material) {
+		return loadOBJModel(path, material, ImportOptions.newOptions());
+	}
+	
+	/**
+	 * Load a model from an OBJ file on the filesystem with no texture
+	 * 
+	 * @param path the path to the OBJ file
+	 * @return the loaded model
+	 */
+	public static VertexModel loadOBJModel(Path path) {
+		return loadOBJModel(path, null);
+	}
+	
+	/**
+	 * Parse the mesh data from an OBJ file on the filesystem without uploading it
+	 * to the GPU. The file is memory mapped and tokenized directly from the mapping,
+	 * so its contents are never copied onto the heap. The ratio
+	 * of unique vertices to face corners is available from {@link MeshData#getWeldStatistics()}
+	 * 
+	 * @param path the path to the OBJ file
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return the parsed mesh data. Its native memory must be released with {@link MeshData#free()}
+	 */
+	public static MeshData loadOBJMeshData(Path path, ImportOptions options) {
+		ByteBuffer contents = ByteBuffer.wrap(new byte[0]);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			contents = map(channel);
+		} catch (IOException e) { e.printStackTrace(); }
+		
+		return parseOBJ(contents, options);
+	}
+	
+	/**
+	 * Parse the mesh data from an OBJ file on the filesystem without uploading it
+	 * to the GPU. The file is memory mapped and tokenized directly from the mapping,
+	 * so its contents are never copied onto the heap
+	 * 
+	 * @param path the path to the OBJ file
+	 * @return the parsed mesh data. Its native memory must be released with {@link MeshData#free()}
+	 */
+	public static MeshData loadOBJMeshData(Path path) {
+		return loadOBJMeshData(path, ImportOptions.newOptions());
+	}
+	
+	/**
+	 * Load a chain of levels of detail from an OBJ file with the given name and
+	 * provide each level with a texture. The amount of levels and their reduction
+	 * are specified by the import options
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @param material the material to set for each level, or null if none
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return the loaded level of detail chain
+	 */
+	public static LODChain loadOBJLODChain(String fileName, Material material, ImportOptions options) {
+		MeshData data = loadOBJMeshData(fileName, options);
+		LODChain lodChain = createLODChain(data, material, options);
+		applyMaterials(lodChain, loadMaterialLibraries(fileName, data.getMaterialLibraries()), material);
+		return lodChain;
+	}
+	
+	/**
+	 * Load a chain of levels of detail from an OBJ file on the filesystem and
+	 * provide each level with a texture. The amount of levels and their reduction
+	 * are specified by the import options
+	 * 
+	 * @param path the path to the OBJ file
+	 * @param material the material to set for each level, or null if none
+	 * @param options the processing to apply to the mesh
+	 * 
+	 * @return the loaded level of detail chain
+	 */
+	public static LODChain loadOBJLODChain(Path path, Material material, ImportOptions options) {
+		MeshData data = loadOBJMeshData(path, options);
+		LODChain lodChain = createLODChain(data, material, options);
+		applyMaterials(lodChain, loadMaterialLibraries(path, data.getMaterialLibraries()), material);
+		return lodChain;
+	}
+	
+	/**
+	 * Generate a chain of levels of detail from the given mesh and upload each
+	 * level to the GPU. See {@link #generateLODMeshes(MeshData, ImportOptions, FloatList)}
+	 * 
+	 * @param data the full detail mesh
+	 * @param material the material to set for each level, or null if none
+	 * @param options the processing to apply to each level
+	 * 
+	 * @return the level of detail chain
+	 */
+	public static LODChain createLODChain(MeshData data, Material material, ImportOptions options) {
+		FloatList errors = new FloatList(options.getLODLevels());
+		List<PackedMesh> meshes = generateLODMeshes(data, options, errors);
+		
+		VertexModel[] levels = new VertexModel[meshes.size()];
+		for (int i = 0; i < levels.length; i++) {
+			PackedMesh mesh = meshes.get(i);
+			levels[i] = new VertexModel(mesh, VertexLayout.of(mesh.getAttributes(), options.isInterleaved()));
+			mesh.free();
+			if (material != null) {
+				levels[i].setMaterial(material);
+			}
+		}
+		
+		return new LODChain(levels, errors.toArray());
+	}
+	
+	/**
+	 * Generate and pack the levels of detail of the given mesh without uploading
+	 * them to the GPU. Every level is simplified from the full detail mesh, so
+	 * errors do not accumulate between levels. Generation stops early once the
+	 * mesh can no longer be meaningfully simplified. The first level views the
+	 * given mesh's memory, and every level should be freed with {@link PackedMesh#free()}
+	 * once uploaded
+	 * 
+	 * @param data the full detail mesh
+	 * @param options the processing to apply to each level
+	 * @param errors the list to which the model space error of each level is added
+	 * 
+	 * @return the packed levels, from most to least detailed
+	 */
+	public static List<PackedMesh> generateLODMeshes(MeshData data, ImportOptions options, FloatList errors) {
+		List<PackedMesh> levels = new ArrayList<>(options.getLODLevels());
+		levels.add(VertexPacker.pack(data, options.getVertexFormat()));
+		errors.add(0);
+		
+		MeshSimplifier simplifier = (options.getLODLevels() > 1) ? new MeshSimplifier(data) : null;
+		int previousIndexCount = data.getIndexCount();
+		
+		for (int level = 1; level < options.getLODLevels(); level++) {
+			int targetIndexCount = (int) (data.getIndexCount() * Math.pow(options.getLODReduction(), level)) / 3 * 3;
+			MeshData simplified = simplifier.simplify(targetIndexCount);
+			
+			// Stop once simplification no longer makes significant progress
+			if (simplified.getIndexCount() == 0 || simplified.getIndexCount() > previousIndexCount * 0.9) break;
+			
+			levels.add(VertexPacker.pack(process(simplified, options), options.getVertexFormat()));
+			errors.add(simplifier.getError());
+			previousIndexCount = simplified.getIndexCount();
+		}
+		
+		return levels;
+	}
+	
+	static MeshData parseOBJ(ByteBuffer contents, ImportOptions options) {
+		MeshData data = assemble(ObjParser.parseParallel(contents, contents.position(), contents.limit()));
+		return process(data, options);
+	}
+	
+	/**
+	 * Apply the processing stages enabled in the given options to a mesh. Native
+	 * memory of the given mesh which is replaced by a stage is freed, so only the
+	 * returned mesh may be used afterwards
+	 * 
+	 * @param data the mesh to process
+	 * @param options the processing to apply
+	 * 
+	 * @return the processed mesh
+	 */
+	public static MeshData process(MeshData data, ImportOptions options) {
+		if (options.isOptimize()) {
+			MeshData optimized = MeshOptimizer.optimize(data);
+			data.free();
+			data = optimized;
+		}
+		
+		// Meshlets reorder triangles within each sub-mesh, so they are built after optimizing
+		if (options.isBuildMeshlets() && !data.hasMeshlets()) {
+			data = MeshletBuilder.build(data);
+		}
+		
+		// Tangents depend on the final triangles, so they are generated last
+		if (options.isGenerateTangents() && !data.hasTangents()) {
+			data = data.withTangents(TangentSpaceGenerator.generateTangents(data));
+		}
+		
+		return data;
+	}
+	
+	/**
+	 * Weld the parsed face corners into unique vertices. One output vertex is
+	 * emitted per distinct (position, texture, normal) triple so that hard edges
+	 * and texture seams keep their own attributes while shared corners are reused.
+	 * Polygons are triangulated beforehand, and corners without a normal are
+	 * given a smooth normal shared by every face touching their position.
+	 * Triangles are grouped by material into contiguous sub-meshes, keeping their
+	 * file order within each material
+	 */
+	private static MeshData assemble(ObjParser parser) {
+		float[] positions = parser.positions.array(), textureCoords = parser.textureCoords.array(), normals = parser.normals.array();
+		int[] corners = parser.faceCorners.array();
+		int cornerCount = parser.faceCorners.size() / 3, triangleCount = cornerCount / 3;
+		int positionCount = parser.positions.size() / 3;
+		
+		Triangulator.triangulate(positions, positionCount, corners, parser.polygons);
+		
+		// Corners referencing no normal share a generated normal per position
+		float[] generatedNormals = null;
+		for (int corner = 0; corner < cornerCount; corner++) {
+			if (corners[corner * 3 + 2] >= 0) continue;
+			
+			int[] positionIndices = new int[cornerCount];
+			for (int i = 0; i < cornerCount; i++) {
+				positionIndices[i] = corners[i * 3];
+			}
+			
+			generatedNormals = TangentSpaceGenerator.generateNormals(positions, positionIndices, positionCount);
+			break;
+		}
+		
+		// Assign every triangle the material of the last usemtl record before it
+		List<String> materialNames = new ArrayList<>();
+		Map<String, Integer> materialIds = new HashMap<>();
+		int[] triangleMaterials = new int[triangleCount];
+		
+		materialNames.add(null);
+		for (int i = 0; i < parser.materialNames.size(); i++) {
+			String name = parser.materialNames.get(i);
+			Integer id = materialIds.get(name);
+			if (id == null) {
+				id = materialNames.size();
+				materialIds.put(name, id);
+				materialNames.add(name);
 			}
-		} catch(IOException e) { e.printStackTrace(); }
+			
+			int firstTriangle = parser.materialStarts.get(i) / 9;
+			Arrays.fill(triangleMaterials, Math.min(firstTriangle, triangleCount), triangleCount, id);
+		}
 		
-		verticesArray = new float[vertices.size() * 3];
-		indicesArray = new int[indices.size()];
+		// Stable counting sort of the triangles by material
+		int[] materialOffsets = new int[materialNames.size() + 1];
+		for (int material : triangleMaterials) {
+			materialOffsets[material + 1]++;
+		}
+		for (int i = 0; i < materialNames.size(); i++) {
+			materialOffsets[i + 1] += materialOffsets[i];
+		}
 		
-		int vertexPointer = 0;
-		for (Vector3f vertex : vertices) {
-			verticesArray[vertexPointer++] = vertex.x;
-			verticesArray[vertexPointer++] = vertex.y;
-			verticesArray[vertexPointer++] = vertex.z;
+		int[] triangleOrder = new int[triangleCount];
+		int[] cursors = Arrays.copyOf(materialOffsets, materialNames.size());
+		for (int i = 0; i < triangleCount; i++) {
+			triangleOrder[cursors[triangleMaterials[i]]++] = i;
 		}
 		
-		for (int i = 0; i < indices.size(); i++)
-			indicesArray[i] = indices.get(i);
+		/*
+		 * The welded vertices are written straight to native memory sized for the worst
+		 * case of one vertex per corner, then shrunk to the unique vertex count. Pages
+		 * of the worst case which are never written are never committed
+		 */
+		int maxVertexCount = Math.max(cornerCount, 1);
+		TripleIndexMap vertexIndices = new TripleIndexMap(parser.positions.size() / 3);
+		FloatBuffer positionsOut = MemoryUtil.memAllocFloat(maxVertexCount * 3);
+		FloatBuffer textureCoordsOut = MemoryUtil.memAllocFloat(maxVertexCount * 2);
+		FloatBuffer normalsOut = MemoryUtil.memAllocFloat(maxVertexCount * 3);
+		IntBuffer indices = MemoryUtil.memAllocInt(maxVertexCount);
+		Vector3f minBounds = new Vector3f(Float.POSITIVE_INFINITY), maxBounds = new Vector3f(Float.NEGATIVE_INFINITY);
 		
-		VertexModel model = new VertexModel(verticesArray, indicesArray, textureCoordsArray, normalsArray);
-		if (material != null) {
-			model.setMaterial(material);
+		for (int i = 0; i < triangleCount * 3; i++) {
+			int corner = (triangleOrder[i / 3] * 3 + i % 3) * 3;
+			int position = corners[corner], texture = corners[corner + 1], normal = corners[corner + 2];
+			int vertexCount = vertexIndices.size();
+			
+			int existing = vertexIndices.putIfAbsent(position, texture, normal, vertexCount);
+			if (existing >= 0) {
+				indices.put(i, existing);
+				continue;
+			}
+			
+			indices.put(i, vertexCount);
+			float x = positions[position * 3], y = positions[position * 3 + 1], z = positions[position * 3 + 2];
+			positionsOut.put(vertexCount * 3, x).put(vertexCount * 3 + 1, y).put(vertexCount * 3 + 2, z);
+			minBounds.set(Math.min(minBounds.x, x), Math.min(minBounds.y, y), Math.min(minBounds.z, z));
+			maxBounds.set(Math.max(maxBounds.x, x), Math.max(maxBounds.y, y), Math.max(maxBounds.z, z));
+			
+			if (texture < 0) {
+				textureCoordsOut.put(vertexCount * 2, -1).put(vertexCount * 2 + 1, -1);
+			}
+			else {
+				textureCoordsOut.put(vertexCount * 2, textureCoords[texture * 2]).put(vertexCount * 2 + 1, 1 - textureCoords[texture * 2 + 1]);
+			}
+			
+			float[] normalSource = (normal < 0) ? generatedNormals : normals;
+			int normalIndex = (normal < 0) ? position : normal;
+			normalsOut.put(vertexCount * 3, normalSource[normalIndex * 3]);
+			normalsOut.put(vertexCount * 3 + 1, normalSource[normalIndex * 3 + 1]);
+			normalsOut.put(vertexCount * 3 + 2, normalSource[normalIndex * 3 + 2]);
 		}
 		
-		return model;
+		int vertexCount = vertexIndices.size();
+		if (vertexCount == 0) {
+			minBounds.zero();
+			maxBounds.zero();
+		}
+		
+		positionsOut = shrink(positionsOut, vertexCount * 3);
+		textureCoordsOut = shrink(textureCoordsOut, vertexCount * 2);
+		normalsOut = shrink(normalsOut, vertexCount * 3);
+		indices.limit(triangleCount * 3);
+		
+		// One sub-mesh per material that is used by at least one triangle
+		List<SubMesh> subMeshes = new ArrayList<>(materialNames.size());
+		for (int i = 0; i < materialNames.size(); i++) {
+			int indexOffset = materialOffsets[i] * 3, indexCount = (materialOffsets[i + 1] - materialOffsets[i]) * 3;
+			if (indexCount > 0 || (i == 0 && triangleCount == 0)) {
+				subMeshes.add(new SubMesh(materialNames.get(i), indexOffset, indexCount));
+			}
+		}
+		
+		String[] materialLibraries = new LinkedHashSet<>(parser.materialLibraries).toArray(new String[0]);
+		MeshData data = MeshData.ofNativeMemory(positionsOut, textureCoordsOut, normalsOut, indices, minBounds, maxBounds,
+				subMeshes.toArray(new SubMesh[subMeshes.size()]), materialLibraries);
+		data.setWeldStatistics(new WeldStatistics(cornerCount, vertexCount));
+		return data;
+	}
+	
+	private static FloatBuffer shrink(FloatBuffer buffer, int size) {
+		// A zero-sized reallocation may free the memory, so at least one float is kept
+		FloatBuffer shrunk = MemoryUtil.memRealloc(buffer, Math.max(size, 1));
+		shrunk.limit(size);
+		return shrunk;
 	}
 	
 	/**
-	 * Load a model from an OBJ file with the given name with no texture
+	 * Load the materials of all libraries referenced by an OBJ file on the
+	 * classpath. Libraries are resolved relative to the OBJ file. This must be
+	 * called from a thread with a current OpenGL context
 	 * 
 	 * @param fileName the name of the OBJ file (including the path)
-	 * @return the loaded model
+	 * @param libraries the material libraries referenced by the file
+	 * 
+	 * @return all loaded materials, mapped by name
 	 */
-	public static VertexModel loadOBJModel(String fileName) {
-		return loadOBJModel(fileName, null);
+	public static Map<String, Material> loadMaterialLibraries(String fileName, String[] libraries) {
+		return decodeMaterialLibraries(fileName, libraries).upload();
+	}
+	
+	/**
+	 * Load the materials of all libraries referenced by an OBJ file on the
+	 * filesystem. Libraries are resolved relative to the OBJ file. This must be
+	 * called from a thread with a current OpenGL context
+	 * 
+	 * @param path the path to the OBJ file
+	 * @param libraries the material libraries referenced by the file
+	 * 
+	 * @return all loaded materials, mapped by name
+	 */
+	public static Map<String, Material> loadMaterialLibraries(Path path, String[] libraries) {
+		return decodeMaterialLibraries(path, libraries).upload();
+	}
+	
+	/**
+	 * Parse the materials of all libraries referenced by an OBJ file on the
+	 * classpath and decode their textures without uploading them to the GPU.
+	 * Libraries are resolved relative to the OBJ file
+	 * 
+	 * @param fileName the name of the OBJ file (including the path)
+	 * @param libraries the material libraries referenced by the file
+	 * 
+	 * @return all parsed materials
+	 */
+	public static MaterialLibrary decodeMaterialLibraries(String fileName, String[] libraries) {
+		MaterialLibrary materials = new MaterialLibrary();
+		String directory = fileName.substring(0, fileName.lastIndexOf('/') + 1);
+		
+		for (String library : libraries) {
+			materials.addAll(MaterialLoader.decodeMTL(directory + library));
+		}
+		
+		return materials;
+	}
+	
+	/**
+	 * Parse the materials of all libraries referenced by an OBJ file on the
+	 * filesystem and decode their textures without uploading them to the GPU.
+	 * Libraries are resolved relative to the OBJ file
+	 * 
+	 * @param path the path to the OBJ file
+	 * @param libraries the material libraries referenced by the file
+	 * 
+	 * @return all parsed materials
+	 */
+	public static MaterialLibrary decodeMaterialLibraries(Path path, String[] libraries) {
+		MaterialLibrary materials = new MaterialLibrary();
+		
+		for (String library : libraries) {
+			materials.addAll(MaterialLoader.decodeMTL(path.resolveSibling(library)));
+		}
+		
+		return materials;
+	}
+	
+	/**
+	 * Assign each sub-mesh of a model the material it references by name. Sub-meshes
+	 * whose material is not found fall back to the given default material. The
+	 * textures of the given materials become owned by the model and are deleted
+	 * along with it
+	 * 
+	 * @param model the model whose materials to set
+	 * @param materials the available materials, mapped by name
+	 * @param defaultMaterial the material of the model, or null to keep the current one
+	 */
+	public static void applyMaterials(VertexModel model, Map<String, Material> materials, Material defaultMaterial) {
+		assignMaterials(model, materials, defaultMaterial);
+		ownTextures(model, materials);
 	}
 	
-	private static void processVertex(String[] vertexData, List<Integer> indices, List<Vector2f> textures, List<Vector3f> normals, float[] textureArray, float[] normalsArray) {
-		int currentVertexPointer = Integer.parseInt(vertexData[0]) - 1;
-		indices.add(currentVertexPointer);
+	/**
+	 * Assign each sub-mesh of every level of a chain the material it references by
+	 * name. Sub-meshes whose material is not found fall back to the given default
+	 * material. The textures of the given materials become owned by the chain and
+	 * are deleted along with it
+	 * 
+	 * @param lodChain the chain whose materials to set
+	 * @param materials the available materials, mapped by name
+	 * @param defaultMaterial the material of each level, or null to keep the current one
+	 */
+	public static void applyMaterials(LODChain lodChain, Map<String, Material> materials, Material defaultMaterial) {
+		for (int i = 0; i < lodChain.getLevelCount(); i++) {
+			assignMaterials(lodChain.getLevel(i), materials, defaultMaterial);
+		}
 		
-		if (vertexData[1].equalsIgnoreCase("")) {
-			textureArray[currentVertexPointer * 2] = -1;
-			textureArray[currentVertexPointer * 2 + 1] = -1;
+		// Every level shares the same materials, so only one level may own their textures
+		ownTextures(lodChain.getLevel(0), materials);
+	}
+	
+	private static void assignMaterials(VertexModel model, Map<String, Material> materials, Material defaultMaterial) {
+		if (defaultMaterial != null) {
+			model.setMaterial(defaultMaterial);
 		}
-		else {
-			Vector2f currentTexture = textures.get(Integer.parseInt(vertexData[1]) - 1);
-			textureArray[currentVertexPointer * 2] = currentTexture.x;
-			textureArray[currentVertexPointer * 2 + 1] = 1 - currentTexture.y;
+		
+		for (int i = 0; i < model.getSubMeshCount(); i++) {
+			String name = model.getSubMesh(i).getMaterialName();
+			if (name == null) continue;
+			
+			Material material = materials.get(name);
+			if (material == null) {
+				System.err.println("Material \"" + name + "\" is not defined in any material library");
+				continue;
+			}
+			
+			model.setMaterial(i, material);
+		}
+	}
+	
+	private static void ownTextures(VertexModel model, Map<String, Material> materials) {
+		for (Material material : materials.values()) {
+			if (material.isTextured()) {
+				model.ownTexture(material.getTexture());
+			}
+		}
+	}
+	
+	static MappedByteBuffer map(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Cannot map files larger than 2GB (size: " + size + " bytes)");
+		}
+		
+		// The mapping remains valid after the channel has been closed
+		return channel.map(MapMode.READ_ONLY, 0, size);
+	}
+	
+	private static ByteBuffer readFully(InputStream stream) throws IOException {
+		byte[] bytes = new byte[Math.max(stream.available(), 8192)];
+		int length = 0, read;
+		
+		while ((read = stream.read(bytes, length, bytes.length - length)) != -1) {
+			length += read;
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length << 1);
+			}
 		}
 		
-		Vector3f currentNormal = normals.get(Integer.parseInt(vertexData[2]) - 1);
-		normalsArray[currentVertexPointer * 3] = currentNormal.x;
-		normalsArray[currentVertexPointer * 3 + 1] = currentNormal.y;
-		normalsArray[currentVertexPointer * 3 + 2] = currentNormal.z;
+		return ByteBuffer.wrap(bytes, 0, length);
 	}
-}
\ No newline at end of file
+	
+}
@@ -0,0 +1,411 @@
+package me.choco.learning.engine.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import me.choco.learning.engine.util.FloatList;
+import me.choco.learning.engine.util.IntList;
+
+/**
+ * A streaming OBJ tokenizer which reads records directly from bytes. No Strings
+ * or boxed values are created while parsing. Positions, texture coordinates and
+ * normals are collected into primitive lists, and each face corner is stored as
+ * a (position, texture, normal) triple of 0-based indices, or -1 if absent.
+ * Polygons with more than three corners are fanned into triangles as they are
+ * read, and recorded so that they may later be re-triangulated against their
+ * positions by {@link Triangulator}.
+ * Material library references and material switches are recorded by name
+ * along with the face corner at which each switch takes effect. Large inputs
+ * may be split into newline-aligned chunks and parsed in parallel with
+ * {@link #parseParallel(ByteBuffer, int, int)}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+final class ObjParser {
+	
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	/** Inputs smaller than this are always parsed on the calling thread */
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+	
+	final FloatList positions = new FloatList(1024);
+	final FloatList textureCoords = new FloatList(1024);
+	final FloatList normals = new FloatList(1024);
+	final IntList faceCorners = new IntList(4096);
+	
+	// Each usemtl record, and the slot in faceCorners from which it applies
+	final List<String> materialLibraries = new ArrayList<>();
+	final List<String> materialNames = new ArrayList<>();
+	final IntList materialStarts = new IntList(16);
+	
+	// Each polygon of more than three corners, as pairs of the slot in faceCorners
+	// of its first fanned triangle and its amount of corners
+	final IntList polygons = new IntList(16);
+	
+	// Slots in faceCorners holding relative (negative) references. These are
+	// resolved against this parser's own counts and must be rebased when merged
+	private final IntList relativeCorners = new IntList(16);
+	
+	// The corners of the face being parsed, and whether each of their indices is relative
+	private final IntList faceBuffer = new IntList(12);
+	private final IntList faceRelative = new IntList(12);
+	
+	private ByteBuffer buffer;
+	private int cursor, end;
+	
+	/**
+	 * Parse all records between the given byte offsets of the buffer
+	 * 
+	 * @param buffer the buffer containing OBJ text
+	 * @param start the offset of the first byte to parse
+	 * @param end the offset after the last byte to parse
+	 */
+	void parse(ByteBuffer buffer, int start, int end) {
+		this.buffer = buffer;
+		this.cursor = start;
+		this.end = end;
+		
+		while (cursor < end) {
+			this.skipBlanks();
+			if (cursor >= end) break;
+			
+			byte first = buffer.get(cursor);
+			byte second = (cursor + 1 < end) ? buffer.get(cursor + 1) : (byte) '\n';
+			
+			if (first == 'v') {
+				if (isBlank(second)) {
+					this.cursor++;
+					this.positions.add(parseFloat());
+					this.positions.add(parseFloat());
+					this.positions.add(parseFloat());
+				}
+				else if (second == 't') {
+					this.cursor += 2;
+					this.textureCoords.add(parseFloat());
+					this.textureCoords.add(parseFloat());
+				}
+				else if (second == 'n') {
+					this.cursor += 2;
+					this.normals.add(parseFloat());
+					this.normals.add(parseFloat());
+					this.normals.add(parseFloat());
+				}
+			}
+			else if (first == 'f' && isBlank(second)) {
+				this.cursor++;
+				this.parseFace();
+			}
+			else if (first == 'u' && matchKeyword("usemtl")) {
+				this.materialNames.add(parseName());
+				this.materialStarts.add(faceCorners.size());
+			}
+			else if (first == 'm' && matchKeyword("mtllib")) {
+				for (String library : parseName().split("\\s+")) {
+					if (library.isEmpty()) continue;
+					this.materialLibraries.add(library);
+				}
+			}
+			
+			this.skipLine();
+		}
+		
+		this.buffer = null;
+	}
+	
+	/**
+	 * Parse all records between the given byte offsets of the buffer. If the
+	 * range is large enough, it is split into newline-aligned chunks which are
+	 * parsed on the common fork-join pool and merged in order. The result is
+	 * identical to that of {@link #parse(ByteBuffer, int, int)}
+	 * 
+	 * @param buffer the buffer containing OBJ text
+	 * @param start the offset of the first byte to parse
+	 * @param end the offset after the last byte to parse
+	 * 
+	 * @return the parser holding the merged results
+	 */
+	static ObjParser parseParallel(ByteBuffer buffer, int start, int end) {
+		int chunkCount = Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, (end - start) / MIN_CHUNK_SIZE);
+		if (chunkCount <= 1) {
+			ObjParser parser = new ObjParser();
+			parser.parse(buffer, start, end);
+			return parser;
+		}
+		
+		List<ObjParser> parsers = new ArrayList<>(chunkCount);
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(chunkCount);
+		
+		int chunkStart = start;
+		for (int i = 1; i <= chunkCount && chunkStart < end; i++) {
+			int chunkEnd = (i == chunkCount) ? end : nextLine(buffer, start + (int) ((long) (end - start) * i / chunkCount), end);
+			if (chunkEnd <= chunkStart) continue;
+			
+			ObjParser parser = new ObjParser();
+			ByteBuffer chunkBuffer = buffer.duplicate();
+			int from = chunkStart, to = chunkEnd;
+			
+			parsers.add(parser);
+			tasks.add(ForkJoinTask.adapt(() -> parser.parse(chunkBuffer, from, to)));
+			chunkStart = chunkEnd;
+		}
+		
+		ForkJoinTask.invokeAll(tasks);
+		
+		// Merge all chunks into the first in file order
+		ObjParser result = parsers.get(0);
+		int positionCount = 0, textureCount = 0, normalCount = 0, cornerCount = 0;
+		for (ObjParser parser : parsers) {
+			positionCount += parser.positions.size();
+			textureCount += parser.textureCoords.size();
+			normalCount += parser.normals.size();
+			cornerCount += parser.faceCorners.size();
+		}
+		
+		result.positions.ensureCapacity(positionCount);
+		result.textureCoords.ensureCapacity(textureCount);
+		result.normals.ensureCapacity(normalCount);
+		result.faceCorners.ensureCapacity(cornerCount);
+		
+		for (int i = 1; i < parsers.size(); i++) {
+			result.append(parsers.get(i));
+		}
+		
+		return result;
+	}
+	
+	private void append(ObjParser other) {
+		int cornerBase = faceCorners.size();
+		int[] bases = { positions.size() / 3, textureCoords.size() / 2, normals.size() / 3 };
+		
+		this.faceCorners.addAll(other.faceCorners);
+		for (int i = 0; i < other.relativeCorners.size(); i++) {
+			int slot = other.relativeCorners.get(i);
+			this.faceCorners.set(cornerBase + slot, faceCorners.get(cornerBase + slot) + bases[slot % 3]);
+			this.relativeCorners.add(cornerBase + slot);
+		}
+		
+		this.positions.addAll(other.positions);
+		this.textureCoords.addAll(other.textureCoords);
+		this.normals.addAll(other.normals);
+		
+		for (int i = 0; i < other.polygons.size(); i += 2) {
+			this.polygons.add(cornerBase + other.polygons.get(i));
+			this.polygons.add(other.polygons.get(i + 1));
+		}
+		
+		this.materialLibraries.addAll(other.materialLibraries);
+		this.materialNames.addAll(other.materialNames);
+		for (int i = 0; i < other.materialStarts.size(); i++) {
+			this.materialStarts.add(cornerBase + other.materialStarts.get(i));
+		}
+	}
+	
+	private void parseFace() {
+		this.faceBuffer.clear();
+		this.faceRelative.clear();
+		
+		while (true) {
+			this.skipBlanks();
+			if (cursor >= end || !isIndexStart(buffer.get(cursor))) break;
+			
+			this.addFaceIndex(parseInt(), positions.size() / 3);
+			int texture = 0, normal = 0;
+			
+			if (cursor < end && buffer.get(cursor) == '/') {
+				this.cursor++;
+				if (cursor < end && buffer.get(cursor) != '/') {
+					texture = parseInt();
+				}
+				
+				if (cursor < end && buffer.get(cursor) == '/') {
+					this.cursor++;
+					normal = parseInt();
+				}
+			}
+			
+			this.addFaceIndex(texture, textureCoords.size() / 2);
+			this.addFaceIndex(normal, normals.size() / 3);
+		}
+		
+		// Faces with fewer than three corners are not renderable and are skipped
+		int cornerCount = faceBuffer.size() / 3;
+		if (cornerCount < 3) return;
+		
+		if (cornerCount > 3) {
+			this.polygons.add(faceCorners.size());
+			this.polygons.add(cornerCount);
+		}
+		
+		for (int i = 1; i < cornerCount - 1; i++) {
+			this.emitCorner(0);
+			this.emitCorner(i);
+			this.emitCorner(i + 1);
+		}
+	}
+	
+	/**
+	 * Append an OBJ index to the corners of the current face as a 0-based index.
+	 * Negative indices are relative to the amount of elements read so far, and 0
+	 * denotes an absent index
+	 */
+	private void addFaceIndex(int index, int count) {
+		this.faceBuffer.add((index > 0) ? index - 1 : (index < 0) ? count + index : -1);
+		this.faceRelative.add((index < 0) ? 1 : 0);
+	}
+	
+	private void emitCorner(int corner) {
+		for (int component = corner * 3; component < corner * 3 + 3; component++) {
+			if (faceRelative.get(component) != 0) {
+				this.relativeCorners.add(faceCorners.size());
+			}
+			
+			this.faceCorners.add(faceBuffer.get(component));
+		}
+	}
+	
+	private int parseInt() {
+		if (cursor >= end) return 0;
+		
+		boolean negative = false;
+		byte current = buffer.get(cursor);
+		if (current == '-' || current == '+') {
+			negative = (current == '-');
+			this.cursor++;
+		}
+		
+		int value = 0;
+		while (cursor < end && isDigit(current = buffer.get(cursor))) {
+			value = value * 10 + (current - '0');
+			this.cursor++;
+		}
+		
+		return negative ? -value : value;
+	}
+	
+	private float parseFloat() {
+		this.skipBlanks();
+		if (cursor >= end) return 0;
+		
+		int start = cursor;
+		boolean negative = false;
+		byte current = buffer.get(cursor);
+		if (current == '-' || current == '+') {
+			negative = (current == '-');
+			this.cursor++;
+		}
+		
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		
+		while (cursor < end && isDigit(current = buffer.get(cursor))) {
+			mantissa = mantissa * 10 + (current - '0');
+			digits++;
+			this.cursor++;
+		}
+		
+		if (cursor < end && buffer.get(cursor) == '.') {
+			this.cursor++;
+			while (cursor < end && isDigit(current = buffer.get(cursor))) {
+				mantissa = mantissa * 10 + (current - '0');
+				digits++;
+				exponent--;
+				this.cursor++;
+			}
+		}
+		
+		if (cursor < end && ((current = buffer.get(cursor)) == 'e' || current == 'E')) {
+			this.cursor++;
+			exponent += parseInt();
+		}
+		
+		// Too many significant digits to be exact in a double. Defer to the JDK
+		if (digits > 15 || exponent < -22 || exponent > 22) {
+			return slowParseFloat(start);
+		}
+		
+		double value = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return (float) (negative ? -value : value);
+	}
+	
+	private float slowParseFloat(int start) {
+		char[] characters = new char[cursor - start];
+		for (int i = 0; i < characters.length; i++) {
+			characters[i] = (char) buffer.get(start + i);
+		}
+		
+		return Float.parseFloat(new String(characters));
+	}
+	
+	/**
+	 * Check whether the given keyword followed by a blank starts at the cursor.
+	 * If it does, the cursor is advanced past the keyword
+	 */
+	private boolean matchKeyword(String keyword) {
+		int length = keyword.length();
+		if (cursor + length >= end || !isBlank(buffer.get(cursor + length))) return false;
+		
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(cursor + i) != keyword.charAt(i)) return false;
+		}
+		
+		this.cursor += length;
+		return true;
+	}
+	
+	/**
+	 * Read the remainder of the line, excluding surrounding blanks. Names are
+	 * rare enough that they are decoded into Strings
+	 */
+	private String parseName() {
+		this.skipBlanks();
+		
+		int start = cursor, nameEnd = cursor;
+		while (cursor < end && buffer.get(cursor) != '\n') {
+			if (!isBlank(buffer.get(cursor++))) {
+				nameEnd = cursor;
+			}
+		}
+		
+		byte[] bytes = new byte[nameEnd - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static int nextLine(ByteBuffer buffer, int offset, int end) {
+		while (offset < end && buffer.get(offset++) != '\n');
+		return offset;
+	}
+	
+	private void skipBlanks() {
+		while (cursor < end && isBlank(buffer.get(cursor))) {
+			this.cursor++;
+		}
+	}
+	
+	private void skipLine() {
+		while (cursor < end && buffer.get(cursor++) != '\n');
+	}
+	
+	private static boolean isBlank(byte character) {
+		return character == ' ' || character == '\t' || character == '\r';
+	}
+	
+	private static boolean isIndexStart(byte character) {
+		return isDigit(character) || character == '-' || character == '+';
+	}
+	
+	private static boolean isDigit(byte character) {
+		return character >= '0' && character <= '9';
+	}
+	
+}
@@ -2,6 +2,8 @@ package me.choco.learning.engine.model;
 
 import org.joml.Vector3f;
 
+import me.choco.learning.engine.rendering.RenderQueue;
+
 /**
  * Represents a model in the world
  * 
@@ -9,10 +11,14 @@ import org.joml.Vector3f;
  */
 public class ObjectModel {
 	
-	private final VertexModel vertexModel;
+	private LODChain lodChain;
+	private int lodLevel = 0;
+	private int layer = 0;
+	private OccluderMesh occluder;
 	
 	private Vector3f position, rotation;
 	private float scale;
+	private int transformVersion;
 	
 	/**
 	 * Construct a new object model with an underlying vertex model
@@ -20,19 +26,127 @@ public class ObjectModel {
 	 * @param vertexModel the vertex model
 	 */
 	public ObjectModel(VertexModel vertexModel) {
-		this.vertexModel = vertexModel;
+		this(new LODChain(vertexModel));
+	}
+	
+	/**
+	 * Construct a new object model with an underlying chain of levels of detail
+	 * 
+	 * @param lodChain the level of detail chain
+	 */
+	public ObjectModel(LODChain lodChain) {
+		this.lodChain = lodChain;
 		this.position = new Vector3f(0, 0, 0);
 		this.rotation = new Vector3f(0, 0, 0);
 		this.scale = 1;
 	}
 	
 	/**
-	 * Get the underlying vertex model
+	 * Get the underlying vertex model at the current level of detail
 	 * 
 	 * @return the vertex model
 	 */
 	public VertexModel getVertexModel() {
-		return vertexModel;
+		return lodChain.getLevel(lodLevel);
+	}
+	
+	/**
+	 * Replace the underlying vertex model, i.e. to swap a placeholder for an
+	 * asynchronously loaded model once it is resident
+	 * 
+	 * @param vertexModel the new vertex model
+	 */
+	public void setVertexModel(VertexModel vertexModel) {
+		this.setLODChain(new LODChain(vertexModel));
+	}
+	
+	/**
+	 * Replace the chain of levels of detail of this model. The level of detail
+	 * is reset to the most detailed level
+	 * 
+	 * @param lodChain the new level of detail chain
+	 */
+	public void setLODChain(LODChain lodChain) {
+		this.lodChain = lodChain;
+		this.lodLevel = 0;
+		this.invalidateTransform();
+	}
+	
+	/**
+	 * Get the chain of levels of detail of this model
+	 * 
+	 * @return the level of detail chain
+	 */
+	public LODChain getLODChain() {
+		return lodChain;
+	}
+	
+	/**
+	 * Set the level of detail at which this model is rendered
+	 * 
+	 * @param lodLevel the new level, where 0 is the most detailed
+	 */
+	public void setLODLevel(int lodLevel) {
+		if (lodLevel < 0 || lodLevel >= lodChain.getLevelCount()) {
+			throw new IllegalArgumentException("LOD level " + lodLevel + " out of range (0 - " + (lodChain.getLevelCount() - 1) + ")");
+		}
+		
+		if (this.lodLevel != lodLevel) {
+			this.lodLevel = lodLevel;
+			this.invalidateTransform();
+		}
+	}
+	
+	/**
+	 * Get the level of detail at which this model is rendered
+	 * 
+	 * @return the current level
+	 */
+	public int getLODLevel() {
+		return lodLevel;
+	}
+	
+	/**
+	 * Set the layer in which this model is rendered. Every model in a layer is
+	 * drawn before any model in a higher layer, i.e. to draw a skybox first or
+	 * an overlay last. See {@link RenderQueue}
+	 * 
+	 * @param layer the new layer, between 0 and {@link RenderQueue#LAYER_COUNT} (exclusive)
+	 */
+	public void setLayer(int layer) {
+		if (layer < 0 || layer >= RenderQueue.LAYER_COUNT) {
+			throw new IllegalArgumentException("Layer " + layer + " out of range (0 - " + (RenderQueue.LAYER_COUNT - 1) + ")");
+		}
+		
+		this.layer = layer;
+	}
+	
+	/**
+	 * Get the layer in which this model is rendered
+	 * 
+	 * @return the render layer
+	 */
+	public int getLayer() {
+		return layer;
+	}
+	
+	/**
+	 * Designate this model as an occluder for occlusion culling, drawn as the
+	 * given low-poly mesh. See {@link me.choco.learning.engine.rendering.OcclusionCuller}
+	 * 
+	 * @param occluder the occluder mesh, or null if this model does not occlude others
+	 */
+	public void setOccluder(OccluderMesh occluder) {
+		this.occluder = occluder;
+	}
+	
+	/**
+	 * Get the mesh drawn for this model when it occludes others
+	 * 
+	 * @return the occluder mesh, or null if this model does not occlude others
+	 */
+	public OccluderMesh getOccluder() {
+		return occluder;
 	}
 	
 	/**
@@ -46,10 +160,12 @@ public class ObjectModel {
 		this.position.x = x;
 		this.position.y = y;
 		this.position.z = z;
+		this.invalidateTransform();
 	}
 	
 	/**
-	 * Get the position of the model in the world
+	 * Get the position of the model in the world. If the returned vector is
+	 * modified, {@link #invalidateTransform()} must be called
 	 * 
 	 * @return the model position
 	 */
@@ -68,10 +184,12 @@ public class ObjectModel {
 		this.rotation.x = x;
 		this.rotation.y = y;
 		this.rotation.z = z;
+		this.invalidateTransform();
 	}
 	
 	/**
-	 * Get the rotation of the model in the world
+	 * Get the rotation of the model in the world. If the returned vector is
+	 * modified, {@link #invalidateTransform()} must be called
 	 * 
 	 * @return the model rotation
 	 */
@@ -86,6 +204,7 @@ public class ObjectModel {
 	 */
 	public void setScale(float scale) {
 		this.scale = scale;
+		this.invalidateTransform();
 	}
 	
 	/**
@@ -96,12 +215,31 @@ public class ObjectModel {
 	public float getScale() {
 		return scale;
 	}
-
+	
+	/**
+	 * Notify that the position, rotation, scale or displayed mesh of this model
+	 * has changed, so that its bounds in the {@link RenderQueue} are recomputed.
+	 * This is done by every setter of this class
+	 */
+	public void invalidateTransform() {
+		this.transformVersion++;
+	}
+	
+	/**
+	 * Get the version of this model's transform, which changes whenever its
+	 * position, rotation, scale or displayed mesh changes
+	 * 
+	 * @return the transform version
+	 */
+	public int getTransformVersion() {
+		return transformVersion;
+	}
+	
 	/**
 	 * Cleanup any data for this model
 	 */
 	public void cleanup() {
-		this.vertexModel.cleanup();
+		this.lodChain.cleanup();
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package me.choco.learning.engine.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.joml.Vector3f;
+
+/**
+ * Represents a low-poly triangle mesh standing in for an {@link ObjectModel}
+ * when drawing occluders for occlusion culling. An occluder must lie entirely
+ * within the visual geometry of its model, otherwise it may hide objects which
+ * are actually visible. Positions are in model space
+ * <p>
+ * Triangles sharing an edge with consistent winding are paired into quads (see
+ * {@link #getPrimitives()}) so that the edge between them, such as the diagonal
+ * of a box face, does not leave a gap when occluders are rasterized
+ * conservatively
+ * 
+ * @author Parker Hawke - 2008Choco
+ * @see me.choco.learning.engine.rendering.OcclusionCuller
+ */
+public class OccluderMesh {
+	
+	// The triangles of a box whose corner i has the coordinates of bits 0 (x), 1 (y) and 2 (z) of i
+	private static final int[] BOX_INDICES = {
+		0, 2, 3, 0, 3, 1, // -Z
+		4, 5, 7, 4, 7, 6, // +Z
+		0, 4, 6, 0, 6, 2, // -X
+		1, 3, 7, 1, 7, 5, // +X
+		0, 1, 5, 0, 5, 4, // -Y
+		2, 6, 7, 2, 7, 3  // +Y
+	};
+	
+	private final float[] positions;
+	private final int[] indices;
+	private final int[] primitives;
+	
+	/**
+	 * Construct a new occluder mesh
+	 * 
+	 * @param positions the vertex positions, as 3 floats each
+	 * @param indices the indices of the vertices of each triangle
+	 */
+	public OccluderMesh(float[] positions, int[] indices) {
+		if (positions.length % 3 != 0) {
+			throw new IllegalArgumentException("Position count must be a multiple of 3 (given: " + positions.length + ")");
+		}
+		if (indices.length % 3 != 0) {
+			throw new IllegalArgumentException("Index count must be a multiple of 3 (given: " + indices.length + ")");
+		}
+		
+		int vertexCount = positions.length / 3;
+		for (int index : indices) {
+			if (index < 0 || index >= vertexCount) {
+				throw new IllegalArgumentException("Index " + index + " out of range (0 - " + (vertexCount - 1) + ")");
+			}
+		}
+		
+		this.positions = positions;
+		this.indices = indices;
+		this.primitives = pairTriangles(indices);
+	}
+	
+	/**
+	 * Create an occluder in the shape of an axis-aligned box, i.e. for a wall
+	 * 
+	 * @param min the minimum corner of the box
+	 * @param max the maximum corner of the box
+	 * 
+	 * @return the box occluder
+	 */
+	public static OccluderMesh box(Vector3f min, Vector3f max) {
+		float[] positions = new float[8 * 3];
+		for (int i = 0; i < 8; i++) {
+			positions[i * 3] = ((i & 1) == 0) ? min.x : max.x;
+			positions[i * 3 + 1] = ((i & 2) == 0) ? min.y : max.y;
+			positions[i * 3 + 2] = ((i & 4) == 0) ? min.z : max.z;
+		}
+		
+		return new OccluderMesh(positions, BOX_INDICES.clone());
+	}
+	
+	/**
+	 * Get the vertex positions of this occluder
+	 * 
+	 * @return the positions, as 3 floats each
+	 */
+	public float[] getPositions() {
+		return positions;
+	}
+	
+	/**
+	 * Get the indices of the vertices of each triangle of this occluder
+	 * 
+	 * @return the indices
+	 */
+	public int[] getIndices() {
+		return indices;
+	}
+	
+	/**
+	 * Get the primitives of this occluder as 4 vertex indices each, in the
+	 * winding of the triangles they were built from. A quad (v0, v1, v2, v3) is
+	 * made of the triangles (v0, v1, v2) and (v0, v2, v3). A triangle which could
+	 * not be paired is stored as (v0, v1, v2, v0)
+	 * 
+	 * @return the primitive indices
+	 */
+	public int[] getPrimitives() {
+		return primitives;
+	}
+	
+	/**
+	 * Get the amount of primitives in this occluder
+	 * 
+	 * @return the primitive count
+	 */
+	public int getPrimitiveCount() {
+		return primitives.length / 4;
+	}
+	
+	/**
+	 * Get the amount of vertices in this occluder
+	 * 
+	 * @return the vertex count
+	 */
+	public int getVertexCount() {
+		return positions.length / 3;
+	}
+	
+	/**
+	 * Get the amount of triangles in this occluder
+	 * 
+	 * @return the triangle count
+	 */
+	public int getTriangleCount() {
+		return indices.length / 3;
+	}
+	
+	private static int[] pairTriangles(int[] indices) {
+		int triangleCount = indices.length / 3;
+		int[] primitives = new int[triangleCount * 4];
+		boolean[] paired = new boolean[triangleCount];
+		int primitiveCount = 0;
+		
+		// Directed edges (from, to) of unpaired triangles, mapped to the index of their starting vertex
+		Map<Long, Integer> openEdges = new HashMap<>();
+		for (int i = 0; i < indices.length; i++) {
+			int next = (i % 3 == 2) ? i - 2 : i + 1;
+			
+			// Consistently wound neighbours traverse the shared edge in the opposite direction
+			Integer other = openEdges.get(edge(indices[next], indices[i]));
+			if (other == null || other / 3 == i / 3 || paired[i / 3] || paired[other / 3]) {
+				openEdges.putIfAbsent(edge(indices[i], indices[next]), i);
+				continue;
+			}
+			
+			// Triangles (p, q, r) and (q, p, s) form the quad (p, s, q, r)
+			int p = indices[i], q = indices[next], r = indices[(next % 3 == 2) ? next - 2 : next + 1];
+			int otherNext = (other % 3 == 2) ? other - 2 : other + 1;
+			int s = indices[(otherNext % 3 == 2) ? otherNext - 2 : otherNext + 1];
+			
+			paired[i / 3] = paired[other / 3] = true;
+			int offset = primitiveCount++ * 4;
+			primitives[offset] = p;
+			primitives[offset + 1] = s;
+			primitives[offset + 2] = q;
+			primitives[offset + 3] = r;
+		}
+		
+		for (int triangle = 0; triangle < triangleCount; triangle++) {
+			if (paired[triangle]) continue;
+			
+			int offset = primitiveCount++ * 4;
+			primitives[offset] = indices[triangle * 3];
+			primitives[offset + 1] = indices[triangle * 3 + 1];
+			primitives[offset + 2] = indices[triangle * 3 + 2];
+			primitives[offset + 3] = indices[triangle * 3];
+		}
+		
+		return Arrays.copyOf(primitives, primitiveCount * 4);
+	}
+	
+	private static long edge(int from, int to) {
+		return ((long) from << 32) | (to & 0xFFFFFFFFL);
+	}
+	
+}
\ No newline at end of file
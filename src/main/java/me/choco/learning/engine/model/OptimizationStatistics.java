@@ -0,0 +1,76 @@
+package me.choco.learning.engine.model;
+
+/**
+ * Describes the post-transform vertex cache efficiency of a mesh before and
+ * after it was reordered by the {@link MeshOptimizer}. Both the ACMR and the
+ * ATVR are measured with a FIFO cache of {@link MeshOptimizer#ANALYSIS_CACHE_SIZE}
+ * entries, and lower values are better
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class OptimizationStatistics {
+	
+	private final float acmrBefore, acmrAfter;
+	private final float atvrBefore, atvrAfter;
+	
+	/**
+	 * Construct new optimization statistics
+	 * 
+	 * @param acmrBefore the average cache miss ratio before optimizing
+	 * @param acmrAfter the average cache miss ratio after optimizing
+	 * @param atvrBefore the average transform to vertex ratio before optimizing
+	 * @param atvrAfter the average transform to vertex ratio after optimizing
+	 */
+	public OptimizationStatistics(float acmrBefore, float acmrAfter, float atvrBefore, float atvrAfter) {
+		this.acmrBefore = acmrBefore;
+		this.acmrAfter = acmrAfter;
+		this.atvrBefore = atvrBefore;
+		this.atvrAfter = atvrAfter;
+	}
+	
+	/**
+	 * Get the average cache miss ratio (misses per triangle) of the mesh before
+	 * it was optimized
+	 * 
+	 * @return the ACMR before optimizing
+	 */
+	public float getACMRBefore() {
+		return acmrBefore;
+	}
+	
+	/**
+	 * Get the average cache miss ratio (misses per triangle) of the mesh after
+	 * it was optimized
+	 * 
+	 * @return the ACMR after optimizing
+	 */
+	public float getACMRAfter() {
+		return acmrAfter;
+	}
+	
+	/**
+	 * Get the average transform to vertex ratio (misses per vertex) of the mesh
+	 * before it was optimized
+	 * 
+	 * @return the ATVR before optimizing
+	 */
+	public float getATVRBefore() {
+		return atvrBefore;
+	}
+	
+	/**
+	 * Get the average transform to vertex ratio (misses per vertex) of the mesh
+	 * after it was optimized
+	 * 
+	 * @return the ATVR after optimizing
+	 */
+	public float getATVRAfter() {
+		return atvrAfter;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("ACMR %.3f -> %.3f, ATVR %.3f -> %.3f", acmrBefore, acmrAfter, atvrBefore, atvrAfter);
+	}
+	
+}
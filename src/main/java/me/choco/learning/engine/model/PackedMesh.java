@@ -0,0 +1,243 @@
+package me.choco.learning.engine.model;
+
+import java.nio.ByteBuffer;
+
+import org.joml.Vector3f;
+
+import me.choco.learning.engine.buffer.VertexAttribute;
+
+/**
+ * Represents a mesh whose attributes have been encoded into GPU-ready byte
+ * streams. Each attribute is stored in its own stream, and indices are stored
+ * with the narrowest type able to address every vertex. A packed mesh may be
+ * uploaded as-is by a {@link VertexModel}
+ * 
+ * @author Parker Hawke - 2008Choco
+ * @see VertexPacker
+ */
+public class PackedMesh {
+	
+	private final VertexAttribute[] attributes;
+	private final ByteBuffer[] streams;
+	private final ByteBuffer indices;
+	private final int indexType, indexCount, vertexCount;
+	
+	private final Vector3f minBounds, maxBounds;
+	private final Vector3f positionScale, positionOffset;
+	private final SubMesh[] subMeshes;
+	private final String[] materialLibraries;
+	private final Meshlet[] meshlets;
+	private final MeshData source;
+	
+	/**
+	 * Construct a new packed mesh
+	 * 
+	 * @param attributes the attribute descriptions, one per stream
+	 * @param streams the encoded attribute streams
+	 * @param indices the encoded indices
+	 * @param indexType the OpenGL type of the indices (i.e. GL_UNSIGNED_SHORT)
+	 * @param indexCount the amount of indices
+	 * @param vertexCount the amount of vertices
+	 * @param minBounds the minimum corner of the mesh bounds
+	 * @param maxBounds the maximum corner of the mesh bounds
+	 * @param positionScale the scale which decodes positions into model space
+	 * @param positionOffset the offset which decodes positions into model space
+	 * @param subMeshes the per-material index ranges, covering all indices
+	 * @param materialLibraries the names of the material libraries referenced by the mesh
+	 * @param meshlets the clusters into which the indices are split, or an empty array if none
+	 */
+	public PackedMesh(VertexAttribute[] attributes, ByteBuffer[] streams, ByteBuffer indices, int indexType, int indexCount, int vertexCount,
+			Vector3f minBounds, Vector3f maxBounds, Vector3f positionScale, Vector3f positionOffset, SubMesh[] subMeshes, String[] materialLibraries,
+			Meshlet[] meshlets) {
+		this(attributes, streams, indices, indexType, indexCount, vertexCount, minBounds, maxBounds, positionScale, positionOffset, subMeshes,
+				materialLibraries, meshlets, null);
+	}
+	
+	/**
+	 * Construct a new packed mesh whose streams may be views of the native memory
+	 * of the mesh data it was packed from. That memory is released by {@link #free()}
+	 * 
+	 * @param attributes the attribute descriptions, one per stream
+	 * @param streams the encoded attribute streams
+	 * @param indices the encoded indices
+	 * @param indexType the OpenGL type of the indices (i.e. GL_UNSIGNED_SHORT)
+	 * @param indexCount the amount of indices
+	 * @param vertexCount the amount of vertices
+	 * @param minBounds the minimum corner of the mesh bounds
+	 * @param maxBounds the maximum corner of the mesh bounds
+	 * @param positionScale the scale which decodes positions into model space
+	 * @param positionOffset the offset which decodes positions into model space
+	 * @param subMeshes the per-material index ranges, covering all indices
+	 * @param materialLibraries the names of the material libraries referenced by the mesh
+	 * @param meshlets the clusters into which the indices are split, or an empty array if none
+	 * @param source the mesh data whose native memory is viewed by the streams, or null if none
+	 */
+	public PackedMesh(VertexAttribute[] attributes, ByteBuffer[] streams, ByteBuffer indices, int indexType, int indexCount, int vertexCount,
+			Vector3f minBounds, Vector3f maxBounds, Vector3f positionScale, Vector3f positionOffset, SubMesh[] subMeshes, String[] materialLibraries,
+			Meshlet[] meshlets, MeshData source) {
+		if (attributes.length != streams.length) {
+			throw new IllegalArgumentException("Expected one stream per attribute (" + attributes.length + " attributes, " + streams.length + " streams)");
+		}
+		
+		this.attributes = attributes;
+		this.streams = streams;
+		this.indices = indices;
+		this.indexType = indexType;
+		this.indexCount = indexCount;
+		this.vertexCount = vertexCount;
+		this.minBounds = minBounds;
+		this.maxBounds = maxBounds;
+		this.positionScale = positionScale;
+		this.positionOffset = positionOffset;
+		this.subMeshes = subMeshes;
+		this.materialLibraries = materialLibraries;
+		this.meshlets = meshlets;
+		this.source = source;
+	}
+	
+	/**
+	 * Get the attribute descriptions of this mesh
+	 * 
+	 * @return the attributes
+	 */
+	public VertexAttribute[] getAttributes() {
+		return attributes;
+	}
+	
+	/**
+	 * Get the encoded attribute streams of this mesh, in the same order as
+	 * {@link #getAttributes()}
+	 * 
+	 * @return the attribute streams
+	 */
+	public ByteBuffer[] getStreams() {
+		return streams;
+	}
+	
+	/**
+	 * Get the encoded indices of this mesh
+	 * 
+	 * @return the indices
+	 */
+	public ByteBuffer getIndices() {
+		return indices;
+	}
+	
+	/**
+	 * Get the OpenGL type of the indices
+	 * 
+	 * @return the index type
+	 */
+	public int getIndexType() {
+		return indexType;
+	}
+	
+	/**
+	 * Get the amount of indices in this mesh
+	 * 
+	 * @return the index count
+	 */
+	public int getIndexCount() {
+		return indexCount;
+	}
+	
+	/**
+	 * Get the amount of vertices in this mesh
+	 * 
+	 * @return the vertex count
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	/**
+	 * Get the minimum corner of this mesh's axis-aligned bounding box
+	 * 
+	 * @return the minimum bounds
+	 */
+	public Vector3f getMinBounds() {
+		return minBounds;
+	}
+	
+	/**
+	 * Get the maximum corner of this mesh's axis-aligned bounding box
+	 * 
+	 * @return the maximum bounds
+	 */
+	public Vector3f getMaxBounds() {
+		return maxBounds;
+	}
+	
+	/**
+	 * Get the scale applied to decoded positions in the vertex shader
+	 * 
+	 * @return the position scale
+	 */
+	public Vector3f getPositionScale() {
+		return positionScale;
+	}
+	
+	/**
+	 * Get the offset applied to decoded positions in the vertex shader
+	 * 
+	 * @return the position offset
+	 */
+	public Vector3f getPositionOffset() {
+		return positionOffset;
+	}
+	
+	/**
+	 * Get the per-material index ranges of this mesh
+	 * 
+	 * @return the sub-meshes
+	 */
+	public SubMesh[] getSubMeshes() {
+		return subMeshes;
+	}
+	
+	/**
+	 * Get the names of the material libraries referenced by this mesh, relative
+	 * to the mesh file
+	 * 
+	 * @return the material library names
+	 */
+	public String[] getMaterialLibraries() {
+		return materialLibraries;
+	}
+	
+	/**
+	 * Get the clusters into which this mesh's indices are split
+	 * 
+	 * @return the meshlets, or an empty array if none
+	 */
+	public Meshlet[] getMeshlets() {
+		return meshlets;
+	}
+	
+	/**
+	 * Get the total size in bytes of the vertex and index data in this mesh
+	 * 
+	 * @return the size in bytes
+	 */
+	public long getSizeInBytes() {
+		long size = indices.remaining();
+		for (ByteBuffer stream : streams) {
+			size += stream.remaining();
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Free the native memory of the mesh data from which this mesh was packed.
+	 * This should be called once the mesh has been uploaded. Upon calling this
+	 * method, the streams and indices of this mesh are no longer usable, though
+	 * all other properties remain valid. Has no effect if no native memory is held
+	 */
+	public void free() {
+		if (source != null) {
+			this.source.free();
+		}
+	}
+	
+}
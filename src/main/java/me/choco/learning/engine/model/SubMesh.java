@@ -0,0 +1,56 @@
+package me.choco.learning.engine.model;
+
+/**
+ * Represents a contiguous range of a mesh's indices which is rendered with a
+ * single material. All triangles using the same material are grouped into one
+ * sub-mesh so that a model may be drawn with one draw call per material
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class SubMesh {
+	
+	private final String materialName;
+	private final int indexOffset, indexCount;
+	
+	/**
+	 * Construct a new sub-mesh
+	 * 
+	 * @param materialName the name of the material as referenced by the mesh
+	 * file, or null if no material was specified
+	 * @param indexOffset the index of the first index in this sub-mesh
+	 * @param indexCount the amount of indices in this sub-mesh
+	 */
+	public SubMesh(String materialName, int indexOffset, int indexCount) {
+		this.materialName = materialName;
+		this.indexOffset = indexOffset;
+		this.indexCount = indexCount;
+	}
+	
+	/**
+	 * Get the name of the material used by this sub-mesh
+	 * 
+	 * @return the material name, or null if none
+	 */
+	public String getMaterialName() {
+		return materialName;
+	}
+	
+	/**
+	 * Get the index of the first index in this sub-mesh
+	 * 
+	 * @return the index offset
+	 */
+	public int getIndexOffset() {
+		return indexOffset;
+	}
+	
+	/**
+	 * Get the amount of indices in this sub-mesh
+	 * 
+	 * @return the index count
+	 */
+	public int getIndexCount() {
+		return indexCount;
+	}
+	
+}
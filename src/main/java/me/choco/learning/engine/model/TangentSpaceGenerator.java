@@ -0,0 +1,240 @@
+package me.choco.learning.engine.model;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import me.choco.learning.engine.util.ParallelRange;
+
+/**
+ * A utility class to generate smooth vertex normals and per-vertex tangent
+ * frames. Both are generated in two data-parallel passes: one over triangle
+ * ranges computing a normalized vector per face, and one over vertex ranges
+ * summing the vectors of each vertex's incident faces weighted by the angle of
+ * the face at that vertex. Angle weighting makes the result independent of how
+ * a surface happens to be tessellated
+ * <p>
+ * Tangents follow the MikkTSpace convention. The tangent is orthogonalized
+ * against the vertex normal and its w component holds the handedness of the
+ * frame, such that {@code bitangent = cross(normal, tangent.xyz) * tangent.w}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class TangentSpaceGenerator {
+	
+	private static final int MIN_TRIANGLES_PER_TASK = 1 << 14, MIN_VERTICES_PER_TASK = 1 << 14;
+	
+	private TangentSpaceGenerator() {}
+	
+	/**
+	 * Generate smooth normals for the given triangles. Triangles sharing a vertex
+	 * contribute to the same normal
+	 * 
+	 * @param positions the vertex positions (3 components per vertex)
+	 * @param indices the triangle indices
+	 * @param vertexCount the amount of vertices
+	 * 
+	 * @return the normals (3 components per vertex). Unreferenced vertices have a zero normal
+	 */
+	public static float[] generateNormals(float[] positions, int[] indices, int vertexCount) {
+		int triangleCount = indices.length / 3;
+		float[] faceNormals = new float[triangleCount * 3];
+		
+		ParallelRange.forEach(triangleCount, MIN_TRIANGLES_PER_TASK, (from, to) -> {
+			for (int triangle = from; triangle < to; triangle++) {
+				if (!isValid(indices, triangle, vertexCount)) continue;
+				
+				int a = indices[triangle * 3] * 3, b = indices[triangle * 3 + 1] * 3, c = indices[triangle * 3 + 2] * 3;
+				
+				float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+				float e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+				normalize(faceNormals, triangle * 3, e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x);
+			}
+		});
+		
+		int[][] adjacency = buildAdjacency(indices, vertexCount);
+		float[] normals = new float[vertexCount * 3];
+		
+		ParallelRange.forEach(vertexCount, MIN_VERTICES_PER_TASK, (from, to) -> {
+			for (int vertex = from; vertex < to; vertex++) {
+				float x = 0, y = 0, z = 0;
+				for (int i = adjacency[0][vertex]; i < adjacency[0][vertex + 1]; i++) {
+					int triangle = adjacency[1][i];
+					float weight = cornerAngle(positions, indices, triangle, vertex);
+					x += faceNormals[triangle * 3] * weight;
+					y += faceNormals[triangle * 3 + 1] * weight;
+					z += faceNormals[triangle * 3 + 2] * weight;
+				}
+				
+				normalize(normals, vertex * 3, x, y, z);
+			}
+		});
+		
+		return normals;
+	}
+	
+	/**
+	 * Generate tangents for the given mesh from its texture coordinates. The mesh
+	 * must have normals
+	 * 
+	 * @param data the mesh for which to generate tangents
+	 * @return the tangents (4 components per vertex)
+	 */
+	public static FloatBuffer generateTangents(MeshData data) {
+		int vertexCount = data.getVertexCount();
+		float[] positions = toArray(data.getPositions(), vertexCount * 3);
+		float[] textureCoords = toArray(data.getTextureCoords(), vertexCount * 2);
+		float[] normals = toArray(data.getNormals(), vertexCount * 3);
+		
+		IntBuffer indexBuffer = data.getIndices().duplicate();
+		int[] indices = new int[data.getIndexCount()];
+		indexBuffer.position(0);
+		indexBuffer.get(indices);
+		
+		// Normalized tangent and bitangent of each face, in the direction of increasing u and v
+		int triangleCount = indices.length / 3;
+		float[] faceFrames = new float[triangleCount * 6];
+		
+		ParallelRange.forEach(triangleCount, MIN_TRIANGLES_PER_TASK, (from, to) -> {
+			for (int triangle = from; triangle < to; triangle++) {
+				if (!isValid(indices, triangle, vertexCount)) continue;
+				
+				int a = indices[triangle * 3], b = indices[triangle * 3 + 1], c = indices[triangle * 3 + 2];
+				float e1x = positions[b * 3] - positions[a * 3], e1y = positions[b * 3 + 1] - positions[a * 3 + 1], e1z = positions[b * 3 + 2] - positions[a * 3 + 2];
+				float e2x = positions[c * 3] - positions[a * 3], e2y = positions[c * 3 + 1] - positions[a * 3 + 1], e2z = positions[c * 3 + 2] - positions[a * 3 + 2];
+				float du1 = textureCoords[b * 2] - textureCoords[a * 2], dv1 = textureCoords[b * 2 + 1] - textureCoords[a * 2 + 1];
+				float du2 = textureCoords[c * 2] - textureCoords[a * 2], dv2 = textureCoords[c * 2 + 1] - textureCoords[a * 2 + 1];
+				
+				// Faces with degenerate texture mapping do not contribute to the tangent frame
+				float determinant = du1 * dv2 - du2 * dv1;
+				if (determinant == 0) continue;
+				
+				float sign = Math.signum(determinant);
+				normalize(faceFrames, triangle * 6, (e1x * dv2 - e2x * dv1) * sign, (e1y * dv2 - e2y * dv1) * sign, (e1z * dv2 - e2z * dv1) * sign);
+				normalize(faceFrames, triangle * 6 + 3, (e2x * du1 - e1x * du2) * sign, (e2y * du1 - e1y * du2) * sign, (e2z * du1 - e1z * du2) * sign);
+			}
+		});
+		
+		int[][] adjacency = buildAdjacency(indices, vertexCount);
+		float[] tangents = new float[vertexCount * 4];
+		
+		ParallelRange.forEach(vertexCount, MIN_VERTICES_PER_TASK, (from, to) -> {
+			for (int vertex = from; vertex < to; vertex++) {
+				float tx = 0, ty = 0, tz = 0, bx = 0, by = 0, bz = 0;
+				for (int i = adjacency[0][vertex]; i < adjacency[0][vertex + 1]; i++) {
+					int triangle = adjacency[1][i], frame = triangle * 6;
+					float weight = cornerAngle(positions, indices, triangle, vertex);
+					tx += faceFrames[frame] * weight;
+					ty += faceFrames[frame + 1] * weight;
+					tz += faceFrames[frame + 2] * weight;
+					bx += faceFrames[frame + 3] * weight;
+					by += faceFrames[frame + 4] * weight;
+					bz += faceFrames[frame + 5] * weight;
+				}
+				
+				// Gram-Schmidt orthogonalization against the normal
+				float nx = normals[vertex * 3], ny = normals[vertex * 3 + 1], nz = normals[vertex * 3 + 2];
+				float dot = nx * tx + ny * ty + nz * tz;
+				tx -= nx * dot;
+				ty -= ny * dot;
+				tz -= nz * dot;
+				
+				// Without a usable mapping, any vector perpendicular to the normal will do
+				if (tx * tx + ty * ty + tz * tz < 1e-12f) {
+					boolean alongX = Math.abs(nx) >= 0.9f;
+					tx = alongX ? -nz : 0;
+					ty = alongX ? 0 : nz;
+					tz = alongX ? nx : -ny;
+				}
+				
+				normalize(tangents, vertex * 4, tx, ty, tz);
+				
+				// Handedness: whether the accumulated bitangent agrees with cross(normal, tangent)
+				float cx = ny * tangents[vertex * 4 + 2] - nz * tangents[vertex * 4 + 1];
+				float cy = nz * tangents[vertex * 4] - nx * tangents[vertex * 4 + 2];
+				float cz = nx * tangents[vertex * 4 + 1] - ny * tangents[vertex * 4];
+				tangents[vertex * 4 + 3] = (cx * bx + cy * by + cz * bz < 0) ? -1 : 1;
+			}
+		});
+		
+		return FloatBuffer.wrap(tangents);
+	}
+	
+	/**
+	 * Build the list of triangles incident to each vertex as a pair of arrays: the
+	 * offset of each vertex's first triangle (plus one trailing offset), and the
+	 * triangles themselves
+	 */
+	static int[][] buildAdjacency(int[] indices, int vertexCount) {
+		int triangleCount = indices.length / 3;
+		int[] offsets = new int[vertexCount + 1];
+		for (int triangle = 0; triangle < triangleCount; triangle++) {
+			if (!isValid(indices, triangle, vertexCount)) continue;
+			
+			for (int i = triangle * 3; i < triangle * 3 + 3; i++) {
+				offsets[indices[i] + 1]++;
+			}
+		}
+		
+		for (int i = 0; i < vertexCount; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		
+		int[] triangles = new int[offsets[vertexCount]];
+		int[] cursors = new int[vertexCount];
+		System.arraycopy(offsets, 0, cursors, 0, vertexCount);
+		
+		for (int triangle = 0; triangle < triangleCount; triangle++) {
+			if (!isValid(indices, triangle, vertexCount)) continue;
+			
+			for (int i = triangle * 3; i < triangle * 3 + 3; i++) {
+				triangles[cursors[indices[i]]++] = triangle;
+			}
+		}
+		
+		return new int[][] { offsets, triangles };
+	}
+	
+	/**
+	 * Get the interior angle of a triangle at the corner referencing the given vertex
+	 */
+	private static float cornerAngle(float[] positions, int[] indices, int triangle, int vertex) {
+		int first = triangle * 3;
+		int corner = (indices[first] == vertex) ? 0 : (indices[first + 1] == vertex) ? 1 : 2;
+		
+		int a = indices[first + corner] * 3, b = indices[first + (corner + 1) % 3] * 3, c = indices[first + (corner + 2) % 3] * 3;
+		float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+		float e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+		
+		float lengths = (float) Math.sqrt((e1x * e1x + e1y * e1y + e1z * e1z) * (e2x * e2x + e2y * e2y + e2z * e2z));
+		if (lengths == 0) return 0;
+		
+		float cosine = (e1x * e2x + e1y * e2y + e1z * e2z) / lengths;
+		return (float) Math.acos(Math.max(-1, Math.min(1, cosine)));
+	}
+	
+	private static boolean isValid(int[] indices, int triangle, int vertexCount) {
+		for (int i = triangle * 3; i < triangle * 3 + 3; i++) {
+			if (indices[i] < 0 || indices[i] >= vertexCount) return false;
+		}
+		
+		return true;
+	}
+	
+	private static void normalize(float[] destination, int offset, float x, float y, float z) {
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if (length == 0) return;
+		
+		destination[offset] = x / length;
+		destination[offset + 1] = y / length;
+		destination[offset + 2] = z / length;
+	}
+	
+	private static float[] toArray(FloatBuffer buffer, int length) {
+		float[] array = new float[length];
+		FloatBuffer values = buffer.duplicate();
+		values.position(0);
+		values.get(array, 0, Math.min(length, values.limit()));
+		return array;
+	}
+	
+}
@@ -0,0 +1,161 @@
+package me.choco.learning.engine.model;
+
+import me.choco.learning.engine.util.IntList;
+import me.choco.learning.engine.util.ParallelRange;
+
+/**
+ * Re-triangulates the polygons fanned by the {@link ObjParser} by ear clipping,
+ * so that concave polygons are triangulated correctly. Each polygon is projected
+ * onto the plane of its largest Newell normal component. Ear clipping produces
+ * as many triangles as the fan it replaces, so polygons are re-triangulated in
+ * place and no other face corner moves. Polygons are processed in parallel
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+final class Triangulator {
+	
+	private static final int MIN_POLYGONS_PER_TASK = 4096;
+	
+	private Triangulator() {}
+	
+	/**
+	 * Re-triangulate the given fanned polygons in place
+	 * 
+	 * @param positions the positions referenced by the face corners
+	 * @param positionCount the amount of positions
+	 * @param corners the face corners as (position, texture, normal) triples
+	 * @param polygons pairs of the slot of each polygon's first triangle and its amount of corners
+	 */
+	static void triangulate(float[] positions, int positionCount, int[] corners, IntList polygons) {
+		int[] polygonArray = polygons.array();
+		
+		ParallelRange.forEach(polygons.size() / 2, MIN_POLYGONS_PER_TASK, (from, to) -> {
+			Scratch scratch = new Scratch();
+			for (int i = from; i < to; i++) {
+				triangulate(positions, positionCount, corners, polygonArray[i * 2], polygonArray[i * 2 + 1], scratch);
+			}
+		});
+	}
+	
+	private static void triangulate(float[] positions, int positionCount, int[] corners, int slot, int cornerCount, Scratch scratch) {
+		scratch.ensureCapacity(cornerCount);
+		int[] triples = scratch.triples, previous = scratch.previous, next = scratch.next;
+		float[] projected = scratch.projected;
+		
+		// Recover the polygon's corners from its fan: (0, 1, 2), (0, 2, 3), ...
+		for (int corner = 0; corner < cornerCount; corner++) {
+			int source = (corner < 3) ? slot + corner * 3 : slot + (corner - 2) * 9 + 6;
+			System.arraycopy(corners, source, triples, corner * 3, 3);
+			
+			int position = triples[corner * 3];
+			if (position < 0 || position >= positionCount) return; // Invalid reference. Keep the fan
+		}
+		
+		// Newell normal, from which the dominant axis is dropped
+		float normalX = 0, normalY = 0, normalZ = 0;
+		for (int corner = 0; corner < cornerCount; corner++) {
+			int a = triples[corner * 3] * 3, b = triples[((corner + 1) % cornerCount) * 3] * 3;
+			normalX += (positions[a + 1] - positions[b + 1]) * (positions[a + 2] + positions[b + 2]);
+			normalY += (positions[a + 2] - positions[b + 2]) * (positions[a] + positions[b]);
+			normalZ += (positions[a] - positions[b]) * (positions[a + 1] + positions[b + 1]);
+		}
+		
+		float absX = Math.abs(normalX), absY = Math.abs(normalY), absZ = Math.abs(normalZ);
+		int droppedAxis = (absX >= absY && absX >= absZ) ? 0 : (absY >= absZ) ? 1 : 2;
+		int axisU = (droppedAxis == 0) ? 1 : 0, axisV = (droppedAxis == 2) ? 1 : 2;
+		
+		float area = 0;
+		for (int corner = 0; corner < cornerCount; corner++) {
+			int position = triples[corner * 3] * 3;
+			projected[corner * 2] = positions[position + axisU];
+			projected[corner * 2 + 1] = positions[position + axisV];
+			previous[corner] = (corner + cornerCount - 1) % cornerCount;
+			next[corner] = (corner + 1) % cornerCount;
+		}
+		
+		for (int corner = 0; corner < cornerCount; corner++) {
+			int following = next[corner];
+			area += projected[corner * 2] * projected[following * 2 + 1] - projected[following * 2] * projected[corner * 2 + 1];
+		}
+		
+		// Degenerate polygons have no meaningful orientation. Keep the fan
+		if (area == 0) return;
+		
+		float orientation = Math.signum(area);
+		int remaining = cornerCount, current = 0, triangle = 0, attempts = 0;
+		
+		while (remaining > 3) {
+			int before = previous[current], after = next[current];
+			
+			// A corner may be clipped if it is convex and no other corner lies within its ear.
+			// If no ear can be found (i.e. self-intersecting polygons), one is clipped regardless
+			if (attempts > remaining || isEar(projected, previous, next, before, current, after, orientation)) {
+				writeTriangle(corners, slot + triangle++ * 9, triples, before, current, after);
+				next[before] = after;
+				previous[after] = before;
+				remaining--;
+				attempts = 0;
+				current = after;
+				continue;
+			}
+			
+			attempts++;
+			current = after;
+		}
+		
+		writeTriangle(corners, slot + triangle * 9, triples, previous[current], current, next[current]);
+	}
+	
+	private static boolean isEar(float[] projected, int[] previous, int[] next, int before, int current, int after, float orientation) {
+		float ax = projected[before * 2], ay = projected[before * 2 + 1];
+		float bx = projected[current * 2], by = projected[current * 2 + 1];
+		float cx = projected[after * 2], cy = projected[after * 2 + 1];
+		
+		if (cross(ax, ay, bx, by, cx, cy) * orientation <= 0) return false;
+		
+		for (int corner = next[after]; corner != before; corner = next[corner]) {
+			float px = projected[corner * 2], py = projected[corner * 2 + 1];
+			
+			// Corners coincident with the ear (i.e. repeated positions) do not obstruct it
+			if ((px == ax && py == ay) || (px == bx && py == by) || (px == cx && py == cy)) continue;
+			
+			if (cross(ax, ay, bx, by, px, py) * orientation >= 0
+					&& cross(bx, by, cx, cy, px, py) * orientation >= 0
+					&& cross(cx, cy, ax, ay, px, py) * orientation >= 0) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static float cross(float ax, float ay, float bx, float by, float cx, float cy) {
+		return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+	}
+	
+	private static void writeTriangle(int[] corners, int slot, int[] triples, int a, int b, int c) {
+		System.arraycopy(triples, a * 3, corners, slot, 3);
+		System.arraycopy(triples, b * 3, corners, slot + 3, 3);
+		System.arraycopy(triples, c * 3, corners, slot + 6, 3);
+	}
+	
+	/**
+	 * Per-task working memory, grown to fit the largest polygon processed
+	 */
+	private static final class Scratch {
+		
+		private int[] triples = new int[0], previous = new int[0], next = new int[0];
+		private float[] projected = new float[0];
+		
+		private void ensureCapacity(int cornerCount) {
+			if (previous.length >= cornerCount) return;
+			
+			this.triples = new int[cornerCount * 3];
+			this.previous = new int[cornerCount];
+			this.next = new int[cornerCount];
+			this.projected = new float[cornerCount * 2];
+		}
+		
+	}
+	
+}
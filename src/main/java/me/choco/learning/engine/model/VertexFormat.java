@@ -0,0 +1,148 @@
+package me.choco.learning.engine.model;
+
+/**
+ * Describes how the attributes of a {@link MeshData} are encoded when packed
+ * for the GPU. Compact encodings reduce the memory and bandwidth used by a
+ * {@link VertexModel} at the cost of some precision
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class VertexFormat {
+	
+	/**
+	 * Full precision floats for every attribute
+	 */
+	public static final VertexFormat FLOAT = new VertexFormat(PositionEncoding.FLOAT, NormalEncoding.FLOAT, TextureCoordEncoding.FLOAT);
+	
+	/**
+	 * 16-bit positions quantized to the mesh bounds, 10-bit normals and 16-bit
+	 * texture coordinates. 16 bytes per vertex rather than 32
+	 */
+	public static final VertexFormat COMPACT = new VertexFormat(PositionEncoding.UNORM16, NormalEncoding.INT_2_10_10_10, TextureCoordEncoding.UNORM16);
+	
+	private final PositionEncoding positionEncoding;
+	private final NormalEncoding normalEncoding;
+	private final TextureCoordEncoding textureCoordEncoding;
+	
+	/**
+	 * Construct a new vertex format
+	 * 
+	 * @param positionEncoding the encoding of vertex positions
+	 * @param normalEncoding the encoding of vertex normals
+	 * @param textureCoordEncoding the encoding of texture coordinates
+	 */
+	public VertexFormat(PositionEncoding positionEncoding, NormalEncoding normalEncoding, TextureCoordEncoding textureCoordEncoding) {
+		this.positionEncoding = positionEncoding;
+		this.normalEncoding = normalEncoding;
+		this.textureCoordEncoding = textureCoordEncoding;
+	}
+	
+	/**
+	 * Get the encoding of vertex positions
+	 * 
+	 * @return the position encoding
+	 */
+	public PositionEncoding getPositionEncoding() {
+		return positionEncoding;
+	}
+	
+	/**
+	 * Get the encoding of vertex normals
+	 * 
+	 * @return the normal encoding
+	 */
+	public NormalEncoding getNormalEncoding() {
+		return normalEncoding;
+	}
+	
+	/**
+	 * Get the encoding of texture coordinates
+	 * 
+	 * @return the texture coordinate encoding
+	 */
+	public TextureCoordEncoding getTextureCoordEncoding() {
+		return textureCoordEncoding;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (positionEncoding.ordinal() * 31 + normalEncoding.ordinal()) * 31 + textureCoordEncoding.ordinal();
+	}
+	
+	@Override
+	public boolean equals(Object object) {
+		if (object == this) return true;
+		if (!(object instanceof VertexFormat)) return false;
+		
+		VertexFormat other = (VertexFormat) object;
+		return positionEncoding == other.positionEncoding && normalEncoding == other.normalEncoding
+				&& textureCoordEncoding == other.textureCoordEncoding;
+	}
+	
+	/**
+	 * Represents the possible encodings of vertex positions
+	 */
+	public enum PositionEncoding {
+		
+		/**
+		 * Three 32-bit floats. 12 bytes per vertex
+		 */
+		FLOAT,
+		
+		/**
+		 * Three 16-bit half floats, padded to 8 bytes per vertex
+		 */
+		HALF_FLOAT,
+		
+		/**
+		 * Three normalized unsigned 16-bit integers relative to the mesh bounds,
+		 * padded to 8 bytes per vertex. Decoded in the vertex shader using the
+		 * model's position scale and offset
+		 */
+		UNORM16;
+		
+	}
+	
+	/**
+	 * Represents the possible encodings of vertex normals
+	 */
+	public enum NormalEncoding {
+		
+		/**
+		 * Three 32-bit floats. 12 bytes per vertex
+		 */
+		FLOAT,
+		
+		/**
+		 * Three signed normalized 10-bit integers packed into a single
+		 * GL_INT_2_10_10_10_REV value. 4 bytes per vertex
+		 */
+		INT_2_10_10_10;
+		
+	}
+	
+	/**
+	 * Represents the possible encodings of texture coordinates
+	 */
+	public enum TextureCoordEncoding {
+		
+		/**
+		 * Two 32-bit floats. 8 bytes per vertex
+		 */
+		FLOAT,
+		
+		/**
+		 * Two 16-bit half floats. 4 bytes per vertex
+		 */
+		HALF_FLOAT,
+		
+		/**
+		 * Two normalized unsigned 16-bit integers. 4 bytes per vertex. Only valid
+		 * for coordinates within [0, 1]. Meshes with coordinates outside of that
+		 * range fall back to {@link #HALF_FLOAT}
+		 */
+		UNORM16;
+		
+	}
+	
+}
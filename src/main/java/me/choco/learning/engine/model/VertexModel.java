@@ -1,21 +1,38 @@
 package me.choco.learning.engine.model;
 
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
-import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
 import static org.lwjgl.opengl.GL11.glDrawElements;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
-import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL14.glMultiDrawElements;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
+import static org.lwjgl.opengl.GL32.glDrawElementsInstancedBaseVertex;
+import static org.lwjgl.opengl.GL32.glMultiDrawElementsBaseVertex;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
+import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryUtil;
 
+import me.choco.learning.engine.buffer.ArenaMesh;
+import me.choco.learning.engine.buffer.MeshArena;
 import me.choco.learning.engine.buffer.VAO;
 import me.choco.learning.engine.buffer.VBO;
+import me.choco.learning.engine.buffer.VertexLayout;
+import me.choco.learning.engine.rendering.GLStateCache;
 import me.choco.learning.engine.texture.Material;
+import me.choco.learning.engine.texture.Texture;
 
 /**
  * Represents the internal features of an {@link ObjectModel} including its
@@ -25,12 +42,34 @@ import me.choco.learning.engine.texture.Material;
  */
 public class VertexModel {
 	
+	/** The first of the four attributes holding the columns of each instance's transformation matrix */
+	public static final int INSTANCE_TRANSFORM_ATTRIBUTE = 4;
+	
+	/** The size in bytes of each instance's transformation matrix */
+	public static final int INSTANCE_TRANSFORM_SIZE = 16 * Float.BYTES;
+	
 	private final VAO vao;
-	private final VBO vertexBuffer, indicesBuffer, textureCoordsBuffer, normalsBuffer;
+	private final VertexLayout layout;
+	private final VBO[] vertexBuffers;
+	private final VBO indicesBuffer;
+	private final ArenaMesh arenaMesh;
 	
 	private Material material = new Material(); // Default empty material
+	private final Material[] subMeshMaterials;
+	private final SubMesh[] subMeshes;
+	private final Set<Texture> ownedTextures = Collections.newSetFromMap(new IdentityHashMap<>());
 	
-	private final int vertexCount;
+	private final Meshlet[] meshlets;
+	private final int[] subMeshMeshlets; // The first meshlet of each sub-mesh, followed by the meshlet count
+	private final IntBuffer rangeCounts;
+	private final PointerBuffer rangeOffsets;
+	private final IntBuffer rangeBaseVertices;
+	
+	private final int indexCount, indexType;
+	private final Vector3f minBounds, maxBounds;
+	private final Vector3f boundingCenter;
+	private final float boundingRadius;
+	private final Vector3f positionScale, positionOffset;
 	
 	/**
 	 * Construct a new vertex model with provided array buffer values
@@ -41,48 +80,261 @@ public class VertexModel {
 	 * @param normals the model face normals
 	 */
 	public VertexModel(float[] vertices, int[] indices, float[] textureCoords, float[] normals) {
-		this.vertexCount = indices.length;
+		this(new MeshData(FloatBuffer.wrap(vertices), FloatBuffer.wrap(textureCoords), FloatBuffer.wrap(normals), IntBuffer.wrap(indices)));
+	}
+	
+	/**
+	 * Construct a new vertex model from parsed mesh data. The data is uploaded
+	 * with full precision float attributes
+	 * 
+	 * @param data the mesh data to upload
+	 */
+	public VertexModel(MeshData data) {
+		this(VertexPacker.pack(data, VertexFormat.FLOAT));
+	}
+	
+	/**
+	 * Construct a new vertex model from a packed mesh. Each attribute stream is
+	 * uploaded to its own VBO. Direct buffers are uploaded as they are, heap
+	 * buffers are first copied to native memory
+	 * 
+	 * @param mesh the packed mesh to upload
+	 */
+	public VertexModel(PackedMesh mesh) {
+		this(mesh, VertexLayout.split(mesh.getAttributes()));
+	}
+	
+	/**
+	 * Construct a new vertex model from a packed mesh, uploading its attribute
+	 * streams as described by the given layout. An interleaved layout fetches
+	 * every attribute of a vertex from one stream, whereas a split layout is
+	 * cheaper for depth-only passes which read positions alone
+	 * 
+	 * @param mesh the packed mesh to upload
+	 * @param layout the layout of the mesh's attributes
+	 */
+	public VertexModel(PackedMesh mesh, VertexLayout layout) {
+		this(mesh, layout, createBuffers(mesh, layout));
+	}
+	
+	/**
+	 * Construct a new vertex model from a packed mesh whose buffers have already
+	 * been uploaded with {@link #createBuffers(PackedMesh)}, possibly on another
+	 * context sharing objects with the current one. Only the VAO is created on the
+	 * current context, as vertex arrays are not shared between contexts
+	 * 
+	 * @param mesh the packed mesh which was uploaded
+	 * @param buffers the uploaded buffers
+	 */
+	public VertexModel(PackedMesh mesh, VBO[] buffers) {
+		this(mesh, VertexLayout.split(mesh.getAttributes()), buffers);
+	}
+	
+	/**
+	 * Construct a new vertex model from a packed mesh whose buffers have already
+	 * been uploaded with {@link #createBuffers(PackedMesh, VertexLayout)}
+	 * 
+	 * @param mesh the packed mesh which was uploaded
+	 * @param layout the layout with which the buffers were uploaded
+	 * @param buffers the uploaded buffers
+	 */
+	public VertexModel(PackedMesh mesh, VertexLayout layout, VBO[] buffers) {
+		this(mesh, layout, buffers, null);
+	}
+	
+	/**
+	 * Construct a new vertex model from a packed mesh sub-allocated from a mesh
+	 * arena rather than uploaded to buffers of its own. All models of the arena
+	 * share its VAO, so they may be drawn one after the other without rebinding.
+	 * The mesh's attributes must match the arena's layout
+	 * 
+	 * @param mesh the packed mesh to upload
+	 * @param arena the arena from which to allocate the mesh
+	 */
+	public VertexModel(PackedMesh mesh, MeshArena arena) {
+		this(mesh, arena.getLayout(), null, arena);
+	}
+	
+	private VertexModel(PackedMesh mesh, VertexLayout layout, VBO[] buffers, MeshArena arena) {
+		this.indexCount = mesh.getIndexCount();
+		this.minBounds = mesh.getMinBounds();
+		this.maxBounds = mesh.getMaxBounds();
+		this.boundingCenter = new Vector3f(minBounds).add(maxBounds).mul(0.5f);
+		this.boundingRadius = minBounds.distance(maxBounds) * 0.5f;
+		this.positionScale = mesh.getPositionScale();
+		this.positionOffset = mesh.getPositionOffset();
+		this.subMeshes = mesh.getSubMeshes();
+		this.subMeshMaterials = new Material[subMeshes.length];
+		
+		this.meshlets = mesh.getMeshlets();
+		this.subMeshMeshlets = new int[subMeshes.length + 1];
+		for (Meshlet meshlet : meshlets) {
+			this.subMeshMeshlets[meshlet.getSubMesh() + 1]++;
+		}
+		for (int i = 0; i < subMeshes.length; i++) {
+			this.subMeshMeshlets[i + 1] += subMeshMeshlets[i];
+		}
+		
+		// Visible meshlets are merged into at most one range per meshlet
+		this.rangeCounts = (meshlets.length > 0) ? BufferUtils.createIntBuffer(meshlets.length) : null;
+		this.rangeOffsets = (meshlets.length > 0) ? BufferUtils.createPointerBuffer(meshlets.length) : null;
+		this.rangeBaseVertices = (meshlets.length > 0 && arena != null) ? BufferUtils.createIntBuffer(meshlets.length) : null;
+		
+		this.layout = layout;
+		if (arena != null) {
+			if (!layout.matches(mesh.getAttributes())) {
+				throw new IllegalArgumentException("Mesh attributes do not match the vertex layout of the arena");
+			}
+			
+			this.arenaMesh = arena.allocate(mesh.getStreams(), mesh.getVertexCount(), mesh.getIndices(), mesh.getIndexType(), mesh.getIndexCount());
+			this.indexType = arena.getIndexType();
+			this.vao = null;
+			this.vertexBuffers = null;
+			this.indicesBuffer = null;
+			return;
+		}
+		
+		this.arenaMesh = null;
+		this.indexType = mesh.getIndexType();
 		
-		// Construct new VAO and VBO objects
+		// Construct new VAO and bind the buffers to it
 		this.vao = new VAO();
 		this.vao.bind();
-
-		FloatBuffer vertexBuffer = MemoryUtil.memAllocFloat(vertices.length);
-		vertexBuffer.put(vertices).flip();
-		this.vertexBuffer = new VBO(GL_ARRAY_BUFFER, vertexBuffer);
-		this.vao.createAttribPointer(0, 3);
-		
-		IntBuffer indicesBuffer = MemoryUtil.memAllocInt(indices.length);
-		indicesBuffer.put(indices).flip();
-		this.indicesBuffer = new VBO(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer);
-		
-		FloatBuffer textureCoordsBuffer = MemoryUtil.memAllocFloat(textureCoords.length);
-		textureCoordsBuffer.put(textureCoords).flip();
-		this.textureCoordsBuffer = new VBO(GL_ARRAY_BUFFER, textureCoordsBuffer);
-		this.vao.createAttribPointer(1, 2);
-		
-		FloatBuffer normalsBuffer = MemoryUtil.memAllocFloat(normals.length);
-		normalsBuffer.put(normals).flip();
-		this.normalsBuffer = new VBO(GL_ARRAY_BUFFER, normalsBuffer);
-		this.vao.createAttribPointer(2, 3);
-		
-		// Unbind buffers & clear buffer data
-		this.normalsBuffer.unbind();
+		
+		this.vertexBuffers = Arrays.copyOf(buffers, layout.getBufferCount());
+		this.indicesBuffer = buffers[layout.getBufferCount()];
+		
+		this.vao.createAttribPointers(layout, vertexBuffers);
+		this.indicesBuffer.bind();
 		this.vao.unbind();
+	}
+	
+	/**
+	 * Upload the vertex and index data of a packed mesh to new VBOs on the current
+	 * context. One VBO is created per attribute stream, followed by the index
+	 * buffer. Direct buffers are uploaded as they are, heap buffers are first
+	 * copied to native memory
+	 * 
+	 * @param mesh the packed mesh to upload
+	 * @return the uploaded buffers
+	 */
+	public static VBO[] createBuffers(PackedMesh mesh) {
+		return createBuffers(mesh, VertexLayout.split(mesh.getAttributes()));
+	}
+	
+	/**
+	 * Upload the vertex and index data of a packed mesh to new VBOs on the current
+	 * context. One VBO is created per buffer of the given layout, followed by the
+	 * index buffer
+	 * 
+	 * @param mesh the packed mesh to upload
+	 * @param layout the layout of the mesh's attributes
+	 * 
+	 * @return the uploaded buffers
+	 */
+	public static VBO[] createBuffers(PackedMesh mesh, VertexLayout layout) {
+		ByteBuffer[] contents = layout.pack(mesh.getStreams(), mesh.getVertexCount());
+		VBO[] buffers = new VBO[contents.length + 1];
+		
+		for (int i = 0; i < contents.length; i++) {
+			buffers[i] = createBuffer(GL_ARRAY_BUFFER, contents[i]);
+		}
 		
-		MemoryUtil.memFree(vertexBuffer);
-		MemoryUtil.memFree(indicesBuffer);
-		MemoryUtil.memFree(textureCoordsBuffer);
-		MemoryUtil.memFree(normalsBuffer);
+		buffers[contents.length] = createBuffer(GL_ELEMENT_ARRAY_BUFFER, mesh.getIndices());
+		buffers[contents.length - 1].unbind();
+		return buffers;
 	}
 	
 	/**
-	 * Get the VAO that handles this vertex model
+	 * Get the VAO that handles this vertex model. Models allocated from a mesh
+	 * arena return the arena's VAO
 	 * 
 	 * @return the model's VAO
 	 */
 	public VAO getVAO() {
-		return vao;
+		return (arenaMesh != null) ? arenaMesh.getArena().getVAO() : vao;
+	}
+	
+	/**
+	 * Get the allocation of this model in its mesh arena
+	 * 
+	 * @return the arena allocation, or null if the model owns its buffers
+	 */
+	public ArenaMesh getArenaMesh() {
+		return arenaMesh;
+	}
+	
+	/**
+	 * Get the layout of this model's vertex buffers
+	 * 
+	 * @return the vertex layout
+	 */
+	public VertexLayout getLayout() {
+		return layout;
+	}
+	
+	/**
+	 * Get the amount of indices drawn when rendering this model
+	 * 
+	 * @return the index count
+	 */
+	public int getIndexCount() {
+		return indexCount;
+	}
+	
+	/**
+	 * Get the minimum corner of this model's axis-aligned bounding box
+	 * 
+	 * @return the minimum bounds
+	 */
+	public Vector3f getMinBounds() {
+		return minBounds;
+	}
+	
+	/**
+	 * Get the maximum corner of this model's axis-aligned bounding box
+	 * 
+	 * @return the maximum bounds
+	 */
+	public Vector3f getMaxBounds() {
+		return maxBounds;
+	}
+	
+	/**
+	 * Get the center of this model's bounding sphere, which encloses its
+	 * axis-aligned bounding box
+	 * 
+	 * @return the bounding sphere center
+	 */
+	public Vector3f getBoundingCenter() {
+		return boundingCenter;
+	}
+	
+	/**
+	 * Get the radius of this model's bounding sphere
+	 * 
+	 * @return the bounding sphere radius
+	 */
+	public float getBoundingRadius() {
+		return boundingRadius;
+	}
+	
+	/**
+	 * Get the scale with which the vertex shader decodes this model's positions
+	 * 
+	 * @return the position scale
+	 */
+	public Vector3f getPositionScale() {
+		return positionScale;
+	}
+	
+	/**
+	 * Get the offset with which the vertex shader decodes this model's positions
+	 * 
+	 * @return the position offset
+	 */
+	public Vector3f getPositionOffset() {
+		return positionOffset;
 	}
 	
 	/**
@@ -103,6 +355,61 @@ public class VertexModel {
 		return material;
 	}
 	
+	/**
+	 * Set the material that should be rendered on a sub-mesh of this model,
+	 * overriding the model's material
+	 * 
+	 * @param subMesh the index of the sub-mesh
+	 * @param material the material to be set, or null to use the model's material
+	 */
+	public void setMaterial(int subMesh, Material material) {
+		this.subMeshMaterials[subMesh] = material;
+	}
+	
+	/**
+	 * Get the material rendered on a sub-mesh of this model
+	 * 
+	 * @param subMesh the index of the sub-mesh
+	 * @return the sub-mesh material
+	 */
+	public Material getMaterial(int subMesh) {
+		Material subMeshMaterial = subMeshMaterials[subMesh];
+		return (subMeshMaterial != null) ? subMeshMaterial : material;
+	}
+	
+	/**
+	 * Get the sub-mesh at the given index
+	 * 
+	 * @param subMesh the index of the sub-mesh
+	 * @return the sub-mesh
+	 */
+	public SubMesh getSubMesh(int subMesh) {
+		return subMeshes[subMesh];
+	}
+	
+	/**
+	 * Get the amount of sub-meshes (and therefore draw calls) in this model
+	 * 
+	 * @return the sub-mesh count
+	 */
+	public int getSubMeshCount() {
+		return subMeshes.length;
+	}
+	
+	/**
+	 * Check whether any sub-mesh of this model has a transparent material, in
+	 * which case it must be blended with what is behind it
+	 * 
+	 * @return true if transparent, false if opaque
+	 */
+	public boolean isTransparent() {
+		for (int i = 0; i < subMeshes.length; i++) {
+			if (getMaterial(i).isTransparent()) return true;
+		}
+		
+		return false;
+	}
+	
 	/**
 	 * Check whether the model has a texture or not
 	 * 
@@ -113,37 +420,255 @@ public class VertexModel {
 	}
 	
 	/**
-	 * Render this vertex model to the framebuffer
+	 * Render this vertex model to the framebuffer. The VAO is bound once, and
+	 * each sub-mesh is drawn as a single range with its own material
 	 */
 	public void render() {
-		if (material.isTextured()) {
-			glActiveTexture(GL_TEXTURE0);
-			this.material.getTexture().bind();
+		this.bind();
+		
+		for (int i = 0; i < subMeshes.length; i++) {
+			this.renderSubMesh(i);
 		}
 		
-		this.vao.bind();
-		this.vao.enableAllAttribArrays();
+		this.unbind();
+	}
+	
+	/**
+	 * Bind this model's VAO in preparation for {@link #renderSubMesh(int)}
+	 */
+	public void bind() {
+		VAO vao = getVAO();
+		vao.bind();
+		vao.enableAllAttribArrays();
+	}
+	
+	/**
+	 * Bind this model's VAO with only its position attribute enabled, in
+	 * preparation for a depth-only pass with {@link #renderDepth()}. With a split
+	 * layout, only the position stream is fetched
+	 */
+	public void bindPositions() {
+		VAO vao = getVAO();
+		vao.bind();
+		vao.enableAttribArray(layout.getAttribute(0).getIndex());
+	}
+	
+	/**
+	 * Render every sub-mesh of this model without binding materials. This model
+	 * must be bound with {@link #bindPositions()} or {@link #bind()} first
+	 */
+	public void renderDepth() {
+		this.drawRange(0, indexCount);
+	}
+	
+	/**
+	 * Render a single sub-mesh of this model with its material. This model must
+	 * be bound with {@link #bind()} first
+	 * 
+	 * @param subMesh the index of the sub-mesh to render
+	 */
+	public void renderSubMesh(int subMesh) {
+		SubMesh range = subMeshes[subMesh];
+		if (range.getIndexCount() == 0) return;
 		
-		glDrawElements(GL_TRIANGLES, vertexCount, GL_UNSIGNED_INT, 0);
+		this.bindMaterial(subMesh);
+		this.drawRange(range.getIndexOffset(), range.getIndexCount());
+	}
+	
+	/**
+	 * Source the transformation matrix of each instance from the array buffer
+	 * currently bound, starting at the given offset. Every matrix is stored as 16
+	 * column-major floats and occupies the four attributes from
+	 * {@link #INSTANCE_TRANSFORM_ATTRIBUTE}. Draws which are not instanced use the
+	 * first matrix. This model must be bound with {@link #bind()} first
+	 * 
+	 * @param offset the byte offset of the first instance's matrix
+	 */
+	public void setInstanceTransforms(long offset) {
+		VAO vao = getVAO();
+		for (int column = 0; column < 4; column++) {
+			vao.setInstanceAttribPointer(INSTANCE_TRANSFORM_ATTRIBUTE + column, 4, GL_FLOAT, INSTANCE_TRANSFORM_SIZE, offset + column * 4 * Float.BYTES);
+		}
+	}
+	
+	/**
+	 * Render several instances of a single sub-mesh with its material in one draw
+	 * call. The transformation of each instance is sourced as specified by
+	 * {@link #setInstanceTransforms(long)}
+	 * 
+	 * @param subMesh the index of the sub-mesh to render
+	 * @param instanceCount the amount of instances to render
+	 */
+	public void renderSubMeshInstanced(int subMesh, int instanceCount) {
+		SubMesh range = subMeshes[subMesh];
+		if (range.getIndexCount() == 0 || instanceCount == 0) return;
 		
-		this.vao.disableAllAttribArrays();
-		this.vao.unbind();
+		this.bindMaterial(subMesh);
+		
+		long offset = (long) range.getIndexOffset() * VertexPacker.getIndexSize(indexType);
+		if (arenaMesh == null) {
+			glDrawElementsInstanced(GL_TRIANGLES, range.getIndexCount(), indexType, offset, instanceCount);
+		}
+		else {
+			offset += (long) arenaMesh.getFirstIndex() * VertexPacker.getIndexSize(indexType);
+			glDrawElementsInstancedBaseVertex(GL_TRIANGLES, range.getIndexCount(), indexType, offset, instanceCount, arenaMesh.getBaseVertex());
+		}
 	}
 	
 	/**
-	 * Cleanup any outstanding data
+	 * Render only the visible meshlets of a single sub-mesh with its material.
+	 * Meshlets adjacent in the index buffer are merged into a single range, and
+	 * all ranges are submitted with one draw call. This model must be bound with
+	 * {@link #bind()} first
+	 * 
+	 * @param subMesh the index of the sub-mesh to render
+	 * @param visibility the visibility of each of this model's meshlets
 	 */
-	public void cleanup() {
-		this.vertexBuffer.delete();
-		this.indicesBuffer.delete();
-		this.textureCoordsBuffer.delete();
-		this.normalsBuffer.delete();
+	public void renderMeshlets(int subMesh, boolean[] visibility) {
+		this.renderMeshlets(subMesh, visibility, 0);
+	}
+	
+	/**
+	 * Render only the visible meshlets of a single sub-mesh with its material,
+	 * reading their visibility from part of a larger array. See {@link #renderMeshlets(int, boolean[])}
+	 * 
+	 * @param subMesh the index of the sub-mesh to render
+	 * @param visibility the array holding the visibility of each of this model's meshlets
+	 * @param offset the index in the array of the visibility of this model's first meshlet
+	 */
+	public void renderMeshlets(int subMesh, boolean[] visibility, int offset) {
+		this.rangeCounts.clear();
+		this.rangeOffsets.clear();
 		
-		this.vao.delete();
+		int indexSize = VertexPacker.getIndexSize(indexType);
+		int firstIndex = (arenaMesh != null) ? arenaMesh.getFirstIndex() : 0;
+		int rangeStart = 0, rangeEnd = -1;
+		
+		for (int i = subMeshMeshlets[subMesh]; i < subMeshMeshlets[subMesh + 1]; i++) {
+			if (!visibility[offset + i]) continue;
+			
+			Meshlet meshlet = meshlets[i];
+			if (meshlet.getIndexOffset() != rangeEnd) {
+				if (rangeEnd >= 0) {
+					this.rangeCounts.put(rangeEnd - rangeStart);
+					this.rangeOffsets.put((long) (firstIndex + rangeStart) * indexSize);
+				}
+				
+				rangeStart = meshlet.getIndexOffset();
+			}
+			
+			rangeEnd = meshlet.getIndexOffset() + meshlet.getIndexCount();
+		}
 		
+		if (rangeEnd < 0) return;
+		
+		this.rangeCounts.put(rangeEnd - rangeStart).flip();
+		this.rangeOffsets.put((long) (firstIndex + rangeStart) * indexSize).flip();
+		
+		this.bindMaterial(subMesh);
+		if (arenaMesh == null) {
+			glMultiDrawElements(GL_TRIANGLES, rangeCounts, indexType, rangeOffsets);
+			return;
+		}
+		
+		this.rangeBaseVertices.clear();
+		for (int i = 0; i < rangeCounts.limit(); i++) {
+			this.rangeBaseVertices.put(arenaMesh.getBaseVertex());
+		}
+		
+		this.rangeBaseVertices.flip();
+		glMultiDrawElementsBaseVertex(GL_TRIANGLES, rangeCounts, indexType, rangeOffsets, rangeBaseVertices);
+	}
+	
+	/**
+	 * Get the clusters into which this model's indices are split. See {@link MeshletBuilder}
+	 * 
+	 * @return the meshlets, or an empty array if none
+	 */
+	public Meshlet[] getMeshlets() {
+		return meshlets;
+	}
+	
+	/**
+	 * Check whether this model is split into meshlets
+	 * 
+	 * @return true if meshlets are present, false otherwise
+	 */
+	public boolean hasMeshlets() {
+		return meshlets.length > 0;
+	}
+	
+	private void drawRange(int indexOffset, int count) {
+		if (arenaMesh == null) {
+			glDrawElements(GL_TRIANGLES, count, indexType, (long) indexOffset * VertexPacker.getIndexSize(indexType));
+		}
+		else {
+			long offset = (long) (arenaMesh.getFirstIndex() + indexOffset) * VertexPacker.getIndexSize(indexType);
+			glDrawElementsBaseVertex(GL_TRIANGLES, count, indexType, offset, arenaMesh.getBaseVertex());
+		}
+	}
+	
+	private void bindMaterial(int subMesh) {
+		Material material = getMaterial(subMesh);
 		if (material.isTextured()) {
-			material.getTexture().delete();
+			GLStateCache.get().activeTexture(GL_TEXTURE0);
+			material.getTexture().bind();
 		}
 	}
 	
+	/**
+	 * Unbind this model's VAO
+	 */
+	public void unbind() {
+		VAO vao = getVAO();
+		vao.disableAllAttribArrays();
+		vao.unbind();
+	}
+	
+	/**
+	 * Transfer ownership of a texture to this model so that it is deleted along
+	 * with the model. Used for textures loaded from the model's material libraries,
+	 * which nothing else references
+	 * 
+	 * @param texture the texture to own
+	 */
+	void ownTexture(Texture texture) {
+		this.ownedTextures.add(texture);
+	}
+	
+	/**
+	 * Cleanup any outstanding data. Textures of materials set on this model are
+	 * not deleted as they may be shared with other models, with the exception of
+	 * those loaded from its material libraries
+	 */
+	public void cleanup() {
+		if (arenaMesh != null) {
+			this.arenaMesh.getArena().free(arenaMesh);
+		}
+		else {
+			for (VBO buffer : vertexBuffers) {
+				buffer.delete();
+			}
+			
+			this.indicesBuffer.delete();
+			
+			this.vao.delete();
+		}
+		
+		this.ownedTextures.forEach(Texture::delete);
+		this.ownedTextures.clear();
+	}
+	
+	private static VBO createBuffer(int target, ByteBuffer data) {
+		if (data.isDirect()) {
+			return new VBO(target, data);
+		}
+		
+		ByteBuffer buffer = MemoryUtil.memAlloc(data.remaining());
+		buffer.put(data.duplicate()).flip();
+		VBO vbo = new VBO(target, buffer);
+		MemoryUtil.memFree(buffer);
+		return vbo;
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,250 @@
+package me.choco.learning.engine.model;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+import static org.lwjgl.opengl.GL33.GL_INT_2_10_10_10_REV;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import me.choco.learning.engine.buffer.VertexAttribute;
+import me.choco.learning.engine.model.VertexFormat.PositionEncoding;
+import me.choco.learning.engine.model.VertexFormat.TextureCoordEncoding;
+import me.choco.learning.engine.util.HalfFloat;
+
+/**
+ * A utility class to encode {@link MeshData} into a GPU-ready {@link PackedMesh}
+ * according to a {@link VertexFormat}. Tangents, if present, are packed as a
+ * fourth attribute with the same encoding as normals. Indices are automatically narrowed to
+ * GL_UNSIGNED_SHORT when every vertex can be addressed with 16 bits
+ * <p>
+ * Full precision float attributes and 32-bit indices of mesh data held in native
+ * memory are not copied. The packed streams are views of the mesh data's buffers,
+ * which are released by {@link PackedMesh#free()} once the mesh has been uploaded
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class VertexPacker {
+	
+	/** The largest vertex count addressable by GL_UNSIGNED_SHORT indices */
+	public static final int MAX_SHORT_INDEXED_VERTICES = 1 << 16;
+	
+	private static final int POSITION_ATTRIBUTE = 0, TEXTURE_COORD_ATTRIBUTE = 1, NORMAL_ATTRIBUTE = 2, TANGENT_ATTRIBUTE = 3;
+	
+	private VertexPacker() {}
+	
+	/**
+	 * Pack the given mesh data with the specified vertex format
+	 * 
+	 * @param data the mesh data to pack
+	 * @param format the vertex format to encode with
+	 * 
+	 * @return the packed mesh
+	 */
+	public static PackedMesh pack(MeshData data, VertexFormat format) {
+		int vertexCount = data.getVertexCount();
+		Vector3f minBounds = data.getMinBounds(), maxBounds = data.getMaxBounds();
+		Vector3f positionScale = new Vector3f(1, 1, 1), positionOffset = new Vector3f();
+		
+		int attributeCount = data.hasTangents() ? 4 : 3;
+		VertexAttribute[] attributes = new VertexAttribute[attributeCount];
+		ByteBuffer[] streams = new ByteBuffer[attributeCount];
+		
+		// Positions
+		FloatBuffer positions = data.getPositions();
+		switch (format.getPositionEncoding()) {
+		case HALF_FLOAT:
+			attributes[0] = new VertexAttribute(POSITION_ATTRIBUTE, 3, GL_HALF_FLOAT, false, 8);
+			streams[0] = allocate(vertexCount * 8);
+			for (int i = 0; i < vertexCount; i++) {
+				streams[0].putShort(HalfFloat.fromFloat(positions.get(i * 3)));
+				streams[0].putShort(HalfFloat.fromFloat(positions.get(i * 3 + 1)));
+				streams[0].putShort(HalfFloat.fromFloat(positions.get(i * 3 + 2)));
+				streams[0].putShort((short) 0);
+			}
+			break;
+		case UNORM16:
+			attributes[0] = new VertexAttribute(POSITION_ATTRIBUTE, 3, GL_UNSIGNED_SHORT, true, 8);
+			streams[0] = allocate(vertexCount * 8);
+			positionOffset.set(minBounds);
+			positionScale.set(maxBounds).sub(minBounds);
+			
+			float inverseX = inverseExtent(positionScale.x), inverseY = inverseExtent(positionScale.y), inverseZ = inverseExtent(positionScale.z);
+			for (int i = 0; i < vertexCount; i++) {
+				streams[0].putShort(unorm16((positions.get(i * 3) - minBounds.x) * inverseX));
+				streams[0].putShort(unorm16((positions.get(i * 3 + 1) - minBounds.y) * inverseY));
+				streams[0].putShort(unorm16((positions.get(i * 3 + 2) - minBounds.z) * inverseZ));
+				streams[0].putShort((short) 0);
+			}
+			break;
+		default:
+			attributes[0] = new VertexAttribute(POSITION_ATTRIBUTE, 3);
+			streams[0] = copyFloats(positions, vertexCount * 3);
+			break;
+		}
+		
+		// Texture coordinates
+		FloatBuffer textureCoords = data.getTextureCoords();
+		TextureCoordEncoding textureCoordEncoding = format.getTextureCoordEncoding();
+		if (textureCoordEncoding == TextureCoordEncoding.UNORM16 && !isNormalized(textureCoords, vertexCount * 2)) {
+			textureCoordEncoding = TextureCoordEncoding.HALF_FLOAT;
+		}
+		
+		switch (textureCoordEncoding) {
+		case HALF_FLOAT:
+			attributes[1] = new VertexAttribute(TEXTURE_COORD_ATTRIBUTE, 2, GL_HALF_FLOAT, false, 4);
+			streams[1] = allocate(vertexCount * 4);
+			for (int i = 0; i < vertexCount * 2; i++) {
+				streams[1].putShort(HalfFloat.fromFloat(textureCoords.get(i)));
+			}
+			break;
+		case UNORM16:
+			attributes[1] = new VertexAttribute(TEXTURE_COORD_ATTRIBUTE, 2, GL_UNSIGNED_SHORT, true, 4);
+			streams[1] = allocate(vertexCount * 4);
+			for (int i = 0; i < vertexCount * 2; i++) {
+				streams[1].putShort(unorm16(textureCoords.get(i)));
+			}
+			break;
+		default:
+			attributes[1] = new VertexAttribute(TEXTURE_COORD_ATTRIBUTE, 2);
+			streams[1] = copyFloats(textureCoords, vertexCount * 2);
+			break;
+		}
+		
+		// Normals
+		FloatBuffer normals = data.getNormals();
+		switch (format.getNormalEncoding()) {
+		case INT_2_10_10_10:
+			attributes[2] = new VertexAttribute(NORMAL_ATTRIBUTE, 4, GL_INT_2_10_10_10_REV, true, 4);
+			streams[2] = allocate(vertexCount * 4);
+			for (int i = 0; i < vertexCount; i++) {
+				streams[2].putInt(packNormal(normals.get(i * 3), normals.get(i * 3 + 1), normals.get(i * 3 + 2)));
+			}
+			break;
+		default:
+			attributes[2] = new VertexAttribute(NORMAL_ATTRIBUTE, 3);
+			streams[2] = copyFloats(normals, vertexCount * 3);
+			break;
+		}
+		
+		// Tangents
+		if (data.hasTangents()) {
+			FloatBuffer tangents = data.getTangents();
+			switch (format.getNormalEncoding()) {
+			case INT_2_10_10_10:
+				attributes[3] = new VertexAttribute(TANGENT_ATTRIBUTE, 4, GL_INT_2_10_10_10_REV, true, 4);
+				streams[3] = allocate(vertexCount * 4);
+				for (int i = 0; i < vertexCount; i++) {
+					int handedness = (tangents.get(i * 4 + 3) < 0) ? 0b10 : 0b01; // -2 and 1 decode to -1 and 1
+					streams[3].putInt(packNormal(tangents.get(i * 4), tangents.get(i * 4 + 1), tangents.get(i * 4 + 2)) | (handedness << 30));
+				}
+				break;
+			default:
+				attributes[3] = new VertexAttribute(TANGENT_ATTRIBUTE, 4);
+				streams[3] = copyFloats(tangents, vertexCount * 4);
+				break;
+			}
+		}
+		
+		for (ByteBuffer stream : streams) {
+			stream.flip();
+		}
+		
+		// Indices
+		IntBuffer indices = data.getIndices();
+		int indexCount = data.getIndexCount();
+		ByteBuffer indexStream;
+		int indexType;
+		
+		if (vertexCount <= MAX_SHORT_INDEXED_VERTICES) {
+			indexType = GL_UNSIGNED_SHORT;
+			indexStream = allocate(indexCount * Short.BYTES);
+			for (int i = 0; i < indexCount; i++) {
+				indexStream.putShort((short) indices.get(i));
+			}
+		}
+		else if (indices.isDirect()) {
+			indexType = GL_UNSIGNED_INT;
+			indexStream = view(indices, indexCount * Integer.BYTES);
+		}
+		else {
+			indexType = GL_UNSIGNED_INT;
+			indexStream = allocate(indexCount * Integer.BYTES);
+			indexStream.asIntBuffer().put(indices.duplicate());
+			indexStream.position(indexStream.limit());
+		}
+		
+		indexStream.flip();
+		return new PackedMesh(attributes, streams, indexStream, indexType, indexCount, vertexCount, minBounds, maxBounds, positionScale, positionOffset,
+				data.getSubMeshes(), data.getMaterialLibraries(), data.getMeshlets(), data.ownsMemory() ? data : null);
+	}
+	
+	/**
+	 * Get the size in bytes of a single index of the given type
+	 * 
+	 * @param indexType the OpenGL index type
+	 * @return the size of the index type
+	 */
+	public static int getIndexSize(int indexType) {
+		return (indexType == GL_UNSIGNED_SHORT) ? Short.BYTES : Integer.BYTES;
+	}
+	
+	private static ByteBuffer allocate(int size) {
+		return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+	}
+	
+	private static ByteBuffer copyFloats(FloatBuffer source, int length) {
+		if (source.isDirect()) {
+			return view(source, length * Float.BYTES);
+		}
+		
+		ByteBuffer stream = allocate(length * Float.BYTES);
+		FloatBuffer view = stream.asFloatBuffer();
+		FloatBuffer values = source.duplicate();
+		values.position(0).limit(length);
+		view.put(values);
+		
+		stream.position(stream.limit());
+		return stream;
+	}
+	
+	// A byte view of a direct buffer's memory, positioned at its end so that it may be flipped like a filled stream
+	private static ByteBuffer view(Buffer source, int size) {
+		ByteBuffer view = MemoryUtil.memByteBuffer(MemoryUtil.memAddress0(source), size).order(ByteOrder.nativeOrder());
+		view.position(size);
+		return view;
+	}
+	
+	private static boolean isNormalized(FloatBuffer values, int length) {
+		for (int i = 0; i < length; i++) {
+			float value = values.get(i);
+			if (value < 0 || value > 1) return false;
+		}
+		
+		return true;
+	}
+	
+	private static float inverseExtent(float extent) {
+		return (extent > 0) ? 1.0f / extent : 0;
+	}
+	
+	private static short unorm16(float value) {
+		return (short) Math.round(Math.max(0, Math.min(1, value)) * 65535.0f);
+	}
+	
+	private static int packNormal(float x, float y, float z) {
+		return (snorm10(x)) | (snorm10(y) << 10) | (snorm10(z) << 20);
+	}
+	
+	private static int snorm10(float value) {
+		return Math.round(Math.max(-1, Math.min(1, value)) * 511.0f) & 0x3FF;
+	}
+	
+}
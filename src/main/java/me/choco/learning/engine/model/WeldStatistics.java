@@ -0,0 +1,57 @@
+package me.choco.learning.engine.model;
+
+/**
+ * Describes how well the face corners of an imported mesh were welded into
+ * unique vertices. A low unique vertex ratio means that most corners were
+ * shared between faces, while a ratio of 1 means that no corner was reused
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class WeldStatistics {
+	
+	private final int cornerCount, vertexCount;
+	
+	/**
+	 * Construct new weld statistics
+	 * 
+	 * @param cornerCount the amount of face corners read from the source file
+	 * @param vertexCount the amount of unique vertices the corners were welded into
+	 */
+	public WeldStatistics(int cornerCount, int vertexCount) {
+		this.cornerCount = cornerCount;
+		this.vertexCount = vertexCount;
+	}
+	
+	/**
+	 * Get the amount of face corners read from the source file
+	 * 
+	 * @return the corner count
+	 */
+	public int getCornerCount() {
+		return cornerCount;
+	}
+	
+	/**
+	 * Get the amount of unique vertices the face corners were welded into
+	 * 
+	 * @return the unique vertex count
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	/**
+	 * Get the ratio of unique vertices to face corners
+	 * 
+	 * @return the unique vertex ratio, or 0 if there are no corners
+	 */
+	public float getUniqueVertexRatio() {
+		return (cornerCount == 0) ? 0 : vertexCount / (float) cornerCount;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d corners welded into %d vertices (%.1f%% unique)", cornerCount, vertexCount, getUniqueVertexRatio() * 100);
+	}
+	
+}
@@ -0,0 +1,156 @@
+package me.choco.learning.engine.rendering;
+
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+
+/**
+ * A list of draw commands built ahead of submission to OpenGL. Each command
+ * holds the index of a model in its {@link RenderQueue}, the model's
+ * transformation matrix and, for models with meshlets, the visibility of each
+ * meshlet. Commands are stored in flat primitive arrays so that lists may be
+ * built on worker threads and merged without allocating objects per command
+ * 
+ * @author Parker Hawke - 2008Choco
+ * @see DrawListBuilder
+ */
+public final class DrawList {
+	
+	private static final int MATRIX_FLOATS = 16;
+	
+	private int[] modelIndices = new int[64];
+	private int[] meshletOffsets = new int[64]; // -1 for models without meshlets
+	private float[] transforms = new float[64 * MATRIX_FLOATS];
+	private boolean[] meshletVisibility = new boolean[256];
+	private int size, meshletCount;
+	
+	/**
+	 * Add a command to draw a model without meshlets
+	 * 
+	 * @param modelIndex the index of the model in its render queue
+	 * @param transformationMatrix the transformation matrix of the model. It is copied
+	 */
+	public void add(int modelIndex, Matrix4f transformationMatrix) {
+		this.add(modelIndex, transformationMatrix, null, 0);
+	}
+	
+	/**
+	 * Add a command to draw the visible meshlets of a model
+	 * 
+	 * @param modelIndex the index of the model in its render queue
+	 * @param transformationMatrix the transformation matrix of the model. It is copied
+	 * @param visibility the visibility of each meshlet of the model. It is copied
+	 * @param meshletCount the amount of meshlets of the model
+	 */
+	public void add(int modelIndex, Matrix4f transformationMatrix, boolean[] visibility, int meshletCount) {
+		this.ensureCapacity(size + 1, this.meshletCount + meshletCount);
+		
+		this.modelIndices[size] = modelIndex;
+		transformationMatrix.get(transforms, size * MATRIX_FLOATS);
+		
+		if (visibility != null) {
+			this.meshletOffsets[size] = this.meshletCount;
+			System.arraycopy(visibility, 0, meshletVisibility, this.meshletCount, meshletCount);
+			this.meshletCount += meshletCount;
+		}
+		else {
+			this.meshletOffsets[size] = -1;
+		}
+		
+		this.size++;
+	}
+	
+	/**
+	 * Append every command of another list to the end of this list
+	 * 
+	 * @param other the list whose commands to add
+	 */
+	public void addAll(DrawList other) {
+		this.ensureCapacity(size + other.size, meshletCount + other.meshletCount);
+		
+		System.arraycopy(other.modelIndices, 0, modelIndices, size, other.size);
+		System.arraycopy(other.transforms, 0, transforms, size * MATRIX_FLOATS, other.size * MATRIX_FLOATS);
+		System.arraycopy(other.meshletVisibility, 0, meshletVisibility, meshletCount, other.meshletCount);
+		for (int i = 0; i < other.size; i++) {
+			int offset = other.meshletOffsets[i];
+			this.meshletOffsets[size + i] = (offset >= 0) ? offset + meshletCount : -1;
+		}
+		
+		this.size += other.size;
+		this.meshletCount += other.meshletCount;
+	}
+	
+	/**
+	 * Clear all commands from this list. The backing arrays are retained
+	 */
+	public void clear() {
+		this.size = 0;
+		this.meshletCount = 0;
+	}
+	
+	/**
+	 * Get the amount of commands in this list
+	 * 
+	 * @return the command count
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Get the index in its render queue of the model drawn by a command
+	 * 
+	 * @param command the index of the command
+	 * @return the model index
+	 */
+	public int getModelIndex(int command) {
+		return modelIndices[command];
+	}
+	
+	/**
+	 * Get the transformation matrix of the model drawn by a command
+	 * 
+	 * @param command the index of the command
+	 * @param dest the matrix in which to store the result
+	 * 
+	 * @return the destination matrix
+	 */
+	public Matrix4f getTransform(int command, Matrix4f dest) {
+		return dest.set(transforms, command * MATRIX_FLOATS);
+	}
+	
+	/**
+	 * Get the index in {@link #getMeshletVisibility()} of the visibility of the
+	 * first meshlet drawn by a command
+	 * 
+	 * @param command the index of the command
+	 * @return the meshlet offset, or -1 if the model has no meshlets
+	 */
+	public int getMeshletOffset(int command) {
+		return meshletOffsets[command];
+	}
+	
+	/**
+	 * Get the visibility of the meshlets of every command in this list. Only the
+	 * values from the offset of each command are valid for that command
+	 * 
+	 * @return the meshlet visibility array
+	 */
+	public boolean[] getMeshletVisibility() {
+		return meshletVisibility;
+	}
+	
+	private void ensureCapacity(int commandCapacity, int meshletCapacity) {
+		if (commandCapacity > modelIndices.length) {
+			int capacity = Math.max(commandCapacity, modelIndices.length << 1);
+			this.modelIndices = Arrays.copyOf(modelIndices, capacity);
+			this.meshletOffsets = Arrays.copyOf(meshletOffsets, capacity);
+			this.transforms = Arrays.copyOf(transforms, capacity * MATRIX_FLOATS);
+		}
+		
+		if (meshletCapacity > meshletVisibility.length) {
+			this.meshletVisibility = Arrays.copyOf(meshletVisibility, Math.max(meshletCapacity, meshletVisibility.length << 1));
+		}
+	}
+	
+}
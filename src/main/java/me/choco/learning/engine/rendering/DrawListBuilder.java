@@ -0,0 +1,218 @@
+package me.choco.learning.engine.rendering;
+
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import me.choco.learning.engine.model.LODChain;
+import me.choco.learning.engine.model.ObjectModel;
+import me.choco.learning.engine.model.VertexModel;
+import me.choco.learning.engine.util.ParallelRange;
+
+/**
+ * Builds the {@link DrawList} of a frame on worker threads so that the OpenGL
+ * thread only submits the result. The models of a {@link RenderQueue} are split
+ * into contiguous ranges, each processed by one worker which owns its own draw
+ * list, scratch matrices and {@link MeshletCuller}. For every visible model, a
+ * worker:
+ * <ul>
+ *   <li>selects the level of detail from the model's projected screen-space size</li>
+ *   <li>calculates the model's transformation matrix</li>
+ *   <li>culls the model's meshlets, if any</li>
+ * </ul>
+ * The lists of all workers are then merged in range order. Workers only write
+ * to the models in their own range, so a model must not be queued twice
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class DrawListBuilder {
+	
+	private static final int MIN_MODELS_PER_TASK = 128;
+	
+	private final float maxLODPixelError, lodHysteresis, zNear;
+	
+	private Worker[] workers = new Worker[0];
+	private final DrawList drawList = new DrawList();
+	private int[] commands = new int[0];
+	
+	/**
+	 * Construct a new draw list builder
+	 * 
+	 * @param maxLODPixelError the maximum screen-space error in pixels allowed when
+	 * selecting a level of detail. See {@link LODChain#selectLevel(float, float, float, int)}
+	 * @param lodHysteresis the fraction by which the error must change before the
+	 * level of detail changes
+	 * @param zNear the distance of the near plane, the nearest distance at which a
+	 * model's size is measured
+	 */
+	public DrawListBuilder(float maxLODPixelError, float lodHysteresis, float zNear) {
+		this.maxLODPixelError = maxLODPixelError;
+		this.lodHysteresis = lodHysteresis;
+		this.zNear = zNear;
+	}
+	
+	/**
+	 * Build the draw list of the visible models in the given queue. The returned
+	 * list is reused by subsequent calls
+	 * 
+	 * @param queue the queue whose models to draw
+	 * @param visibility the visibility of each model, indexed as in {@link RenderQueue#getModel(int)}
+	 * @param projectionMatrix the projection matrix
+	 * @param viewMatrix the view matrix
+	 * @param cameraPosition the position of the camera in world space
+	 * @param pixelsPerUnitAtUnitDistance the height in pixels of one unit at a distance of one unit
+	 * 
+	 * @return the draw list, with one command per visible model
+	 */
+	public DrawList build(RenderQueue queue, boolean[] visibility, Matrix4f projectionMatrix, Matrix4f viewMatrix, Vector3f cameraPosition,
+			float pixelsPerUnitAtUnitDistance) {
+		int size = queue.size();
+		int rangeCount = ParallelRange.getRangeCount(size, MIN_MODELS_PER_TASK);
+		if (workers.length < rangeCount) {
+			int oldLength = workers.length;
+			this.workers = Arrays.copyOf(workers, rangeCount);
+			for (int i = oldLength; i < rangeCount; i++) {
+				this.workers[i] = new Worker();
+			}
+		}
+		
+		ParallelRange.forEachRange(size, MIN_MODELS_PER_TASK, (range, from, to) -> {
+			this.workers[range].build(queue, visibility, from, to, projectionMatrix, viewMatrix, cameraPosition, pixelsPerUnitAtUnitDistance);
+		});
+		
+		this.drawList.clear();
+		for (int i = 0; i < rangeCount; i++) {
+			this.drawList.addAll(workers[i].drawList);
+		}
+		
+		if (commands.length < size) {
+			this.commands = new int[queue.size()];
+		}
+		
+		Arrays.fill(commands, 0, size, -1);
+		for (int i = 0; i < drawList.size(); i++) {
+			this.commands[drawList.getModelIndex(i)] = i;
+		}
+		
+		return drawList;
+	}
+	
+	/**
+	 * Get the draw list built by the last call to {@link #build(RenderQueue, boolean[], Matrix4f, Matrix4f, Vector3f, float)}
+	 * 
+	 * @return the draw list
+	 */
+	public DrawList getDrawList() {
+		return drawList;
+	}
+	
+	/**
+	 * Get the command in the last built draw list which draws the model at the
+	 * given index of its render queue
+	 * 
+	 * @param modelIndex the index of the model, as in {@link RenderQueue#getModel(int)}
+	 * @return the command index, or -1 if the model was not visible
+	 */
+	public int getCommand(int modelIndex) {
+		return commands[modelIndex];
+	}
+	
+	/**
+	 * Get the amount of meshlets tested by all workers since the counters were
+	 * last reset
+	 * 
+	 * @return the amount of tested meshlets
+	 */
+	public int getMeshletTestedCount() {
+		int count = 0;
+		for (Worker worker : workers) {
+			count += worker.meshletCuller.getTestedCount();
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Get the amount of meshlets outside of the frustum or facing away from the
+	 * camera found by all workers since the counters were last reset
+	 * 
+	 * @return the amount of culled meshlets
+	 */
+	public int getMeshletCulledCount() {
+		int count = 0;
+		for (Worker worker : workers) {
+			count += worker.meshletCuller.getFrustumCulledCount() + worker.meshletCuller.getConeCulledCount();
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Reset the meshlet counters of all workers to 0
+	 */
+	public void resetCounters() {
+		for (Worker worker : workers) {
+			worker.meshletCuller.resetCounters();
+		}
+	}
+	
+	/*
+	 * The state owned by the worker of a single range. A range is processed by one
+	 * thread at a time, so none of it is shared
+	 */
+	private final class Worker {
+		
+		private final DrawList drawList = new DrawList();
+		private final MeshletCuller meshletCuller = new MeshletCuller();
+		private final Matrix4f transformationMatrix = new Matrix4f();
+		private final Vector3f boundsCenter = new Vector3f();
+		
+		private void build(RenderQueue queue, boolean[] visibility, int from, int to, Matrix4f projectionMatrix, Matrix4f viewMatrix, Vector3f cameraPosition,
+				float pixelsPerUnitAtUnitDistance) {
+			this.drawList.clear();
+			
+			for (int i = from; i < to; i++) {
+				if (!visibility[i]) continue;
+				
+				ObjectModel model = queue.getModel(i);
+				TransformationMatrices.getTransformationMatrix(model, transformationMatrix);
+				this.updateLODLevel(model, cameraPosition, pixelsPerUnitAtUnitDistance);
+				
+				VertexModel vertexModel = model.getVertexModel();
+				
+				if (!vertexModel.hasMeshlets()) {
+					this.drawList.add(i, transformationMatrix);
+					continue;
+				}
+				
+				// Only the index ranges of meshlets which may be visible are submitted
+				boolean[] meshletVisibility = meshletCuller.cull(vertexModel, projectionMatrix, viewMatrix, transformationMatrix, cameraPosition);
+				this.drawList.add(i, transformationMatrix, meshletVisibility, vertexModel.getMeshlets().length);
+			}
+		}
+		
+		/*
+		 * Select the level of detail of a model from its projected screen-space size.
+		 * The distance is measured to the nearest point of the model's bounding sphere,
+		 * whose center is transformed by the model's transformation matrix
+		 */
+		private void updateLODLevel(ObjectModel model, Vector3f cameraPosition, float pixelsPerUnitAtUnitDistance) {
+			LODChain lodChain = model.getLODChain();
+			if (lodChain.getLevelCount() == 1) return;
+			
+			VertexModel base = lodChain.getLevel(0);
+			Vector3f minBounds = base.getMinBounds(), maxBounds = base.getMaxBounds();
+			float scale = model.getScale();
+			
+			this.transformationMatrix.transformPosition(boundsCenter.set(minBounds).add(maxBounds).mul(0.5f));
+			float radius = minBounds.distance(maxBounds) * 0.5f * scale;
+			float distance = Math.max(boundsCenter.distance(cameraPosition) - radius, zNear);
+			
+			float pixelsPerUnit = pixelsPerUnitAtUnitDistance * scale / distance;
+			model.setLODLevel(lodChain.selectLevel(pixelsPerUnit, maxLODPixelError, lodHysteresis, model.getLODLevel()));
+		}
+		
+	}
+	
+}
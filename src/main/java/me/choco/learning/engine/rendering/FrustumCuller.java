@@ -0,0 +1,168 @@
+package me.choco.learning.engine.rendering;
+
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import me.choco.learning.engine.model.ObjectModel;
+import me.choco.learning.engine.model.VertexModel;
+import me.choco.learning.engine.util.DynamicAABBTree;
+import me.choco.learning.engine.util.IntList;
+
+/**
+ * Determines which models of a {@link RenderQueue} are potentially visible by
+ * testing their world-space bounds against the six planes of the view frustum.
+ * Candidates are first found by querying the queue's {@link DynamicAABBTree},
+ * which rejects or accepts whole regions of the scene at once. The bounds of each
+ * candidate are then read from a packed float array and tested exactly:
+ * <ul>
+ *   <li>the bounding sphere is tested first. Models entirely outside of a plane
+ *   are culled, and models entirely inside every plane are visible</li>
+ *   <li>models whose sphere intersects a plane are tested again with their
+ *   axis-aligned bounding box, which is tighter for elongated models</li>
+ * </ul>
+ * Counters of visible and culled models are reset by every call to
+ * {@link #cull(RenderQueue, Matrix4f, Matrix4f)}, so they describe the last frame
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class FrustumCuller {
+	
+	/**
+	 * The amount of floats written per model by {@link #computeWorldBounds(ObjectModel, Matrix4f, float[], int)}:
+	 * the center of its bounds (3), the radius of its bounding sphere (1) and the
+	 * half extents of its axis-aligned bounding box (3)
+	 */
+	public static final int BOUNDS_FLOATS = 7;
+	
+	private static final int PLANE_COUNT = 6;
+	
+	private final Matrix4f viewProjection = new Matrix4f();
+	private final Vector4f plane = new Vector4f();
+	private final float[] planes = new float[PLANE_COUNT * 4];
+	
+	private final IntList candidates = new IntList();
+	private boolean[] visibility = new boolean[0];
+	private int visibleCount, culledCount;
+	
+	/**
+	 * Determine the visibility of each model in the given queue. The returned
+	 * array is reused by subsequent calls
+	 * 
+	 * @param queue the queue whose models to test
+	 * @param projectionMatrix the projection matrix
+	 * @param viewMatrix the view matrix
+	 * 
+	 * @return the visibility of each model, indexed as in {@link RenderQueue#getModel(int)}
+	 */
+	public boolean[] cull(RenderQueue queue, Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+		int size = queue.size();
+		if (visibility.length < size) {
+			this.visibility = new boolean[size];
+		}
+		
+		queue.updateBounds();
+		this.setPlanes(projectionMatrix.mul(viewMatrix, viewProjection));
+		
+		this.candidates.clear();
+		queue.getSpatialIndex().queryPlanes(planes, candidates);
+		Arrays.fill(visibility, 0, size, false);
+		
+		float[] bounds = queue.getBounds();
+		this.visibleCount = 0;
+		for (int i = 0; i < candidates.size(); i++) {
+			int index = queue.indexOf(candidates.get(i));
+			if (testBounds(bounds, index * BOUNDS_FLOATS)) {
+				this.visibility[index] = true;
+				this.visibleCount++;
+			}
+		}
+		
+		this.culledCount = size - visibleCount;
+		return visibility;
+	}
+	
+	/**
+	 * Get the amount of models found visible by the last call to {@link #cull(RenderQueue, Matrix4f, Matrix4f)}
+	 * 
+	 * @return the amount of visible models
+	 */
+	public int getVisibleCount() {
+		return visibleCount;
+	}
+	
+	/**
+	 * Get the amount of models found outside of the frustum by the last call to
+	 * {@link #cull(RenderQueue, Matrix4f, Matrix4f)}
+	 * 
+	 * @return the amount of culled models
+	 */
+	public int getCulledCount() {
+		return culledCount;
+	}
+	
+	/**
+	 * Write the world-space bounds of the given model to an array, as described by
+	 * {@link #BOUNDS_FLOATS}. The bounds of its vertex model are transformed by the
+	 * given matrix, which must not contain any shear
+	 * 
+	 * @param model the model whose bounds to compute
+	 * @param transformationMatrix the transformation matrix of the model
+	 * @param dest the array to write to
+	 * @param offset the offset in the array at which to write
+	 */
+	public static void computeWorldBounds(ObjectModel model, Matrix4f transformationMatrix, float[] dest, int offset) {
+		VertexModel vertexModel = model.getVertexModel();
+		Vector3f center = vertexModel.getBoundingCenter(), minBounds = vertexModel.getMinBounds(), maxBounds = vertexModel.getMaxBounds();
+		Matrix4f m = transformationMatrix;
+		
+		float extentX = (maxBounds.x - minBounds.x) * 0.5f, extentY = (maxBounds.y - minBounds.y) * 0.5f, extentZ = (maxBounds.z - minBounds.z) * 0.5f;
+		
+		dest[offset] = m.m00 * center.x + m.m10 * center.y + m.m20 * center.z + m.m30;
+		dest[offset + 1] = m.m01 * center.x + m.m11 * center.y + m.m21 * center.z + m.m31;
+		dest[offset + 2] = m.m02 * center.x + m.m12 * center.y + m.m22 * center.z + m.m32;
+		dest[offset + 3] = vertexModel.getBoundingRadius() * model.getScale();
+		
+		// The rotated box is enclosed by the box whose extents are the absolute projections of its own
+		dest[offset + 4] = Math.abs(m.m00) * extentX + Math.abs(m.m10) * extentY + Math.abs(m.m20) * extentZ;
+		dest[offset + 5] = Math.abs(m.m01) * extentX + Math.abs(m.m11) * extentY + Math.abs(m.m21) * extentZ;
+		dest[offset + 6] = Math.abs(m.m02) * extentX + Math.abs(m.m12) * extentY + Math.abs(m.m22) * extentZ;
+	}
+	
+	private void setPlanes(Matrix4f viewProjection) {
+		for (int i = 0; i < PLANE_COUNT; i++) {
+			viewProjection.frustumPlane(i, plane);
+			this.planes[i * 4] = plane.x;
+			this.planes[i * 4 + 1] = plane.y;
+			this.planes[i * 4 + 2] = plane.z;
+			this.planes[i * 4 + 3] = plane.w;
+		}
+	}
+	
+	private boolean testBounds(float[] bounds, int offset) {
+		float x = bounds[offset], y = bounds[offset + 1], z = bounds[offset + 2], radius = bounds[offset + 3];
+		boolean intersecting = false;
+		
+		for (int i = 0; i < planes.length; i += 4) {
+			float distance = planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3];
+			if (distance < -radius) return false;
+			if (distance < radius) {
+				intersecting = true;
+			}
+		}
+		
+		if (!intersecting) return true;
+		
+		float extentX = bounds[offset + 4], extentY = bounds[offset + 5], extentZ = bounds[offset + 6];
+		for (int i = 0; i < planes.length; i += 4) {
+			float distance = planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3];
+			float projectedExtent = Math.abs(planes[i]) * extentX + Math.abs(planes[i + 1]) * extentY + Math.abs(planes[i + 2]) * extentZ;
+			if (distance < -projectedExtent) return false;
+		}
+		
+		return true;
+	}
+	
+}
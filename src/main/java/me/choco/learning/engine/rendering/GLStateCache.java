@@ -0,0 +1,466 @@
+package me.choco.learning.engine.rendering;
+
+import static org.lwjgl.opengl.GL11.GL_BLEND;
+import static org.lwjgl.opengl.GL11.GL_DEPTH_TEST;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glBlendFunc;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.opengl.GL11.glDepthFunc;
+import static org.lwjgl.opengl.GL11.glDepthMask;
+import static org.lwjgl.opengl.GL11.glDisable;
+import static org.lwjgl.opengl.GL11.glEnable;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL20.glDeleteProgram;
+import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL31.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+import java.util.Arrays;
+
+/**
+ * A cache of the OpenGL state of the current context which skips calls that
+ * would not change anything. The current program, vertex array, buffer
+ * bindings, per-unit 2D texture bindings, blend state and depth state are
+ * recorded, and every call made through the cache is counted as either issued
+ * or skipped.
+ * <p>
+ * OpenGL state belongs to a context, and each context is current on a single
+ * thread, so every thread has its own cache (see {@link #get()}). All state
+ * starts unknown so that the first call for each binding is always issued.
+ * Code which changes state without going through the cache must call
+ * {@link #invalidate()} afterwards.
+ * <p>
+ * The element array buffer binding is part of the vertex array, so it is
+ * forgotten whenever the vertex array changes. Object names are recycled once
+ * deleted, so names generated through the cache are forgotten from its
+ * bindings, as the cached binding must refer to a deleted object
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class GLStateCache {
+	
+	/** The amount of texture units whose bindings are tracked */
+	public static final int MAX_TEXTURE_UNITS = 32;
+	
+	private static final int UNKNOWN = -1;
+	private static final int[] BUFFER_TARGETS = { GL_ARRAY_BUFFER, GL_ELEMENT_ARRAY_BUFFER, GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, GL_UNIFORM_BUFFER };
+	private static final int ELEMENT_ARRAY_BUFFER_SLOT = 1;
+	
+	private static final ThreadLocal<GLStateCache> CACHES = ThreadLocal.withInitial(GLStateCache::new);
+	
+	private int program, vertexArray, activeTexture;
+	private final int[] buffers = new int[BUFFER_TARGETS.length];
+	private final int[] textures = new int[MAX_TEXTURE_UNITS];
+	
+	private int blend, blendSource, blendDestination;
+	private int depthTest, depthMask, depthFunction;
+	
+	private long issuedCount, skippedCount;
+	
+	private GLStateCache() {
+		this.invalidate();
+	}
+	
+	/**
+	 * Get the state cache of the context current on the calling thread
+	 * 
+	 * @return the state cache
+	 */
+	public static GLStateCache get() {
+		return CACHES.get();
+	}
+	
+	/**
+	 * Forget all recorded state. The next call for every binding is issued
+	 */
+	public void invalidate() {
+		this.program = vertexArray = activeTexture = UNKNOWN;
+		this.blend = blendSource = blendDestination = UNKNOWN;
+		this.depthTest = depthMask = depthFunction = UNKNOWN;
+		Arrays.fill(buffers, UNKNOWN);
+		Arrays.fill(textures, UNKNOWN);
+	}
+	
+	/**
+	 * Use the given shader program (glUseProgram)
+	 * 
+	 * @param program the program id, or 0 for none
+	 */
+	public void useProgram(int program) {
+		if (this.program == program) {
+			this.skippedCount++;
+			return;
+		}
+		
+		glUseProgram(program);
+		this.program = program;
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Bind the given vertex array (glBindVertexArray)
+	 * 
+	 * @param vertexArray the vertex array id, or 0 for none
+	 */
+	public void bindVertexArray(int vertexArray) {
+		if (this.vertexArray == vertexArray) {
+			this.skippedCount++;
+			return;
+		}
+		
+		glBindVertexArray(vertexArray);
+		this.vertexArray = vertexArray;
+		this.buffers[ELEMENT_ARRAY_BUFFER_SLOT] = UNKNOWN;
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Enable or disable an attribute array of the bound vertex array. Attribute
+	 * arrays are part of the vertex array rather than the context, so their
+	 * current state is supplied by the caller (see {@link me.choco.learning.engine.buffer.VAO})
+	 * 
+	 * @param index the attribute index
+	 * @param enabled true to enable the array, false to disable it
+	 * @param currentlyEnabled whether the array is currently enabled
+	 */
+	public void setVertexAttribArray(int index, boolean enabled, boolean currentlyEnabled) {
+		if (enabled == currentlyEnabled) {
+			this.skippedCount++;
+			return;
+		}
+		
+		if (enabled) {
+			glEnableVertexAttribArray(index);
+		}
+		else {
+			glDisableVertexAttribArray(index);
+		}
+		
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Bind the given buffer to a target (glBindBuffer). Only the array, element
+	 * array, copy and uniform buffer targets are tracked, calls for other targets
+	 * are always issued
+	 * 
+	 * @param target the buffer target
+	 * @param buffer the buffer id, or 0 for none
+	 */
+	public void bindBuffer(int target, int buffer) {
+		int slot = bufferSlot(target);
+		if (slot >= 0 && buffers[slot] == buffer) {
+			this.skippedCount++;
+			return;
+		}
+		
+		glBindBuffer(target, buffer);
+		if (slot >= 0) {
+			this.buffers[slot] = buffer;
+		}
+		
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Bind the given buffer to an indexed binding point of a target
+	 * (glBindBufferBase). Indexed bindings are not tracked and the call is always
+	 * issued, but the generic binding of the target is updated as well, as
+	 * OpenGL does
+	 * 
+	 * @param target the buffer target, i.e. GL_UNIFORM_BUFFER
+	 * @param index the binding point
+	 * @param buffer the buffer id, or 0 for none
+	 */
+	public void bindBufferBase(int target, int index, int buffer) {
+		glBindBufferBase(target, index, buffer);
+		
+		int slot = bufferSlot(target);
+		if (slot >= 0) {
+			this.buffers[slot] = buffer;
+		}
+		
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Select the active texture unit (glActiveTexture)
+	 * 
+	 * @param texture the texture unit, i.e. GL_TEXTURE0
+	 */
+	public void activeTexture(int texture) {
+		int unit = texture - GL_TEXTURE0;
+		if (unit == activeTexture) {
+			this.skippedCount++;
+			return;
+		}
+		
+		glActiveTexture(texture);
+		this.activeTexture = (unit >= 0 && unit < MAX_TEXTURE_UNITS) ? unit : UNKNOWN;
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Bind the given texture to a target of the active texture unit (glBindTexture).
+	 * Only the 2D texture target is tracked, calls for other targets are always
+	 * issued
+	 * 
+	 * @param target the texture target
+	 * @param texture the texture id, or 0 for none
+	 */
+	public void bindTexture(int target, int texture) {
+		boolean tracked = (target == GL_TEXTURE_2D && activeTexture != UNKNOWN);
+		if (tracked && textures[activeTexture] == texture) {
+			this.skippedCount++;
+			return;
+		}
+		
+		glBindTexture(target, texture);
+		if (tracked) {
+			this.textures[activeTexture] = texture;
+		}
+		
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Enable or disable blending (GL_BLEND)
+	 * 
+	 * @param enabled true to enable blending
+	 */
+	public void setBlend(boolean enabled) {
+		this.blend = this.setCapability(GL_BLEND, enabled, blend);
+	}
+	
+	/**
+	 * Set the blend function (glBlendFunc)
+	 * 
+	 * @param source the source factor
+	 * @param destination the destination factor
+	 */
+	public void blendFunc(int source, int destination) {
+		if (blendSource == source && blendDestination == destination) {
+			this.skippedCount++;
+			return;
+		}
+		
+		glBlendFunc(source, destination);
+		this.blendSource = source;
+		this.blendDestination = destination;
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Enable or disable depth testing (GL_DEPTH_TEST)
+	 * 
+	 * @param enabled true to enable depth testing
+	 */
+	public void setDepthTest(boolean enabled) {
+		this.depthTest = this.setCapability(GL_DEPTH_TEST, enabled, depthTest);
+	}
+	
+	/**
+	 * Enable or disable writing to the depth buffer (glDepthMask)
+	 * 
+	 * @param enabled true to write depth
+	 */
+	public void setDepthMask(boolean enabled) {
+		int value = enabled ? 1 : 0;
+		if (depthMask == value) {
+			this.skippedCount++;
+			return;
+		}
+		
+		glDepthMask(enabled);
+		this.depthMask = value;
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Set the depth comparison function (glDepthFunc)
+	 * 
+	 * @param function the depth function, i.e. GL_LESS
+	 */
+	public void depthFunc(int function) {
+		if (depthFunction == function) {
+			this.skippedCount++;
+			return;
+		}
+		
+		glDepthFunc(function);
+		this.depthFunction = function;
+		this.issuedCount++;
+	}
+	
+	/**
+	 * Generate a new buffer name (glGenBuffers), forgetting any cached binding of
+	 * a deleted buffer which had the same name
+	 * 
+	 * @return the buffer id
+	 */
+	public int genBuffer() {
+		int buffer = glGenBuffers();
+		forget(buffers, buffer);
+		return buffer;
+	}
+	
+	/**
+	 * Generate a new texture name (glGenTextures), forgetting any cached binding
+	 * of a deleted texture which had the same name
+	 * 
+	 * @return the texture id
+	 */
+	public int genTexture() {
+		int texture = glGenTextures();
+		forget(textures, texture);
+		return texture;
+	}
+	
+	/**
+	 * Generate a new vertex array name (glGenVertexArrays), forgetting the cached
+	 * binding of a deleted vertex array which had the same name
+	 * 
+	 * @return the vertex array id
+	 */
+	public int genVertexArray() {
+		int vertexArray = glGenVertexArrays();
+		if (this.vertexArray == vertexArray) {
+			this.vertexArray = UNKNOWN;
+		}
+		
+		return vertexArray;
+	}
+	
+	/**
+	 * Delete a buffer (glDeleteBuffers). Targets it is bound to revert to 0
+	 * 
+	 * @param buffer the buffer id
+	 */
+	public void deleteBuffer(int buffer) {
+		glDeleteBuffers(buffer);
+		for (int i = 0; i < buffers.length; i++) {
+			if (buffers[i] == buffer) {
+				this.buffers[i] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Delete a texture (glDeleteTextures). Units it is bound to revert to 0
+	 * 
+	 * @param texture the texture id
+	 */
+	public void deleteTexture(int texture) {
+		glDeleteTextures(texture);
+		for (int i = 0; i < textures.length; i++) {
+			if (textures[i] == texture) {
+				this.textures[i] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Delete a vertex array (glDeleteVertexArrays). If it is bound, the binding
+	 * reverts to 0
+	 * 
+	 * @param vertexArray the vertex array id
+	 */
+	public void deleteVertexArray(int vertexArray) {
+		glDeleteVertexArrays(vertexArray);
+		if (this.vertexArray == vertexArray) {
+			this.vertexArray = 0;
+			this.buffers[ELEMENT_ARRAY_BUFFER_SLOT] = UNKNOWN;
+		}
+	}
+	
+	/**
+	 * Delete a shader program (glDeleteProgram). A program in use is only deleted
+	 * once no longer used, so it is unbound first
+	 * 
+	 * @param program the program id
+	 */
+	public void deleteProgram(int program) {
+		if (this.program == program) {
+			this.useProgram(0);
+		}
+		
+		glDeleteProgram(program);
+	}
+	
+	/**
+	 * Get the amount of calls made through this cache which changed state
+	 * 
+	 * @return the issued call count
+	 */
+	public long getIssuedCount() {
+		return issuedCount;
+	}
+	
+	/**
+	 * Get the amount of calls made through this cache which were skipped as they
+	 * would not have changed anything
+	 * 
+	 * @return the skipped call count
+	 */
+	public long getSkippedCount() {
+		return skippedCount;
+	}
+	
+	/**
+	 * Reset the issued and skipped call counts to 0
+	 */
+	public void resetCounters() {
+		this.issuedCount = 0;
+		this.skippedCount = 0;
+	}
+	
+	private int setCapability(int capability, boolean enabled, int current) {
+		int value = enabled ? 1 : 0;
+		if (current == value) {
+			this.skippedCount++;
+			return current;
+		}
+		
+		if (enabled) {
+			glEnable(capability);
+		}
+		else {
+			glDisable(capability);
+		}
+		
+		this.issuedCount++;
+		return value;
+	}
+	
+	private static int bufferSlot(int target) {
+		for (int i = 0; i < BUFFER_TARGETS.length; i++) {
+			if (BUFFER_TARGETS[i] == target) return i;
+		}
+		
+		return -1;
+	}
+	
+	private static void forget(int[] bindings, int name) {
+		for (int i = 0; i < bindings.length; i++) {
+			if (bindings[i] == name) {
+				bindings[i] = UNKNOWN;
+			}
+		}
+	}
+	
+}
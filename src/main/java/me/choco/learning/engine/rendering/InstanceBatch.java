@@ -0,0 +1,97 @@
+package me.choco.learning.engine.rendering;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+
+import me.choco.learning.engine.model.VertexModel;
+
+/**
+ * Represents the instances of a single {@link VertexModel} collected for one
+ * frame by an {@link InstanceBatcher}. Every sub-mesh of the model is drawn for
+ * all instances at once. See {@link VertexModel#renderSubMeshInstanced(int, int)}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class InstanceBatch {
+	
+	private static final int MATRIX_FLOATS = 16;
+	
+	private VertexModel vertexModel;
+	private float[] transforms = new float[MATRIX_FLOATS * 8];
+	private int instanceCount;
+	
+	InstanceBatch(VertexModel vertexModel) {
+		this.vertexModel = vertexModel;
+	}
+	
+	/**
+	 * Add an instance with the given transformation matrix to this batch. The
+	 * matrix is copied, so it may be reused afterwards
+	 * 
+	 * @param transformationMatrix the instance's transformation matrix
+	 */
+	public void add(Matrix4f transformationMatrix) {
+		int offset = instanceCount * MATRIX_FLOATS;
+		if (offset == transforms.length) {
+			this.transforms = Arrays.copyOf(transforms, transforms.length << 1);
+		}
+		
+		transformationMatrix.get(transforms, offset);
+		this.instanceCount++;
+	}
+	
+	/**
+	 * Write the transformation matrices of all instances in this batch to the
+	 * given buffer as 16 column-major floats each, starting at its position. The
+	 * buffer must use the native byte order
+	 * 
+	 * @param buffer the buffer to write to
+	 */
+	public void write(ByteBuffer buffer) {
+		this.write(buffer, 0, instanceCount);
+	}
+	
+	/**
+	 * Write the transformation matrices of a range of instances in this batch to
+	 * the given buffer as 16 column-major floats each, starting at its position.
+	 * The buffer must use the native byte order
+	 * 
+	 * @param buffer the buffer to write to
+	 * @param first the index of the first instance to write
+	 * @param count the amount of instances to write
+	 */
+	public void write(ByteBuffer buffer, int first, int count) {
+		if (first < 0 || count < 0 || first + count > instanceCount) {
+			throw new IllegalArgumentException("Invalid instance range (first: " + first + ", count: " + count + ", instances: " + instanceCount + ")");
+		}
+		
+		buffer.asFloatBuffer().put(transforms, first * MATRIX_FLOATS, count * MATRIX_FLOATS);
+		buffer.position(buffer.position() + count * VertexModel.INSTANCE_TRANSFORM_SIZE);
+	}
+	
+	/**
+	 * Get the model drawn by this batch
+	 * 
+	 * @return the vertex model
+	 */
+	public VertexModel getVertexModel() {
+		return vertexModel;
+	}
+	
+	/**
+	 * Get the amount of instances in this batch
+	 * 
+	 * @return the instance count
+	 */
+	public int getInstanceCount() {
+		return instanceCount;
+	}
+	
+	void reset(VertexModel vertexModel) {
+		this.vertexModel = vertexModel;
+		this.instanceCount = 0;
+	}
+	
+}
@@ -0,0 +1,90 @@
+package me.choco.learning.engine.rendering;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.joml.Matrix4f;
+
+import me.choco.learning.engine.model.VertexModel;
+
+/**
+ * Groups consecutive objects rendered in a frame which display the same
+ * {@link VertexModel} so that each group may be drawn with one instanced draw
+ * call per material rather than one draw call per object. Materials belong to
+ * the vertex model, so objects sharing a model share every material as well
+ * <p>
+ * Objects are expected in the order sorted by a {@link RenderQueue}, which
+ * places objects sharing a model next to each other while preserving the depth
+ * order of transparent objects. Batches are pooled between frames to avoid
+ * reallocating their storage
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class InstanceBatcher {
+	
+	private final List<InstanceBatch> batchPool = new ArrayList<>();
+	private final List<InstanceBatch> activeBatches = new ArrayList<>();
+	private final List<InstanceBatch> activeBatchesView = Collections.unmodifiableList(activeBatches);
+	
+	private InstanceBatch currentBatch;
+	private int instanceCount;
+	
+	/**
+	 * Begin collecting the instances of a new frame. Batches are returned to the
+	 * pool and release their models
+	 */
+	public void clear() {
+		for (InstanceBatch batch : activeBatches) {
+			batch.reset(null);
+		}
+		
+		this.activeBatches.clear();
+		this.currentBatch = null;
+		this.instanceCount = 0;
+	}
+	
+	/**
+	 * Add an instance of the given model with the given transformation matrix.
+	 * The instance joins the last batch if it displays the same model, or starts
+	 * a new batch otherwise. The matrix is copied, so it may be reused afterwards
+	 * 
+	 * @param vertexModel the model to draw
+	 * @param transformationMatrix the instance's transformation matrix
+	 */
+	public void add(VertexModel vertexModel, Matrix4f transformationMatrix) {
+		if (currentBatch == null || currentBatch.getVertexModel() != vertexModel) {
+			int index = activeBatches.size();
+			if (index == batchPool.size()) {
+				this.batchPool.add(new InstanceBatch(vertexModel));
+			}
+			
+			this.currentBatch = batchPool.get(index);
+			this.currentBatch.reset(vertexModel);
+			this.activeBatches.add(currentBatch);
+		}
+		
+		this.currentBatch.add(transformationMatrix);
+		this.instanceCount++;
+	}
+	
+	/**
+	 * Get the batches collected since the last call to {@link #clear()}, in the
+	 * order their instances were added
+	 * 
+	 * @return an unmodifiable view of the batches
+	 */
+	public List<InstanceBatch> getBatches() {
+		return activeBatchesView;
+	}
+	
+	/**
+	 * Get the total amount of instances added since the last call to {@link #clear()}
+	 * 
+	 * @return the instance count
+	 */
+	public int getInstanceCount() {
+		return instanceCount;
+	}
+	
+}
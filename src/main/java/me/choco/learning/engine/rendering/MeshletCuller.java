@@ -0,0 +1,116 @@
+package me.choco.learning.engine.rendering;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import me.choco.learning.engine.model.Meshlet;
+import me.choco.learning.engine.model.VertexModel;
+
+/**
+ * Determines which {@link Meshlet}s of a {@link VertexModel} are potentially
+ * visible. Meshlets are tested in model space, so that their bounds never need
+ * to be transformed:
+ * <ul>
+ *   <li>the bounding sphere of each meshlet is tested against the frustum planes
+ *   extracted from the model-view-projection matrix</li>
+ *   <li>the normal cone of each meshlet is tested against the camera position
+ *   transformed into model space, culling meshlets whose triangles all face away
+ *   from the camera</li>
+ * </ul>
+ * Counters of tested and culled meshlets accumulate until {@link #resetCounters()}
+ * is called
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class MeshletCuller {
+	
+	private final FrustumIntersection frustum = new FrustumIntersection();
+	private final Matrix4f modelViewProjection = new Matrix4f(), inverseTransformation = new Matrix4f();
+	private final Vector3f viewpoint = new Vector3f();
+	
+	private boolean[] visibility = new boolean[0];
+	private int testedCount, frustumCulledCount, coneCulledCount;
+	
+	/**
+	 * Determine the visibility of each meshlet of the given model. The returned
+	 * array is reused by subsequent calls
+	 * 
+	 * @param model the model whose meshlets to test
+	 * @param projectionMatrix the projection matrix
+	 * @param viewMatrix the view matrix
+	 * @param transformationMatrix the transformation matrix of the model
+	 * @param cameraPosition the position of the camera in world space
+	 * 
+	 * @return the visibility of each meshlet, indexed as in {@link VertexModel#getMeshlets()}
+	 */
+	public boolean[] cull(VertexModel model, Matrix4f projectionMatrix, Matrix4f viewMatrix, Matrix4f transformationMatrix, Vector3f cameraPosition) {
+		Meshlet[] meshlets = model.getMeshlets();
+		if (visibility.length < meshlets.length) {
+			this.visibility = new boolean[meshlets.length];
+		}
+		
+		projectionMatrix.mul(viewMatrix, modelViewProjection).mul(transformationMatrix);
+		this.frustum.set(modelViewProjection);
+		transformationMatrix.invert(inverseTransformation).transformPosition(viewpoint.set(cameraPosition));
+		
+		for (int i = 0; i < meshlets.length; i++) {
+			Meshlet meshlet = meshlets[i];
+			Vector3f center = meshlet.getCenter();
+			
+			if (!frustum.testSphere(center.x, center.y, center.z, meshlet.getRadius())) {
+				this.visibility[i] = false;
+				this.frustumCulledCount++;
+			}
+			else if (meshlet.isBackfacing(viewpoint.x, viewpoint.y, viewpoint.z)) {
+				this.visibility[i] = false;
+				this.coneCulledCount++;
+			}
+			else {
+				this.visibility[i] = true;
+			}
+		}
+		
+		this.testedCount += meshlets.length;
+		return visibility;
+	}
+	
+	/**
+	 * Get the amount of meshlets tested since the counters were last reset
+	 * 
+	 * @return the amount of tested meshlets
+	 */
+	public int getTestedCount() {
+		return testedCount;
+	}
+	
+	/**
+	 * Get the amount of meshlets outside of the frustum since the counters were
+	 * last reset
+	 * 
+	 * @return the amount of frustum culled meshlets
+	 */
+	public int getFrustumCulledCount() {
+		return frustumCulledCount;
+	}
+	
+	/**
+	 * Get the amount of meshlets facing away from the camera since the counters
+	 * were last reset
+	 * 
+	 * @return the amount of cone culled meshlets
+	 */
+	public int getConeCulledCount() {
+		return coneCulledCount;
+	}
+	
+	/**
+	 * Reset all counters to 0
+	 */
+	public void resetCounters() {
+		this.testedCount = 0;
+		this.frustumCulledCount = 0;
+		this.coneCulledCount = 0;
+	}
+	
+}
@@ -0,0 +1,455 @@
+package me.choco.learning.engine.rendering;
+
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+
+import me.choco.learning.engine.model.ObjectModel;
+import me.choco.learning.engine.model.OccluderMesh;
+import me.choco.learning.engine.util.ParallelRange;
+
+/**
+ * Determines which models are hidden behind occluders by testing them against a
+ * small depth buffer rendered entirely on the CPU:
+ * <ul>
+ *   <li>the {@link OccluderMesh}es of designated models are transformed to screen
+ *   space and rasterized into the depth buffer. Paired triangles are rasterized
+ *   as a single quad when convex on screen. The buffer is split into bands
+ *   of rows which are rasterized in parallel, each by a single thread</li>
+ *   <li>a hierarchy of depth buffers is built from it, in which each texel holds
+ *   the farthest depth of the four texels it covers in the level below</li>
+ *   <li>the screen-space bounds of each model are tested against the level at
+ *   which they cover at most 2x2 texels. A model is occluded if its nearest
+ *   point is farther than every texel it covers</li>
+ * </ul>
+ * Culling is conservative. Only texels covered entirely by an occluder triangle
+ * or quad are marked, each holding its farthest depth across the texel.
+ * Triangles crossing the near plane are not rasterized and models crossing it
+ * are never occluded. Depth is stored as window-space depth between 0 (near)
+ * and 1 (far), with the y axis pointing up
+ * <p>
+ * {@link #cull(RenderQueue, boolean[], Matrix4f, Matrix4f)} culls a whole queue.
+ * The individual steps may also be run on their own, without an OpenGL context
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class OcclusionCuller {
+	
+	private static final int MIN_ROWS_PER_TASK = 8;
+	private static final int QUAD_FLOATS = 12; // Window-space x, y and depth of each vertex
+	
+	private final int width, height;
+	private final float[][] levels;
+	private final int[] levelWidths, levelHeights;
+	
+	private final Matrix4f viewProjection = new Matrix4f(), modelViewProjection = new Matrix4f();
+	private float[] quads = new float[QUAD_FLOATS * 256];
+	private float[] vertices = new float[0];
+	private int quadCount, triangleCount;
+	
+	private int testedCount, occludedCount;
+	
+	/**
+	 * Construct a new occlusion culler with a depth buffer of the given size.
+	 * The buffer need not have the aspect ratio of the window
+	 * 
+	 * @param width the width of the depth buffer
+	 * @param height the height of the depth buffer
+	 */
+	public OcclusionCuller(int width, int height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Depth buffer size must be positive (given: " + width + "x" + height + ")");
+		}
+		
+		this.width = width;
+		this.height = height;
+		
+		int levelCount = 32 - Integer.numberOfLeadingZeros(Math.max(width, height) - 1) + 1;
+		this.levels = new float[levelCount][];
+		this.levelWidths = new int[levelCount];
+		this.levelHeights = new int[levelCount];
+		
+		for (int level = 0, levelWidth = width, levelHeight = height; level < levelCount; level++) {
+			this.levels[level] = new float[levelWidth * levelHeight];
+			this.levelWidths[level] = levelWidth;
+			this.levelHeights[level] = levelHeight;
+			
+			levelWidth = Math.max((levelWidth + 1) >> 1, 1);
+			levelHeight = Math.max((levelHeight + 1) >> 1, 1);
+		}
+	}
+	
+	/**
+	 * Determine which of the visible models in the given queue are occluded by
+	 * the visible occluders, and mark them as not visible. Bounds are read from
+	 * the queue as of its last {@link RenderQueue#updateBounds()}
+	 * 
+	 * @param queue the queue whose models to test
+	 * @param visibility the visibility of each model, indexed as in {@link RenderQueue#getModel(int)}.
+	 * Occluded models are set to false. See {@link FrustumCuller}
+	 * @param projectionMatrix the projection matrix
+	 * @param viewMatrix the view matrix
+	 */
+	public void cull(RenderQueue queue, boolean[] visibility, Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+		this.begin(projectionMatrix.mul(viewMatrix, viewProjection));
+		
+		int size = queue.size();
+		for (int i = 0; i < size; i++) {
+			ObjectModel model = queue.getModel(i);
+			if (visibility[i] && model.getOccluder() != null) {
+				this.addOccluder(model.getOccluder(), TransformationMatrices.getTransformationMatrix(model));
+			}
+		}
+		
+		this.rasterizeOccluders();
+		if (triangleCount == 0) return;
+		
+		float[] bounds = queue.getBounds();
+		for (int i = 0, offset = 0; i < size; i++, offset += FrustumCuller.BOUNDS_FLOATS) {
+			if (!visibility[i]) continue;
+			
+			float x = bounds[offset], y = bounds[offset + 1], z = bounds[offset + 2];
+			float extentX = bounds[offset + 4], extentY = bounds[offset + 5], extentZ = bounds[offset + 6];
+			if (isOccluded(x - extentX, y - extentY, z - extentZ, x + extentX, y + extentY, z + extentZ)) {
+				visibility[i] = false;
+			}
+		}
+	}
+	
+	/**
+	 * Begin a new frame. The depth buffer is cleared and all occluders of the
+	 * last frame are discarded, as are the counters
+	 * 
+	 * @param viewProjection the product of the projection and view matrices
+	 */
+	public void begin(Matrix4f viewProjection) {
+		this.viewProjection.set(viewProjection);
+		this.quadCount = 0;
+		this.triangleCount = 0;
+		this.testedCount = 0;
+		this.occludedCount = 0;
+	}
+	
+	/**
+	 * Transform the primitives of an occluder to window space, to be rasterized
+	 * by the next call to {@link #rasterizeOccluders()}. Primitives crossing the
+	 * near plane are discarded, and quads which are not convex on screen are
+	 * split into their triangles
+	 * 
+	 * @param occluder the occluder to add
+	 * @param transformationMatrix the transformation matrix of the occluder's model
+	 */
+	public void addOccluder(OccluderMesh occluder, Matrix4f transformationMatrix) {
+		Matrix4f m = viewProjection.mul(transformationMatrix, modelViewProjection);
+		float[] positions = occluder.getPositions();
+		int vertexCount = occluder.getVertexCount();
+		
+		if (vertices.length < vertexCount * 3) {
+			this.vertices = new float[vertexCount * 3];
+		}
+		
+		// Vertices in front of the near plane are marked with a NaN depth
+		for (int i = 0; i < vertexCount; i++) {
+			float x = positions[i * 3], y = positions[i * 3 + 1], z = positions[i * 3 + 2];
+			float clipX = m.m00 * x + m.m10 * y + m.m20 * z + m.m30;
+			float clipY = m.m01 * x + m.m11 * y + m.m21 * z + m.m31;
+			float clipZ = m.m02 * x + m.m12 * y + m.m22 * z + m.m32;
+			float clipW = m.m03 * x + m.m13 * y + m.m23 * z + m.m33;
+			
+			if (clipW <= 0 || clipZ < -clipW) {
+				this.vertices[i * 3 + 2] = Float.NaN;
+				continue;
+			}
+			
+			float inverseW = 1 / clipW;
+			this.vertices[i * 3] = (clipX * inverseW * 0.5f + 0.5f) * width;
+			this.vertices[i * 3 + 1] = (clipY * inverseW * 0.5f + 0.5f) * height;
+			this.vertices[i * 3 + 2] = Math.min(clipZ * inverseW * 0.5f + 0.5f, 1);
+		}
+		
+		int[] primitives = occluder.getPrimitives();
+		int required = (quadCount + occluder.getPrimitiveCount() * 2) * QUAD_FLOATS;
+		if (quads.length < required) {
+			this.quads = Arrays.copyOf(quads, Math.max(required, quads.length << 1));
+		}
+		
+		// Triangles are stored as quads whose last vertex is their first
+		for (int i = 0; i < primitives.length; i += 4) {
+			int a = primitives[i] * 3, b = primitives[i + 1] * 3, c = primitives[i + 2] * 3, d = primitives[i + 3] * 3;
+			if (Float.isNaN(vertices[a + 2]) || Float.isNaN(vertices[b + 2]) || Float.isNaN(vertices[c + 2]) || Float.isNaN(vertices[d + 2])) continue;
+			
+			if (d == a) {
+				this.addQuad(a, b, c, a);
+				this.triangleCount++;
+			}
+			else if (isConvex(vertices, a, b, c, d)) {
+				this.addQuad(a, b, c, d);
+				this.triangleCount += 2;
+			}
+			else {
+				this.addQuad(a, b, c, a);
+				this.addQuad(a, c, d, a);
+				this.triangleCount += 2;
+			}
+		}
+	}
+	
+	/**
+	 * Rasterize every occluder added since the last call to {@link #begin(Matrix4f)}
+	 * and build the depth hierarchy from the result
+	 */
+	public void rasterizeOccluders() {
+		ParallelRange.forEach(height, MIN_ROWS_PER_TASK, this::rasterizeRows);
+		
+		for (int level = 1; level < levels.length; level++) {
+			int source = level - 1;
+			ParallelRange.forEach(levelHeights[level], MIN_ROWS_PER_TASK, (from, to) -> downsampleRows(source, from, to));
+		}
+	}
+	
+	/**
+	 * Check whether the given world-space box is entirely hidden behind the
+	 * occluders rasterized by the last call to {@link #rasterizeOccluders()}
+	 * 
+	 * @param minX the minimum x coordinate of the box
+	 * @param minY the minimum y coordinate of the box
+	 * @param minZ the minimum z coordinate of the box
+	 * @param maxX the maximum x coordinate of the box
+	 * @param maxY the maximum y coordinate of the box
+	 * @param maxZ the maximum z coordinate of the box
+	 * 
+	 * @return true if occluded, false if potentially visible
+	 */
+	public boolean isOccluded(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		this.testedCount++;
+		Matrix4f m = viewProjection;
+		
+		float screenMinX = Float.POSITIVE_INFINITY, screenMinY = Float.POSITIVE_INFINITY, nearestDepth = Float.POSITIVE_INFINITY;
+		float screenMaxX = Float.NEGATIVE_INFINITY, screenMaxY = Float.NEGATIVE_INFINITY;
+		
+		// Corners are the transformed center offset by the transformed half extents along each axis
+		float centerX = (minX + maxX) * 0.5f, centerY = (minY + maxY) * 0.5f, centerZ = (minZ + maxZ) * 0.5f;
+		float extentX = (maxX - minX) * 0.5f, extentY = (maxY - minY) * 0.5f, extentZ = (maxZ - minZ) * 0.5f;
+		float clipCenterX = m.m00 * centerX + m.m10 * centerY + m.m20 * centerZ + m.m30;
+		float clipCenterY = m.m01 * centerX + m.m11 * centerY + m.m21 * centerZ + m.m31;
+		float clipCenterZ = m.m02 * centerX + m.m12 * centerY + m.m22 * centerZ + m.m32;
+		float clipCenterW = m.m03 * centerX + m.m13 * centerY + m.m23 * centerZ + m.m33;
+		
+		for (int corner = 0; corner < 8; corner++) {
+			float x = ((corner & 1) == 0) ? -extentX : extentX, y = ((corner & 2) == 0) ? -extentY : extentY, z = ((corner & 4) == 0) ? -extentZ : extentZ;
+			float clipX = clipCenterX + m.m00 * x + m.m10 * y + m.m20 * z;
+			float clipY = clipCenterY + m.m01 * x + m.m11 * y + m.m21 * z;
+			float clipZ = clipCenterZ + m.m02 * x + m.m12 * y + m.m22 * z;
+			float clipW = clipCenterW + m.m03 * x + m.m13 * y + m.m23 * z;
+			
+			if (clipW <= 0 || clipZ < -clipW) return false;
+			
+			float inverseW = 1 / clipW;
+			float screenX = clipX * inverseW, screenY = clipY * inverseW;
+			screenMinX = Math.min(screenMinX, screenX);
+			screenMinY = Math.min(screenMinY, screenY);
+			screenMaxX = Math.max(screenMaxX, screenX);
+			screenMaxY = Math.max(screenMaxY, screenY);
+			nearestDepth = Math.min(nearestDepth, clipZ * inverseW);
+		}
+		
+		nearestDepth = nearestDepth * 0.5f + 0.5f;
+		if (screenMaxX < -1 || screenMaxY < -1 || screenMinX > 1 || screenMinY > 1) return false; // Off screen. Left to the frustum culler
+		
+		// Truncation floors the clamped, non-negative coordinates
+		int x0 = (int) Math.max((screenMinX * 0.5f + 0.5f) * width, 0), x1 = (int) Math.min((screenMaxX * 0.5f + 0.5f) * width, width - 1);
+		int y0 = (int) Math.max((screenMinY * 0.5f + 0.5f) * height, 0), y1 = (int) Math.min((screenMaxY * 0.5f + 0.5f) * height, height - 1);
+		if (x0 > x1 || y0 > y1) return false;
+		
+		// Find the level at which the bounds cover at most 2x2 texels
+		int level = 0;
+		while (level < levels.length - 1 && ((x1 >> level) - (x0 >> level) > 1 || (y1 >> level) - (y0 >> level) > 1)) {
+			level++;
+		}
+		
+		float[] depths = levels[level];
+		int levelWidth = levelWidths[level];
+		for (int y = y0 >> level; y <= y1 >> level; y++) {
+			for (int x = x0 >> level; x <= x1 >> level; x++) {
+				if (depths[y * levelWidth + x] >= nearestDepth) return false;
+			}
+		}
+		
+		this.occludedCount++;
+		return true;
+	}
+	
+	/**
+	 * Get the depth stored at the given texel of a level of the depth hierarchy.
+	 * Level 0 is the rasterized depth buffer
+	 * 
+	 * @param level the level
+	 * @param x the x coordinate of the texel
+	 * @param y the y coordinate of the texel
+	 * 
+	 * @return the depth, between 0 (near) and 1 (far)
+	 */
+	public float getDepth(int level, int x, int y) {
+		return levels[level][y * levelWidths[level] + x];
+	}
+	
+	/**
+	 * Get the amount of levels in the depth hierarchy, down to a single texel
+	 * 
+	 * @return the level count
+	 */
+	public int getLevelCount() {
+		return levels.length;
+	}
+	
+	/**
+	 * Get the amount of occluder triangles rasterized this frame
+	 * 
+	 * @return the triangle count
+	 */
+	public int getTriangleCount() {
+		return triangleCount;
+	}
+	
+	/**
+	 * Get the amount of boxes tested this frame
+	 * 
+	 * @return the amount of tested boxes
+	 */
+	public int getTestedCount() {
+		return testedCount;
+	}
+	
+	/**
+	 * Get the amount of boxes found occluded this frame
+	 * 
+	 * @return the amount of occluded boxes
+	 */
+	public int getOccludedCount() {
+		return occludedCount;
+	}
+	
+	private void addQuad(int a, int b, int c, int d) {
+		int offset = quadCount++ * QUAD_FLOATS;
+		System.arraycopy(vertices, a, quads, offset, 3);
+		System.arraycopy(vertices, b, quads, offset + 3, 3);
+		System.arraycopy(vertices, c, quads, offset + 6, 3);
+		System.arraycopy(vertices, d, quads, offset + 9, 3);
+	}
+	
+	private static boolean isConvex(float[] vertices, int a, int b, int c, int d) {
+		float turnB = turn(vertices, a, b, c), turnC = turn(vertices, b, c, d);
+		float turnD = turn(vertices, c, d, a), turnA = turn(vertices, d, a, b);
+		return (turnA > 0 && turnB > 0 && turnC > 0 && turnD > 0) || (turnA < 0 && turnB < 0 && turnC < 0 && turnD < 0);
+	}
+	
+	private static float turn(float[] vertices, int a, int b, int c) {
+		return (vertices[b] - vertices[a]) * (vertices[c + 1] - vertices[b + 1]) - (vertices[b + 1] - vertices[a + 1]) * (vertices[c] - vertices[b]);
+	}
+	
+	/*
+	 * Rasterize every quad into the given rows of the depth buffer. Edge functions are
+	 * stepped incrementally along each row, so the inner loop is free of divisions and
+	 * branches other than the coverage test
+	 */
+	private void rasterizeRows(int fromRow, int toRow) {
+		float[] depths = levels[0];
+		Arrays.fill(depths, fromRow * width, toRow * width, 1.0f);
+		
+		for (int quad = 0; quad < quadCount; quad++) {
+			int offset = quad * QUAD_FLOATS;
+			float x0 = quads[offset], y0 = quads[offset + 1], z0 = quads[offset + 2];
+			float x1 = quads[offset + 3], y1 = quads[offset + 4], z1 = quads[offset + 5];
+			float x2 = quads[offset + 6], y2 = quads[offset + 7], z2 = quads[offset + 8];
+			float x3 = quads[offset + 9], y3 = quads[offset + 10], z3 = quads[offset + 11];
+			
+			// Pixels whose centers lie within the quad's bounds
+			int minX = Math.max((int) Math.ceil(Math.min(Math.min(x0, x1), Math.min(x2, x3)) - 0.5f), 0);
+			int maxX = Math.min((int) Math.floor(Math.max(Math.max(x0, x1), Math.max(x2, x3)) - 0.5f), width - 1);
+			int minY = Math.max((int) Math.ceil(Math.min(Math.min(y0, y1), Math.min(y2, y3)) - 0.5f), fromRow);
+			int maxY = Math.min((int) Math.floor(Math.max(Math.max(y0, y1), Math.max(y2, y3)) - 0.5f), toRow - 1);
+			if (minX > maxX || minY > maxY) continue;
+			
+			// A quad is made of the triangles (v0, v1, v2) and (v0, v2, v3). The second is degenerate for triangles
+			float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+			float secondArea = (x2 - x0) * (y3 - y0) - (x3 - x0) * (y2 - y0);
+			if (area == 0) continue;
+			
+			// Edge functions of the edge from each vertex to the next, positive inside regardless of winding
+			float sign = Math.signum(area);
+			float stepX0 = (y0 - y1) * sign, stepY0 = (x1 - x0) * sign;
+			float stepX1 = (y1 - y2) * sign, stepY1 = (x2 - x1) * sign;
+			float stepX2 = (y2 - y3) * sign, stepY2 = (x3 - x2) * sign;
+			float stepX3 = (y3 - y0) * sign, stepY3 = (x0 - x3) * sign;
+			
+			/*
+			 * Edges are shrunk by half a texel so that only texels covered entirely are marked.
+			 * The edge function at the corner of a texel farthest outside of an edge is its
+			 * value at the center less half of its steps
+			 */
+			float startX = minX + 0.5f, startY = minY + 0.5f;
+			float rowEdge0 = ((x1 - x0) * (startY - y0) - (y1 - y0) * (startX - x0)) * sign - 0.5f * (Math.abs(stepX0) + Math.abs(stepY0));
+			float rowEdge1 = ((x2 - x1) * (startY - y1) - (y2 - y1) * (startX - x1)) * sign - 0.5f * (Math.abs(stepX1) + Math.abs(stepY1));
+			float rowEdge2 = ((x3 - x2) * (startY - y2) - (y3 - y2) * (startX - x2)) * sign - 0.5f * (Math.abs(stepX2) + Math.abs(stepY2));
+			float rowEdge3 = ((x0 - x3) * (startY - y3) - (y0 - y3) * (startX - x3)) * sign - 0.5f * (Math.abs(stepX3) + Math.abs(stepY3));
+			
+			// Depth is affine in window space across each triangle, and the farthest depth across each texel is stored
+			float depthStepX = ((z1 - z0) * (y2 - y0) - (z2 - z0) * (y1 - y0)) / area;
+			float depthStepY = ((z2 - z0) * (x1 - x0) - (z1 - z0) * (x2 - x0)) / area;
+			float secondDepthStepX = depthStepX, secondDepthStepY = depthStepY;
+			if (secondArea != 0) {
+				secondDepthStepX = ((z2 - z0) * (y3 - y0) - (z3 - z0) * (y2 - y0)) / secondArea;
+				secondDepthStepY = ((z3 - z0) * (x2 - x0) - (z2 - z0) * (x3 - x0)) / secondArea;
+			}
+			
+			float rowDepth = z0 + depthStepX * (startX - x0) + depthStepY * (startY - y0) + 0.5f * (Math.abs(depthStepX) + Math.abs(depthStepY));
+			float secondRowDepth = z0 + secondDepthStepX * (startX - x0) + secondDepthStepY * (startY - y0) + 0.5f * (Math.abs(secondDepthStepX) + Math.abs(secondDepthStepY));
+			
+			for (int y = minY; y <= maxY; y++) {
+				float edge0 = rowEdge0, edge1 = rowEdge1, edge2 = rowEdge2, edge3 = rowEdge3;
+				float depth = rowDepth, secondDepth = secondRowDepth;
+				int index = y * width + minX;
+				
+				for (int x = minX; x <= maxX; x++, index++) {
+					if (edge0 >= 0 && edge1 >= 0 && edge2 >= 0 && edge3 >= 0) {
+						float farthest = Math.max(depth, secondDepth);
+						if (farthest < depths[index]) {
+							depths[index] = farthest;
+						}
+					}
+					
+					edge0 += stepX0;
+					edge1 += stepX1;
+					edge2 += stepX2;
+					edge3 += stepX3;
+					depth += depthStepX;
+					secondDepth += secondDepthStepX;
+				}
+				
+				rowEdge0 += stepY0;
+				rowEdge1 += stepY1;
+				rowEdge2 += stepY2;
+				rowEdge3 += stepY3;
+				rowDepth += depthStepY;
+				secondRowDepth += secondDepthStepY;
+			}
+		}
+	}
+	
+	private void downsampleRows(int sourceLevel, int fromRow, int toRow) {
+		float[] source = levels[sourceLevel], destination = levels[sourceLevel + 1];
+		int sourceWidth = levelWidths[sourceLevel], sourceHeight = levelHeights[sourceLevel];
+		int destinationWidth = levelWidths[sourceLevel + 1];
+		
+		for (int y = fromRow; y < toRow; y++) {
+			int row0 = (y << 1) * sourceWidth, row1 = Math.min((y << 1) + 1, sourceHeight - 1) * sourceWidth;
+			
+			for (int x = 0; x < destinationWidth; x++) {
+				int column0 = x << 1, column1 = Math.min(column0 + 1, sourceWidth - 1);
+				float farthest = Math.max(Math.max(source[row0 + column0], source[row0 + column1]), Math.max(source[row1 + column0], source[row1 + column1]));
+				destination[y * destinationWidth + x] = farthest;
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,430 @@
+package me.choco.learning.engine.rendering;
+
+import java.util.Arrays;
+
+import org.joml.Vector3f;
+
+import me.choco.learning.engine.model.ObjectModel;
+import me.choco.learning.engine.model.VertexModel;
+import me.choco.learning.engine.texture.Material;
+import me.choco.learning.engine.util.DynamicAABBTree;
+import me.choco.learning.engine.util.IntList;
+import me.choco.learning.engine.util.RadixSort;
+
+/**
+ * A queue of the models to render each frame, sorted by a packed 64-bit key per
+ * draw so that draws sharing state are adjacent. From the most significant bits,
+ * a key holds:
+ * <ul>
+ *   <li>the model's layer (4 bits). See {@link ObjectModel#setLayer(int)}</li>
+ *   <li>whether the model is transparent (1 bit), so opaque draws come first</li>
+ *   <li>for opaque draws: the shader (8 bits), material texture (16 bits), mesh
+ *   (16 bits) and quantized depth (16 bits). Opaque draws are grouped by state
+ *   and drawn front-to-back within each group to reject occluded fragments early</li>
+ *   <li>for transparent draws: the inverted quantized depth (16 bits), then the
+ *   shader, material texture and mesh. Transparent draws are drawn back-to-front
+ *   so that they blend correctly, and only grouped by state at equal depth</li>
+ * </ul>
+ * Keys are sorted with an allocation-free {@link RadixSort}. Models are added
+ * and removed in constant time through the handle returned by {@link #add(ObjectModel)}
+ * <p>
+ * The world-space bounds of every model are also held in a {@link DynamicAABBTree}
+ * whose user data are model handles, so that the models in a region may be found
+ * without testing each of them. Bounds are recomputed by {@link #updateBounds()}
+ * for models whose transform changed. See {@link ObjectModel#getTransformVersion()}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class RenderQueue {
+	
+	/** The amount of layers in which models may be rendered */
+	public static final int LAYER_COUNT = 16;
+	
+	private static final int LAYER_SHIFT = 60, TRANSPARENT_SHIFT = 59;
+	private static final int STATE_BITS = 40, DEPTH_BITS = 16;
+	private static final int SHADER_SHIFT = 32, MATERIAL_SHIFT = 16;
+	private static final long FIELD_MASK = 0xFFFF, SHADER_MASK = 0xFF;
+	private static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+	
+	// A handle holds the index of its slot in the handle table and the generation of that slot
+	private static final int HANDLE_INDEX_BITS = 24, HANDLE_INDEX_MASK = (1 << HANDLE_INDEX_BITS) - 1, GENERATION_MASK = 0x7F;
+	
+	// The distance a model may move before it is reinserted in the spatial index
+	private static final float BOUNDS_MARGIN = 0.1f;
+	
+	private ObjectModel[] models = new ObjectModel[16];
+	private int[] modelHandles = new int[16]; // The handle index of each model
+	private int size;
+	
+	private final DynamicAABBTree spatialIndex = new DynamicAABBTree(BOUNDS_MARGIN);
+	private int[] proxies = new int[16]; // The spatial index leaf of each model, or NULL_NODE if not yet inserted
+	private int[] boundsVersions = new int[16]; // The transform version of each model when its bounds were computed
+	private float[] bounds = new float[16 * FrustumCuller.BOUNDS_FLOATS];
+	
+	private int[] handleModels = new int[16]; // The model index of each handle index, or -1 if free
+	private int[] handleGenerations = new int[16];
+	private int handleCount;
+	private final IntList freeHandles = new IntList();
+	
+	private long[] keys = new long[16], states = new long[16];
+	private int[] order = new int[16];
+	private int sortedSize, stateChangeCount;
+	private final RadixSort radixSort = new RadixSort();
+	
+	/**
+	 * Add a model to this queue
+	 * 
+	 * @param model the model to add
+	 * @return the handle through which the model may be removed
+	 */
+	public int add(ObjectModel model) {
+		if (model == null) {
+			throw new IllegalArgumentException("Model must not be null");
+		}
+		
+		int handleIndex;
+		if (freeHandles.size() > 0) {
+			handleIndex = freeHandles.get(freeHandles.size() - 1);
+			this.freeHandles.truncate(freeHandles.size() - 1);
+		}
+		else {
+			if (handleCount > HANDLE_INDEX_MASK) {
+				throw new IllegalStateException("Render queue is full (" + handleCount + " models)");
+			}
+			
+			if (handleCount == handleModels.length) {
+				this.handleModels = Arrays.copyOf(handleModels, handleCount << 1);
+				this.handleGenerations = Arrays.copyOf(handleGenerations, handleCount << 1);
+			}
+			
+			handleIndex = handleCount++;
+		}
+		
+		if (size == models.length) {
+			this.models = Arrays.copyOf(models, size << 1);
+			this.modelHandles = Arrays.copyOf(modelHandles, size << 1);
+			this.proxies = Arrays.copyOf(proxies, size << 1);
+			this.boundsVersions = Arrays.copyOf(boundsVersions, size << 1);
+			this.bounds = Arrays.copyOf(bounds, (size << 1) * FrustumCuller.BOUNDS_FLOATS);
+		}
+		
+		this.models[size] = model;
+		this.modelHandles[size] = handleIndex;
+		this.proxies[size] = DynamicAABBTree.NULL_NODE;
+		this.handleModels[handleIndex] = size++;
+		return handleOf(handleIndex);
+	}
+	
+	/**
+	 * Remove the model with the given handle from this queue. The last model in
+	 * the queue takes its place, so the order of {@link #getModel(int)} changes
+	 * 
+	 * @param handle the handle returned when the model was added
+	 * @return true if removed, false if the handle was already removed
+	 */
+	public boolean remove(int handle) {
+		int handleIndex = handle & HANDLE_INDEX_MASK;
+		if (!contains(handle)) return false;
+		
+		int index = handleModels[handleIndex], last = --size;
+		if (proxies[index] != DynamicAABBTree.NULL_NODE) {
+			this.spatialIndex.remove(proxies[index]);
+		}
+		
+		this.models[index] = models[last];
+		this.modelHandles[index] = modelHandles[last];
+		this.proxies[index] = proxies[last];
+		this.boundsVersions[index] = boundsVersions[last];
+		System.arraycopy(bounds, last * FrustumCuller.BOUNDS_FLOATS, bounds, index * FrustumCuller.BOUNDS_FLOATS, FrustumCuller.BOUNDS_FLOATS);
+		this.handleModels[modelHandles[index]] = index;
+		this.models[last] = null;
+		
+		// Bumping the generation invalidates any copies of the removed handle
+		this.handleModels[handleIndex] = -1;
+		this.handleGenerations[handleIndex] = (handleGenerations[handleIndex] + 1) & GENERATION_MASK;
+		this.freeHandles.add(handleIndex);
+		this.sortedSize = 0;
+		return true;
+	}
+	
+	/**
+	 * Check whether the model with the given handle is still in this queue
+	 * 
+	 * @param handle the handle returned when the model was added
+	 * @return true if present, false otherwise
+	 */
+	public boolean contains(int handle) {
+		int handleIndex = handle & HANDLE_INDEX_MASK;
+		return handle >= 0 && handleIndex < handleCount && handleModels[handleIndex] >= 0
+				&& handleGenerations[handleIndex] == (handle >>> HANDLE_INDEX_BITS);
+	}
+	
+	/**
+	 * Get the model with the given handle
+	 * 
+	 * @param handle the handle returned when the model was added
+	 * @return the model
+	 */
+	public ObjectModel get(int handle) {
+		if (!contains(handle)) {
+			throw new IllegalArgumentException("Invalid or removed render queue handle: " + handle);
+		}
+		
+		return models[handleModels[handle & HANDLE_INDEX_MASK]];
+	}
+	
+	/**
+	 * Remove every model from this queue. All handles become invalid
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			int handleIndex = modelHandles[i];
+			this.handleModels[handleIndex] = -1;
+			this.handleGenerations[handleIndex] = (handleGenerations[handleIndex] + 1) & GENERATION_MASK;
+			this.freeHandles.add(handleIndex);
+			this.models[i] = null;
+		}
+		
+		this.size = 0;
+		this.sortedSize = 0;
+		this.spatialIndex.clear();
+	}
+	
+	/**
+	 * Get the amount of models in this queue
+	 * 
+	 * @return the queue size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Recompute the world-space bounds of every model whose transform changed
+	 * since they were last computed, and move them in the spatial index
+	 */
+	public void updateBounds() {
+		for (int i = 0; i < size; i++) {
+			ObjectModel model = models[i];
+			int version = model.getTransformVersion();
+			if (proxies[i] != DynamicAABBTree.NULL_NODE && boundsVersions[i] == version) continue;
+			
+			int offset = i * FrustumCuller.BOUNDS_FLOATS;
+			FrustumCuller.computeWorldBounds(model, TransformationMatrices.getTransformationMatrix(model), bounds, offset);
+			float x = bounds[offset], y = bounds[offset + 1], z = bounds[offset + 2];
+			float extentX = bounds[offset + 4], extentY = bounds[offset + 5], extentZ = bounds[offset + 6];
+			
+			if (proxies[i] == DynamicAABBTree.NULL_NODE) {
+				this.proxies[i] = spatialIndex.insert(x - extentX, y - extentY, z - extentZ, x + extentX, y + extentY, z + extentZ, handleOf(modelHandles[i]));
+			}
+			else {
+				this.spatialIndex.update(proxies[i], x - extentX, y - extentY, z - extentZ, x + extentX, y + extentY, z + extentZ);
+			}
+			
+			this.boundsVersions[i] = version;
+		}
+	}
+	
+	/**
+	 * Get the spatial index of the models in this queue. The user data of each
+	 * leaf is the handle of its model, which may be passed to {@link #get(int)}.
+	 * The index reflects the transforms of the models as of the last call to
+	 * {@link #updateBounds()}
+	 * 
+	 * @return the spatial index
+	 */
+	public DynamicAABBTree getSpatialIndex() {
+		return spatialIndex;
+	}
+	
+	/**
+	 * Get the model at the given index of this queue in no particular order, i.e.
+	 * to update models before sorting
+	 * 
+	 * @param index the index, between 0 and {@link #size()} (exclusive)
+	 * @return the model
+	 */
+	public ObjectModel getModel(int index) {
+		return models[index];
+	}
+	
+	/**
+	 * Compute the sort key of every model in this queue and sort them. The depth
+	 * of a model is its distance from the camera. Every model is drawn by the
+	 * same shader, so shader bits are 0. The mesh bits are a hash of the vertex
+	 * model at the current level of detail, so levels of detail must be selected
+	 * before sorting
+	 * 
+	 * @param cameraPosition the position of the camera
+	 * @param maxDepth the distance beyond which depths are no longer distinguished
+	 */
+	public void sort(Vector3f cameraPosition, float maxDepth) {
+		this.sort(cameraPosition, maxDepth, null);
+	}
+	
+	/**
+	 * Compute the sort key of every visible model in this queue and sort them.
+	 * Models which are not visible are left out of the sorted order. See
+	 * {@link #sort(Vector3f, float)}
+	 * 
+	 * @param cameraPosition the position of the camera
+	 * @param maxDepth the distance beyond which depths are no longer distinguished
+	 * @param visibility the visibility of each model, indexed as in {@link #getModel(int)},
+	 * or null if every model is visible. See {@link FrustumCuller}
+	 */
+	public void sort(Vector3f cameraPosition, float maxDepth, boolean[] visibility) {
+		if (keys.length < size) {
+			this.keys = new long[models.length];
+			this.states = new long[models.length];
+			this.order = new int[models.length];
+		}
+		
+		float depthScale = MAX_DEPTH / maxDepth;
+		int sortedSize = 0;
+		for (int i = 0; i < size; i++) {
+			if (visibility != null && !visibility[i]) continue;
+			
+			ObjectModel model = models[i];
+			VertexModel vertexModel = model.getVertexModel();
+			Material material = vertexModel.getMaterial(0);
+			
+			int texture = material.isTextured() ? material.getTexture().getId() : 0;
+			int depth = (int) Math.min(model.getPosition().distance(cameraPosition) * depthScale, MAX_DEPTH);
+			
+			this.states[i] = encodeState(0, texture, meshBits(vertexModel));
+			this.keys[sortedSize] = encodeKey(model.getLayer(), vertexModel.isTransparent(), states[i], depth);
+			this.order[sortedSize++] = i;
+		}
+		
+		this.radixSort.sort(keys, order, sortedSize);
+		this.sortedSize = sortedSize;
+		
+		this.stateChangeCount = 0;
+		for (int i = 0; i < sortedSize; i++) {
+			if (i == 0 || states[order[i]] != states[order[i - 1]]) {
+				this.stateChangeCount++;
+			}
+		}
+	}
+	
+	/**
+	 * Get the amount of visible models sorted by the last call to {@link #sort(Vector3f, float, boolean[])}.
+	 * This is 0 if models have been removed since
+	 * 
+	 * @return the sorted size
+	 */
+	public int getSortedSize() {
+		return sortedSize;
+	}
+	
+	/**
+	 * Get the model at the given position in sorted order
+	 * 
+	 * @param index the index, between 0 and {@link #getSortedSize()} (exclusive)
+	 * @return the model
+	 */
+	public ObjectModel getSortedModel(int index) {
+		return models[order[index]];
+	}
+	
+	/**
+	 * Get the index in {@link #getModel(int)} of the model at the given position
+	 * in sorted order
+	 * 
+	 * @param index the index, between 0 and {@link #getSortedSize()} (exclusive)
+	 * @return the model index
+	 */
+	public int getSortedIndex(int index) {
+		return order[index];
+	}
+	
+	/**
+	 * Get the sort key of the model at the given position in sorted order
+	 * 
+	 * @param index the index, between 0 and {@link #getSortedSize()} (exclusive)
+	 * @return the sort key
+	 */
+	public long getSortKey(int index) {
+		return keys[index];
+	}
+	
+	/**
+	 * Get the amount of times the shader, material texture or mesh changes between
+	 * consecutive draws in the last sorted order, including the first draw
+	 * 
+	 * @return the state change count
+	 */
+	public int getStateChangeCount() {
+		return stateChangeCount;
+	}
+	
+	/**
+	 * Check whether the given sort key belongs to a transparent draw
+	 * 
+	 * @param key the sort key
+	 * @return true if transparent, false if opaque
+	 */
+	public static boolean isTransparent(long key) {
+		return ((key >>> TRANSPARENT_SHIFT) & 1) != 0;
+	}
+	
+	/**
+	 * Get the layer of the given sort key
+	 * 
+	 * @param key the sort key
+	 * @return the layer
+	 */
+	public static int getLayer(long key) {
+		return (int) (key >>> LAYER_SHIFT);
+	}
+	
+	/**
+	 * Pack the given draw state into a sort key
+	 * 
+	 * @param layer the layer, between 0 and {@link #LAYER_COUNT} (exclusive)
+	 * @param transparent whether the draw is transparent
+	 * @param shader the shader id. Only the lowest 8 bits are used
+	 * @param material the material id, i.e. its texture. Only the lowest 16 bits are used
+	 * @param mesh the mesh id. Only the lowest 16 bits are used
+	 * @param depth the distance of the draw from the camera, between 0 and 1
+	 * 
+	 * @return the sort key
+	 */
+	public static long encodeKey(int layer, boolean transparent, int shader, int material, int mesh, float depth) {
+		int quantizedDepth = (int) (Math.max(0, Math.min(1, depth)) * MAX_DEPTH);
+		return encodeKey(layer, transparent, encodeState(shader, material, mesh), quantizedDepth);
+	}
+	
+	private static long encodeKey(int layer, boolean transparent, long state, int depth) {
+		long key = ((long) layer << LAYER_SHIFT);
+		if (!transparent) {
+			return key | (state << DEPTH_BITS) | depth;
+		}
+		
+		return key | (1L << TRANSPARENT_SHIFT) | ((long) (MAX_DEPTH - depth) << STATE_BITS) | state;
+	}
+	
+	// The index in getModel(int) of the model with the given valid handle
+	int indexOf(int handle) {
+		return handleModels[handle & HANDLE_INDEX_MASK];
+	}
+	
+	// The world-space bounds of each model as of the last updateBounds(), indexed as in getModel(int)
+	float[] getBounds() {
+		return bounds;
+	}
+	
+	private int handleOf(int handleIndex) {
+		return (handleGenerations[handleIndex] << HANDLE_INDEX_BITS) | handleIndex;
+	}
+	
+	private static long encodeState(int shader, int material, int mesh) {
+		return ((shader & SHADER_MASK) << SHADER_SHIFT) | ((material & FIELD_MASK) << MATERIAL_SHIFT) | (mesh & FIELD_MASK);
+	}
+	
+	private static int meshBits(VertexModel vertexModel) {
+		int hash = System.identityHashCode(vertexModel) * 0x9E3779B1;
+		return (hash ^ (hash >>> 16)) & (int) FIELD_MASK;
+	}
+	
+}
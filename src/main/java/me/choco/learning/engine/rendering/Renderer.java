@@ -1,9 +1,6 @@
 package me.choco.learning.engine.rendering;
 
 import java.nio.FloatBuffer;
-import java.util.List;
-
-import me.choco.learning.engine.model.ObjectModel;
 
 public interface Renderer {
 	
@@ -33,15 +30,18 @@ public interface Renderer {
 	/**
 	 * Render to the LWJGL framebuffer
 	 * 
-	 * @param models all models to render
+	 * @param queue the queue of all models to render
 	 */
-	public void render(List<ObjectModel> models);
+	public void render(RenderQueue queue);
 	
 	/**
-	 * Render a raw float buffer to the LWJGL framebuffer
+	 * Render a raw float buffer of 2D vertices to the LWJGL framebuffer as
+	 * triangles. Each vertex consists of 8 floats: its position, colour and
+	 * texture coordinates. The vertices are streamed to the GPU every call, so
+	 * this is intended for geometry which changes every frame such as text
 	 * 
 	 * @param buffer the buffer to render
-	 * @param bufferSize the size of the buffer
+	 * @param bufferSize the amount of floats in the buffer to render
 	 */
 	public void render(FloatBuffer buffer, int bufferSize);
 	
@@ -10,13 +10,19 @@ import me.choco.learning.engine.model.ObjectModel;
  * A utility class intended to simplify the calculation of various core OpenGL
  * matrices including projection, transformation and view matrices without having
  * to remember linear algebra concepts
+ * <p>
+ * Every calculation writes to a destination matrix. The methods without one write
+ * to scratch matrices owned by the calling thread, which are overwritten by the
+ * next call of the same method on that thread. All methods are thread-safe and
+ * allocate no memory after a thread's first call
  * 
  * @author Parker Hawke - 2008Choco
  */
 public final class TransformationMatrices {
 	
-	private static final Matrix4f MATRIX_PROJECTION = new Matrix4f(), MATRIX_VIEW = new Matrix4f(), MATRIX_MODEL_VIEW = new Matrix4f();
-
+	private static final int PROJECTION = 0, VIEW = 1, MODEL_VIEW = 2;
+	private static final ThreadLocal<Matrix4f[]> SCRATCH_MATRICES = ThreadLocal.withInitial(() -> new Matrix4f[] { new Matrix4f(), new Matrix4f(), new Matrix4f() });
+	
 	private TransformationMatrices() {}
 	
 	/**
@@ -34,7 +40,24 @@ public final class TransformationMatrices {
 	 * @return the resulting projection matrix
 	 */
 	public static Matrix4f getProjectionMatrix(float fov, float width, float height, float zNear, float zFar) {
-		return MATRIX_PROJECTION.identity().perspective(fov, width / height, zNear, zFar);
+		return getProjectionMatrix(fov, width, height, zNear, zFar, SCRATCH_MATRICES.get()[PROJECTION]);
+	}
+	
+	/**
+	 * Calculate the projection matrix based on given values into a destination
+	 * matrix. See {@link #getProjectionMatrix(float, float, float, float, float)}
+	 * 
+	 * @param fov the FOV of the projection matrix
+	 * @param width the width of the frame buffer
+	 * @param height the height of the frame buffer
+	 * @param zNear the nearest view distance on the projection matrix
+	 * @param zFar the further view distance on the projection matrix
+	 * @param dest the matrix in which to store the result
+	 * 
+	 * @return the destination matrix
+	 */
+	public static Matrix4f getProjectionMatrix(float fov, float width, float height, float zNear, float zFar, Matrix4f dest) {
+		return dest.identity().perspective(fov, width / height, zNear, zFar);
 	}
 	
 	/**
@@ -48,9 +71,22 @@ public final class TransformationMatrices {
 	 * @return the calculated transformation matrix
 	 */
 	public static Matrix4f getTransformationMatrix(ObjectModel model) {
+		return getTransformationMatrix(model, SCRATCH_MATRICES.get()[MODEL_VIEW]);
+	}
+	
+	/**
+	 * Calculate the transformation matrix of a given model into a destination
+	 * matrix. See {@link #getTransformationMatrix(ObjectModel)}
+	 * 
+	 * @param model the model whose transformation matrix to calculate
+	 * @param dest the matrix in which to store the result
+	 * 
+	 * @return the destination matrix
+	 */
+	public static Matrix4f getTransformationMatrix(ObjectModel model, Matrix4f dest) {
 		Vector3f rotation = model.getRotation();
 		
-		return MATRIX_MODEL_VIEW.identity()
+		return dest.identity()
 			.translate(model.getPosition())
 			.rotateX((float) Math.toRadians(-rotation.x))
 			.rotateY((float) Math.toRadians(-rotation.y))
@@ -66,9 +102,22 @@ public final class TransformationMatrices {
 	 * @return the calculated view matrix
 	 */
 	public static Matrix4f getViewMatrix(Camera camera) {
+		return getViewMatrix(camera, SCRATCH_MATRICES.get()[VIEW]);
+	}
+	
+	/**
+	 * Calculate the view matrix for the given camera into a destination matrix.
+	 * See {@link #getViewMatrix(Camera)}
+	 * 
+	 * @param camera the camera perspective whose view matrix to calculate
+	 * @param dest the matrix in which to store the result
+	 * 
+	 * @return the destination matrix
+	 */
+	public static Matrix4f getViewMatrix(Camera camera, Matrix4f dest) {
 		Vector3f position = camera.getPosition(), rotation = camera.getRotation();
 		
-		return MATRIX_VIEW.identity()
+		return dest.identity()
 			.rotateX((float) Math.toRadians(rotation.x))
 			.rotateY((float) Math.toRadians(rotation.y))
 			.translate(-position.x, -position.y, -position.z);
@@ -20,7 +20,10 @@ import me.choco.learning.engine.texture.Texture;
 
 public class FontTexture {
 	
+	private static final int FLOATS_PER_GLYPH = 6 * 8; // Two triangles of 8 floats per vertex
+	
 	private final Map<Character, Glyph> glyphs = new HashMap<>();
+	private FloatBuffer vertices = FloatBuffer.allocate(FLOATS_PER_GLYPH * 64);
 	
 	private final Texture texture;
 	private int fontHeight;
@@ -104,7 +107,12 @@ public class FontTexture {
 			drawY += textHeight - fontHeight;
 		}
 		
-		this.texture.bind();
+		// Every glyph of the text is written to one buffer and drawn at once
+		if (vertices.capacity() < text.length() * FLOATS_PER_GLYPH) {
+			this.vertices = FloatBuffer.allocate(Math.max(vertices.capacity() * 2, text.length() * FLOATS_PER_GLYPH));
+		}
+		
+		this.vertices.clear();
 		for (int i = 0; i < text.length(); i++) {
 			char character = text.charAt(i);
 			
@@ -118,16 +126,19 @@ public class FontTexture {
 			if (character == '\r') continue;
 			
 			Glyph glyph = glyphs.get(character);
+			if (glyph == null) continue;
 			
-			FloatBuffer buffer = toFloatBuffer(drawX, drawY, glyph.getX(), glyph.getY(), glyph.getWidth(), glyph.getHeight(), color);
-			renderer.render(buffer, buffer.capacity());
-			MemoryUtil.memFree(buffer);
-			
+			this.putGlyph(vertices, drawX, drawY, glyph.getX(), glyph.getY(), glyph.getWidth(), glyph.getHeight(), color);
 			drawX += glyph.getWidth();
 		}
+		
+		if (vertices.position() == 0) return;
+		
+		this.texture.bind();
+		renderer.render(vertices, vertices.position());
 	}
 	
-	private FloatBuffer toFloatBuffer(float drawX, float drawY, float x, float y, float width, float height, Color color) {
+	private void putGlyph(FloatBuffer buffer, float drawX, float drawY, float x, float y, float width, float height, Color color) {
 		float x2 = drawX + x, y2 = drawY + y;
 		float s1 = (x / texture.getWidth()), s2 = (y / texture.getHeight());
 		float t1 = ((x + width) / texture.getWidth()), t2 = ((y + height) / texture.getHeight());
@@ -137,8 +148,6 @@ public class FontTexture {
 		int b = color.getBlue();
 		int a = color.getAlpha();
 		
-		FloatBuffer buffer = MemoryUtil.memAllocFloat(6);
-		
 		buffer.put(drawX).put(drawY).put(r).put(g).put(b).put(a).put(s1).put(t1);
 		buffer.put(drawX).put(y2).put(r).put(g).put(b).put(a).put(s1).put(t2);
 		buffer.put(x2).put(y2).put(r).put(g).put(b).put(a).put(s2).put(t2);
@@ -146,8 +155,6 @@ public class FontTexture {
 		buffer.put(drawX).put(drawY).put(r).put(g).put(b).put(a).put(s1).put(t1);
 		buffer.put(x2).put(y2).put(r).put(g).put(b).put(a).put(s2).put(t2);
 		buffer.put(x2).put(drawY).put(r).put(g).put(b).put(a).put(s2).put(t1);
-		
-		return buffer;
 	}
 	
 	private Texture createTextureAtlas() {
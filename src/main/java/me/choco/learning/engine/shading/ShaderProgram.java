@@ -1,6 +1,9 @@
 package me.choco.learning.engine.shading;
 
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL31.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -15,6 +18,8 @@ import org.joml.Vector3f;
 import org.joml.Vector4f;
 import org.lwjgl.system.MemoryStack;
 
+import me.choco.learning.engine.rendering.GLStateCache;
+
 /**
  * Represents a shader program containing various types of shaders. Handles
  * the linking, binding and unbinding of shader programs in the OpenGL
@@ -135,6 +140,32 @@ public class ShaderProgram {
 		this.uniformVariables.put(name, location);
 	}
 	
+	/**
+	 * Bind a uniform block declared in the shader program to a binding point.
+	 * Data for the block is read from the uniform buffer bound to that point,
+	 * which may be shared by any amount of programs
+	 * 
+	 * @param name the name of the uniform block
+	 * @param bindingPoint the binding point to read from
+	 */
+	public void bindUniformBlock(String name, int bindingPoint) {
+		int index = glGetUniformBlockIndex(programId, name);
+		if (index == GL_INVALID_INDEX)
+			throw new NoSuchFieldError("Could not find the uniform block with name \"" + name + "\"");
+		
+		glUniformBlockBinding(programId, index, bindingPoint);
+	}
+	
+	/**
+	 * Bind a shared uniform block declared in the shader program to its reserved
+	 * binding point. See {@link UniformBuffer}
+	 * 
+	 * @param block the uniform block
+	 */
+	public void bindUniformBlock(UniformBlock block) {
+		this.bindUniformBlock(block.getName(), block.getBindingPoint());
+	}
+	
 	/**
 	 * Set the value of a uniform variable of type "mat4"
 	 * 
@@ -202,14 +233,14 @@ public class ShaderProgram {
 	 * Bind and use this shader program
 	 */
 	public void bind() {
-		glUseProgram(programId);
+		GLStateCache.get().useProgram(programId);
 	}
 	
 	/**
 	 * Unbind this shader program
 	 */
 	public void unbind() {
-		glUseProgram(0);
+		GLStateCache.get().useProgram(0);
 	}
 	
 	/**
@@ -217,9 +248,8 @@ public class ShaderProgram {
 	 * the program from the GPU
 	 */
 	public void cleanup() {
-		this.unbind();
 		if (programId != 0) {
-			glDeleteProgram(programId);
+			GLStateCache.get().deleteProgram(programId);
 		}
 	}
 	
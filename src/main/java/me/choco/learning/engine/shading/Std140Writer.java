@@ -0,0 +1,150 @@
+package me.choco.learning.engine.shading;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+/**
+ * Writes values into a buffer following the std140 layout rules of uniform
+ * blocks. Scalars are aligned to 4 bytes, vec3 and vec4 to 16 bytes and a mat4
+ * is written as four vec4 columns. Values must be written in the order they are
+ * declared in the block, and every put advances the write offset past the
+ * value, inserting any required padding beforehand.
+ * <p>
+ * Offsets are relative to the buffer's position when the writer was reset, so
+ * a block may be written into the middle of a larger buffer. The buffer must be
+ * in native byte order
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class Std140Writer {
+	
+	/** The size in bytes of a mat4 in the std140 layout */
+	public static final int MAT4_SIZE = 64;
+	
+	/** The size in bytes reserved for a vec3 or vec4 in the std140 layout */
+	public static final int VEC4_SIZE = 16;
+	
+	private ByteBuffer buffer;
+	private int base, offset;
+	
+	/**
+	 * Construct a new writer beginning at the buffer's current position
+	 * 
+	 * @param buffer the buffer to write into
+	 */
+	public Std140Writer(ByteBuffer buffer) {
+		this.reset(buffer);
+	}
+	
+	/**
+	 * Restart writing at the buffer's current position
+	 * 
+	 * @param buffer the buffer to write into
+	 * @return this instance. Allows for chained method calls
+	 */
+	public Std140Writer reset(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new IllegalArgumentException("Buffer must not be null");
+		}
+		if (buffer.order() != ByteOrder.nativeOrder()) {
+			throw new IllegalArgumentException("Uniform block data must be written in native byte order");
+		}
+		
+		this.buffer = buffer;
+		this.base = buffer.position();
+		this.offset = 0;
+		return this;
+	}
+	
+	/**
+	 * Write a value of type "float"
+	 * 
+	 * @param value the value to write
+	 * @return this instance. Allows for chained method calls
+	 */
+	public Std140Writer putFloat(float value) {
+		this.buffer.putFloat(base + this.align(4), value);
+		this.offset += 4;
+		return this;
+	}
+	
+	/**
+	 * Write a value of type "int" or "bool"
+	 * 
+	 * @param value the value to write
+	 * @return this instance. Allows for chained method calls
+	 */
+	public Std140Writer putInt(int value) {
+		this.buffer.putInt(base + this.align(4), value);
+		this.offset += 4;
+		return this;
+	}
+	
+	/**
+	 * Write a value of type "vec3". A following scalar may be packed into the
+	 * fourth component
+	 * 
+	 * @param value the value to write
+	 * @return this instance. Allows for chained method calls
+	 */
+	public Std140Writer putVec3(Vector3f value) {
+		value.get(base + this.align(16), buffer);
+		this.offset += 12;
+		return this;
+	}
+	
+	/**
+	 * Write a value of type "vec4"
+	 * 
+	 * @param value the value to write
+	 * @return this instance. Allows for chained method calls
+	 */
+	public Std140Writer putVec4(Vector4f value) {
+		value.get(base + this.align(16), buffer);
+		this.offset += VEC4_SIZE;
+		return this;
+	}
+	
+	/**
+	 * Write a value of type "mat4" in column-major order
+	 * 
+	 * @param value the value to write
+	 * @return this instance. Allows for chained method calls
+	 */
+	public Std140Writer putMat4(Matrix4f value) {
+		value.get(base + this.align(16), buffer);
+		this.offset += MAT4_SIZE;
+		return this;
+	}
+	
+	/**
+	 * Get the amount of bytes written so far, rounded up to the 16 byte base
+	 * alignment of a uniform block. This is the size the block occupies when
+	 * every member has been written
+	 * 
+	 * @return the block size in bytes
+	 */
+	public int getSize() {
+		return (offset + 15) & ~15;
+	}
+	
+	/**
+	 * Get the offset at which the next value will be written, relative to the
+	 * start of the block and before any padding
+	 * 
+	 * @return the write offset
+	 */
+	public int getOffset() {
+		return offset;
+	}
+	
+	private int align(int alignment) {
+		this.offset = (offset + alignment - 1) & -alignment;
+		return offset;
+	}
+	
+}
@@ -0,0 +1,62 @@
+package me.choco.learning.engine.shading;
+
+/**
+ * Represents a uniform block shared between shader programs. Each block is
+ * assigned a fixed binding point so that a single {@link UniformBuffer} bound
+ * to that point is read by every program declaring the block, regardless of
+ * which program is in use
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public enum UniformBlock {
+	
+	/**
+	 * Per-frame camera and lighting data. Declared in shaders as:
+	 * <pre>
+	 * layout(std140) uniform FrameData {
+	 *     mat4 projectionMatrix;
+	 *     mat4 viewMatrix;
+	 *     vec3 lightPosition;
+	 *     vec3 lightColour;
+	 * };
+	 * </pre>
+	 */
+	FRAME_DATA("FrameData", 0, 2 * Std140Writer.MAT4_SIZE + 2 * Std140Writer.VEC4_SIZE);
+	
+	private final String name;
+	private final int bindingPoint, size;
+	
+	private UniformBlock(String name, int bindingPoint, int size) {
+		this.name = name;
+		this.bindingPoint = bindingPoint;
+		this.size = size;
+	}
+	
+	/**
+	 * Get the name of this block as declared in shader source
+	 * 
+	 * @return the block name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Get the uniform buffer binding point reserved for this block
+	 * 
+	 * @return the binding point
+	 */
+	public int getBindingPoint() {
+		return bindingPoint;
+	}
+	
+	/**
+	 * Get the size of this block in bytes under the std140 layout
+	 * 
+	 * @return the block size
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+}
@@ -0,0 +1,138 @@
+package me.choco.learning.engine.shading;
+
+import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.nglBufferSubData;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.lwjgl.system.MemoryUtil;
+
+import me.choco.learning.engine.rendering.GLStateCache;
+
+/**
+ * Represents a uniform buffer object holding the data of a {@link UniformBlock}.
+ * The buffer is bound to the block's binding point once when created, so every
+ * shader program which binds the block (see
+ * {@link ShaderProgram#bindUniformBlock(UniformBlock)}) reads the same data.
+ * <p>
+ * Data is written into a native staging copy with a {@link Std140Writer} and
+ * uploaded in a single glBufferSubData call on {@link #upload()}. Uploads are
+ * skipped when the written data is identical to the last upload
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class UniformBuffer {
+	
+	private final int id;
+	private final UniformBlock block;
+	
+	private final ByteBuffer data, uploaded;
+	private final Std140Writer writer;
+	
+	private boolean dirty = true;
+	private long uploadCount;
+	
+	/**
+	 * Construct a new uniform buffer for the given block, allocate its storage
+	 * and bind it to the block's binding point
+	 * 
+	 * @param block the block whose data is held by this buffer
+	 */
+	public UniformBuffer(UniformBlock block) {
+		if (block == null) {
+			throw new IllegalArgumentException("Uniform block must not be null");
+		}
+		
+		this.id = GLStateCache.get().genBuffer();
+		this.block = block;
+		this.data = MemoryUtil.memCalloc(block.getSize()).order(ByteOrder.nativeOrder());
+		this.uploaded = MemoryUtil.memCalloc(block.getSize()).order(ByteOrder.nativeOrder());
+		this.writer = new Std140Writer(data);
+		
+		GLStateCache cache = GLStateCache.get();
+		cache.bindBuffer(GL_UNIFORM_BUFFER, id);
+		glBufferData(GL_UNIFORM_BUFFER, block.getSize(), GL_DYNAMIC_DRAW);
+		cache.bindBufferBase(GL_UNIFORM_BUFFER, block.getBindingPoint(), id);
+	}
+	
+	/**
+	 * Begin writing this buffer's data from the start of the block. Members must
+	 * be written in the order they are declared, and written data is not visible
+	 * to shaders until {@link #upload()} is called
+	 * 
+	 * @return the writer
+	 */
+	public Std140Writer write() {
+		this.data.clear();
+		this.dirty = true;
+		return writer.reset(data);
+	}
+	
+	/**
+	 * Upload the written data to the GPU if it has changed since the last upload
+	 * 
+	 * @return true if the data was uploaded, false if it was unchanged
+	 */
+	public boolean upload() {
+		if (!dirty) return false;
+		
+		this.dirty = false;
+		if (writer.getSize() > block.getSize()) {
+			throw new IllegalStateException("Wrote " + writer.getSize() + " bytes to uniform block " + block.getName() + " of " + block.getSize() + " bytes");
+		}
+		
+		this.data.clear();
+		this.uploaded.clear();
+		if (uploadCount > 0 && data.equals(uploaded)) {
+			return false;
+		}
+		
+		this.uploaded.put(data).clear();
+		this.data.clear();
+		
+		GLStateCache.get().bindBuffer(GL_UNIFORM_BUFFER, id);
+		nglBufferSubData(GL_UNIFORM_BUFFER, 0, block.getSize(), MemoryUtil.memAddress(data));
+		this.uploadCount++;
+		return true;
+	}
+	
+	/**
+	 * Get the block whose data is held by this buffer
+	 * 
+	 * @return the uniform block
+	 */
+	public UniformBlock getBlock() {
+		return block;
+	}
+	
+	/**
+	 * Get this buffer's unique id
+	 * 
+	 * @return the buffer id
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Get the amount of times data has been uploaded to this buffer
+	 * 
+	 * @return the upload count
+	 */
+	public long getUploadCount() {
+		return uploadCount;
+	}
+	
+	/**
+	 * Delete this buffer. Upon calling this method, this object is no longer usable
+	 */
+	public void delete() {
+		MemoryUtil.memFree(data);
+		MemoryUtil.memFree(uploaded);
+		GLStateCache.get().deleteBuffer(id);
+	}
+	
+}
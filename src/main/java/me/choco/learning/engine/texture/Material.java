@@ -79,4 +79,8 @@ public class Material {
 		return this.texture != null;
 	}
 	
+	public boolean isTransparent() {
+		return this.diffuseColour.w < 1.0f;
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package me.choco.learning.engine.texture;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents materials parsed from one or more MTL material libraries whose
+ * textures have been decoded but not yet uploaded to the GPU. Parsing and
+ * decoding may be done on any thread, while {@link #upload()} must be called
+ * from a thread with a current OpenGL context. See {@link MaterialLoader}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class MaterialLibrary {
+	
+	private final Map<String, Material> materials = new LinkedHashMap<>();
+	private final Map<TextureData, List<Material>> textures = new IdentityHashMap<>();
+	
+	/**
+	 * Add a material to this library, replacing any material of the same name
+	 * 
+	 * @param name the name of the material
+	 * @param material the material
+	 */
+	public void addMaterial(String name, Material material) {
+		this.materials.put(name, material);
+	}
+	
+	/**
+	 * Set the texture of a material in this library once it is uploaded. Materials
+	 * given the same texture data share a single texture
+	 * 
+	 * @param material the material whose texture to set
+	 * @param texture the decoded texture
+	 */
+	public void setTexture(Material material, TextureData texture) {
+		this.textures.computeIfAbsent(texture, key -> new ArrayList<>()).add(material);
+	}
+	
+	/**
+	 * Add all materials and pending textures of another library to this library
+	 * 
+	 * @param library the library to add
+	 */
+	public void addAll(MaterialLibrary library) {
+		this.materials.putAll(library.materials);
+		library.textures.forEach((texture, materials) -> textures.computeIfAbsent(texture, key -> new ArrayList<>()).addAll(materials));
+	}
+	
+	/**
+	 * Upload the decoded textures of this library and assign them to their
+	 * materials. This must be called once, from a thread with a current OpenGL
+	 * context
+	 * 
+	 * @return the materials of this library, mapped by name in declaration order
+	 */
+	public Map<String, Material> upload() {
+		for (Map.Entry<TextureData, List<Material>> entry : textures.entrySet()) {
+			Texture texture = entry.getKey().upload();
+			for (Material material : entry.getValue()) {
+				material.setTexture(texture);
+			}
+		}
+		
+		this.textures.clear();
+		return materials;
+	}
+	
+}
@@ -0,0 +1,195 @@
+package me.choco.learning.engine.texture;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.joml.Vector4f;
+
+/**
+ * A utility class to load {@link Material}s from an MTL material library. The
+ * following statements are supported:
+ * <ul>
+ *   <li>newmtl - begins a new material</li>
+ *   <li>Ka, Kd, Ks - ambient, diffuse and specular colours</li>
+ *   <li>d, Tr - opacity (or transparency), stored in the alpha of each colour</li>
+ *   <li>Ns - specular exponent, normalized from [0, 1000] into the reflectance</li>
+ *   <li>map_Kd - diffuse texture, relative to the library</li>
+ * </ul>
+ * Textures referenced by several materials of the same library are only loaded
+ * once. Unsupported statements are ignored
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class MaterialLoader {
+	
+	private static final float MAX_SPECULAR_EXPONENT = 1000.0f;
+	
+	private MaterialLoader() {}
+	
+	/**
+	 * Load all materials from an MTL file with the given name. This must be called
+	 * from a thread with a current OpenGL context
+	 * 
+	 * @param fileName the name of the MTL file (including the path)
+	 * @return the loaded materials, mapped by name in declaration order
+	 */
+	public static Map<String, Material> loadMTL(String fileName) {
+		return decodeMTL(fileName).upload();
+	}
+	
+	/**
+	 * Load all materials from an MTL file on the filesystem. This must be called
+	 * from a thread with a current OpenGL context
+	 * 
+	 * @param path the path to the MTL file
+	 * @return the loaded materials, mapped by name in declaration order
+	 */
+	public static Map<String, Material> loadMTL(Path path) {
+		return decodeMTL(path).upload();
+	}
+	
+	/**
+	 * Parse all materials from an MTL file with the given name and decode their
+	 * textures without uploading them to the GPU. This may be called from any thread
+	 * 
+	 * @param fileName the name of the MTL file (including the path)
+	 * @return the parsed materials
+	 */
+	public static MaterialLibrary decodeMTL(String fileName) {
+		String directory = fileName.substring(0, fileName.lastIndexOf('/') + 1);
+		
+		try (InputStream stream = MaterialLoader.class.getResourceAsStream(fileName)) {
+			if (stream == null) {
+				throw new IOException("Could not find material library " + fileName);
+			}
+			
+			return parse(stream, texture -> decodeTexture(() -> MaterialLoader.class.getResourceAsStream(directory + texture), directory + texture));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new MaterialLibrary();
+		}
+	}
+	
+	/**
+	 * Parse all materials from an MTL file on the filesystem and decode their
+	 * textures without uploading them to the GPU. This may be called from any thread
+	 * 
+	 * @param path the path to the MTL file
+	 * @return the parsed materials
+	 */
+	public static MaterialLibrary decodeMTL(Path path) {
+		try (InputStream stream = Files.newInputStream(path)) {
+			return parse(stream, texture -> decodeTexture(() -> Files.newInputStream(path.resolveSibling(texture)), path.resolveSibling(texture)));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new MaterialLibrary();
+		}
+	}
+	
+	private static MaterialLibrary parse(InputStream stream, Function<String, TextureData> textureLoader) throws IOException {
+		MaterialLibrary library = new MaterialLibrary();
+		Map<String, TextureData> textures = new HashMap<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+		
+		Material material = null;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			
+			String[] tokens = line.split("\\s+", 2);
+			String keyword = tokens[0], arguments = (tokens.length > 1) ? tokens[1] : "";
+			
+			if (keyword.equals("newmtl")) {
+				material = new Material(new Vector4f(1, 1, 1, 1), new Vector4f(1, 1, 1, 1), new Vector4f(0, 0, 0, 1), null, 0);
+				library.addMaterial(arguments, material);
+				continue;
+			}
+			
+			if (material == null) continue;
+			
+			try {
+				switch (keyword) {
+				case "Ka":
+					parseColour(arguments, material.getAmbientColour());
+					break;
+				case "Kd":
+					parseColour(arguments, material.getDiffuseColour());
+					break;
+				case "Ks":
+					parseColour(arguments, material.getSpecularColour());
+					break;
+				case "d":
+					setOpacity(material, Float.parseFloat(arguments));
+					break;
+				case "Tr":
+					setOpacity(material, 1.0f - Float.parseFloat(arguments));
+					break;
+				case "Ns":
+					material.setReflectance(Math.min(Float.parseFloat(arguments) / MAX_SPECULAR_EXPONENT, 1.0f));
+					break;
+				case "map_Kd":
+					// Options (i.e. -s or -o) may precede the file name, which is always last
+					String textureName = arguments.substring(arguments.lastIndexOf(' ') + 1);
+					TextureData texture = textures.computeIfAbsent(textureName, textureLoader);
+					if (texture != null) {
+						library.setTexture(material, texture);
+					}
+					break;
+				default:
+					break;
+				}
+			} catch (NumberFormatException e) {
+				System.err.println("Ignoring malformed material statement: " + line);
+			}
+		}
+		
+		return library;
+	}
+	
+	// A texture which cannot be decoded is reported and left out, so its materials are untextured
+	private static TextureData decodeTexture(TextureSource source, Object name) {
+		try (InputStream stream = source.open()) {
+			if (stream == null) {
+				throw new IOException("Could not find texture " + name);
+			}
+			
+			return TextureData.decodePNG(stream);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	private static void parseColour(String arguments, Vector4f colour) {
+		String[] components = arguments.split("\\s+");
+		float red = Float.parseFloat(components[0]);
+		
+		// A single component applies to all channels
+		colour.x = red;
+		colour.y = (components.length > 1) ? Float.parseFloat(components[1]) : red;
+		colour.z = (components.length > 2) ? Float.parseFloat(components[2]) : red;
+	}
+	
+	private static void setOpacity(Material material, float opacity) {
+		material.getAmbientColour().w = opacity;
+		material.getDiffuseColour().w = opacity;
+		material.getSpecularColour().w = opacity;
+	}
+	
+	@FunctionalInterface
+	private interface TextureSource {
+		
+		public InputStream open() throws IOException;
+		
+	}
+	
+}
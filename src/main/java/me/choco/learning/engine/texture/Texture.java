@@ -4,19 +4,20 @@ import static org.lwjgl.opengl.GL11.GL_RGBA;
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
 import static org.lwjgl.opengl.GL11.GL_UNPACK_ALIGNMENT;
 import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
-import static org.lwjgl.opengl.GL11.glBindTexture;
-import static org.lwjgl.opengl.GL11.glDeleteTextures;
-import static org.lwjgl.opengl.GL11.glGenTextures;
 import static org.lwjgl.opengl.GL11.glPixelStorei;
 import static org.lwjgl.opengl.GL11.glTexImage2D;
 import static org.lwjgl.opengl.GL30.glGenerateMipmap;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import de.matthiasmann.twl.utils.PNGDecoder;
 import de.matthiasmann.twl.utils.PNGDecoder.Format;
 import me.choco.learning.engine.model.VertexModel;
+import me.choco.learning.engine.rendering.GLStateCache;
 
 /**
  * Represents a renderable texture on a {@link VertexModel}
@@ -34,22 +35,21 @@ public class Texture {
 	 * @param fileName the name of the texture file (including its path)
 	 */
 	public Texture(String fileName) {
-		try {
-			PNGDecoder decoder = new PNGDecoder(Texture.class.getResourceAsStream(fileName));
-			
-			ByteBuffer buffer = ByteBuffer.allocateDirect(4 * decoder.getWidth() * decoder.getHeight());
-			decoder.decode(buffer, decoder.getWidth() * 4, Format.RGBA);
-			buffer.flip();
-			
-			this.id = glGenTextures();
-			this.width = decoder.getWidth();
-			this.height = decoder.getHeight();
-			
-			glBindTexture(GL_TEXTURE_2D, id);
-			glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
-			
-			glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
-			glGenerateMipmap(GL_TEXTURE_2D);
+		try (InputStream stream = Texture.class.getResourceAsStream(fileName)) {
+			this.load(stream);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Construct a new texture and read its png data from a file on the filesystem
+	 * 
+	 * @param path the path to the texture file
+	 */
+	public Texture(Path path) {
+		try (InputStream stream = Files.newInputStream(path)) {
+			this.load(stream);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -63,11 +63,29 @@ public class Texture {
 	 * @param height the expected height of the texture
 	 */
 	public Texture(ByteBuffer buffer, int width, int height) {
-		this.id = glGenTextures();
+		this.id = GLStateCache.get().genTexture();
 		this.width = width;
 		this.height = height;
 		
-		glBindTexture(GL_TEXTURE_2D, id);
+		GLStateCache.get().bindTexture(GL_TEXTURE_2D, id);
+		glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+		
+		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
+		glGenerateMipmap(GL_TEXTURE_2D);
+	}
+	
+	private void load(InputStream stream) throws IOException {
+		PNGDecoder decoder = new PNGDecoder(stream);
+		
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * decoder.getWidth() * decoder.getHeight());
+		decoder.decode(buffer, decoder.getWidth() * 4, Format.RGBA);
+		buffer.flip();
+		
+		this.id = GLStateCache.get().genTexture();
+		this.width = decoder.getWidth();
+		this.height = decoder.getHeight();
+		
+		GLStateCache.get().bindTexture(GL_TEXTURE_2D, id);
 		glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
 		
 		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
@@ -105,22 +123,21 @@ public class Texture {
 	 * Bind this texture as the active texture
 	 */
 	public void bind() {
-		glBindTexture(GL_TEXTURE_2D, id);
+		GLStateCache.get().bindTexture(GL_TEXTURE_2D, id);
 	}
 	
 	/**
 	 * Unbind this texture
 	 */
 	public void unbind() {
-		glBindTexture(GL_TEXTURE_2D, 0);
+		GLStateCache.get().bindTexture(GL_TEXTURE_2D, 0);
 	}
 	
 	/**
 	 * Delete this texture from memory
 	 */
 	public void delete() {
-		this.unbind();
-		glDeleteTextures(id);
+		GLStateCache.get().deleteTexture(id);
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package me.choco.learning.engine.texture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import de.matthiasmann.twl.utils.PNGDecoder;
+import de.matthiasmann.twl.utils.PNGDecoder.Format;
+
+/**
+ * Represents the decoded RGBA pixels of a texture which has not yet been
+ * uploaded to the GPU. Decoding requires no OpenGL context and may be done on
+ * any thread, after which a {@link Texture} may be created from the pixels
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public class TextureData {
+	
+	private final ByteBuffer pixels;
+	private final int width, height;
+	
+	/**
+	 * Construct new texture data
+	 * 
+	 * @param pixels the RGBA pixels, one byte per channel
+	 * @param width the width of the texture
+	 * @param height the height of the texture
+	 */
+	public TextureData(ByteBuffer pixels, int width, int height) {
+		this.pixels = pixels;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Decode PNG data from the given stream
+	 * 
+	 * @param stream the stream from which to read the png data
+	 * @return the decoded texture data
+	 * 
+	 * @throws IOException if the stream could not be read or is not a valid PNG
+	 */
+	public static TextureData decodePNG(InputStream stream) throws IOException {
+		PNGDecoder decoder = new PNGDecoder(stream);
+		ByteBuffer pixels = ByteBuffer.allocateDirect(4 * decoder.getWidth() * decoder.getHeight());
+		decoder.decode(pixels, decoder.getWidth() * 4, Format.RGBA);
+		pixels.flip();
+		
+		return new TextureData(pixels, decoder.getWidth(), decoder.getHeight());
+	}
+	
+	/**
+	 * Get the RGBA pixels of this texture
+	 * 
+	 * @return the pixels
+	 */
+	public ByteBuffer getPixels() {
+		return pixels;
+	}
+	
+	/**
+	 * Get the width of this texture
+	 * 
+	 * @return the width
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Get the height of this texture
+	 * 
+	 * @return the height
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Upload these pixels to a new texture. This must be called from a thread
+	 * with a current OpenGL context
+	 * 
+	 * @return the created texture
+	 */
+	public Texture upload() {
+		return new Texture(pixels, width, height);
+	}
+	
+}
@@ -0,0 +1,667 @@
+package me.choco.learning.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy of axis-aligned bounding boxes. Every leaf
+ * holds the bounds of one object, identified by an int of user data, and every
+ * internal node holds the union of its two children. Leaves may be inserted,
+ * removed and moved incrementally:
+ * <ul>
+ *   <li>leaves are inserted next to the sibling which minimizes the growth in
+ *   surface area of the tree, and the tree is rebalanced with rotations on the
+ *   way back to the root</li>
+ *   <li>leaves store bounds enlarged by a margin, so that objects moving by less
+ *   than the margin do not need to be reinserted</li>
+ * </ul>
+ * Nodes are stored in two flat primitive arrays indexed by node id, one for
+ * bounds and one for links, so that visiting a node touches few cache lines.
+ * Queries walk the tree with an explicit stack, so no objects are allocated per
+ * node or per query. The amount of nodes visited by the last query is reported by
+ * {@link #getNodesVisited()}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class DynamicAABBTree {
+	
+	/** The id of no node */
+	public static final int NULL_NODE = -1;
+	
+	private static final int BOUNDS_FLOATS = 6;
+	
+	// Links of each node: its parent (or the next free node), first child (NULL_NODE for leaves),
+	// second child (or user data for leaves) and height (0 for leaves, -1 for free nodes)
+	private static final int LINK_INTS = 4, PARENT = 0, FIRST_CHILD = 1, SECOND_CHILD = 2, USER_DATA = 2, HEIGHT = 3;
+	
+	private float[] bounds; // minX, minY, minZ, maxX, maxY, maxZ of each node
+	private int[] links;
+	
+	private int root = NULL_NODE, freeNode = NULL_NODE;
+	private int nodeCount, leafCount;
+	private final float margin;
+	
+	private float[] absolutePlanes = new float[0];
+	private int[] stack = new int[64];
+	private int stackSize, nodesVisited;
+	
+	/**
+	 * Construct a new empty tree
+	 * 
+	 * @param margin the distance by which the bounds of each leaf are enlarged.
+	 * Must not be negative
+	 */
+	public DynamicAABBTree(float margin) {
+		if (margin < 0) {
+			throw new IllegalArgumentException("Margin must not be negative (given: " + margin + ")");
+		}
+		
+		this.margin = margin;
+		this.allocate(16);
+	}
+	
+	/**
+	 * Insert a leaf with the given bounds into this tree
+	 * 
+	 * @param minX the minimum x coordinate of the bounds
+	 * @param minY the minimum y coordinate of the bounds
+	 * @param minZ the minimum z coordinate of the bounds
+	 * @param maxX the maximum x coordinate of the bounds
+	 * @param maxY the maximum y coordinate of the bounds
+	 * @param maxZ the maximum z coordinate of the bounds
+	 * @param data the user data of the leaf, returned by queries. Must not be negative
+	 * 
+	 * @return the id of the new leaf
+	 */
+	public int insert(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int data) {
+		if (data < 0) {
+			throw new IllegalArgumentException("User data must not be negative (given: " + data + ")");
+		}
+		
+		int leaf = allocateNode();
+		this.setFatBounds(leaf, minX, minY, minZ, maxX, maxY, maxZ);
+		this.links[leaf * LINK_INTS + USER_DATA] = data;
+		this.links[leaf * LINK_INTS + HEIGHT] = 0;
+		
+		this.insertLeaf(leaf);
+		this.leafCount++;
+		return leaf;
+	}
+	
+	/**
+	 * Remove a leaf from this tree
+	 * 
+	 * @param leaf the id of the leaf returned by {@link #insert(float, float, float, float, float, float, int)}
+	 */
+	public void remove(int leaf) {
+		this.checkLeaf(leaf);
+		this.removeLeaf(leaf);
+		this.freeNode(leaf);
+		this.leafCount--;
+	}
+	
+	/**
+	 * Move a leaf to the given bounds. The leaf is only reinserted if the bounds
+	 * are no longer enclosed by its enlarged bounds
+	 * 
+	 * @param leaf the id of the leaf
+	 * @param minX the minimum x coordinate of the bounds
+	 * @param minY the minimum y coordinate of the bounds
+	 * @param minZ the minimum z coordinate of the bounds
+	 * @param maxX the maximum x coordinate of the bounds
+	 * @param maxY the maximum y coordinate of the bounds
+	 * @param maxZ the maximum z coordinate of the bounds
+	 * 
+	 * @return true if the leaf was reinserted, false if its bounds were unchanged
+	 */
+	public boolean update(int leaf, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		this.checkLeaf(leaf);
+		
+		int offset = leaf * BOUNDS_FLOATS;
+		if (bounds[offset] <= minX && bounds[offset + 1] <= minY && bounds[offset + 2] <= minZ
+				&& bounds[offset + 3] >= maxX && bounds[offset + 4] >= maxY && bounds[offset + 5] >= maxZ) {
+			return false;
+		}
+		
+		this.removeLeaf(leaf);
+		this.setFatBounds(leaf, minX, minY, minZ, maxX, maxY, maxZ);
+		this.insertLeaf(leaf);
+		return true;
+	}
+	
+	/**
+	 * Remove every leaf from this tree
+	 */
+	public void clear() {
+		this.allocate(16);
+		this.root = NULL_NODE;
+		this.leafCount = 0;
+	}
+	
+	/**
+	 * Get the user data of a leaf
+	 * 
+	 * @param leaf the id of the leaf
+	 * @return the user data
+	 */
+	public int getUserData(int leaf) {
+		this.checkLeaf(leaf);
+		return links[leaf * LINK_INTS + USER_DATA];
+	}
+	
+	/**
+	 * Get the amount of leaves in this tree
+	 * 
+	 * @return the leaf count
+	 */
+	public int size() {
+		return leafCount;
+	}
+	
+	/**
+	 * Get the height of this tree, where a tree with a single leaf has a height
+	 * of 0
+	 * 
+	 * @return the tree height, or -1 if empty
+	 */
+	public int getHeight() {
+		return (root != NULL_NODE) ? links[root * LINK_INTS + HEIGHT] : -1;
+	}
+	
+	/**
+	 * Get the amount of nodes visited by the last query
+	 * 
+	 * @return the amount of visited nodes
+	 */
+	public int getNodesVisited() {
+		return nodesVisited;
+	}
+	
+	/**
+	 * Find every leaf whose bounds overlap the given box
+	 * 
+	 * @param minX the minimum x coordinate of the box
+	 * @param minY the minimum y coordinate of the box
+	 * @param minZ the minimum z coordinate of the box
+	 * @param maxX the maximum x coordinate of the box
+	 * @param maxY the maximum y coordinate of the box
+	 * @param maxZ the maximum z coordinate of the box
+	 * @param results the list to which the user data of each leaf is added
+	 */
+	public void queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, IntList results) {
+		this.nodesVisited = 0;
+		if (root == NULL_NODE) return;
+		
+		this.stackSize = 0;
+		this.push(root);
+		while (stackSize > 0) {
+			int node = stack[--stackSize];
+			int offset = node * BOUNDS_FLOATS;
+			this.nodesVisited++;
+			
+			if (bounds[offset] > maxX || bounds[offset + 1] > maxY || bounds[offset + 2] > maxZ
+					|| bounds[offset + 3] < minX || bounds[offset + 4] < minY || bounds[offset + 5] < minZ) {
+				continue;
+			}
+			
+			this.pushChildrenOrCollect(node, results);
+		}
+	}
+	
+	/**
+	 * Find every leaf whose bounds overlap the given sphere
+	 * 
+	 * @param x the x coordinate of the sphere's center
+	 * @param y the y coordinate of the sphere's center
+	 * @param z the z coordinate of the sphere's center
+	 * @param radius the radius of the sphere
+	 * @param results the list to which the user data of each leaf is added
+	 */
+	public void querySphere(float x, float y, float z, float radius, IntList results) {
+		this.nodesVisited = 0;
+		if (root == NULL_NODE) return;
+		
+		float radiusSquared = radius * radius;
+		this.stackSize = 0;
+		this.push(root);
+		while (stackSize > 0) {
+			int node = stack[--stackSize];
+			int offset = node * BOUNDS_FLOATS;
+			this.nodesVisited++;
+			
+			// Distance from the center to the closest point of the box
+			float dx = Math.max(Math.max(bounds[offset] - x, x - bounds[offset + 3]), 0);
+			float dy = Math.max(Math.max(bounds[offset + 1] - y, y - bounds[offset + 4]), 0);
+			float dz = Math.max(Math.max(bounds[offset + 2] - z, z - bounds[offset + 5]), 0);
+			if (dx * dx + dy * dy + dz * dz > radiusSquared) continue;
+			
+			this.pushChildrenOrCollect(node, results);
+		}
+	}
+	
+	/**
+	 * Find every leaf whose bounds are not entirely outside of any of the given
+	 * planes. Planes are tested as {@code a*x + b*y + c*z + d >= 0} for points
+	 * inside of them. Subtrees found entirely inside of a plane are not tested
+	 * against it again, and subtrees entirely inside of every plane are collected
+	 * without further tests
+	 * 
+	 * @param planes the planes, as 4 floats (a, b, c, d) each. At most 32 planes
+	 * may be given, i.e. the 6 planes of a view frustum
+	 * @param results the list to which the user data of each leaf is added
+	 */
+	public void queryPlanes(float[] planes, IntList results) {
+		int planeCount = planes.length / 4;
+		if (planeCount > 32) {
+			throw new IllegalArgumentException("At most 32 planes may be tested (given: " + planeCount + ")");
+		}
+		
+		this.nodesVisited = 0;
+		if (root == NULL_NODE) return;
+		
+		if (absolutePlanes.length < planes.length) {
+			this.absolutePlanes = new float[planes.length];
+		}
+		
+		float[] absolutePlanes = this.absolutePlanes;
+		for (int i = 0; i < planeCount * 4; i++) {
+			absolutePlanes[i] = Math.abs(planes[i]);
+		}
+		
+		// The stack holds pairs of a node and the mask of planes its parent intersected
+		this.stackSize = 0;
+		this.push(root);
+		this.push((planeCount == 32) ? -1 : (1 << planeCount) - 1);
+		while (stackSize > 0) {
+			int mask = stack[--stackSize], node = stack[--stackSize];
+			int offset = node * BOUNDS_FLOATS;
+			this.nodesVisited++;
+			
+			// The distance of the box's center from each plane, compared to its extents projected on the plane normal
+			float centerX = bounds[offset] + bounds[offset + 3], centerY = bounds[offset + 1] + bounds[offset + 4], centerZ = bounds[offset + 2] + bounds[offset + 5];
+			float extentX = bounds[offset + 3] - bounds[offset], extentY = bounds[offset + 4] - bounds[offset + 1], extentZ = bounds[offset + 5] - bounds[offset + 2];
+			
+			boolean outside = false;
+			for (int plane = 0, remaining = mask; remaining != 0; plane++, remaining >>>= 1) {
+				if ((remaining & 1) == 0) continue;
+				
+				int i = plane * 4;
+				float distance = planes[i] * centerX + planes[i + 1] * centerY + planes[i + 2] * centerZ + 2 * planes[i + 3];
+				float radius = absolutePlanes[i] * extentX + absolutePlanes[i + 1] * extentY + absolutePlanes[i + 2] * extentZ;
+				
+				if (distance < -radius) {
+					outside = true;
+					break;
+				}
+				
+				if (distance >= radius) {
+					mask &= ~(1 << plane);
+				}
+			}
+			
+			if (outside) continue;
+			
+			int link = node * LINK_INTS;
+			if (mask == 0) {
+				this.collectLeaves(node, results);
+			}
+			else if (links[link + FIRST_CHILD] == NULL_NODE) {
+				results.add(links[link + USER_DATA]);
+			}
+			else {
+				this.push(links[link + FIRST_CHILD]);
+				this.push(mask);
+				this.push(links[link + SECOND_CHILD]);
+				this.push(mask);
+			}
+		}
+	}
+	
+	/**
+	 * Find the leaf whose bounds are hit first by the given ray
+	 * 
+	 * @param originX the x coordinate of the ray's origin
+	 * @param originY the y coordinate of the ray's origin
+	 * @param originZ the z coordinate of the ray's origin
+	 * @param directionX the x component of the ray's direction
+	 * @param directionY the y component of the ray's direction
+	 * @param directionZ the z component of the ray's direction
+	 * @param maxDistance the maximum distance along the ray, in multiples of its direction
+	 * 
+	 * @return the user data of the leaf hit first, or -1 if none was hit
+	 */
+	public int raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxDistance) {
+		this.nodesVisited = 0;
+		if (root == NULL_NODE) return -1;
+		
+		float inverseX = 1 / directionX, inverseY = 1 / directionY, inverseZ = 1 / directionZ;
+		float closestDistance = maxDistance;
+		int closest = -1;
+		
+		this.stackSize = 0;
+		this.push(root);
+		while (stackSize > 0) {
+			int node = stack[--stackSize];
+			this.nodesVisited++;
+			
+			float distance = intersectRay(node * BOUNDS_FLOATS, originX, originY, originZ, inverseX, inverseY, inverseZ, closestDistance);
+			if (distance < 0) continue;
+			
+			int link = node * LINK_INTS;
+			if (links[link + FIRST_CHILD] == NULL_NODE) {
+				closestDistance = distance;
+				closest = links[link + USER_DATA];
+			}
+			else {
+				this.push(links[link + FIRST_CHILD]);
+				this.push(links[link + SECOND_CHILD]);
+			}
+		}
+		
+		return closest;
+	}
+	
+	// Slab test. Returns the distance at which the ray enters the box, or -1 if it misses it before maxDistance
+	private float intersectRay(int offset, float originX, float originY, float originZ, float inverseX, float inverseY, float inverseZ, float maxDistance) {
+		float near = 0, far = maxDistance;
+		
+		float t1 = (bounds[offset] - originX) * inverseX, t2 = (bounds[offset + 3] - originX) * inverseX;
+		if (t1 == t1 && t2 == t2) { // NaN when the ray is parallel to a face it starts on
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		
+		t1 = (bounds[offset + 1] - originY) * inverseY;
+		t2 = (bounds[offset + 4] - originY) * inverseY;
+		if (t1 == t1 && t2 == t2) {
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		
+		t1 = (bounds[offset + 2] - originZ) * inverseZ;
+		t2 = (bounds[offset + 5] - originZ) * inverseZ;
+		if (t1 == t1 && t2 == t2) {
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		}
+		
+		return (near <= far) ? near : -1;
+	}
+	
+	private void pushChildrenOrCollect(int node, IntList results) {
+		int link = node * LINK_INTS;
+		if (links[link + FIRST_CHILD] == NULL_NODE) {
+			results.add(links[link + USER_DATA]);
+		}
+		else {
+			this.push(links[link + FIRST_CHILD]);
+			this.push(links[link + SECOND_CHILD]);
+		}
+	}
+	
+	private void collectLeaves(int subtree, IntList results) {
+		int[] links = this.links;
+		int[] stack = this.stack;
+		int base = stackSize, size = base, visited = 0;
+		
+		// A subtree holds at most one more node than its height per level on the stack
+		int required = base + 2 * (links[subtree * LINK_INTS + HEIGHT] + 1);
+		if (required > stack.length) {
+			this.stack = stack = Arrays.copyOf(stack, Math.max(required, stack.length << 1));
+		}
+		
+		stack[size++] = subtree;
+		while (size > base) {
+			int link = stack[--size] * LINK_INTS;
+			visited++;
+			
+			if (links[link + FIRST_CHILD] == NULL_NODE) {
+				results.add(links[link + USER_DATA]);
+			}
+			else {
+				stack[size++] = links[link + FIRST_CHILD];
+				stack[size++] = links[link + SECOND_CHILD];
+			}
+		}
+		
+		this.nodesVisited += visited - 1; // The subtree root was already counted
+	}
+	
+	private void push(int value) {
+		if (stackSize == stack.length) {
+			this.stack = Arrays.copyOf(stack, stackSize << 1);
+		}
+		
+		this.stack[stackSize++] = value;
+	}
+	
+	private void insertLeaf(int leaf) {
+		if (root == NULL_NODE) {
+			this.root = leaf;
+			this.links[leaf * LINK_INTS + PARENT] = NULL_NODE;
+			return;
+		}
+		
+		// Descend towards the sibling whose union with the leaf grows the tree's surface area the least
+		int leafOffset = leaf * BOUNDS_FLOATS;
+		int node = root;
+		while (!isLeaf(node)) {
+			int first = links[node * LINK_INTS + FIRST_CHILD], second = links[node * LINK_INTS + SECOND_CHILD];
+			
+			float area = surfaceArea(node * BOUNDS_FLOATS);
+			float combinedArea = unionArea(node * BOUNDS_FLOATS, leafOffset);
+			
+			// Cost of pairing the leaf with this node, and the minimum cost pushed down to either child
+			float cost = 2 * combinedArea;
+			float inheritanceCost = 2 * (combinedArea - area);
+			float firstCost = descentCost(first, leafOffset) + inheritanceCost;
+			float secondCost = descentCost(second, leafOffset) + inheritanceCost;
+			
+			if (cost < firstCost && cost < secondCost) break;
+			node = (firstCost < secondCost) ? first : second;
+		}
+		
+		int sibling = node, oldParent = parent(sibling);
+		int newParent = allocateNode();
+		this.links[newParent * LINK_INTS + PARENT] = oldParent;
+		this.links[newParent * LINK_INTS + HEIGHT] = height(sibling) + 1;
+		this.setUnion(newParent, sibling, leaf);
+		
+		if (oldParent != NULL_NODE) {
+			this.replaceChild(oldParent, sibling, newParent);
+		}
+		else {
+			this.root = newParent;
+		}
+		
+		this.links[newParent * LINK_INTS + FIRST_CHILD] = sibling;
+		this.links[newParent * LINK_INTS + SECOND_CHILD] = leaf;
+		this.links[sibling * LINK_INTS + PARENT] = newParent;
+		this.links[leaf * LINK_INTS + PARENT] = newParent;
+		
+		this.refitAncestors(newParent);
+	}
+	
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			this.root = NULL_NODE;
+			return;
+		}
+		
+		int parent = parent(leaf), grandParent = parent(parent);
+		int first = links[parent * LINK_INTS + FIRST_CHILD];
+		int sibling = (first == leaf) ? links[parent * LINK_INTS + SECOND_CHILD] : first;
+		
+		if (grandParent != NULL_NODE) {
+			this.replaceChild(grandParent, parent, sibling);
+			this.links[sibling * LINK_INTS + PARENT] = grandParent;
+			this.freeNode(parent);
+			this.refitAncestors(grandParent);
+		}
+		else {
+			this.root = sibling;
+			this.links[sibling * LINK_INTS + PARENT] = NULL_NODE;
+			this.freeNode(parent);
+		}
+	}
+	
+	private void refitAncestors(int node) {
+		while (node != NULL_NODE) {
+			node = balance(node);
+			
+			int first = links[node * LINK_INTS + FIRST_CHILD], second = links[node * LINK_INTS + SECOND_CHILD];
+			this.links[node * LINK_INTS + HEIGHT] = 1 + Math.max(height(first), height(second));
+			this.setUnion(node, first, second);
+			
+			node = parent(node);
+		}
+	}
+	
+	/*
+	 * Rotate the taller child of node A up if its children differ in height by more than 1.
+	 * The taller of the grandchildren stays under the promoted child, and the other takes
+	 * its place under A. Returns the node now at A's position
+	 */
+	private int balance(int a) {
+		if (isLeaf(a) || height(a) < 2) return a;
+		
+		int b = links[a * LINK_INTS + FIRST_CHILD], c = links[a * LINK_INTS + SECOND_CHILD];
+		int difference = height(c) - height(b);
+		
+		if (difference > 1) {
+			return this.rotate(a, c, b, SECOND_CHILD);
+		}
+		else if (difference < -1) {
+			return this.rotate(a, b, c, FIRST_CHILD);
+		}
+		
+		return a;
+	}
+	
+	// Promote child "up" of node A in place of A, where "other" is A's remaining child and "slot" the child slot of "up"
+	private int rotate(int a, int up, int other, int slot) {
+		int f = links[up * LINK_INTS + FIRST_CHILD], g = links[up * LINK_INTS + SECOND_CHILD];
+		int parent = parent(a);
+		
+		this.links[up * LINK_INTS + FIRST_CHILD] = a;
+		this.links[up * LINK_INTS + PARENT] = parent;
+		this.links[a * LINK_INTS + PARENT] = up;
+		
+		if (parent != NULL_NODE) {
+			this.replaceChild(parent, a, up);
+		}
+		else {
+			this.root = up;
+		}
+		
+		int kept = (height(f) > height(g)) ? f : g;
+		int moved = (kept == f) ? g : f;
+		
+		this.links[up * LINK_INTS + SECOND_CHILD] = kept;
+		this.links[a * LINK_INTS + slot] = moved;
+		this.links[moved * LINK_INTS + PARENT] = a;
+		
+		this.setUnion(a, other, moved);
+		this.setUnion(up, a, kept);
+		this.links[a * LINK_INTS + HEIGHT] = 1 + Math.max(height(other), height(moved));
+		this.links[up * LINK_INTS + HEIGHT] = 1 + Math.max(height(a), height(kept));
+		return up;
+	}
+	
+	private void replaceChild(int parent, int oldChild, int newChild) {
+		int link = parent * LINK_INTS;
+		if (links[link + FIRST_CHILD] == oldChild) {
+			this.links[link + FIRST_CHILD] = newChild;
+		}
+		else {
+			this.links[link + SECOND_CHILD] = newChild;
+		}
+	}
+	
+	private boolean isLeaf(int node) {
+		return links[node * LINK_INTS + FIRST_CHILD] == NULL_NODE;
+	}
+	
+	private int parent(int node) {
+		return links[node * LINK_INTS + PARENT];
+	}
+	
+	private int height(int node) {
+		return links[node * LINK_INTS + HEIGHT];
+	}
+	
+	private float descentCost(int child, int leafOffset) {
+		float unionArea = unionArea(child * BOUNDS_FLOATS, leafOffset);
+		return isLeaf(child) ? unionArea : unionArea - surfaceArea(child * BOUNDS_FLOATS);
+	}
+	
+	private float surfaceArea(int offset) {
+		float x = bounds[offset + 3] - bounds[offset], y = bounds[offset + 4] - bounds[offset + 1], z = bounds[offset + 5] - bounds[offset + 2];
+		return 2 * (x * y + y * z + z * x);
+	}
+	
+	private float unionArea(int offsetA, int offsetB) {
+		float x = Math.max(bounds[offsetA + 3], bounds[offsetB + 3]) - Math.min(bounds[offsetA], bounds[offsetB]);
+		float y = Math.max(bounds[offsetA + 4], bounds[offsetB + 4]) - Math.min(bounds[offsetA + 1], bounds[offsetB + 1]);
+		float z = Math.max(bounds[offsetA + 5], bounds[offsetB + 5]) - Math.min(bounds[offsetA + 2], bounds[offsetB + 2]);
+		return 2 * (x * y + y * z + z * x);
+	}
+	
+	private void setUnion(int node, int a, int b) {
+		int offset = node * BOUNDS_FLOATS, offsetA = a * BOUNDS_FLOATS, offsetB = b * BOUNDS_FLOATS;
+		for (int i = 0; i < 3; i++) {
+			this.bounds[offset + i] = Math.min(bounds[offsetA + i], bounds[offsetB + i]);
+			this.bounds[offset + i + 3] = Math.max(bounds[offsetA + i + 3], bounds[offsetB + i + 3]);
+		}
+	}
+	
+	private void setFatBounds(int leaf, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		int offset = leaf * BOUNDS_FLOATS;
+		this.bounds[offset] = minX - margin;
+		this.bounds[offset + 1] = minY - margin;
+		this.bounds[offset + 2] = minZ - margin;
+		this.bounds[offset + 3] = maxX + margin;
+		this.bounds[offset + 4] = maxY + margin;
+		this.bounds[offset + 5] = maxZ + margin;
+	}
+	
+	private void checkLeaf(int leaf) {
+		if (leaf < 0 || leaf >= nodeCount || height(leaf) != 0) {
+			throw new IllegalArgumentException("Node " + leaf + " is not a leaf of this tree");
+		}
+	}
+	
+	private int allocateNode() {
+		int node = freeNode;
+		if (node == NULL_NODE) {
+			if (nodeCount * LINK_INTS == links.length) {
+				this.bounds = Arrays.copyOf(bounds, bounds.length << 1);
+				this.links = Arrays.copyOf(links, links.length << 1);
+			}
+			
+			node = nodeCount++;
+		}
+		else {
+			this.freeNode = parent(node);
+		}
+		
+		int link = node * LINK_INTS;
+		this.links[link + PARENT] = NULL_NODE;
+		this.links[link + FIRST_CHILD] = NULL_NODE;
+		this.links[link + SECOND_CHILD] = NULL_NODE;
+		return node;
+	}
+	
+	private void freeNode(int node) {
+		this.links[node * LINK_INTS + PARENT] = freeNode;
+		this.links[node * LINK_INTS + HEIGHT] = -1;
+		this.freeNode = node;
+	}
+	
+	private void allocate(int capacity) {
+		this.bounds = new float[capacity * BOUNDS_FLOATS];
+		this.links = new int[capacity * LINK_INTS];
+		this.nodeCount = 0;
+		this.freeNode = NULL_NODE;
+	}
+	
+}
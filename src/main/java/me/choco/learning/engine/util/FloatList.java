@@ -0,0 +1,125 @@
+package me.choco.learning.engine.util;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive floats. Values are appended to a backing array
+ * which doubles in size when full, avoiding the boxing of a {@code List<Float>}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class FloatList {
+	
+	private float[] values;
+	private int size;
+	
+	/**
+	 * Construct a new float list with the given initial capacity
+	 * 
+	 * @param initialCapacity the initial capacity of the list
+	 */
+	public FloatList(int initialCapacity) {
+		this.values = new float[Math.max(initialCapacity, 1)];
+	}
+	
+	/**
+	 * Construct a new float list with a default initial capacity
+	 */
+	public FloatList() {
+		this(64);
+	}
+	
+	/**
+	 * Append a value to the end of this list
+	 * 
+	 * @param value the value to add
+	 */
+	public void add(float value) {
+		if (size == values.length) {
+			this.values = Arrays.copyOf(values, values.length << 1);
+		}
+		
+		this.values[size++] = value;
+	}
+	
+	/**
+	 * Append all values of another list to the end of this list
+	 * 
+	 * @param other the list whose values to add
+	 */
+	public void addAll(FloatList other) {
+		this.ensureCapacity(size + other.size);
+		System.arraycopy(other.values, 0, values, size, other.size);
+		this.size += other.size;
+	}
+	
+	/**
+	 * Ensure that this list can hold at least the given amount of values without
+	 * growing its backing array
+	 * 
+	 * @param capacity the minimum capacity
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			this.values = Arrays.copyOf(values, Math.max(capacity, values.length << 1));
+		}
+	}
+	
+	/**
+	 * Get the value at the given index
+	 * 
+	 * @param index the index of the value
+	 * @return the value
+	 */
+	public float get(int index) {
+		return values[index];
+	}
+	
+	/**
+	 * Get the amount of values in this list
+	 * 
+	 * @return the list size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Clear all values from this list. The backing array is retained
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+	
+	/**
+	 * Get the backing array of this list. Only the first {@link #size()} values
+	 * are valid
+	 * 
+	 * @return the backing array
+	 */
+	public float[] array() {
+		return values;
+	}
+	
+	/**
+	 * Copy the contents of this list into a new array of exactly {@link #size()}
+	 * elements
+	 * 
+	 * @return the copied array
+	 */
+	public float[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+	
+	/**
+	 * Wrap the contents of this list in a heap buffer without copying. The
+	 * buffer is invalidated if more values are added to this list
+	 * 
+	 * @return the wrapping buffer
+	 */
+	public FloatBuffer toBuffer() {
+		return FloatBuffer.wrap(values, 0, size).slice();
+	}
+	
+}
@@ -0,0 +1,88 @@
+package me.choco.learning.engine.util;
+
+/**
+ * A utility class to convert between 32-bit floats and 16-bit IEEE 754 half
+ * precision floats as understood by OpenGL's {@code GL_HALF_FLOAT}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class HalfFloat {
+	
+	private HalfFloat() {}
+	
+	/**
+	 * Convert a float to the bits of the nearest half float. Values too large to
+	 * be represented become infinity, values too small become (signed) zero
+	 * 
+	 * @param value the value to convert
+	 * @return the half float bits
+	 */
+	public static short fromFloat(float value) {
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = (bits >>> 23) & 0xFF;
+		int mantissa = bits & 0x7FFFFF;
+		
+		// NaN and infinity
+		if (exponent == 0xFF) {
+			return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+		}
+		
+		int halfExponent = exponent - 127 + 15;
+		if (halfExponent >= 0x1F) {
+			return (short) (sign | 0x7C00);
+		}
+		
+		// Subnormal half, or too small to be represented at all
+		if (halfExponent <= 0) {
+			if (halfExponent < -10) {
+				return (short) sign;
+			}
+			
+			mantissa |= 0x800000;
+			int shift = 14 - halfExponent;
+			int halfMantissa = mantissa >> shift;
+			int remainder = mantissa & ((1 << shift) - 1), halfway = 1 << (shift - 1);
+			if (remainder > halfway || (remainder == halfway && (halfMantissa & 1) != 0)) {
+				halfMantissa++;
+			}
+			
+			return (short) (sign | halfMantissa);
+		}
+		
+		// Round the mantissa to nearest, ties to even. A carry correctly bumps the exponent
+		int half = sign | (halfExponent << 10) | (mantissa >> 13);
+		int remainder = mantissa & 0x1FFF;
+		if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+			half++;
+		}
+		
+		return (short) half;
+	}
+	
+	/**
+	 * Convert the bits of a half float to a float
+	 * 
+	 * @param half the half float bits
+	 * @return the float value
+	 */
+	public static float toFloat(short half) {
+		int bits = half & 0xFFFF;
+		int sign = (bits & 0x8000) << 16;
+		int exponent = (bits >>> 10) & 0x1F;
+		int mantissa = bits & 0x3FF;
+		
+		if (exponent == 0) {
+			// Zero or subnormal
+			float value = mantissa * (1.0f / (1 << 24));
+			return (sign != 0) ? -value : value;
+		}
+		
+		if (exponent == 0x1F) {
+			return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+		}
+		
+		return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+	}
+	
+}
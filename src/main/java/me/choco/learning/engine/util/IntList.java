@@ -0,0 +1,148 @@
+package me.choco.learning.engine.util;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints. Values are appended to a backing array
+ * which doubles in size when full, avoiding the boxing of a {@code List<Integer>}
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class IntList {
+	
+	private int[] values;
+	private int size;
+	
+	/**
+	 * Construct a new int list with the given initial capacity
+	 * 
+	 * @param initialCapacity the initial capacity of the list
+	 */
+	public IntList(int initialCapacity) {
+		this.values = new int[Math.max(initialCapacity, 1)];
+	}
+	
+	/**
+	 * Construct a new int list with a default initial capacity
+	 */
+	public IntList() {
+		this(64);
+	}
+	
+	/**
+	 * Append a value to the end of this list
+	 * 
+	 * @param value the value to add
+	 */
+	public void add(int value) {
+		if (size == values.length) {
+			this.values = Arrays.copyOf(values, values.length << 1);
+		}
+		
+		this.values[size++] = value;
+	}
+	
+	/**
+	 * Append all values of another list to the end of this list
+	 * 
+	 * @param other the list whose values to add
+	 */
+	public void addAll(IntList other) {
+		this.ensureCapacity(size + other.size);
+		System.arraycopy(other.values, 0, values, size, other.size);
+		this.size += other.size;
+	}
+	
+	/**
+	 * Ensure that this list can hold at least the given amount of values without
+	 * growing its backing array
+	 * 
+	 * @param capacity the minimum capacity
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			this.values = Arrays.copyOf(values, Math.max(capacity, values.length << 1));
+		}
+	}
+	
+	/**
+	 * Get the value at the given index
+	 * 
+	 * @param index the index of the value
+	 * @return the value
+	 */
+	public int get(int index) {
+		return values[index];
+	}
+	
+	/**
+	 * Set the value at the given index
+	 * 
+	 * @param index the index of the value
+	 * @param value the new value
+	 */
+	public void set(int index, int value) {
+		this.values[index] = value;
+	}
+	
+	/**
+	 * Get the amount of values in this list
+	 * 
+	 * @return the list size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Clear all values from this list. The backing array is retained
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+	
+	/**
+	 * Discard all values from the given size onwards. The backing array is retained
+	 * 
+	 * @param size the new size of this list. Must not exceed the current size
+	 */
+	public void truncate(int size) {
+		if (size < 0 || size > this.size) {
+			throw new IndexOutOfBoundsException("Size: " + size + ", Current size: " + this.size);
+		}
+		
+		this.size = size;
+	}
+	
+	/**
+	 * Get the backing array of this list. Only the first {@link #size()} values
+	 * are valid
+	 * 
+	 * @return the backing array
+	 */
+	public int[] array() {
+		return values;
+	}
+	
+	/**
+	 * Copy the contents of this list into a new array of exactly {@link #size()}
+	 * elements
+	 * 
+	 * @return the copied array
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+	
+	/**
+	 * Wrap the contents of this list in a heap buffer without copying. The
+	 * buffer is invalidated if more values are added to this list
+	 * 
+	 * @return the wrapping buffer
+	 */
+	public IntBuffer toBuffer() {
+		return IntBuffer.wrap(values, 0, size).slice();
+	}
+	
+}
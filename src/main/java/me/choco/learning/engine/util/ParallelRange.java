@@ -0,0 +1,106 @@
+package me.choco.learning.engine.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A utility class to run data-parallel loops over a range of indices. The range
+ * is split into contiguous sub-ranges which are processed on the common
+ * fork-join pool. Small ranges are processed on the calling thread
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class ParallelRange {
+	
+	private ParallelRange() {}
+	
+	/**
+	 * Process every index in [0, count) by splitting it into contiguous sub-ranges
+	 * of at least the given size. Sub-ranges must not write to shared state other
+	 * than disjoint regions of an array
+	 * 
+	 * @param count the amount of indices to process
+	 * @param minRangeSize the minimum amount of indices processed by a single task
+	 * @param task the task to run for each sub-range
+	 */
+	public static void forEach(int count, int minRangeSize, RangeTask task) {
+		forEachRange(count, minRangeSize, (range, from, to) -> task.run(from, to));
+	}
+	
+	/**
+	 * Process every index in [0, count) as {@link #forEach(int, int, RangeTask)}
+	 * does, also passing each task the index of its sub-range so that it may
+	 * write to state owned by that sub-range alone
+	 * 
+	 * @param count the amount of indices to process
+	 * @param minRangeSize the minimum amount of indices processed by a single task
+	 * @param task the task to run for each sub-range
+	 * 
+	 * @see #getRangeCount(int, int)
+	 */
+	public static void forEachRange(int count, int minRangeSize, IndexedRangeTask task) {
+		int rangeCount = getRangeCount(count, minRangeSize);
+		if (rangeCount == 1) {
+			task.run(0, 0, count);
+			return;
+		}
+		
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(rangeCount);
+		for (int i = 0; i < rangeCount; i++) {
+			int range = i, from = (int) ((long) count * i / rangeCount), to = (int) ((long) count * (i + 1) / rangeCount);
+			tasks.add(ForkJoinTask.adapt(() -> task.run(range, from, to)));
+		}
+		
+		ForkJoinTask.invokeAll(tasks);
+	}
+	
+	/**
+	 * Get the amount of sub-ranges into which a range is split, i.e. to allocate
+	 * state for each sub-range of {@link #forEachRange(int, int, IndexedRangeTask)}
+	 * 
+	 * @param count the amount of indices to process
+	 * @param minRangeSize the minimum amount of indices processed by a single task
+	 * 
+	 * @return the amount of sub-ranges, at least 1
+	 */
+	public static int getRangeCount(int count, int minRangeSize) {
+		return Math.max(Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, count / Math.max(minRangeSize, 1)), 1);
+	}
+	
+	/**
+	 * Represents the work done on a contiguous range of indices
+	 */
+	@FunctionalInterface
+	public interface RangeTask {
+		
+		/**
+		 * Process every index in the given range
+		 * 
+		 * @param from the first index, inclusive
+		 * @param to the last index, exclusive
+		 */
+		public void run(int from, int to);
+		
+	}
+	
+	/**
+	 * Represents the work done on a contiguous range of indices which is aware
+	 * of its position among all sub-ranges
+	 */
+	@FunctionalInterface
+	public interface IndexedRangeTask {
+		
+		/**
+		 * Process every index in the given range
+		 * 
+		 * @param range the index of the sub-range, from 0 to the amount of sub-ranges (exclusive)
+		 * @param from the first index, inclusive
+		 * @param to the last index, exclusive
+		 */
+		public void run(int range, int from, int to);
+		
+	}
+	
+}
@@ -0,0 +1,88 @@
+package me.choco.learning.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * A stable least significant digit radix sort of unsigned 64-bit keys paired
+ * with int values. Keys are sorted a byte at a time, and passes over bytes which
+ * are equal across all keys are skipped. Scratch storage is retained between
+ * calls, so sorting allocates nothing once the largest input has been seen
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class RadixSort {
+	
+	private static final int RADIX_BITS = 8, RADIX = 1 << RADIX_BITS, PASSES = Long.SIZE / RADIX_BITS;
+	
+	private final int[] counts = new int[PASSES * RADIX];
+	private long[] keyScratch = new long[0];
+	private int[] valueScratch = new int[0];
+	
+	/**
+	 * Sort the first elements of the given keys in ascending unsigned order,
+	 * reordering the values along with them. Equal keys keep their relative order
+	 * 
+	 * @param keys the keys to sort
+	 * @param values the values paired with each key
+	 * @param length the amount of elements to sort
+	 */
+	public void sort(long[] keys, int[] values, int length) {
+		if (length > keys.length || length > values.length) {
+			throw new IllegalArgumentException("Length " + length + " exceeds the given arrays (keys: " + keys.length + ", values: " + values.length + ")");
+		}
+		if (length < 2) return;
+		
+		if (keyScratch.length < length) {
+			this.keyScratch = new long[keys.length];
+			this.valueScratch = new int[keys.length];
+		}
+		
+		// Histogram every byte in a single pass over the keys
+		Arrays.fill(counts, 0);
+		for (int i = 0; i < length; i++) {
+			long key = keys[i];
+			for (int pass = 0; pass < PASSES; pass++) {
+				this.counts[pass * RADIX + (int) ((key >>> (pass * RADIX_BITS)) & (RADIX - 1))]++;
+			}
+		}
+		
+		long[] sourceKeys = keys, targetKeys = keyScratch;
+		int[] sourceValues = values, targetValues = valueScratch;
+		
+		for (int pass = 0; pass < PASSES; pass++) {
+			int base = pass * RADIX, shift = pass * RADIX_BITS;
+			
+			// All keys share this byte, so the pass would not change their order
+			if (counts[base + (int) ((sourceKeys[0] >>> shift) & (RADIX - 1))] == length) continue;
+			
+			// Convert counts to starting offsets
+			int offset = 0;
+			for (int digit = 0; digit < RADIX; digit++) {
+				int count = counts[base + digit];
+				this.counts[base + digit] = offset;
+				offset += count;
+			}
+			
+			for (int i = 0; i < length; i++) {
+				long key = sourceKeys[i];
+				int target = counts[base + (int) ((key >>> shift) & (RADIX - 1))]++;
+				targetKeys[target] = key;
+				targetValues[target] = sourceValues[i];
+			}
+			
+			long[] swapKeys = sourceKeys;
+			sourceKeys = targetKeys;
+			targetKeys = swapKeys;
+			
+			int[] swapValues = sourceValues;
+			sourceValues = targetValues;
+			targetValues = swapValues;
+		}
+		
+		if (sourceKeys != keys) {
+			System.arraycopy(sourceKeys, 0, keys, 0, length);
+			System.arraycopy(sourceValues, 0, values, 0, length);
+		}
+	}
+	
+}
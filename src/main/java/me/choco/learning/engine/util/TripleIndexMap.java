@@ -0,0 +1,133 @@
+package me.choco.learning.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from a triple of ints to an int index. Keys are
+ * stored inline in a flat int array and probed linearly, so no objects are
+ * allocated per entry. Intended for welding (position, texture, normal) index
+ * triples into unique vertices
+ * 
+ * @author Parker Hawke - 2008Choco
+ */
+public final class TripleIndexMap {
+	
+	private static final int EMPTY = -1;
+	
+	private int[] keys, values;
+	private int mask, size;
+	
+	/**
+	 * Construct a new map able to hold the expected amount of entries without
+	 * rehashing
+	 * 
+	 * @param expectedSize the expected amount of entries
+	 */
+	public TripleIndexMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+		this.allocate(capacity);
+	}
+	
+	/**
+	 * Get the value mapped to the given triple, or map it to the given value if
+	 * the triple is not yet present
+	 * 
+	 * @param a the first key component
+	 * @param b the second key component
+	 * @param c the third key component
+	 * @param value the value to map if absent. Must not be negative
+	 * 
+	 * @return the existing value, or -1 if the given value was inserted
+	 */
+	public int putIfAbsent(int a, int b, int c, int value) {
+		int slot = hash(a, b, c) & mask;
+		
+		while (values[slot] != EMPTY) {
+			int key = slot * 3;
+			if (keys[key] == a && keys[key + 1] == b && keys[key + 2] == c) {
+				return values[slot];
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		int key = slot * 3;
+		this.keys[key] = a;
+		this.keys[key + 1] = b;
+		this.keys[key + 2] = c;
+		this.values[slot] = value;
+		
+		// Keep the load factor at or below 0.5
+		if (++size > (mask + 1) >> 1) {
+			this.rehash();
+		}
+		
+		return EMPTY;
+	}
+	
+	/**
+	 * Get the value mapped to the given triple
+	 * 
+	 * @param a the first key component
+	 * @param b the second key component
+	 * @param c the third key component
+	 * 
+	 * @return the mapped value, or -1 if the triple is not present
+	 */
+	public int get(int a, int b, int c) {
+		int slot = hash(a, b, c) & mask;
+		
+		while (values[slot] != EMPTY) {
+			int key = slot * 3;
+			if (keys[key] == a && keys[key + 1] == b && keys[key + 2] == c) {
+				return values[slot];
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return EMPTY;
+	}
+	
+	/**
+	 * Get the amount of entries in this map
+	 * 
+	 * @return the map size
+	 */
+	public int size() {
+		return size;
+	}
+	
+	private void rehash() {
+		int[] oldKeys = keys, oldValues = values;
+		this.allocate(values.length << 1);
+		
+		for (int slot = 0; slot < oldValues.length; slot++) {
+			if (oldValues[slot] == EMPTY) continue;
+			
+			int a = oldKeys[slot * 3], b = oldKeys[slot * 3 + 1], c = oldKeys[slot * 3 + 2];
+			int newSlot = hash(a, b, c) & mask;
+			while (values[newSlot] != EMPTY) {
+				newSlot = (newSlot + 1) & mask;
+			}
+			
+			this.keys[newSlot * 3] = a;
+			this.keys[newSlot * 3 + 1] = b;
+			this.keys[newSlot * 3 + 2] = c;
+			this.values[newSlot] = oldValues[slot];
+		}
+	}
+	
+	private void allocate(int capacity) {
+		this.keys = new int[capacity * 3];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		Arrays.fill(values, EMPTY);
+	}
+	
+	private static int hash(int a, int b, int c) {
+		int hash = a * 0x9E3779B1 + b * 0x85EBCA77 + c * 0xC2B2AE3D;
+		return hash ^ (hash >>> 15);
+	}
+	
+}
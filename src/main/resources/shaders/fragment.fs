@@ -6,8 +6,17 @@ in vec3 toLightVector;
 
 out vec4 fragColour;
 
+// Per-frame data shared by every program
+layout(std140) uniform FrameData {
+	mat4 projectionMatrix;
+	mat4 viewMatrix;
+	vec3 lightPosition;
+	vec3 lightColour;
+};
+
 uniform sampler2D textureSampler;
-uniform vec3 lightColour;
+uniform vec4 diffuseColour;
+uniform bool textured;
 
 void main() {
 	vec3 unitVertexNormal = normalize(vertexNormal);
@@ -16,5 +25,6 @@ void main() {
 	float brightness = max(dot(unitVertexNormal, unitToLightVector), 0.0);
 	vec3 diffuse = brightness * lightColour;
 	
-	fragColour = vec4(diffuse, 1.0) * texture(textureSampler, textureCoords);
+	vec4 surfaceColour = textured ? diffuseColour * texture(textureSampler, textureCoords) : diffuseColour;
+	fragColour = vec4(diffuse, 1.0) * surfaceColour;
 }
\ No newline at end of file
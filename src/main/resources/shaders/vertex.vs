@@ -1,26 +1,38 @@
 #version 330
 
-in vec3 position;
-in vec2 inTextureCoords;
-in vec3 inVertexNormal;
+layout(location = 0) in vec3 position;
+layout(location = 1) in vec2 inTextureCoords;
+layout(location = 2) in vec3 inVertexNormal;
+
+// Per-instance attribute, occupying locations 4 through 7 (one per column)
+layout(location = 4) in mat4 transformationMatrix;
 
 out vec2 textureCoords;
 out vec3 vertexNormal;
 out vec3 toLightVector;
 
-uniform mat4 projectionMatrix;
-uniform mat4 transformationMatrix;
-uniform mat4 viewMatrix;
-uniform vec3 lightPosition;
+// Per-frame data shared by every program
+layout(std140) uniform FrameData {
+	mat4 projectionMatrix;
+	mat4 viewMatrix;
+	vec3 lightPosition;
+	vec3 lightColour;
+};
+
+uniform vec3 positionScale;
+uniform vec3 positionOffset;
 
 void main() {
 	// NOTE:
 	// (viewMatrix * transformationMatrix) = first-person camera
 	// (transformationMatrix * viewMatrix) = third-person camera
 	
+	// Quantized positions are decoded from [0, 1] back into model space
+	vec3 decodedPosition = position * positionScale + positionOffset;
+	
 	mat4 modelViewMatrix = viewMatrix * transformationMatrix;
-	vec4 modelPosition = transformationMatrix * vec4(position, 1.0);
-	gl_Position = projectionMatrix * modelViewMatrix * vec4(position, 1.0);
+	vec4 modelPosition = transformationMatrix * vec4(decodedPosition, 1.0);
+	gl_Position = projectionMatrix * modelViewMatrix * vec4(decodedPosition, 1.0);
 	
 	textureCoords = inTextureCoords;
 	vertexNormal = (transformationMatrix * vec4(inVertexNormal, 0.0)).xyz;